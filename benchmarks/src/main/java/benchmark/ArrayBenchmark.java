@@ -0,0 +1,112 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import compiler.StaticPool;
+import runtime.ModuleInfo;
+import runtime.RuntimeArray;
+import runtime.RuntimeObject;
+import runtime.RuntimeObjectFactory;
+import vm.TaggedVirtualMachine;
+import vm.VirtualMachine;
+
+/**
+ * Sums and scans a large array of integers, kept in an int[] or, after
+ * storing a string into it and the integer back, in an array of boxed
+ * objects, on the stack machine and on the tagged one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayBenchmark {
+
+	private static final int SIZE = 100000;
+
+	private static final String LOOPS =
+			"function sum(a) {\n" +
+			"	let sum = 0;\n" +
+			"	for (let i = 0; i < %d; i++)\n" +
+			"		sum += a[i];\n" +
+			"	return sum;\n" +
+			"}\n" +
+			"function scan(a) {\n" +
+			"	let max = a[0], at = 0;\n" +
+			"	for (let i = 1; i < %d; i++)\n" +
+			"		if (a[i] > max) {\n" +
+			"			max = a[i];\n" +
+			"			at = i;\n" +
+			"		}\n" +
+			"	return at;\n" +
+			"}\n" +
+			"function main() {\n" +
+			"	let a = %s;\n" +
+			"	return %s(a);\n" +
+			"}\n";
+
+	@Param({"sum", "scan"})
+	private String loop;
+
+	@Param({"objects", "primitive"})
+	private String storage;
+
+	@Param({"stack", "tagged"})
+	private String backend;
+
+	private static final int STACK_SIZE = 4096;
+
+	private VirtualMachine vm_;
+	private TaggedVirtualMachine tagged_;
+
+	@Setup
+	public void setup() throws Exception {
+		StringBuilder array = new StringBuilder("[");
+		for (int i = 0; i < SIZE; i++) {
+			if (i > 0)
+				array.append(", ");
+			array.append(i * 7919 % SIZE);
+		}
+		array.append(']');
+		ModuleInfo module = Scripts.compile(String.format(LOOPS, SIZE,
+				SIZE, array, loop));
+		if (storage.equals("objects")) {
+			StaticPool pool = module.staticPool();
+			for (int i = 0; i < pool.size(); i++) {
+				RuntimeObject constant = pool.get(i);
+				if (constant.isArray()) {
+					RuntimeArray elements = (RuntimeArray) constant;
+					RuntimeObject first = elements.element(0);
+					elements.set(0, RuntimeObjectFactory.string(""));
+					elements.set(0, first);
+				}
+			}
+		}
+		if (backend.equals("tagged")) {
+			tagged_ = new TaggedVirtualMachine(STACK_SIZE);
+			tagged_.load(module);
+		} else {
+			vm_ = new VirtualMachine(STACK_SIZE);
+			vm_.load(module);
+		}
+	}
+
+	@Benchmark
+	public RuntimeObject run() throws Exception {
+		return tagged_ != null ? tagged_.run() : vm_.run();
+	}
+
+}
@@ -0,0 +1,104 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ast.Module;
+import compiler.Compiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.register.RegisterCompiler;
+import compiler.register.RegisterModule;
+import lexer.Lexer;
+import parser.Parser;
+import runtime.ModuleInfo;
+import runtime.RuntimeObject;
+import text.StringScanner;
+import vm.RegisterVirtualMachine;
+import vm.TaggedVirtualMachine;
+import vm.VirtualMachine;
+import vm.jit.JitCompiler;
+
+/**
+ * Runs the same arithmetic-heavy script on the stack machine, on the
+ * register machine, on the stack machine keeping its values packed into
+ * longs, and on the stack machine with the JIT compiler. The
+ * JIT one keeps its virtual machine between runs, so that it measures the
+ * compiled code rather than the compilation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackendBenchmark {
+
+	private static final String SOURCE =
+			"function fib(n) {\n" +
+			"	if (n < 2) return n;\n" +
+			"	return fib(n - 1) + fib(n - 2);\n" +
+			"}\n" +
+			"function main() {\n" +
+			"	let sum = 0;\n" +
+			"	for (let i = 0; i < 10000; i++)\n" +
+			"		sum = sum + i * 3 % 7 - (i >> 2);\n" +
+			"	return sum + fib(15);\n" +
+			"}\n";
+
+	private static final int STACK_SIZE = 4096;
+
+	private ModuleInfo module_;
+	private RegisterModule registerModule_;
+	private VirtualMachine jitMachine_;
+
+	@Setup
+	public void setup() throws Exception {
+		Parser parser = new Parser(new Lexer(new StringScanner(SOURCE)));
+		Module module = parser.parse();
+		new ConstantFolder(module).fold();
+		Compiler compiler = new Compiler(module);
+		compiler.compile();
+		module_ = compiler.result();
+		registerModule_ = new RegisterCompiler(module_).compile();
+		jitMachine_ = new VirtualMachine(STACK_SIZE);
+		jitMachine_.load(module_);
+		jitMachine_.setJit(new JitCompiler());
+	}
+
+	@Benchmark
+	public RuntimeObject stackMachine() throws Exception {
+		VirtualMachine vm = new VirtualMachine(STACK_SIZE);
+		vm.load(module_);
+		return vm.run();
+	}
+
+	@Benchmark
+	public RuntimeObject registerMachine() throws Exception {
+		RegisterVirtualMachine vm = new RegisterVirtualMachine(STACK_SIZE);
+		vm.load(registerModule_);
+		return vm.run();
+	}
+
+	@Benchmark
+	public RuntimeObject taggedMachine() throws Exception {
+		TaggedVirtualMachine vm = new TaggedVirtualMachine(STACK_SIZE);
+		vm.load(module_);
+		return vm.run();
+	}
+
+	@Benchmark
+	public RuntimeObject jitMachine() throws Exception {
+		return jitMachine_.run();
+	}
+
+}
@@ -0,0 +1,83 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import runtime.RuntimeObject;
+import vm.VirtualMachine;
+
+/**
+ * Calls on the interpreter, each recursing into it or all run in one loop:
+ * fib(30), and a million calls of a function returning its argument next
+ * to the same loop without the calls, which tells the cost of a call.
+ * Nothing is inlined, or there would be no calls left.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallBenchmark {
+
+	private static final String FIB =
+			"function fib(n) {\n" +
+			"	if (n < 2)\n" +
+			"		return n;\n" +
+			"	return fib(n - 1) + fib(n - 2);\n" +
+			"}\n" +
+			"function main() {\n" +
+			"	return fib(30);\n" +
+			"}\n";
+
+	private static final String CALLS =
+			"function id(x) {\n" +
+			"	return x;\n" +
+			"}\n" +
+			"function main() {\n" +
+			"	let s = 0;\n" +
+			"	for (let i = 0; i < 1000000; i++)\n" +
+			"		s = %s;\n" +
+			"	return s;\n" +
+			"}\n";
+
+	@Param({"fib", "calls", "loop"})
+	private String program;
+
+	@Param({"recursive", "flat"})
+	private String calls;
+
+	private static final int STACK_SIZE = 4096;
+
+	private VirtualMachine vm_;
+
+	@Setup
+	public void setup() throws Exception {
+		String source;
+		if (program.equals("fib"))
+			source = FIB;
+		else
+			source = String.format(CALLS,
+					program.equals("calls") ? "id(i)" : "i");
+		vm_ = new VirtualMachine(STACK_SIZE);
+		vm_.load(Scripts.compile(source, false));
+		vm_.setRecursiveCalls(calls.equals("recursive"));
+	}
+
+	@Benchmark
+	public RuntimeObject run() throws Exception {
+		return vm_.run();
+	}
+
+}
@@ -0,0 +1,56 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ast.Module;
+import compiler.Compiler;
+import runtime.ModuleInfo;
+
+/**
+ * Time to compile generated modules of a growing count of functions, with
+ * and without the peephole optimizer. The module is parsed once, since
+ * compiling does not change it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	private int functions;
+
+	@Param({"true", "false"})
+	private boolean optimize;
+
+	private Module module_;
+
+	@Setup
+	public void setup() throws Exception {
+		module_ = Scripts.parse(Scripts.module(functions));
+	}
+
+	@Benchmark
+	public ModuleInfo compile() throws Exception {
+		Compiler compiler = new Compiler(module_);
+		if (!optimize)
+			compiler.setOptimizer(null);
+		compiler.compile();
+		return compiler.result();
+	}
+
+}
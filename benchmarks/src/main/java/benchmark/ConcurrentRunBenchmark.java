@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import runtime.RuntimeObject;
+import vm.VirtualMachine;
+import vm.jit.JitCompiler;
+
+/**
+ * Throughput of one virtual machine, with the canonical program loaded
+ * once, running it from a growing count of threads at once. Every run has
+ * a context of its own, so the throughput should grow with the threads up
+ * to the count of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentRunBenchmark {
+
+	@Param({"fib", "loops", "arrays", "strings"})
+	private String program;
+
+	@Param({"false", "true"})
+	private boolean jit;
+
+	private static final int STACK_SIZE = 4096;
+
+	private VirtualMachine vm_;
+
+	@Setup
+	public void setup() throws Exception {
+		vm_ = new VirtualMachine(STACK_SIZE);
+		vm_.load(Scripts.compile(Scripts.program(program)));
+		if (jit)
+			vm_.setJit(new JitCompiler());
+	}
+
+	@Benchmark
+	@Threads(1)
+	public RuntimeObject oneThread() throws Exception {
+		return vm_.run();
+	}
+
+	@Benchmark
+	@Threads(2)
+	public RuntimeObject twoThreads() throws Exception {
+		return vm_.run();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public RuntimeObject fourThreads() throws Exception {
+		return vm_.run();
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public RuntimeObject allCores() throws Exception {
+		return vm_.run();
+	}
+
+}
@@ -0,0 +1,178 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ast.Module;
+import compiler.ByteCode;
+import compiler.Compiler;
+import compiler.Instruction;
+import compiler.OpCodes;
+import compiler.StaticPool;
+import lexer.Lexer;
+import parser.Parser;
+import runtime.ModuleInfo;
+import runtime.RuntimeInteger;
+import text.StringScanner;
+
+/**
+ * Compares the cost of dispatching over the Instruction list with an enum
+ * switch against dispatching over the packed int[] code with an int
+ * switch. Both loops run the same compiled function over plain ints, so
+ * the only difference between them is how an instruction is fetched and
+ * decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+	private static final String SOURCE =
+			"function main() {\n" +
+			"	let sum = 0;\n" +
+			"	for (let i = 0; i < 10000; i++)\n" +
+			"		sum += i;\n" +
+			"	return sum;\n" +
+			"}\n";
+
+	private ByteCode byteCode_;
+	private int[] statics_;
+	private int localCount_;
+
+	@Setup
+	public void setup() throws Exception {
+		Parser parser = new Parser(new Lexer(new StringScanner(SOURCE)));
+		Module module = parser.parse();
+		Compiler compiler = new Compiler(module);
+		// the interpreters below only know the opcodes of unoptimized code
+		compiler.setOptimizer(null);
+		compiler.compile();
+		ModuleInfo info = compiler.result();
+		byteCode_ = info.entryPoint().byteCode();
+		localCount_ = info.entryPoint().localCount();
+		
+		StaticPool pool = info.staticPool();
+		statics_ = new int[pool.size()];
+		for (int i = 0; i < statics_.length; i++)
+			statics_[i] = ((RuntimeInteger) pool.get(i)).value();
+	}
+
+	@Benchmark
+	public int instructionList() {
+		int[] stack = new int[byteCode_.maxStackDepth()];
+		int[] locals = new int[localCount_];
+		int sp = 0, cursor = 0, rhs;
+		for (;;) {
+			Instruction ins = byteCode_.fetch(cursor++);
+			switch (ins.opcode()) {
+			case ADD:
+				rhs = stack[--sp];
+				stack[sp - 1] += rhs;
+				break;
+			case LT:
+				rhs = stack[--sp];
+				stack[sp - 1] = stack[sp - 1] < rhs ? 1 : 0;
+				break;
+			case INC:
+				stack[sp - 1]++;
+				break;
+			case BR:
+				cursor = ins.operand();
+				break;
+			case BRFALSE:
+				if (stack[--sp] == 0)
+					cursor = ins.operand();
+				break;
+			case LDLOC:
+				stack[sp++] = locals[ins.operand()];
+				break;
+			case LDSTATIC:
+				stack[sp++] = statics_[ins.operand()];
+				break;
+			case STLOC:
+				locals[ins.operand()] = stack[--sp];
+				break;
+			case COPY:
+				stack[sp] = stack[sp - 1];
+				sp++;
+				break;
+			case POP:
+				sp--;
+				break;
+			case RET:
+				return stack[--sp];
+			case RETNULL:
+				return 0;
+			default:
+				throw new IllegalStateException(ins.toString());
+			}
+		}
+	}
+
+	@Benchmark
+	public int packedCode() {
+		int[] code = byteCode_.code();
+		int[] stack = new int[byteCode_.maxStackDepth()];
+		int[] locals = new int[localCount_];
+		int sp = 0, cursor = 0, rhs, word;
+		for (;;) {
+			word = code[cursor++];
+			switch (word & OpCodes.OPCODE_MASK) {
+			case OpCodes.ADD:
+				rhs = stack[--sp];
+				stack[sp - 1] += rhs;
+				break;
+			case OpCodes.LT:
+				rhs = stack[--sp];
+				stack[sp - 1] = stack[sp - 1] < rhs ? 1 : 0;
+				break;
+			case OpCodes.INC:
+				stack[sp - 1]++;
+				break;
+			case OpCodes.BR:
+				cursor = word >> OpCodes.OPCODE_BITS;
+				break;
+			case OpCodes.BRFALSE:
+				if (stack[--sp] == 0)
+					cursor = word >> OpCodes.OPCODE_BITS;
+				break;
+			case OpCodes.LDLOC:
+				stack[sp++] = locals[word >> OpCodes.OPCODE_BITS];
+				break;
+			case OpCodes.LDSTATIC:
+				stack[sp++] = statics_[word >> OpCodes.OPCODE_BITS];
+				break;
+			case OpCodes.STLOC:
+				locals[word >> OpCodes.OPCODE_BITS] = stack[--sp];
+				break;
+			case OpCodes.COPY:
+				stack[sp] = stack[sp - 1];
+				sp++;
+				break;
+			case OpCodes.POP:
+				sp--;
+				break;
+			case OpCodes.RET:
+				return stack[--sp];
+			case OpCodes.RETNULL:
+				return 0;
+			default:
+				throw new IllegalStateException(Integer.toString(word));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import runtime.RuntimeObject;
+import vm.ExecutionContext;
+import vm.VirtualMachine;
+import vm.jit.JitCompiler;
+
+/**
+ * Cost of the checkpoints on backward branches and calls, on the programs
+ * made of little else than loops and calls: with the checkpoints turned
+ * off, on but without a limit, and counting down a budget of fuel which is
+ * refilled a slice at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuelBenchmark {
+
+	@Param({"fib", "loops"})
+	private String program;
+
+	@Param({"stack", "jit"})
+	private String backend;
+
+	@Param({"off", "on", "budget"})
+	private String checkpoints;
+
+	private static final int STACK_SIZE = 4096;
+	private static final long SLICE = 10000;
+
+	private VirtualMachine vm_;
+
+	@Setup
+	public void setup() throws Exception {
+		vm_ = new VirtualMachine(STACK_SIZE);
+		vm_.load(Scripts.compile(Scripts.program(program)));
+		vm_.setCheckpoints(!checkpoints.equals("off"));
+		if (backend.equals("jit"))
+			vm_.setJit(new JitCompiler());
+	}
+
+	@Benchmark
+	public RuntimeObject run() throws Exception {
+		ExecutionContext context = vm_.newContext();
+		if (checkpoints.equals("budget")) {
+			context.setFuel(SLICE);
+			context.setFuelHandler(c -> SLICE);
+		}
+		return vm_.run(context);
+	}
+
+}
@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import runtime.RuntimeObject;
+import vm.TaggedVirtualMachine;
+import vm.VirtualMachine;
+
+/**
+ * A loop calling small helper functions, one of which calls another,
+ * compiled with and without inlining.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InlineBenchmark {
+
+	private static final String HELPERS =
+			"function sq(x) {\n" +
+			"	return x * x;\n" +
+			"}\n" +
+			"function norm(a, b) {\n" +
+			"	return sq(a) + sq(b);\n" +
+			"}\n" +
+			"function clamp(x, lo, hi) {\n" +
+			"	return x < lo ? lo : x > hi ? hi : x;\n" +
+			"}\n" +
+			"function main() {\n" +
+			"	let s = 0;\n" +
+			"	for (let i = 0; i < 300000; i++)\n" +
+			"		s = s + clamp(norm(i % 100, 3) % 1000, 10, 500);\n" +
+			"	return s;\n" +
+			"}\n";
+
+	@Param({"off", "on"})
+	private String inlining;
+
+	@Param({"stack", "tagged"})
+	private String backend;
+
+	private static final int STACK_SIZE = 4096;
+
+	private VirtualMachine stack_;
+	private TaggedVirtualMachine tagged_;
+
+	@Setup
+	public void setup() throws Exception {
+		boolean inline = inlining.equals("on");
+		if (backend.equals("stack")) {
+			stack_ = new VirtualMachine(STACK_SIZE);
+			stack_.load(Scripts.compile(HELPERS, inline));
+		} else {
+			tagged_ = new TaggedVirtualMachine(STACK_SIZE);
+			tagged_.load(Scripts.compile(HELPERS, inline));
+		}
+	}
+
+	@Benchmark
+	public RuntimeObject run() throws Exception {
+		return stack_ != null ? stack_.run() : tagged_.run();
+	}
+
+}
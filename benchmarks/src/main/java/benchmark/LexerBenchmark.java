@@ -0,0 +1,104 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lexer.Lexer;
+import lexer.Tag;
+import lexer.Token;
+import text.BufferedFileScanner;
+import text.FileScanner;
+import text.MappedFileScanner;
+import text.Scanner;
+
+/**
+ * Lexes a generated script of {@link #MEGABYTES} megabytes through each
+ * kind of scanner, into tokens or with the cursor of the lexer which
+ * allocates nothing per token. One operation is one megabyte, so the
+ * throughput reads as MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+	private static final int MEGABYTES = 4;
+
+	@Param({"buffered", "mapped", "file"})
+	private String scanner;
+
+	private File file_;
+
+	@Setup
+	public void setup() throws IOException {
+		int size = MEGABYTES * 1024 * 1024;
+		StringBuilder sb = new StringBuilder(size);
+		for (int i = 0; ; i++) {
+			String function = Scripts.function(i);
+			if (sb.length() + function.length() > size)
+				break;
+			sb.append(function);
+		}
+		// pad with blank lines up to the exact size
+		while (sb.length() < size)
+			sb.append('\n');
+		file_ = File.createTempFile("lexer", ".sheet");
+		Files.write(file_.toPath(),
+				sb.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@TearDown
+	public void tearDown() {
+		file_.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MEGABYTES)
+	public int lex() throws Exception {
+		Lexer lexer = new Lexer(open(file_.getPath()));
+		int tokens = 0;
+		for (Token token = lexer.advance(); !token.isEndOfSource();
+				token = lexer.advance())
+			tokens++;
+		return tokens;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MEGABYTES)
+	public int lexCursor() throws Exception {
+		Lexer lexer = new Lexer(open(file_.getPath()));
+		int tokens = 0;
+		while (lexer.advanceTag() != Tag.EOS)
+			tokens++;
+		return tokens;
+	}
+
+	private Scanner open(String path) throws IOException {
+		if (scanner.equals("mapped"))
+			return new MappedFileScanner(path);
+		if (scanner.equals("buffered"))
+			return new BufferedFileScanner(path);
+		return new FileScanner(path);
+	}
+
+}
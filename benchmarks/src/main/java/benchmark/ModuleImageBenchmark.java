@@ -0,0 +1,72 @@
+package benchmark;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import compiler.image.ModuleImage;
+import compiler.image.ModuleImageReader;
+import compiler.image.ModuleImageWriter;
+import runtime.ModuleInfo;
+
+/**
+ * Cold start against warm start: getting a generated module ready to run
+ * by compiling its source, or by loading its module image. The image is
+ * validated against the hash of the source either way, as the run command
+ * does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModuleImageBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	private int functions;
+
+	private String source_;
+	private File image_;
+
+	@Setup
+	public void setup() throws Exception {
+		source_ = Scripts.module(functions);
+		image_ = File.createTempFile("module", ModuleImage.EXTENSION);
+		new ModuleImageWriter(Scripts.compile(source_)).write(
+				image_.getPath(), hash());
+	}
+
+	@TearDown
+	public void tearDown() {
+		image_.delete();
+	}
+
+	@Benchmark
+	public ModuleInfo compile() throws Exception {
+		return Scripts.compile(source_);
+	}
+
+	@Benchmark
+	public ModuleInfo load() throws Exception {
+		return new ModuleImageReader(image_.getPath()).read(hash());
+	}
+
+	private byte[] hash() {
+		return ModuleImage.hash(source_.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,75 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import compiler.register.RegisterCompiler;
+import compiler.register.RegisterModule;
+import runtime.ModuleInfo;
+import runtime.RuntimeObject;
+import vm.RegisterVirtualMachine;
+import vm.VirtualMachine;
+import vm.jit.JitCompiler;
+
+/**
+ * Time to run each canonical program on each backend. The JIT keeps its
+ * virtual machine between runs, so that it measures the compiled code
+ * rather than the compilation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramBenchmark {
+
+	@Param({"fib", "loops", "arrays", "strings"})
+	private String program;
+
+	@Param({"stack", "register", "jit"})
+	private String backend;
+
+	private static final int STACK_SIZE = 4096;
+
+	private ModuleInfo module_;
+	private RegisterModule registerModule_;
+	private VirtualMachine jitMachine_;
+
+	@Setup
+	public void setup() throws Exception {
+		module_ = Scripts.compile(Scripts.program(program));
+		registerModule_ = new RegisterCompiler(module_).compile();
+		jitMachine_ = new VirtualMachine(STACK_SIZE);
+		jitMachine_.load(module_);
+		jitMachine_.setJit(new JitCompiler());
+	}
+
+	@Benchmark
+	public RuntimeObject run() throws Exception {
+		if (backend.equals("register")) {
+			RegisterVirtualMachine vm =
+					new RegisterVirtualMachine(STACK_SIZE);
+			vm.load(registerModule_);
+			return vm.run();
+		} else if (backend.equals("jit")) {
+			return jitMachine_.run();
+		} else {
+			VirtualMachine vm = new VirtualMachine(STACK_SIZE);
+			vm.load(module_);
+			return vm.run();
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import runtime.RuntimeObject;
+import vm.VirtualMachine;
+
+/**
+ * Runs the numeric programs on the interpreter with and without
+ * quickening. The machine is kept between runs, so the quickened code is
+ * measured rather than the quickening.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuickeningBenchmark {
+
+	@Param({"fib", "loops"})
+	private String program;
+
+	@Param({"off", "on"})
+	private String quickening;
+
+	private static final int STACK_SIZE = 4096;
+
+	private VirtualMachine vm_;
+
+	@Setup
+	public void setup() throws Exception {
+		vm_ = new VirtualMachine(STACK_SIZE);
+		vm_.load(Scripts.compile(Scripts.program(program)));
+		vm_.setQuickening(quickening.equals("on"));
+	}
+
+	@Benchmark
+	public RuntimeObject run() throws Exception {
+		return vm_.run();
+	}
+
+}
@@ -0,0 +1,102 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import ast.Module;
+import compiler.Compiler;
+import compiler.optimizer.ConstantFolder;
+import lexer.Lexer;
+import parser.Parser;
+import runtime.ModuleInfo;
+import text.StringScanner;
+
+/**
+ * Sources the benchmarks run: generated modules of any size, and the
+ * canonical programs in the resources.
+ */
+final class Scripts {
+
+	private Scripts() {
+		
+	}
+
+	private static final String FUNCTION =
+			"// generated function %d\n" +
+			"function f%d(a, b) {\n" +
+			"	let sum = 0;\n" +
+			"	for (let i = 0; i < a; i++)\n" +
+			"		sum = sum + i * b %% 7 - (i >> 2);\n" +
+			"	if (sum > 100)\n" +
+			"		return f%d(sum, b - 1);\n" +
+			"	return sum;\n" +
+			"}\n";
+
+	/**
+	 * @return Source of the i-th function of a generated module, which
+	 * calls the one before it.
+	 */
+	static String function(int i) {
+		return String.format(FUNCTION, i, i, Math.max(i - 1, 0));
+	}
+
+	/**
+	 * @return Source of a module of the given count of functions.
+	 */
+	static String module(int functions) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < functions; i++)
+			sb.append(function(i));
+		sb.append("function main() {\n	return f0(10, 3);\n}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @return Source of the canonical program of the given name, see
+	 * the programs directory of the resources.
+	 */
+	static String program(String name) throws IOException {
+		InputStream in = Scripts.class.getResourceAsStream(
+				"/programs/" + name + ".sheet");
+		if (in == null)
+			throw new IOException("no program " + name);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int n; (n = in.read(buffer)) > 0; )
+				out.write(buffer, 0, n);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+
+	static Module parse(String source) throws Exception {
+		return new Parser(new Lexer(new StringScanner(source))).parse();
+	}
+
+	/**
+	 * @return The source compiled the way the run command compiles it.
+	 */
+	static ModuleInfo compile(String source) throws Exception {
+		return compile(source, true);
+	}
+
+	/**
+	 * @return The source compiled the way the run command compiles it,
+	 * but with or without inlining.
+	 */
+	static ModuleInfo compile(String source, boolean inline)
+			throws Exception {
+		Module module = parse(source);
+		new ConstantFolder(module).fold();
+		Compiler compiler = new Compiler(module);
+		if (!inline)
+			compiler.setInliner(null);
+		compiler.compile();
+		return compiler.result();
+	}
+
+}
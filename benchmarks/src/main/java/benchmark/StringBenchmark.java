@@ -0,0 +1,58 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import vm.VirtualMachine;
+
+/**
+ * Builds a string of the given length by adding ten characters at a time
+ * to it, and puts its characters together at the end, so the time per
+ * character stays the same as the string grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringBenchmark {
+
+	private static final String BUILD =
+			"function main() {\n" +
+			"	let s = \"\";\n" +
+			"	for (let i = 0; i < %d; i++)\n" +
+			"		s += \"0123456789\";\n" +
+			"	return s;\n" +
+			"}\n";
+
+	@Param({"100000", "1000000", "10000000"})
+	private int length;
+
+	private static final int STACK_SIZE = 4096;
+
+	private VirtualMachine vm_;
+
+	@Setup
+	public void setup() throws Exception {
+		vm_ = new VirtualMachine(STACK_SIZE);
+		vm_.load(Scripts.compile(String.format(BUILD, length / 10)));
+	}
+
+	@Benchmark
+	public String build() throws Exception {
+		return vm_.run().toString();
+	}
+
+}
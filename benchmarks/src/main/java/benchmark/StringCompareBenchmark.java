@@ -0,0 +1,61 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import runtime.RuntimeObject;
+import vm.VirtualMachine;
+
+/**
+ * Matches and orders lines of a log against constants, the way a script
+ * filtering a log would: most of the lines differ from the constant they
+ * are tested for equality with, but not in length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringCompareBenchmark {
+
+	private static final String FILTER =
+			"function main() {\n" +
+			"	let matches = 0, before = 0;\n" +
+			"	for (let i = 0; i < 100000; i++) {\n" +
+			"		let line = \"GET /static/app.js 200 \" + (i % 90 + 10);\n" +
+			"		if (line == \"GET /static/app.js 200 42\")\n" +
+			"			matches++;\n" +
+			"		if (line != \"GET /static/app.js 200 17\")\n" +
+			"			if (line < \"GET /static/app.js 200 50\")\n" +
+			"				before++;\n" +
+			"	}\n" +
+			"	return matches * 1000 + before;\n" +
+			"}\n";
+
+	private static final int STACK_SIZE = 4096;
+
+	private VirtualMachine vm_;
+
+	@Setup
+	public void setup() throws Exception {
+		vm_ = new VirtualMachine(STACK_SIZE);
+		vm_.load(Scripts.compile(FILTER));
+	}
+
+	@Benchmark
+	public RuntimeObject filter() throws Exception {
+		return vm_.run();
+	}
+
+}
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import runtime.RuntimeArray;
 import runtime.RuntimeObject;
 import utils.CompileError;
@@ -46,4 +48,19 @@ public class ArrayLiteral extends Literal {
 		compiler.loadStatic(id);
 	}
 
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		for (int i = 0; i < elems_.size(); i++)
+			elems_.set(i, elems_.get(i).fold(folder));
+		return this;
+	}
+
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		ArrayList<Expression> elems = new ArrayList<Expression>();
+		for (Expression elem : elems_)
+			elems.add(inliner.copy(elem));
+		return new ArrayLiteral(elems);
+	}
+
 }
@@ -1,5 +1,7 @@
 package ast;
 
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import parser.symbol.Symbol;
 import compiler.ByteCodeCompiler;
 import compiler.OpCode;
@@ -36,6 +38,7 @@ public class Assignment extends Expression {
 		} else if (op_ == Tag.INIT_LET || op_ == Tag.INIT_CONST) {
 			// left_ must be an instance of SymbolReference
 			compileRight(compiler);
+			compiler.emit(OpCode.COPY);
 			SymbolReference symbRef = (SymbolReference) left_;
 			if (!symbRef.resolved())
 				symbRef.resolve(compiler);
@@ -157,5 +160,35 @@ public class Assignment extends Expression {
 	private void compileRight(ByteCodeCompiler compiler) throws CompileError {
 		right_.compile(compiler);
 	}
+
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		if (op_ != Tag.INIT_LET && op_ != Tag.INIT_CONST)
+			folder.checkStore(left_);
+		// the target itself stays as it is, only an index is evaluated
+		if (left_ instanceof Index)
+			left_ = left_.fold(folder);
+		right_ = right_.fold(folder);
+		if (op_ == Tag.INIT_CONST) {
+			SymbolReference symbRef = (SymbolReference) left_;
+			if (symbRef.resolved())
+				folder.defineConstant(symbRef.symbol(), right_);
+		}
+		return this;
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		if (left_ instanceof Index)
+			left_ = left_.inline(inliner);
+		right_ = right_.inline(inliner);
+		return this;
+	}
 	
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		return new Assignment(op_, inliner.copy(left_),
+				inliner.copy(right_));
+	}
+
 }
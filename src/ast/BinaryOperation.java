@@ -2,8 +2,12 @@ package ast;
 
 import compiler.ByteCodeCompiler;
 import compiler.OpCode;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import lexer.Tag;
+import runtime.RuntimeObject;
 import utils.CompileError;
+import utils.RuntimeError;
 
 public class BinaryOperation extends Expression {
 
@@ -76,4 +80,67 @@ public class BinaryOperation extends Expression {
 		}
 	}
 
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		left_ = left_.fold(folder);
+		right_ = right_.fold(folder);
+		RuntimeObject lhs = folder.valueOf(left_);
+		RuntimeObject rhs = folder.valueOf(right_);
+		if (lhs == null || rhs == null)
+			return this;
+		try {
+			Expression folded = folder.literal(evaluate(lhs, rhs));
+			return folded != null ? folded : this;
+		} catch (RuntimeError e) {
+			// keep the operation so that it fails at run time
+			return this;
+		}
+	}
+	
+	private RuntimeObject evaluate(RuntimeObject lhs, RuntimeObject rhs)
+			throws CompileError, RuntimeError {
+		switch (op_) {
+		case ADD:
+			return lhs.add(rhs);
+		case AND:
+		case BIT_AND:
+			return lhs.and(rhs);
+		case BIT_OR:
+		case OR:
+			return lhs.or(rhs);
+		case BIT_XOR:
+			return lhs.xor(rhs);
+		case DIV:
+			return lhs.divide(rhs);
+		case MOD:
+			return lhs.modulus(rhs);
+		case MUL:
+			return lhs.multiply(rhs);
+		case SAR:
+			return lhs.sar(rhs);
+		case SHL:
+			return lhs.shl(rhs);
+		case SHR:
+			return lhs.shr(rhs);
+		case SUB:
+			return lhs.subtract(rhs);
+		default:
+			throw new CompileError(
+					"(internal error) unknown binary operation");
+		}
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		left_ = left_.inline(inliner);
+		right_ = right_.inline(inliner);
+		return this;
+	}
+	
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		return new BinaryOperation(op_, inliner.copy(left_),
+				inliner.copy(right_));
+	}
+
 }
@@ -2,8 +2,13 @@ package ast;
 
 import compiler.ByteCodeCompiler;
 import compiler.OpCode;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import lexer.Tag;
+import runtime.RuntimeObject;
+import runtime.RuntimeObjectFactory;
 import utils.CompileError;
+import utils.RuntimeError;
 
 public class CompareOperation extends Expression {
 
@@ -55,4 +60,55 @@ public class CompareOperation extends Expression {
 		}
 	}
 
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		left_ = left_.fold(folder);
+		right_ = right_.fold(folder);
+		RuntimeObject lhs = folder.valueOf(left_);
+		RuntimeObject rhs = folder.valueOf(right_);
+		if (lhs == null || rhs == null)
+			return this;
+		try {
+			return folder.literal(
+					RuntimeObjectFactory.bool(evaluate(lhs, rhs)));
+		} catch (RuntimeError e) {
+			// keep the comparison so that it fails at run time
+			return this;
+		}
+	}
+	
+	private boolean evaluate(RuntimeObject lhs, RuntimeObject rhs)
+			throws CompileError, RuntimeError {
+		switch (op_) {
+		case EQ:
+			return lhs.equals(rhs);
+		case GT:
+			return lhs.greatThan(rhs);
+		case GTE:
+			return lhs.greatThanOrEqual(rhs);
+		case LT:
+			return lhs.lessThan(rhs);
+		case LTE:
+			return lhs.lessThanOrEqual(rhs);
+		case NE:
+			return !lhs.equals(rhs);
+		default:
+			throw new CompileError(
+					"(internal error) unknown compare operation");
+		}
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		left_ = left_.inline(inliner);
+		right_ = right_.inline(inliner);
+		return this;
+	}
+	
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		return new CompareOperation(op_, inliner.copy(left_),
+				inliner.copy(right_));
+	}
+
 }
@@ -2,6 +2,8 @@ package ast;
 
 import compiler.Blank;
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class Conditional extends Expression {
@@ -36,4 +38,42 @@ public class Conditional extends Expression {
 		jumpToEnd.fill(compiler.position());
 	}
 
+	/**
+	 * Returns from either branch, so calls in both are tail calls.
+	 */
+	@Override
+	public void compileReturn(ByteCodeCompiler compiler) throws CompileError {
+		cond_.compile(compiler);
+		Blank jumpToElse = compiler.branchFalse();
+		then_.compileReturn(compiler);
+		jumpToElse.fill(compiler.position());
+		else_.compileReturn(compiler);
+	}
+
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		cond_ = cond_.fold(folder);
+		then_ = then_.fold(folder);
+		else_ = else_.fold(folder);
+		Boolean truth = folder.truthOf(cond_);
+		if (truth == null)
+			return this;
+		folder.folded();
+		return truth ? then_ : else_;
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		cond_ = cond_.inline(inliner);
+		then_ = then_.inline(inliner);
+		else_ = else_.inline(inliner);
+		return this;
+	}
+	
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		return new Conditional(inliner.copy(cond_), inliner.copy(then_),
+				inliner.copy(else_));
+	}
+
 }
@@ -2,6 +2,8 @@ package ast;
 
 import compiler.Blank;
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class DoWhileStatement extends IterationStatement {
@@ -33,16 +35,32 @@ public class DoWhileStatement extends IterationStatement {
 		// body
 		body_.compile(compiler);
 		
-		// condition
-		cond_.compile(compiler);
-		
-		// if condition is true, jump to start
-		Blank jumpToStart = compiler.branchTrue();
+		// condition, if condition is true, jump to start
+		if (cond_.alwaysTrue()) {
+			compiler.branch(start);
+		} else {
+			cond_.compile(compiler);
+			Blank jumpToStart = compiler.branchTrue();
+			jumpToStart.fill(start);
+		}
 		
 		int end = compiler.position();
-		jumpToStart.fill(start);
 		super.fillBreak(end);
 		super.fillContinue(start);
 	}
 
+	@Override
+	public Statement fold(ConstantFolder folder) throws CompileError {
+		body_ = body_.fold(folder);
+		cond_ = cond_.fold(folder);
+		return this;
+	}
+
+	@Override
+	public Statement inline(Inliner inliner) throws CompileError {
+		body_ = body_.inline(inliner);
+		cond_ = cond_.inline(inliner);
+		return this;
+	}
+
 }
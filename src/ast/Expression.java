@@ -1,8 +1,54 @@
 package ast;
 
 import compiler.ByteCodeCompiler;
+import compiler.OpCode;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public abstract class Expression extends AstNode {
 	public abstract void compile(ByteCodeCompiler compiler) throws CompileError;
+	
+	/**
+	 * @return The expression with its parts known at compile time
+	 * evaluated, which may be a different node.
+	 */
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		return this;
+	}
+	
+	/**
+	 * @return The expression with the calls in it inlined, which may be a
+	 * different node.
+	 */
+	public Expression inline(Inliner inliner) throws CompileError {
+		return this;
+	}
+	
+	/**
+	 * @return A copy of the expression for the body of an inlined call,
+	 * whose parts are copied through {@link Inliner#copy(Expression)}.
+	 * @throws CompileError If the expression cannot be copied.
+	 */
+	public Expression copy(Inliner inliner) throws CompileError {
+		throw new CompileError(String.format("cannot copy %s",
+				getClass().getSimpleName()));
+	}
+	
+	/**
+	 * Compiles the expression as the value of a return statement, so that
+	 * a call whose value is returned becomes a tail call.
+	 */
+	public void compileReturn(ByteCodeCompiler compiler) throws CompileError {
+		compile(compiler);
+		compiler.emit(OpCode.RET);
+	}
+	
+	/**
+	 * @return Whether the expression is known to test true, so that a loop
+	 * on it needs no condition check.
+	 */
+	public boolean alwaysTrue() {
+		return false;
+	}
 }
@@ -6,6 +6,8 @@ import java.util.Iterator;
 
 import compiler.ByteCodeCompiler;
 import compiler.OpCode;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class ExpressionGroup extends Expression {
@@ -31,6 +33,11 @@ public class ExpressionGroup extends Expression {
 
 	@Override
 	public void compile(ByteCodeCompiler compiler) throws CompileError {
+		// an empty group (e.g. "let a;") still has to yield a value
+		if (exprs_.isEmpty()) {
+			compiler.emit(OpCode.LDNULL);
+			return;
+		}
 		Iterator<? extends Expression> it = exprs_.iterator();
 		while (it.hasNext()) {
 			it.next().compile(compiler);
@@ -38,5 +45,50 @@ public class ExpressionGroup extends Expression {
 				compiler.emit(OpCode.POP);
 		}
 	}
+
+	@Override
+	public void compileReturn(ByteCodeCompiler compiler) throws CompileError {
+		if (exprs_.isEmpty()) {
+			super.compileReturn(compiler);
+			return;
+		}
+		// only the value of the last expression is returned
+		Iterator<? extends Expression> it = exprs_.iterator();
+		while (it.hasNext()) {
+			Expression expr = it.next();
+			if (it.hasNext()) {
+				expr.compile(compiler);
+				compiler.emit(OpCode.POP);
+			} else {
+				expr.compileReturn(compiler);
+			}
+		}
+	}
+
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		ArrayList<Expression> exprs = new ArrayList<Expression>(exprs_.size());
+		for (Expression expr : exprs_)
+			exprs.add(expr.fold(folder));
+		exprs_ = exprs;
+		return this;
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		ArrayList<Expression> exprs = new ArrayList<Expression>(exprs_.size());
+		for (Expression expr : exprs_)
+			exprs.add(expr.inline(inliner));
+		exprs_ = exprs;
+		return this;
+	}
 	
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		ArrayList<Expression> exprs = new ArrayList<Expression>(exprs_.size());
+		for (Expression expr : exprs_)
+			exprs.add(inliner.copy(expr));
+		return new ExpressionGroup(exprs);
+	}
+
 }
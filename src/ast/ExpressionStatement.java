@@ -1,7 +1,11 @@
 package ast;
 
+import java.util.ArrayList;
+
 import compiler.ByteCodeCompiler;
 import compiler.OpCode;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class ExpressionStatement extends Statement {
@@ -25,4 +29,20 @@ public class ExpressionStatement extends Statement {
 		compiler.emit(OpCode.POP);
 	}
 
+	@Override
+	public Statement fold(ConstantFolder folder) throws CompileError {
+		expr_ = expr_.fold(folder);
+		if (folder.valueOf(expr_) == null)
+			return this;
+		// a value which is thrown away
+		folder.folded();
+		return new StatementBlock(new ArrayList<Statement>());
+	}
+
+	@Override
+	public Statement inline(Inliner inliner) throws CompileError {
+		expr_ = expr_.inline(inliner);
+		return this;
+	}
+
 }
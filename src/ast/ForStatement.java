@@ -3,6 +3,8 @@ package ast;
 import compiler.ByteCodeCompiler;
 import compiler.OpCode;
 import compiler.Blank;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class ForStatement extends IterationStatement {
@@ -45,11 +47,12 @@ public class ForStatement extends IterationStatement {
 		
 		int start = compiler.position();
 		
-		// condition
-		cond_.compile(compiler);
-		
-		// if condition is false, jump to end
-		Blank jumpToEnd = compiler.branchFalse();
+		// condition, if condition is false, jump to end
+		Blank jumpToEnd = null;
+		if (!cond_.alwaysTrue()) {
+			cond_.compile(compiler);
+			jumpToEnd = compiler.branchFalse();
+		}
 		
 		// body
 		body_.compile(compiler);
@@ -62,9 +65,33 @@ public class ForStatement extends IterationStatement {
 		compiler.branch(start);
 		
 		int end = compiler.position();
-		jumpToEnd.fill(end);
+		if (jumpToEnd != null)
+			jumpToEnd.fill(end);
 		super.fillContinue(start);
 		super.fillBreak(end);
 	}
 
+	@Override
+	public Statement fold(ConstantFolder folder) throws CompileError {
+		init_ = init_.fold(folder);
+		cond_ = cond_.fold(folder);
+		incr_ = incr_.fold(folder);
+		body_ = body_.fold(folder);
+		if (folder.truthOf(cond_) == Boolean.FALSE) {
+			// only the initialization is ever run
+			folder.folded();
+			return new ExpressionStatement(init_);
+		}
+		return this;
+	}
+
+	@Override
+	public Statement inline(Inliner inliner) throws CompileError {
+		init_ = init_.inline(inliner);
+		cond_ = cond_.inline(inliner);
+		incr_ = incr_.inline(inliner);
+		body_ = body_.inline(inliner);
+		return this;
+	}
+
 }
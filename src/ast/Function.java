@@ -4,6 +4,8 @@ import java.util.ArrayList;
 
 import compiler.ByteCodeCompiler;
 import compiler.Compiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import parser.scope.*;
 import parser.symbol.*;
 import runtime.FieldInfo;
@@ -17,12 +19,14 @@ public class Function extends AstNode {
 			FunctionScope scope,
 			StatementBlock stmts) {
 		symbol_ = symbol;
+		scope_ = scope;
 		arguments_ = scope.argumentSymbols();
 		locals_ = scope.localSymbols();
 		stmts_ = stmts;
 	}
 	
 	private FunctionSymbol symbol_;
+	private FunctionScope scope_;
 	private ArrayList<ArgumentSymbol> arguments_;
 	private ArrayList<Symbol> locals_;
 	private StatementBlock stmts_;
@@ -31,6 +35,40 @@ public class Function extends AstNode {
 		return symbol_.name();
 	}
 	
+	public int argumentCount() {
+		return arguments_.size();
+	}
+	
+	public ArgumentSymbol argument(int i) {
+		return arguments_.get(i);
+	}
+	
+	/**
+	 * @return Count of arguments and locals.
+	 */
+	public int variableCount() {
+		return arguments_.size() + locals_.size();
+	}
+	
+	/**
+	 * Adds a local no name refers to, see
+	 * {@link FunctionScope#defineTemporary(String)}.
+	 */
+	public VariableSymbol defineTemporary(String name) {
+		return scope_.defineTemporary(name);
+	}
+	
+	/**
+	 * @return The expression the function returns if its body is nothing
+	 * but that return statement, otherwise null.
+	 */
+	public Expression returnedExpression() {
+		ArrayList<Statement> stmts = stmts_.statements();
+		if (stmts.size() != 1 || !(stmts.get(0) instanceof ReturnStatement))
+			return null;
+		return ((ReturnStatement) stmts.get(0)).value();
+	}
+	
 	@Override
 	public void inspect(AstNodePrinter printer) {
 		printer.beginBlock();
@@ -90,7 +128,13 @@ public class Function extends AstNode {
 		}
 		return arguments;
 	}
-	
-	
+
+	public void fold(ConstantFolder folder) throws CompileError {
+		stmts_.fold(folder);
+	}
+
+	public void inline(Inliner inliner) throws CompileError {
+		stmts_.inline(inliner);
+	}
 
 }
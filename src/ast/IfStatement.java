@@ -1,7 +1,11 @@
 package ast;
 
+import java.util.ArrayList;
+
 import compiler.ByteCodeCompiler;
 import compiler.Blank;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class IfStatement extends Statement {
@@ -41,4 +45,30 @@ public class IfStatement extends Statement {
 		}
 	}
 
+	@Override
+	public Statement fold(ConstantFolder folder) throws CompileError {
+		cond_ = cond_.fold(folder);
+		then_ = then_.fold(folder);
+		if (else_ != null)
+			else_ = else_.fold(folder);
+		Boolean truth = folder.truthOf(cond_);
+		if (truth == null)
+			return this;
+		folder.folded();
+		if (truth)
+			return then_;
+		if (else_ != null)
+			return else_;
+		return new StatementBlock(new ArrayList<Statement>());
+	}
+
+	@Override
+	public Statement inline(Inliner inliner) throws CompileError {
+		cond_ = cond_.inline(inliner);
+		then_ = then_.inline(inliner);
+		if (else_ != null)
+			else_ = else_.inline(inliner);
+		return this;
+	}
+
 }
@@ -1,6 +1,8 @@
 package ast;
 
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class Index extends Expression {
@@ -36,5 +38,24 @@ public class Index extends Expression {
 		refinement_.compile(compiler);
 		compiler.loadElement();
 	}
+
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		value_ = value_.fold(folder);
+		refinement_ = refinement_.fold(folder);
+		return this;
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		value_ = value_.inline(inliner);
+		refinement_ = refinement_.inline(inliner);
+		return this;
+	}
 	
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		return new Index(inliner.copy(value_), inliner.copy(refinement_));
+	}
+
 }
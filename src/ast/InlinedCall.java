@@ -0,0 +1,89 @@
+package ast;
+
+import java.util.ArrayList;
+
+import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
+import parser.symbol.Symbol;
+import utils.CompileError;
+
+/**
+ * A call replaced by the expression the callee returns, see
+ * {@link Inliner}. The arguments are stored in locals of the caller, which
+ * the expression refers to in place of the arguments of the callee.
+ */
+public class InlinedCall extends Expression {
+
+	public InlinedCall(String name, ArrayList<Symbol> temporaries,
+			ArrayList<Expression> args, Expression body) {
+		name_ = name;
+		temporaries_ = temporaries;
+		args_ = args;
+		body_ = body;
+	}
+
+	private String name_;
+	private ArrayList<Symbol> temporaries_;
+	private ArrayList<Expression> args_;
+	private Expression body_;
+
+	@Override
+	public void inspect(AstNodePrinter printer) {
+		printer.beginBlock("inlined call");
+		printer.property("function", name_);
+		for (int i = 0; i < args_.size(); i++)
+			printer.child(temporaries_.get(i).name(), args_.get(i));
+		printer.child("body", body_);
+		printer.endBlock();
+	}
+
+	@Override
+	public void compile(ByteCodeCompiler compiler) throws CompileError {
+		compileArguments(compiler);
+		body_.compile(compiler);
+	}
+
+	@Override
+	public void compileReturn(ByteCodeCompiler compiler) throws CompileError {
+		compileArguments(compiler);
+		body_.compileReturn(compiler);
+	}
+
+	private void compileArguments(ByteCodeCompiler compiler)
+			throws CompileError {
+		// passed as they are, like the arguments of a call
+		for (int i = 0; i < args_.size(); i++) {
+			args_.get(i).compile(compiler);
+			compiler.storeLocal(temporaries_.get(i).id());
+		}
+	}
+
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		for (int i = 0; i < args_.size(); i++)
+			args_.set(i, args_.get(i).fold(folder));
+		body_ = body_.fold(folder);
+		return this;
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		for (int i = 0; i < args_.size(); i++)
+			args_.set(i, args_.get(i).inline(inliner));
+		return this;
+	}
+
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		ArrayList<Symbol> temporaries = new ArrayList<Symbol>();
+		ArrayList<Expression> args = new ArrayList<Expression>();
+		for (int i = 0; i < args_.size(); i++) {
+			args.add(inliner.copy(args_.get(i)));
+			temporaries.add(inliner.temporary(temporaries_.get(i)));
+		}
+		return new InlinedCall(name_, temporaries, args,
+				inliner.copy(body_));
+	}
+
+}
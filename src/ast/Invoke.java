@@ -1,5 +1,9 @@
 package ast;
 
+import java.util.Collection;
+
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import parser.symbol.Symbol;
 import compiler.ByteCodeCompiler;
 import utils.CompileError;
@@ -14,6 +18,14 @@ public class Invoke extends Expression {
 	private Expression func_;
 	private ExpressionGroup args_;
 	
+	public Expression function() {
+		return func_;
+	}
+	
+	public Collection<? extends Expression> arguments() {
+		return args_.expressions();
+	}
+	
 	@Override
 	public void inspect(AstNodePrinter printer) {
 		printer.beginBlock("function invoke");
@@ -24,6 +36,24 @@ public class Invoke extends Expression {
 
 	@Override
 	public void compile(ByteCodeCompiler compiler) throws CompileError {
+		compiler.call(compileArguments(compiler));
+	}
+
+	/**
+	 * Compiles the call as a tail call, which returns the value of the
+	 * callee without growing the stack.
+	 */
+	@Override
+	public void compileReturn(ByteCodeCompiler compiler) throws CompileError {
+		compiler.tailCall(compileArguments(compiler));
+	}
+
+	/**
+	 * Compiles the arguments of the call.
+	 * @return Index of the function called.
+	 */
+	private int compileArguments(ByteCodeCompiler compiler)
+			throws CompileError {
 		if (!(func_ instanceof SymbolReference))
 			throw new CompileError("callee expression must be a function");
 		SymbolReference ref = (SymbolReference) func_;
@@ -32,7 +62,35 @@ public class Invoke extends Expression {
 		Symbol symbol = ref.symbol();
 		if (!symbol.isFunction())
 			throw new CompileError("callee object must be a function");
-		compiler.call(symbol.id());
+		
+		// arguments are left on the stack and become the callee's frame
+		int expected = compiler.module().functions().get(symbol.id())
+				.argumentCount();
+		if (args_.expressions().size() != expected)
+			throw new CompileError(String.format(
+					"function \"%s\" expects %d argument(s) but got %d",
+					symbol.name(), expected, args_.expressions().size()));
+		for (Expression arg : args_.expressions())
+			arg.compile(compiler);
+		return symbol.id();
+	}
+
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		args_.fold(folder);
+		return this;
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		args_.inline(inliner);
+		return inliner.inline(this);
 	}
 	
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		return new Invoke(inliner.copy(func_),
+				(ExpressionGroup) inliner.copy(args_));
+	}
+
 }
@@ -2,8 +2,10 @@ package ast;
 
 import java.util.ArrayList;
 
+import compiler.optimizer.ConstantFolder;
 import parser.scope.*;
 import parser.symbol.*;
+import utils.CompileError;
 
 public class Module extends AstNode {
 
@@ -59,4 +61,10 @@ public class Module extends AstNode {
 		printer.endBlock();
 	}
 
+	public void fold(ConstantFolder folder) throws CompileError {
+		globalInits_.fold(folder);
+		for (Function func : functions_)
+			func.fold(folder);
+	}
+
 }
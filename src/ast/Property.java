@@ -1,6 +1,8 @@
 package ast;
 
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class Property extends Expression {
@@ -26,4 +28,16 @@ public class Property extends Expression {
 		throw new CompileError("unimplemented compile routine: Property");
 	}
 
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		expr_ = expr_.fold(folder);
+		return this;
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		expr_ = expr_.inline(inliner);
+		return this;
+	}
+
 }
@@ -2,6 +2,8 @@ package ast;
 
 import compiler.ByteCodeCompiler;
 import compiler.OpCode;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class ReturnStatement extends Statement {
@@ -12,6 +14,13 @@ public class ReturnStatement extends Statement {
 	
 	private Expression retValue_;
 	
+	/**
+	 * @return The returned expression, or null if none is.
+	 */
+	public Expression value() {
+		return retValue_;
+	}
+	
 	@Override
 	public void inspect(AstNodePrinter printer) {
 		if (retValue_ == null) {
@@ -28,9 +37,22 @@ public class ReturnStatement extends Statement {
 		if (retValue_ == null) {
 			compiler.emit(OpCode.RETNULL);
 		} else {
-			retValue_.compile(compiler);
-			compiler.emit(OpCode.RET);
+			retValue_.compileReturn(compiler);
 		}
 	}
 
+	@Override
+	public Statement fold(ConstantFolder folder) throws CompileError {
+		if (retValue_ != null)
+			retValue_ = retValue_.fold(folder);
+		return this;
+	}
+
+	@Override
+	public Statement inline(Inliner inliner) throws CompileError {
+		if (retValue_ != null)
+			retValue_ = retValue_.inline(inliner);
+		return this;
+	}
+
 }
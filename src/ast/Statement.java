@@ -1,8 +1,26 @@
 package ast;
 
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public abstract class Statement extends AstNode {
 	public abstract void compile(ByteCodeCompiler compiler) throws CompileError;
+	
+	/**
+	 * @return The statement with its parts known at compile time
+	 * evaluated, which may be a different node.
+	 */
+	public Statement fold(ConstantFolder folder) throws CompileError {
+		return this;
+	}
+	
+	/**
+	 * @return The statement with the calls in it inlined, which may be a
+	 * different node.
+	 */
+	public Statement inline(Inliner inliner) throws CompileError {
+		return this;
+	}
 }
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class StatementBlock extends Statement {
@@ -14,6 +16,10 @@ public class StatementBlock extends Statement {
 	
 	private ArrayList<Statement> stmts_;
 	
+	public ArrayList<Statement> statements() {
+		return stmts_;
+	}
+	
 	@Override
 	public void inspect(AstNodePrinter printer) {
 		printer.beginBlock("statement block");
@@ -31,4 +37,18 @@ public class StatementBlock extends Statement {
 		}
 	}
 
+	@Override
+	public Statement fold(ConstantFolder folder) throws CompileError {
+		for (int i = 0; i < stmts_.size(); i++)
+			stmts_.set(i, stmts_.get(i).fold(folder));
+		return this;
+	}
+
+	@Override
+	public Statement inline(Inliner inliner) throws CompileError {
+		for (int i = 0; i < stmts_.size(); i++)
+			stmts_.set(i, stmts_.get(i).inline(inliner));
+		return this;
+	}
+
 }
@@ -1,6 +1,8 @@
 package ast;
 
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import parser.symbol.Symbol;
 import utils.CompileError;
 
@@ -23,6 +25,13 @@ public class SymbolReference extends Literal {
 		return refSymbol_;
 	}
 	
+	/**
+	 * @return Name of the symbol referred to, resolved or not.
+	 */
+	public String name() {
+		return resolved() ? refSymbol_.name() : refName_;
+	}
+	
 	public boolean resolved() {
 		return refName_ == null;
 	}
@@ -44,7 +53,7 @@ public class SymbolReference extends Literal {
 			printer.endBlock();
 		} else {
 			printer.beginBlock("unresolved symbol reference");
-			printer.property("name", refSymbol_.name());
+			printer.property("name", refName_);
 			printer.endBlock();
 		}
 	}
@@ -57,7 +66,7 @@ public class SymbolReference extends Literal {
 		if (refSymbol_.isArgument())
 			compiler.loadArgument(refSymbol_.id());
 		else if (refSymbol_.isGlobal())
-			compiler.loadArgument(refSymbol_.id());
+			compiler.loadGlobal(refSymbol_.id());
 		else if (refSymbol_.isFunction())
 			throw new CompileError(String.format(
 					"cannot reference the function \"%s\" as a value",
@@ -66,4 +75,24 @@ public class SymbolReference extends Literal {
 			compiler.loadLocal(refSymbol_.id());
 	}
 
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		if (!resolved()) {
+			Symbol symbol = folder.lookup(refName_);
+			if (symbol == null)
+				return this;
+			refSymbol_ = symbol;
+			refName_ = null;
+		}
+		Expression value = folder.constant(refSymbol_);
+		return value != null ? value : this;
+	}
+
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		if (!resolved())
+			return new SymbolReference(refName_);
+		return new SymbolReference(inliner.rename(refSymbol_));
+	}
+
 }
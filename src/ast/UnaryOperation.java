@@ -2,9 +2,13 @@ package ast;
 
 import compiler.ByteCodeCompiler;
 import compiler.OpCode;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import lexer.Tag;
 import parser.symbol.Symbol;
+import runtime.RuntimeObject;
 import utils.CompileError;
+import utils.RuntimeError;
 
 public class UnaryOperation extends Expression {
 	
@@ -99,5 +103,46 @@ public class UnaryOperation extends Expression {
 		compiler.emit(opcode);
 		store(compiler);
 	}
+
+	@Override
+	public Expression fold(ConstantFolder folder) throws CompileError {
+		// the operand of an increment/decrement is stored to, so it has
+		// to stay a left value
+		switch (op_) {
+		case SUB:
+		case NOT:
+		case BIT_NOT:
+			break;
+		default:
+			folder.checkStore(operand_);
+			return this;
+		}
+		
+		operand_ = operand_.fold(folder);
+		RuntimeObject value = folder.valueOf(operand_);
+		if (value == null)
+			return this;
+		try {
+			Expression folded = folder.literal(
+					op_ == Tag.SUB ? value.negative() : value.not());
+			return folded != null ? folded : this;
+		} catch (RuntimeError e) {
+			// keep the operation so that it fails at run time
+			return this;
+		}
+	}
+
+	@Override
+	public Expression inline(Inliner inliner) throws CompileError {
+		// an increment/decrement keeps its left value, whose index may
+		// still have calls
+		operand_ = operand_.inline(inliner);
+		return this;
+	}
 	
+	@Override
+	public Expression copy(Inliner inliner) throws CompileError {
+		return new UnaryOperation(op_, inliner.copy(operand_));
+	}
+
 }
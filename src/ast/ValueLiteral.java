@@ -1,6 +1,7 @@
 package ast;
 
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.Inliner;
 import lexer.Tag;
 import runtime.*;
 import utils.CompileError;
@@ -19,33 +20,79 @@ public class ValueLiteral extends Literal {
 	public void inspect(AstNodePrinter printer) {
 		printer.beginBlock("value literal");
 		printer.property("type", type_.literal());
-		printer.property("literal", data_.toString());
+		printer.property("literal", String.valueOf(data_));
 		printer.endBlock();
 	}
 	
+	/**
+	 * @return A literal of the value, or null if the value has no literal
+	 * form the constant folder can use.
+	 */
+	public static ValueLiteral of(RuntimeObject value) {
+		if (value.isInteger())
+			return new ValueLiteral(Tag.INTEGER,
+					((RuntimeInteger) value).value());
+		if (value.isNumber())
+			return new ValueLiteral(Tag.NUMBER,
+					((RuntimeNumber) value).value());
+		if (value.isBoolean())
+			return new ValueLiteral(((RuntimeBoolean) value).value()
+					? Tag.TRUE_LITERAL : Tag.FALSE_LITERAL, null);
+		if (value.isNull())
+			return new ValueLiteral(Tag.NULL_LITERAL, null);
+		return null;
+	}
+	
+	/**
+	 * @return Value of the literal if operations on it can be evaluated at
+	 * compile time, otherwise null.
+	 */
+	public RuntimeObject constantValue() {
+		switch (type_) {
+		case INTEGER:
+			return RuntimeObjectFactory.integer((int) data_);
+		case NUMBER:
+			return RuntimeObjectFactory.number((double) data_);
+		case NULL_LITERAL:
+			return RuntimeObjectFactory.NULL;
+		case TRUE_LITERAL:
+			return RuntimeObjectFactory.TRUE;
+		case FALSE_LITERAL:
+			return RuntimeObjectFactory.FALSE;
+		default:
+			return null;
+		}
+	}
+	
+	@Override
+	public boolean alwaysTrue() {
+		RuntimeObject value = constantValue();
+		return value != null && value.isTruly();
+	}
+	
 	public RuntimeObject toRuntimeObject() throws CompileError {
 		RuntimeObject obj;
 		switch (type_) {
 		case CHAR_LITERAL:
-			obj = new RuntimeCharacter((char) data_);
+			obj = RuntimeObjectFactory.character((char) data_);
 			break;
 		case STRING_LITERAL:
-			obj = new RuntimeString((String) data_);
+			obj = RuntimeObjectFactory.string((String) data_);
 			break;
 		case INTEGER:
-			obj = new RuntimeInteger((int) data_);
+			obj = RuntimeObjectFactory.integer((int) data_);
 			break;
 		case NUMBER:
-			obj = new RuntimeNumber((double) data_);
+			obj = RuntimeObjectFactory.number((double) data_);
 			break;
 		case NULL_LITERAL:
-			obj = new RuntimeNull();
+			obj = RuntimeObjectFactory.NULL;
 			break;
 		case TRUE_LITERAL:
-			obj = new RuntimeBoolean(true);
+			obj = RuntimeObjectFactory.TRUE;
 			break;
 		case FALSE_LITERAL:
-			obj = new RuntimeBoolean(false);
+			obj = RuntimeObjectFactory.FALSE;
 			break;
 		default:
 			throw new CompileError("wrong literal tag type");
@@ -60,4 +107,9 @@ public class ValueLiteral extends Literal {
 		compiler.loadStatic(id);
 	}
 
+	@Override
+	public Expression copy(Inliner inliner) {
+		return this; // never changes
+	}
+
 }
@@ -1,7 +1,11 @@
 package ast;
 
+import java.util.ArrayList;
+
 import compiler.Blank;
 import compiler.ByteCodeCompiler;
+import compiler.optimizer.ConstantFolder;
+import compiler.optimizer.Inliner;
 import utils.CompileError;
 
 public class WhileStatement extends IterationStatement {
@@ -31,11 +35,12 @@ public class WhileStatement extends IterationStatement {
 	public void compile(ByteCodeCompiler compiler) throws CompileError {
 		int start = compiler.position();
 		
-		// condition
-		cond_.compile(compiler);
-		
-		// if condition is false, jump to end
-		Blank jumpToEnd = compiler.branchFalse();
+		// condition, if condition is false, jump to end
+		Blank jumpToEnd = null;
+		if (!cond_.alwaysTrue()) {
+			cond_.compile(compiler);
+			jumpToEnd = compiler.branchFalse();
+		}
 		
 		// body
 		body_.compile(compiler);
@@ -44,9 +49,28 @@ public class WhileStatement extends IterationStatement {
 		compiler.branch(start);
 		
 		int end = compiler.position();
-		jumpToEnd.fill(end);
+		if (jumpToEnd != null)
+			jumpToEnd.fill(end);
 		super.fillBreak(end);
 		super.fillContinue(start);
 	}
 
+	@Override
+	public Statement fold(ConstantFolder folder) throws CompileError {
+		cond_ = cond_.fold(folder);
+		body_ = body_.fold(folder);
+		if (folder.truthOf(cond_) == Boolean.FALSE) {
+			folder.folded();
+			return new StatementBlock(new ArrayList<Statement>());
+		}
+		return this;
+	}
+
+	@Override
+	public Statement inline(Inliner inliner) throws CompileError {
+		cond_ = cond_.inline(inliner);
+		body_ = body_.inline(inliner);
+		return this;
+	}
+
 }
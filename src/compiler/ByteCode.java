@@ -5,22 +5,69 @@ import java.util.Iterator;
 
 public class ByteCode {
 
-	public ByteCode(ArrayList<Instruction> codes) {
+	public ByteCode(ArrayList<Instruction> codes, int[] code,
+			int maxStackDepth) {
 		byteCodes_ = codes;
+		code_ = code;
+		maxStackDepth_ = maxStackDepth;
 	}
 	
-	private ArrayList<Instruction> byteCodes_;
+	/**
+	 * Code in its packed form only, e.g. read back from a module image.
+	 * The instructions are unpacked when they are first asked for.
+	 */
+	public ByteCode(int[] code, int maxStackDepth) {
+		this(null, code, maxStackDepth);
+	}
+	
+	// unpacked lazily, and published whole so that threads either see the
+	// complete list or unpack it themselves
+	private volatile ArrayList<Instruction> byteCodes_;
+	private final int[] code_;
+	private final int maxStackDepth_;
 	
 	public Iterator<Instruction> iterator() {
-		return byteCodes_.iterator();
+		return instructions().iterator();
 	}
 	
 	public Instruction fetch(int i) {
-		return byteCodes_.get(i);
+		return instructions().get(i);
 	}
 	
 	public int instructionCount() {
-		return byteCodes_.size();
+		return code_.length;
+	}
+	
+	private ArrayList<Instruction> instructions() {
+		ArrayList<Instruction> codes = byteCodes_;
+		if (codes == null) {
+			codes = new ArrayList<Instruction>(code_.length);
+			for (int word : code_)
+				codes.add(new Instruction(
+						OpCode.decode(OpCodes.opcode(word)),
+						OpCodes.operand(word)));
+			byteCodes_ = codes;
+		}
+		return codes;
+	}
+	
+	/**
+	 * Packed form of the instructions, one word per instruction, which is
+	 * what the virtual machine dispatches on. Use {@link OpCodes#opcode}
+	 * and {@link OpCodes#operand} to split a word. The code always ends
+	 * with a return, so it can be run without checking the cursor against
+	 * its length.
+	 */
+	public int[] code() {
+		return code_;
+	}
+	
+	/**
+	 * @return The deepest the evaluation stack can grow while this code
+	 * runs, so that a frame can be sized exactly.
+	 */
+	public int maxStackDepth() {
+		return maxStackDepth_;
 	}
 
 }
@@ -0,0 +1,101 @@
+package compiler;
+
+import java.util.ArrayList;
+
+import utils.CompileError;
+
+/**
+ * Turns a list of instructions into a {@link ByteCode}: packs them into
+ * code words and computes how deep the evaluation stack can grow.
+ */
+public class ByteCodeAssembler {
+
+	public ByteCodeAssembler(Compiler compiler) {
+		compiler_ = compiler;
+	}
+	
+	private Compiler compiler_;
+	
+	public ByteCode assemble(ArrayList<Instruction> codes)
+			throws CompileError {
+		return new ByteCode(codes, pack(codes), computeMaxStackDepth(codes));
+	}
+	
+	/**
+	 * Encodes the instructions into the word format of
+	 * {@link ByteCode#code()}.
+	 */
+	private int[] pack(ArrayList<Instruction> codes) throws CompileError {
+		int[] code = new int[codes.size()];
+		for (int i = 0; i < code.length; i++) {
+			Instruction ins = codes.get(i);
+			int operand = ins.operand();
+			if (operand < OpCodes.OPERAND_MIN
+					|| operand > OpCodes.OPERAND_MAX)
+				throw new CompileError(String.format(
+						"operand of %s exceeds the limit of the code format",
+						ins.toString()));
+			code[i] = OpCodes.pack(ins.opcode().code(), operand);
+		}
+		return code;
+	}
+	
+	/**
+	 * Walks every reachable path of the code and records the deepest
+	 * evaluation stack seen on the way.
+	 */
+	private int computeMaxStackDepth(ArrayList<Instruction> codes)
+			throws CompileError {
+		int count = codes.size();
+		int[] depths = new int[count + 1];
+		for (int i = 0; i <= count; i++)
+			depths[i] = -1;
+		
+		int[] worklist = new int[count + 1];
+		int pending = 0;
+		int max = 0;
+		depths[0] = 0;
+		worklist[pending++] = 0;
+		while (pending > 0) {
+			int cursor = worklist[--pending];
+			int depth = depths[cursor];
+			if (cursor == count)
+				continue;
+			
+			Instruction ins = codes.get(cursor);
+			OpCode opcode = ins.opcode();
+			int pops = opcode.pops();
+			if (pops == OpCode.VARIABLE)
+				pops = compiler_.argumentCount(ins.operand());
+			if (depth < pops)
+				throw new CompileError(String.format(
+						"(internal error) stack underflow at %d: %s",
+						cursor, ins.toString()));
+			depth = depth - pops + opcode.pushes();
+			if (depth > max)
+				max = depth;
+			
+			if (opcode.isBranch())
+				pending = follow(ins.operand(), depth, depths, worklist,
+						pending);
+			if (opcode.fallsThrough())
+				pending = follow(cursor + 1, depth, depths, worklist,
+						pending);
+		}
+		return max;
+	}
+	
+	private int follow(int target, int depth, int[] depths, int[] worklist,
+			int pending) throws CompileError {
+		if (target < 0 || target >= depths.length)
+			throw new CompileError(String.format(
+					"(internal error) branch target %d out of range",
+					target));
+		if (depths[target] == -1) {
+			depths[target] = depth;
+			worklist[pending++] = target;
+		}
+		return pending;
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 
 import ast.Module;
 import runtime.RuntimeObject;
+import utils.CompileError;
 
 public class ByteCodeCompiler {
 
@@ -19,8 +20,8 @@ public class ByteCodeCompiler {
 		return compiler_.module();
 	}
 
-	public ByteCode getByteCode() {
-		return new ByteCode(codes_);
+	public ByteCode getByteCode() throws CompileError {
+		return compiler_.assemble(codes_);
 	}
 	
 	public void emit(OpCode opcode) {
@@ -35,6 +36,13 @@ public class ByteCodeCompiler {
 		codes_.add(new Instruction(OpCode.CALL, index));
 	}
 	
+	/**
+	 * Calls a function and returns its value, see {@link OpCode#TAILCALL}.
+	 */
+	public void tailCall(int index) {
+		codes_.add(new Instruction(OpCode.TAILCALL, index));
+	}
+	
 	// branch
 	
 	public Blank branch() {
@@ -104,9 +112,24 @@ public class ByteCodeCompiler {
 	}
 
 	public void addEpilogueRet() {
+		if (codes_.isEmpty()) {
+			codes_.add(new Instruction(OpCode.RETNULL));
+			return;
+		}
 		Instruction last = codes_.get(codes_.size() - 1);
-		if (last.opcode() != OpCode.RET || last.opcode() != OpCode.RETNULL)
+		if (last.opcode().fallsThrough() || branchesToEnd())
 			codes_.add(new Instruction(OpCode.RETNULL));
 	}
+	
+	/**
+	 * @return Whether a branch goes past the last instruction, as the one
+	 * skipping the body of an if at the end of a function does.
+	 */
+	private boolean branchesToEnd() {
+		for (Instruction ins : codes_)
+			if (ins.opcode().isBranch() && ins.operand() == codes_.size())
+				return true;
+		return false;
+	}
 
 }
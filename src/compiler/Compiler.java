@@ -4,6 +4,8 @@ import java.util.ArrayList;
 
 import ast.Function;
 import ast.Module;
+import compiler.optimizer.Inliner;
+import compiler.optimizer.PeepholeOptimizer;
 import parser.symbol.Symbol;
 import runtime.FieldInfo;
 import runtime.FunctionInfo;
@@ -13,6 +15,13 @@ import utils.CompileError;
 
 public class Compiler {
 
+	/**
+	 * Version of the code this compiler generates; it has to change
+	 * whenever the same source would compile to different code, so that
+	 * cached modules of older versions are not used any more.
+	 */
+	public static final int VERSION = 5;
+
 	public Compiler(Module module) {
 		module_ = module;
 		success_ = false;
@@ -22,6 +31,8 @@ public class Compiler {
 		prologue_ = null;
 		functions_ = null;
 		entryPoint_ = null;
+		optimizer_ = PeepholeOptimizer.standard();
+		inliner_ = new Inliner(module);
 	}
 	
 	private Module module_;
@@ -32,12 +43,16 @@ public class Compiler {
 	private ByteCode prologue_;
 	private FunctionInfo[] functions_;
 	private FunctionInfo entryPoint_;
+	private PeepholeOptimizer optimizer_;
+	private Inliner inliner_;
 	
 	public Module module() {
 		return module_;
 	}
 	
 	public void compile() throws CompileError {
+		if (inliner_ != null)
+			inliner_.inline();
 		compileGlobals();
 		compilePrologue();
 		compileFunctions();
@@ -56,6 +71,7 @@ public class Compiler {
 	private void compilePrologue() throws CompileError {
 		ByteCodeCompiler compiler = getByteCodeCompiler();
 		module_.initialzations().compile(compiler);
+		compiler.addEpilogueRet();
 		prologue_ = compiler.getByteCode();
 	}
 	
@@ -79,7 +95,9 @@ public class Compiler {
 					globals_,
 					prologue_,
 					functions_,
-					entryPoint_);
+					entryPoint_,
+					inliner_ == null ? new String[0] :
+							inliner_.decisions());
 		return null;
 	}
 	
@@ -91,6 +109,39 @@ public class Compiler {
 		return staticPool_.add(object);
 	}
 	
+	/**
+	 * @return The optimizer run over all code before it is assembled, or
+	 * null if optimization is turned off.
+	 */
+	public PeepholeOptimizer optimizer() {
+		return optimizer_;
+	}
+	
+	public void setOptimizer(PeepholeOptimizer optimizer) {
+		optimizer_ = optimizer;
+	}
+	
+	/**
+	 * @return The pass inlining small functions before the module is
+	 * compiled, or null if inlining is turned off.
+	 */
+	public Inliner inliner() {
+		return inliner_;
+	}
 	
+	public void setInliner(Inliner inliner) {
+		inliner_ = inliner;
+	}
+	
+	public ByteCode assemble(ArrayList<Instruction> codes)
+			throws CompileError {
+		if (optimizer_ != null)
+			codes = optimizer_.optimize(codes);
+		return new ByteCodeAssembler(this).assemble(codes);
+	}
+	
+	public int argumentCount(int functionIndex) {
+		return module_.functions().get(functionIndex).argumentCount();
+	}
 
 }
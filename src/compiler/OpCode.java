@@ -1,65 +1,171 @@
 package compiler;
 
 public enum OpCode {
-	NOP,
+	NOP(OpCodes.NOP, 0, 0),
 	// Arithmetic
-	OR,
-	AND,
-	XOR,
-	SHL,
-	SHR,
-	SAR,
-	ADD,
-	SUB,
-	MUL,
-	DIV,
-	MOD,
-	EQ,
-	NE,
-	LT,
-	GT,
-	LTE,
-	GTE,
-	NOT,
-	BIT_NOT,
-	INC,
-	DEC,
-	NEG,
+	OR(OpCodes.OR, 2, 1),
+	AND(OpCodes.AND, 2, 1),
+	XOR(OpCodes.XOR, 2, 1),
+	SHL(OpCodes.SHL, 2, 1),
+	SHR(OpCodes.SHR, 2, 1),
+	SAR(OpCodes.SAR, 2, 1),
+	ADD(OpCodes.ADD, 2, 1),
+	SUB(OpCodes.SUB, 2, 1),
+	MUL(OpCodes.MUL, 2, 1),
+	DIV(OpCodes.DIV, 2, 1),
+	MOD(OpCodes.MOD, 2, 1),
+	EQ(OpCodes.EQ, 2, 1),
+	NE(OpCodes.NE, 2, 1),
+	LT(OpCodes.LT, 2, 1),
+	GT(OpCodes.GT, 2, 1),
+	LTE(OpCodes.LTE, 2, 1),
+	GTE(OpCodes.GTE, 2, 1),
+	NOT(OpCodes.NOT, 1, 1),
+	BIT_NOT(OpCodes.BIT_NOT, 1, 1),
+	INC(OpCodes.INC, 1, 1),
+	DEC(OpCodes.DEC, 1, 1),
+	NEG(OpCodes.NEG, 1, 1),
 	// Branch (with one operand)
-	BR(true),
-	BRTRUE(true),
-	BRFALSE(true),
+	BR(OpCodes.BR, true, 0, 0),
+	BRTRUE(OpCodes.BRTRUE, true, 1, 0),
+	BRFALSE(OpCodes.BRFALSE, true, 1, 0),
+	// Compare and branch (with one operand), fused by the optimizer from
+	// a comparison and a conditional branch. The ordered ones are the
+	// negation of the opposite comparison (BRGTE branches unless
+	// lhs < rhs), so they behave exactly like the pair they replace even
+	// for operands which are not ordered.
+	BREQ(OpCodes.BREQ, true, 2, 0),
+	BRNE(OpCodes.BRNE, true, 2, 0),
+	BRLT(OpCodes.BRLT, true, 2, 0),
+	BRGT(OpCodes.BRGT, true, 2, 0),
+	BRLTE(OpCodes.BRLTE, true, 2, 0),
+	BRGTE(OpCodes.BRGTE, true, 2, 0),
 	// Control flow
-	CALL(true),
-	RET,
-	RETNULL,
+	CALL(OpCodes.CALL, true, OpCode.VARIABLE, 1),
+	// A call whose value is returned right away: the callee runs in place
+	// of the caller and returns to the caller's caller. It counts as
+	// pushing the value, since backends which run it as a call followed by
+	// RET hold the value in the caller for a moment.
+	TAILCALL(OpCodes.TAILCALL, true, OpCode.VARIABLE, 1),
+	RET(OpCodes.RET, 1, 0),
+	RETNULL(OpCodes.RETNULL, 0, 0),
 	// Load
-	LDARG(true),
-	LDELEM,
-	LDGLOB(true),
-	LDLOC(true),
-	LDSTATIC(true),
-	LDNULL,
+	LDARG(OpCodes.LDARG, true, 0, 1),
+	LDELEM(OpCodes.LDELEM, 2, 1),
+	LDGLOB(OpCodes.LDGLOB, true, 0, 1),
+	LDLOC(OpCodes.LDLOC, true, 0, 1),
+	LDSTATIC(OpCodes.LDSTATIC, true, 0, 1),
+	LDNULL(OpCodes.LDNULL, 0, 1),
 	// Store
-	STARG(true),
-	STGLOB(true),
-	STLOC(true),
-	STELEM,
+	STARG(OpCodes.STARG, true, 1, 0),
+	STGLOB(OpCodes.STGLOB, true, 1, 0),
+	STLOC(OpCodes.STLOC, true, 1, 0),
+	STELEM(OpCodes.STELEM, 3, 0),
 	// Stack control
-	COPY,
-	POP;
-	
-	private OpCode() {
-		this(false);
+	COPY(OpCodes.COPY, 1, 2),
+	POP(OpCodes.POP, 1, 0),
+	// Counts the execution of the instruction of the operand. Never
+	// compiled, only found in the code the profiler instruments, see
+	// vm.Profiler.
+	PROFILE(OpCodes.PROFILE, true, 0, 0);
+
+	/**
+	 * Marks a stack effect that can only be known from the operand, e.g.
+	 * the number of arguments a CALL consumes.
+	 */
+	public static final int VARIABLE = -1;
+
+	private OpCode(int code, int pops, int pushes) {
+		this(code, false, pops, pushes);
 	}
-	
-	private OpCode(boolean hasOperand) {
+
+	private OpCode(int code, boolean hasOperand, int pops, int pushes) {
+		code_ = code;
 		hasOperand_ = hasOperand;
+		pops_ = pops;
+		pushes_ = pushes;
 	}
-	
+
+	private int code_;
 	private boolean hasOperand_;
+	private int pops_;
+	private int pushes_;
+
+	/**
+	 * @return Value of this opcode in a packed code word.
+	 */
+	public int code() {
+		return code_;
+	}
 
 	public boolean hasOperand() {
 		return hasOperand_;
 	}
+
+	/**
+	 * @return Whether the operand of this opcode is a code position.
+	 */
+	public boolean isBranch() {
+		switch (this) {
+		case BR:
+		case BRTRUE:
+		case BRFALSE:
+		case BREQ:
+		case BRNE:
+		case BRLT:
+		case BRGT:
+		case BRLTE:
+		case BRGTE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return Whether execution may continue with the next instruction.
+	 */
+	public boolean fallsThrough() {
+		switch (this) {
+		case BR:
+		case RET:
+		case RETNULL:
+		case TAILCALL:
+			return false;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * @return Count of values taken from the evaluation stack, or
+	 * {@link #VARIABLE}.
+	 */
+	public int pops() {
+		return pops_;
+	}
+
+	/**
+	 * @return Count of values left on the evaluation stack.
+	 */
+	public int pushes() {
+		return pushes_;
+	}
+
+	/**
+	 * @return The opcode whose {@link #code()} is the given value.
+	 */
+	public static OpCode decode(int code) {
+		return table_[code];
+	}
+
+	private static final OpCode[] table_ =
+			new OpCode[OpCodes.OPCODE_MASK + 1];
+
+	static {
+		for (OpCode opcode : values()) {
+			assert table_[opcode.code_] == null;
+			table_[opcode.code_] = opcode;
+		}
+	}
 }
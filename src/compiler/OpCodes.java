@@ -0,0 +1,118 @@
+package compiler;
+
+/**
+ * Numeric values of the opcodes as they appear in packed code words.
+ * A word keeps the opcode in its low {@link #OPCODE_BITS} bits and the
+ * signed operand in the remaining high bits, see {@link ByteCode#code()}.
+ */
+public final class OpCodes {
+
+	private OpCodes() {
+		
+	}
+	
+	public static final int OPCODE_BITS = 8;
+	public static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+	public static final int OPERAND_MIN = Integer.MIN_VALUE >> OPCODE_BITS;
+	public static final int OPERAND_MAX = Integer.MAX_VALUE >> OPCODE_BITS;
+	
+	public static int opcode(int word) {
+		return word & OPCODE_MASK;
+	}
+	
+	public static int operand(int word) {
+		return word >> OPCODE_BITS;
+	}
+	
+	public static int pack(int opcode, int operand) {
+		return (operand << OPCODE_BITS) | opcode;
+	}
+	
+	public static final int NOP = 0;
+	public static final int OR = 1;
+	public static final int AND = 2;
+	public static final int XOR = 3;
+	public static final int SHL = 4;
+	public static final int SHR = 5;
+	public static final int SAR = 6;
+	public static final int ADD = 7;
+	public static final int SUB = 8;
+	public static final int MUL = 9;
+	public static final int DIV = 10;
+	public static final int MOD = 11;
+	public static final int EQ = 12;
+	public static final int NE = 13;
+	public static final int LT = 14;
+	public static final int GT = 15;
+	public static final int LTE = 16;
+	public static final int GTE = 17;
+	public static final int NOT = 18;
+	public static final int BIT_NOT = 19;
+	public static final int INC = 20;
+	public static final int DEC = 21;
+	public static final int NEG = 22;
+	public static final int BR = 23;
+	public static final int BRTRUE = 24;
+	public static final int BRFALSE = 25;
+	public static final int CALL = 26;
+	public static final int RET = 27;
+	public static final int RETNULL = 28;
+	public static final int LDARG = 29;
+	public static final int LDELEM = 30;
+	public static final int LDGLOB = 31;
+	public static final int LDLOC = 32;
+	public static final int LDSTATIC = 33;
+	public static final int LDNULL = 34;
+	public static final int STARG = 35;
+	public static final int STGLOB = 36;
+	public static final int STLOC = 37;
+	public static final int STELEM = 38;
+	public static final int COPY = 39;
+	public static final int POP = 40;
+	public static final int BREQ = 41;
+	public static final int BRNE = 42;
+	public static final int BRLT = 43;
+	public static final int BRGT = 44;
+	public static final int BRLTE = 45;
+	public static final int BRGTE = 46;
+	public static final int PROFILE = 47;
+	
+	// Quickened opcodes: the interpreter rewrites an instruction into one
+	// of them once it has seen the types of its operands, _II for two
+	// integers, _DD for two numbers and _I for one integer. They are never
+	// compiled and have no OpCode, see vm.VirtualMachine.
+	public static final int ADD_II = 48;
+	public static final int SUB_II = 49;
+	public static final int MUL_II = 50;
+	public static final int MOD_II = 51;
+	public static final int ADD_DD = 52;
+	public static final int SUB_DD = 53;
+	public static final int MUL_DD = 54;
+	public static final int DIV_DD = 55;
+	public static final int INC_I = 56;
+	public static final int DEC_I = 57;
+	public static final int LT_II = 58;
+	public static final int GT_II = 59;
+	public static final int LTE_II = 60;
+	public static final int GTE_II = 61;
+	public static final int BREQ_II = 62;
+	public static final int BRNE_II = 63;
+	public static final int BRLT_II = 64;
+	public static final int BRGT_II = 65;
+	public static final int BRLTE_II = 66;
+	public static final int BRGTE_II = 67;
+	
+	public static final int TAILCALL = 68;
+	
+	// Superinstructions: the interpreter fuses a common sequence of
+	// instructions into one of them when it loads the code, see
+	// Superinstructions. Like the quickened ones they are never compiled
+	// and have no OpCode.
+	public static final int INCLOC = 69;
+	public static final int LDLOCLOC = 70;
+	public static final int SUBARGSTATIC = 71;
+	public static final int MODLOCSTATIC = 72;
+	public static final int BRGTELOCSTATIC = 73;
+	public static final int BRGTEARGSTATIC = 74;
+
+}
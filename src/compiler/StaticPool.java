@@ -5,23 +5,61 @@ import java.util.ArrayList;
 import parser.scope.IDAllocator;
 import runtime.RuntimeObject;
 
+/**
+ * The constants of a module. The compiler adds to a pool while it
+ * compiles; the module keeps a {@link #freeze() frozen} copy, which can
+ * be shared by any number of threads. The machines load a copy of an
+ * array constant every time, so the arrays of the pool are never written.
+ */
 public class StaticPool {
 
 	public StaticPool() {
 		idAllocator_ = new IDAllocator();
 		objects_ = new ArrayList<RuntimeObject>();
+		frozen_ = null;
 	}
 	
-	private IDAllocator idAllocator_;
-	private ArrayList<RuntimeObject> objects_;
+	private StaticPool(RuntimeObject[] frozen) {
+		idAllocator_ = null;
+		objects_ = null;
+		frozen_ = frozen;
+	}
+	
+	private final IDAllocator idAllocator_;
+	private final ArrayList<RuntimeObject> objects_;
+	private final RuntimeObject[] frozen_;
 	
 	public int add(RuntimeObject obj) {
+		if (frozen_ != null)
+			throw new IllegalStateException("static pool is frozen");
 		objects_.add(obj);
 		return idAllocator_.allocate();
 	}
 	
 	public RuntimeObject get(int index) {
+		if (frozen_ != null)
+			return frozen_[index];
 		return objects_.get(index);
 	}
+	
+	public int size() {
+		if (frozen_ != null)
+			return frozen_.length;
+		return objects_.size();
+	}
+	
+	public boolean isFrozen() {
+		return frozen_ != null;
+	}
+	
+	/**
+	 * @return A pool of the same constants to which nothing can be added.
+	 */
+	public StaticPool freeze() {
+		if (frozen_ != null)
+			return this;
+		return new StaticPool(objects_.toArray(
+				new RuntimeObject[objects_.size()]));
+	}
 
 }
@@ -0,0 +1,100 @@
+package compiler;
+
+/**
+ * Fuses common sequences of instructions into superinstructions, which
+ * the interpreter runs in one dispatch instead of one per instruction,
+ * see vm.VirtualMachine.
+ * <p>
+ * A superinstruction replaces the first word of its sequence only. The
+ * other words are left as they are: the superinstruction reads their
+ * operands and skips them, and a branch into the middle of the sequence
+ * still runs the instructions it finds there. So fusing never moves code
+ * and branch targets stay valid.
+ * <p>
+ * The sequences are the ones run most often by the programs of the
+ * benchmarks and the conformance scripts. The table is regenerated by
+ * running them with a profiler,
+ * <pre>
+ * sheet.Program train benchmarks/src/main/resources/programs \
+ *         test/conformance
+ * </pre>
+ * and taking the sequences which gain most from being fused.
+ */
+public final class Superinstructions {
+
+	private Superinstructions() {
+
+	}
+
+	private static final class Entry {
+
+		Entry(int fused, boolean sameOperand, int... sequence) {
+			fused_ = fused;
+			sameOperand_ = sameOperand;
+			sequence_ = sequence;
+		}
+
+		final int fused_;
+		// whether the first and the last instruction share their operand
+		final boolean sameOperand_;
+		final int[] sequence_;
+
+	}
+
+	// Tried in this order, the longer sequences first. The counts are the
+	// times the sequence ran in the training run.
+	private static final Entry[] TABLE = {
+		// LDLOC LDSTATIC BRGTE     206439
+		new Entry(OpCodes.BRGTELOCSTATIC, false,
+				OpCodes.LDLOC, OpCodes.LDSTATIC, OpCodes.BRGTE),
+		// LDLOC INC STLOC          198435
+		new Entry(OpCodes.INCLOC, true,
+				OpCodes.LDLOC, OpCodes.INC, OpCodes.STLOC),
+		// LDARG LDSTATIC SUB       172946
+		new Entry(OpCodes.SUBARGSTATIC, false,
+				OpCodes.LDARG, OpCodes.LDSTATIC, OpCodes.SUB),
+		// LDARG LDSTATIC BRGTE     171946
+		new Entry(OpCodes.BRGTEARGSTATIC, false,
+				OpCodes.LDARG, OpCodes.LDSTATIC, OpCodes.BRGTE),
+		// LDLOC LDSTATIC MOD       112100
+		new Entry(OpCodes.MODLOCSTATIC, false,
+				OpCodes.LDLOC, OpCodes.LDSTATIC, OpCodes.MOD),
+		// LDLOC LDLOC              313673
+		new Entry(OpCodes.LDLOCLOC, false,
+				OpCodes.LDLOC, OpCodes.LDLOC),
+	};
+
+	/**
+	 * Fuses the sequences of the table found in the code, in place. A
+	 * word belongs to one sequence at most.
+	 * @return Count of superinstructions.
+	 */
+	public static int fuse(int[] code) {
+		boolean[] fused = new boolean[code.length];
+		int count = 0;
+		for (Entry entry : TABLE) {
+			for (int i = 0; i + entry.sequence_.length <= code.length; i++) {
+				if (matches(code, fused, i, entry)) {
+					code[i] = (code[i] & ~OpCodes.OPCODE_MASK) |
+							entry.fused_;
+					for (int j = 0; j < entry.sequence_.length; j++)
+						fused[i + j] = true;
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static boolean matches(int[] code, boolean[] fused, int at,
+			Entry entry) {
+		int[] sequence = entry.sequence_;
+		for (int j = 0; j < sequence.length; j++)
+			if (fused[at + j] ||
+					OpCodes.opcode(code[at + j]) != sequence[j])
+				return false;
+		return !entry.sameOperand_ || OpCodes.operand(code[at]) ==
+				OpCodes.operand(code[at + sequence.length - 1]);
+	}
+
+}
@@ -0,0 +1,50 @@
+package compiler.image;
+
+import java.nio.ByteBuffer;
+
+import compiler.ByteCode;
+import runtime.FieldInfo;
+import runtime.FunctionInfo;
+
+/**
+ * A function of a module image whose code stays in the mapped image until
+ * it is first asked for, so that loading costs nothing for the functions
+ * a run never calls.
+ */
+class MappedFunctionInfo extends FunctionInfo {
+
+	MappedFunctionInfo(int id, String name, FieldInfo[] arguments,
+			FieldInfo[] locals, int maxStackDepth, ByteBuffer code) {
+		super(id, name, arguments, locals, null);
+		maxStackDepth_ = maxStackDepth;
+		code_ = code;
+		byteCode_ = null;
+	}
+
+	private final int maxStackDepth_;
+	private final ByteBuffer code_;
+	private volatile ByteCode byteCode_;
+
+	@Override
+	public int maxStackDepth() {
+		return maxStackDepth_;
+	}
+
+	/**
+	 * The code was checked when the image was loaded, see
+	 * ModuleImageReader, so decoding it cannot fail.
+	 */
+	@Override
+	public ByteCode byteCode() {
+		ByteCode byteCode = byteCode_;
+		if (byteCode == null) {
+			// decoding twice from two threads is harmless
+			int[] words = new int[code_.limit() / 4];
+			code_.duplicate().asIntBuffer().get(words);
+			byteCode = new ByteCode(words, maxStackDepth_);
+			byteCode_ = byteCode;
+		}
+		return byteCode;
+	}
+
+}
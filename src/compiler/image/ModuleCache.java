@@ -0,0 +1,191 @@
+package compiler.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import compiler.Compiler;
+import runtime.ModuleInfo;
+
+/**
+ * A directory of module images shared by every process which compiles
+ * scripts, so that a script is compiled once and not on every start.
+ * <p>
+ * An image is found by the hash of its source together with the versions
+ * of the compiler and of the image format. Images are written to a
+ * temporary file and renamed into place, so processes sharing the
+ * directory never see a partial one. The directory is kept below a size
+ * by deleting the least recently used images, by modification time, which
+ * a hit refreshes.
+ * <p>
+ * The directory and its size default to the system properties
+ * {@code sheet.cache.dir} and {@code sheet.cache.size}, see
+ * {@link #standard()}.
+ */
+public class ModuleCache {
+
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	public ModuleCache(String directory, long maxBytes) {
+		directory_ = Paths.get(directory);
+		maxBytes_ = maxBytes;
+		hits_ = new AtomicLong();
+		misses_ = new AtomicLong();
+		evictions_ = new AtomicLong();
+	}
+
+	private final Path directory_;
+	private final long maxBytes_;
+	private final AtomicLong hits_;
+	private final AtomicLong misses_;
+	private final AtomicLong evictions_;
+
+	/**
+	 * @return The cache in {@code sheet.cache.dir}, by default .sheet/cache
+	 * in the home directory, of at most {@code sheet.cache.size} bytes.
+	 */
+	public static ModuleCache standard() {
+		String directory = System.getProperty("sheet.cache.dir",
+				System.getProperty("user.home") + File.separator + ".sheet" +
+				File.separator + "cache");
+		long maxBytes = Long.getLong("sheet.cache.size", DEFAULT_MAX_BYTES);
+		return new ModuleCache(directory, maxBytes);
+	}
+
+	/**
+	 * @return The key of a source: SHA-256 of the source and of the
+	 * versions of the compiler and of the image format.
+	 */
+	public static byte[] key(byte[] source) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(source);
+			digest.update(ByteBuffer.allocate(8)
+					.putInt(Compiler.VERSION)
+					.putInt(ModuleImage.VERSION)
+					.array());
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-256
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @return The module cached under the key, or null on a miss. An
+	 * image which cannot be read counts as a miss and is deleted.
+	 */
+	public ModuleInfo get(byte[] key) {
+		Path path = pathOf(key);
+		try {
+			ModuleInfo module = new ModuleImageReader(path.toString())
+					.read(key);
+			if (module != null) {
+				hits_.incrementAndGet();
+				touch(path);
+				return module;
+			}
+		} catch (NoSuchFileException e) {
+			// a plain miss
+		} catch (IOException e) {
+			delete(path);
+		}
+		misses_.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Caches a module under the key, then evicts the least recently used
+	 * images until the cache fits its size.
+	 */
+	public void put(byte[] key, ModuleInfo module) throws IOException {
+		Files.createDirectories(directory_);
+		new ModuleImageWriter(module).write(pathOf(key).toString(), key);
+		evict();
+	}
+
+	private void evict() throws IOException {
+		File[] files = directory_.toFile().listFiles(
+				(dir, name) -> name.endsWith(ModuleImage.EXTENSION));
+		if (files == null)
+			return;
+		long[] times = new long[files.length];
+		long total = 0;
+		for (File file : files)
+			total += file.length();
+		if (total <= maxBytes_)
+			return;
+		// sort by the time read once, as a hit can touch files meanwhile
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			times[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingLong(i -> times[i]));
+		for (int i = 0; i < order.length && total > maxBytes_; i++) {
+			File file = files[order[i]];
+			long length = file.length();
+			if (file.delete()) {
+				total -= length;
+				evictions_.incrementAndGet();
+			}
+		}
+	}
+
+	private Path pathOf(byte[] key) {
+		StringBuilder sb = new StringBuilder(key.length * 2 + 4);
+		for (byte b : key)
+			sb.append(String.format("%02x", b));
+		sb.append(ModuleImage.EXTENSION);
+		return directory_.resolve(sb.toString());
+	}
+
+	private static void touch(Path path) {
+		try {
+			Files.setLastModifiedTime(path,
+					FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// another process may have evicted it; it was read already
+		}
+	}
+
+	private static void delete(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			// left for the eviction
+		}
+	}
+
+	public String directory() {
+		return directory_.toString();
+	}
+
+	public long hits() {
+		return hits_.get();
+	}
+
+	public long misses() {
+		return misses_.get();
+	}
+
+	public long evictions() {
+		return evictions_.get();
+	}
+
+	public String report() {
+		return String.format("cache %s: %d hits, %d misses, %d evictions\n",
+				directory_, hits(), misses(), evictions());
+	}
+
+}
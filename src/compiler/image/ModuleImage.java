@@ -0,0 +1,91 @@
+package compiler.image;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Layout of a module image, a compiled module saved to a ".shc" file so
+ * that it can be run again without lexing, parsing and compiling its
+ * source. All numbers are big endian, strings are a u4 byte count
+ * followed by UTF-8.
+ * <pre>
+ * u4 magic, u4 version, u4 compiler version, u1[32] SHA-256 of the source
+ * u4 CRC-32 of the static pool
+ * u4 count, value[count]              static pool
+ * u4 count, field[count]              globals
+ * u4 max stack, u4 count, u4[count]   prologue
+ * u4 entry point index or -1
+ * u4 count, {u4 offset, u4 CRC-32}[count]
+ *                                     offsets of the functions
+ * function*
+ * </pre>
+ * A function is its id and name, its arguments and locals, its max stack
+ * depth and its packed code words. The offsets let the reader decode
+ * each function on its own, when it is first called. A function runs
+ * from its offset to the next one, or to the end of the image, and its
+ * CRC-32 is over all of these bytes. The reader checks the checksums
+ * when it loads the image, so a damaged image is never run.
+ */
+public final class ModuleImage {
+
+	private ModuleImage() {
+
+	}
+
+	public static final String EXTENSION = ".shc";
+
+	public static final int MAGIC = 0x5348431a; // "SHC\032"
+
+	/**
+	 * Version of the layout and of the code format; images of any other
+	 * version, or made by another version of the compiler, see
+	 * compiler.Compiler#VERSION, are ignored.
+	 */
+	public static final int VERSION = 3;
+
+	public static final int HASH_LENGTH = 32;
+
+	// Tags of the values of the static pool
+	static final int NULL = 0;
+	static final int FALSE = 1;
+	static final int TRUE = 2;
+	static final int INTEGER = 3;
+	static final int NUMBER = 4;
+	static final int CHARACTER = 5;
+	static final int STRING = 6;
+	static final int ARRAY = 7;
+
+	/**
+	 * @return Path of the image of a source file: the source path with its
+	 * extension replaced by {@link #EXTENSION}.
+	 */
+	public static String pathFor(String source) {
+		int dot = source.lastIndexOf('.');
+		int separator = Math.max(source.lastIndexOf('/'),
+				source.lastIndexOf('\\'));
+		if (dot > separator)
+			source = source.substring(0, dot);
+		return source + EXTENSION;
+	}
+
+	/**
+	 * @return SHA-256 of the source, which an image has to match to be
+	 * used in place of compiling the source.
+	 */
+	public static byte[] hash(byte[] source) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(source);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-256
+			throw new AssertionError(e);
+		}
+	}
+
+	public static byte[] hashFile(String source) throws IOException {
+		return hash(Files.readAllBytes(Paths.get(source)));
+	}
+
+}
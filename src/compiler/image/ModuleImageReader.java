@@ -0,0 +1,241 @@
+package compiler.image;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import compiler.ByteCode;
+import compiler.Compiler;
+import compiler.OpCode;
+import compiler.OpCodes;
+import compiler.StaticPool;
+import runtime.FieldInfo;
+import runtime.FunctionInfo;
+import runtime.ModuleInfo;
+import runtime.RuntimeArray;
+import runtime.RuntimeObject;
+import runtime.RuntimeObjectFactory;
+
+/**
+ * Loads a {@link ModuleImage}. The file is mapped into memory; the static
+ * pool, the globals and the prologue are decoded up front, the code of a
+ * function only when the function is first called. The checksums of the
+ * static pool and of every function are checked up front too, so a
+ * damaged image fails to load rather than in the middle of a run.
+ */
+public class ModuleImageReader {
+
+	public ModuleImageReader(String path) {
+		path_ = path;
+	}
+
+	private String path_;
+
+	/**
+	 * @return The module of the image, or null if the image was compiled
+	 * from another source than the one with the given hash or by another
+	 * version of the compiler.
+	 * @throws IOException If the image cannot be read or is corrupt, which
+	 * includes a checksum which does not match.
+	 */
+	public ModuleInfo read(byte[] sourceHash) throws IOException {
+		ByteBuffer image;
+		try (RandomAccessFile file = new RandomAccessFile(path_, "r");
+				FileChannel channel = file.getChannel()) {
+			// the mapping stays valid after the channel is closed
+			image = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		}
+		return read(image, sourceHash);
+	}
+
+	/**
+	 * Decodes an image held in a buffer, e.g. one made by
+	 * {@link ModuleImageWriter#toByteArray}.
+	 */
+	public static ModuleInfo read(ByteBuffer image, byte[] sourceHash)
+			throws IOException {
+		try {
+			return readModule(image, sourceHash);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("corrupt module image: " +
+					e.getMessage());
+		}
+	}
+
+	private static ModuleInfo readModule(ByteBuffer image,
+			byte[] sourceHash) throws IOException {
+		if (image.remaining() < 12 + ModuleImage.HASH_LENGTH ||
+				image.getInt() != ModuleImage.MAGIC)
+			throw new IOException("not a module image");
+		if (image.getInt() != ModuleImage.VERSION ||
+				image.getInt() != Compiler.VERSION)
+			return null;
+		byte[] hash = new byte[ModuleImage.HASH_LENGTH];
+		image.get(hash);
+		if (!Arrays.equals(hash, sourceHash))
+			return null;
+
+		int poolChecksum = image.getInt();
+		int poolStart = image.position();
+		StaticPool pool = new StaticPool();
+		int statics = count(image);
+		for (int i = 0; i < statics; i++)
+			pool.add(readValue(image));
+		verify(image, poolStart, image.position(), poolChecksum,
+				"static pool");
+
+		FieldInfo[] globals = readFields(image);
+		ByteCode prologue = readCode(image);
+		int entry = image.getInt();
+
+		FunctionInfo[] functions = new FunctionInfo[count(image)];
+		int[] offsets = new int[functions.length];
+		int[] checksums = new int[functions.length];
+		for (int i = 0; i < functions.length; i++) {
+			offsets[i] = image.getInt();
+			checksums[i] = image.getInt();
+		}
+		for (int i = 0; i < functions.length; i++) {
+			int end = i + 1 < functions.length ? offsets[i + 1] :
+					image.limit();
+			verify(image, offsets[i], end, checksums[i], "function " + i);
+			image.position(offsets[i]);
+			functions[i] = readFunction(image);
+		}
+		if (entry < -1 || entry >= functions.length)
+			throw new IllegalArgumentException("entry point " + entry);
+		return new ModuleInfo(pool, globals, prologue, functions,
+				entry == -1 ? null : functions[entry]);
+	}
+
+	/**
+	 * @throws IOException If the CRC-32 of the bytes of the image from the
+	 * start to the end is not the checksum.
+	 */
+	private static void verify(ByteBuffer image, int start, int end,
+			int checksum, String what) throws IOException {
+		if (start < 0 || end < start || end > image.limit())
+			throw new IllegalArgumentException("bad offset of " + what);
+		ByteBuffer bytes = image.duplicate();
+		bytes.limit(end);
+		bytes.position(start);
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		if ((int) crc.getValue() != checksum)
+			throw new IOException("corrupt module image: checksum of " +
+					what + " does not match");
+	}
+
+	/**
+	 * Reads the header of a function and checks its code, which is left
+	 * in the image.
+	 */
+	private static FunctionInfo readFunction(ByteBuffer image) {
+		int id = image.getInt();
+		String name = readString(image);
+		FieldInfo[] arguments = readFields(image);
+		FieldInfo[] locals = readFields(image);
+		int maxStackDepth = image.getInt();
+		int words = count(image);
+		if (words > image.remaining() / 4)
+			throw new BufferUnderflowException();
+		ByteBuffer code = image.slice();
+		code.limit(words * 4);
+		for (int i = 0; i < words; i++)
+			checkOpcode(code.getInt(i * 4));
+		return new MappedFunctionInfo(id, name, arguments, locals,
+				maxStackDepth, code);
+	}
+
+	private static ByteCode readCode(ByteBuffer image) {
+		int maxStackDepth = image.getInt();
+		int words = count(image);
+		if (words > image.remaining() / 4)
+			throw new BufferUnderflowException();
+		int[] code = new int[words];
+		image.asIntBuffer().get(code);
+		image.position(image.position() + words * 4);
+		return decode(code, maxStackDepth);
+	}
+
+	/**
+	 * @throws IllegalArgumentException If a code word does not hold a
+	 * known opcode.
+	 */
+	private static ByteCode decode(int[] code, int maxStackDepth) {
+		for (int word : code)
+			checkOpcode(word);
+		return new ByteCode(code, maxStackDepth);
+	}
+
+	private static void checkOpcode(int word) {
+		// PROFILE is only found in code the profiler instruments
+		if (OpCode.decode(OpCodes.opcode(word)) == null ||
+				OpCodes.opcode(word) == OpCodes.PROFILE)
+			throw new IllegalArgumentException("unknown opcode " +
+					OpCodes.opcode(word));
+	}
+
+	private static FieldInfo[] readFields(ByteBuffer image) {
+		FieldInfo[] fields = new FieldInfo[count(image)];
+		for (int i = 0; i < fields.length; i++) {
+			int id = image.getInt();
+			fields[i] = new FieldInfo(id, readString(image));
+		}
+		return fields;
+	}
+
+	private static RuntimeObject readValue(ByteBuffer image) {
+		int tag = image.get();
+		switch (tag) {
+		case ModuleImage.NULL:
+			return RuntimeObjectFactory.NULL;
+		case ModuleImage.FALSE:
+			return RuntimeObjectFactory.FALSE;
+		case ModuleImage.TRUE:
+			return RuntimeObjectFactory.TRUE;
+		case ModuleImage.INTEGER:
+			return RuntimeObjectFactory.integer(image.getInt());
+		case ModuleImage.NUMBER:
+			return RuntimeObjectFactory.number(image.getDouble());
+		case ModuleImage.CHARACTER:
+			return RuntimeObjectFactory.character(image.getChar());
+		case ModuleImage.STRING:
+			return RuntimeObjectFactory.string(readString(image));
+		case ModuleImage.ARRAY:
+			int size = count(image);
+			ArrayList<RuntimeObject> elems =
+					new ArrayList<RuntimeObject>(size);
+			for (int i = 0; i < size; i++)
+				elems.add(readValue(image));
+			return new RuntimeArray(elems);
+		default:
+			throw new IllegalArgumentException("unknown value tag " + tag);
+		}
+	}
+
+	private static String readString(ByteBuffer image) {
+		byte[] bytes = new byte[count(image)];
+		image.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a count, which cannot exceed the bytes left in the image, so
+	 * that a corrupt one fails before anything is allocated for it.
+	 */
+	private static int count(ByteBuffer image) {
+		int count = image.getInt();
+		if (count < 0 || count > image.remaining())
+			throw new IllegalArgumentException("bad count " + count);
+		return count;
+	}
+
+}
@@ -0,0 +1,211 @@
+package compiler.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+import compiler.ByteCode;
+import compiler.Compiler;
+import compiler.StaticPool;
+import runtime.FieldInfo;
+import runtime.FunctionInfo;
+import runtime.ModuleInfo;
+import runtime.RuntimeArray;
+import runtime.RuntimeBoolean;
+import runtime.RuntimeCharacter;
+import runtime.RuntimeInteger;
+import runtime.RuntimeNumber;
+import runtime.RuntimeObject;
+import runtime.RuntimeString;
+
+/**
+ * Saves a compiled module as a {@link ModuleImage}.
+ */
+public class ModuleImageWriter {
+
+	public ModuleImageWriter(ModuleInfo module) {
+		module_ = module;
+	}
+
+	private ModuleInfo module_;
+
+	/**
+	 * @return The image of the module compiled from a source with the
+	 * given hash.
+	 */
+	public byte[] toByteArray(byte[] sourceHash) throws IOException {
+		if (sourceHash.length != ModuleImage.HASH_LENGTH)
+			throw new IllegalArgumentException("source hash of " +
+					sourceHash.length + " bytes");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(ModuleImage.MAGIC);
+		out.writeInt(ModuleImage.VERSION);
+		out.writeInt(Compiler.VERSION);
+		out.write(sourceHash);
+
+		// the static pool goes after its checksum
+		StaticPool pool = module_.staticPool();
+		ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+		DataOutputStream statics = new DataOutputStream(poolBytes);
+		statics.writeInt(pool.size());
+		for (int i = 0; i < pool.size(); i++)
+			writeValue(statics, pool.get(i));
+		statics.flush();
+		out.writeInt(checksum(poolBytes.toByteArray()));
+		poolBytes.writeTo(out);
+
+		out.writeInt(module_.getGlobalFieldCount());
+		for (int i = 0; i < module_.getGlobalFieldCount(); i++)
+			writeField(out, module_.getGlobalField(i));
+
+		writeCode(out, module_.prologue());
+		out.writeInt(entryPointIndex());
+
+		// the functions go after the table of their offsets
+		int count = module_.functionCount();
+		ByteArrayOutputStream functionBytes = new ByteArrayOutputStream();
+		DataOutputStream functions = new DataOutputStream(functionBytes);
+		int[] offsets = new int[count];
+		int[] checksums = new int[count];
+		int base = out.size() + 4 + 8 * count;
+		for (int i = 0; i < count; i++) {
+			offsets[i] = base + functions.size();
+			ByteArrayOutputStream function = new ByteArrayOutputStream();
+			DataOutputStream fn = new DataOutputStream(function);
+			writeFunction(fn, module_.getFunctionByIndex(i));
+			fn.flush();
+			checksums[i] = checksum(function.toByteArray());
+			function.writeTo(functions);
+		}
+		out.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			out.writeInt(offsets[i]);
+			out.writeInt(checksums[i]);
+		}
+		functions.flush();
+		functionBytes.writeTo(out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes the image to a file. It is written to a temporary file first
+	 * and then renamed, so that a reader sees either the old or the new
+	 * image but never a partial one.
+	 */
+	public void write(String path, byte[] sourceHash) throws IOException {
+		byte[] image = toByteArray(sourceHash);
+		Path target = Paths.get(path).toAbsolutePath();
+		Path temp = target.resolveSibling(target.getFileName() + "." +
+				Long.toHexString(ThreadLocalRandom.current().nextLong()) +
+				".tmp");
+		try {
+			Files.write(temp, image, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE);
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target,
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static int checksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length);
+		return (int) crc.getValue();
+	}
+
+	private int entryPointIndex() {
+		for (int i = 0; i < module_.functionCount(); i++)
+			if (module_.getFunctionByIndex(i) == module_.entryPoint())
+				return i;
+		return -1;
+	}
+
+	private void writeFunction(DataOutputStream out, FunctionInfo fn)
+			throws IOException {
+		out.writeInt(fn.id());
+		writeString(out, fn.name());
+		out.writeInt(fn.argumentCount());
+		for (int i = 0; i < fn.argumentCount(); i++)
+			writeField(out, fn.argument(i));
+		out.writeInt(fn.localCount());
+		for (int i = 0; i < fn.localCount(); i++)
+			writeField(out, fn.local(i));
+		writeCode(out, fn.byteCode());
+	}
+
+	private void writeCode(DataOutputStream out, ByteCode code)
+			throws IOException {
+		out.writeInt(code.maxStackDepth());
+		int[] words = code.code();
+		out.writeInt(words.length);
+		for (int word : words)
+			out.writeInt(word);
+	}
+
+	private void writeField(DataOutputStream out, FieldInfo field)
+			throws IOException {
+		out.writeInt(field.id());
+		writeString(out, field.name());
+	}
+
+	private void writeValue(DataOutputStream out, RuntimeObject value)
+			throws IOException {
+		switch (value.getType()) {
+		case NULL:
+			out.writeByte(ModuleImage.NULL);
+			break;
+		case BOOLEAN:
+			out.writeByte(((RuntimeBoolean) value).value() ?
+					ModuleImage.TRUE : ModuleImage.FALSE);
+			break;
+		case INTEGER:
+			out.writeByte(ModuleImage.INTEGER);
+			out.writeInt(((RuntimeInteger) value).value());
+			break;
+		case NUMBER:
+			out.writeByte(ModuleImage.NUMBER);
+			out.writeDouble(((RuntimeNumber) value).value());
+			break;
+		case CHARACTER:
+			out.writeByte(ModuleImage.CHARACTER);
+			out.writeChar(((RuntimeCharacter) value).value());
+			break;
+		case STRING:
+			out.writeByte(ModuleImage.STRING);
+			writeString(out, ((RuntimeString) value).value());
+			break;
+		case ARRAY:
+			RuntimeArray array = (RuntimeArray) value;
+			out.writeByte(ModuleImage.ARRAY);
+			out.writeInt(array.size());
+			for (int i = 0; i < array.size(); i++)
+				writeValue(out, array.element(i));
+			break;
+		}
+	}
+
+	private void writeString(DataOutputStream out, String s)
+			throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+}
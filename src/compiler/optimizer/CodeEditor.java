@@ -0,0 +1,80 @@
+package compiler.optimizer;
+
+import java.util.ArrayList;
+
+import compiler.Instruction;
+
+/**
+ * A list of instructions that peephole rules can rewrite in place.
+ * Deleted instructions leave a hole until {@link #commit()} closes the
+ * holes and moves every branch operand to the new positions.
+ */
+public class CodeEditor {
+
+	public CodeEditor(ArrayList<Instruction> codes) {
+		codes_ = new ArrayList<Instruction>(codes);
+		targets_ = null;
+		commit();
+	}
+	
+	private ArrayList<Instruction> codes_;
+	private boolean[] targets_;
+	
+	public int size() {
+		return codes_.size();
+	}
+	
+	/**
+	 * @return The instruction at the position, or null if it has been
+	 * deleted since the last commit.
+	 */
+	public Instruction get(int i) {
+		return codes_.get(i);
+	}
+	
+	public void replace(int i, Instruction ins) {
+		codes_.set(i, ins);
+	}
+	
+	public void delete(int i) {
+		codes_.set(i, null);
+	}
+	
+	/**
+	 * @return Whether some branch jumps to the position. Answers for the
+	 * code as of the last commit.
+	 */
+	public boolean isBranchTarget(int i) {
+		return targets_[i];
+	}
+	
+	public ArrayList<Instruction> instructions() {
+		return codes_;
+	}
+	
+	/**
+	 * Removes deleted instructions. A branch to a deleted instruction is
+	 * moved to the instruction that followed it.
+	 */
+	public void commit() {
+		int count = codes_.size();
+		int[] moved = new int[count + 1];
+		ArrayList<Instruction> kept = new ArrayList<Instruction>(count);
+		for (int i = 0; i < count; i++) {
+			moved[i] = kept.size();
+			if (codes_.get(i) != null)
+				kept.add(codes_.get(i));
+		}
+		moved[count] = kept.size();
+		
+		targets_ = new boolean[kept.size() + 1];
+		for (Instruction ins : kept) {
+			if (ins.opcode().isBranch()) {
+				ins.setOperand(moved[ins.operand()]);
+				targets_[ins.operand()] = true;
+			}
+		}
+		codes_ = kept;
+	}
+
+}
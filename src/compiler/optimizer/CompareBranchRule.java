@@ -0,0 +1,75 @@
+package compiler.optimizer;
+
+import compiler.Instruction;
+import compiler.OpCode;
+
+/**
+ * Fuses a comparison feeding a conditional branch into one instruction:
+ * <pre>
+ * LT; BRFALSE a  =&gt;  BRGTE a
+ * EQ; BRTRUE a   =&gt;  BREQ a
+ * </pre>
+ * An ordered comparison followed by BRTRUE is left alone, as there is no
+ * fused opcode which keeps its meaning for unordered operands.
+ */
+public class CompareBranchRule extends PeepholeRule {
+
+	public CompareBranchRule() {
+		super("compare and branch");
+	}
+
+	@Override
+	public void apply(CodeEditor code) {
+		for (int i = 0; i + 1 < code.size(); i++) {
+			Instruction compare = code.get(i);
+			Instruction branch = code.get(i + 1);
+			if (compare == null || branch == null)
+				continue;
+			if (code.isBranchTarget(i + 1))
+				continue;
+			
+			OpCode fused = null;
+			if (branch.opcode() == OpCode.BRFALSE)
+				fused = branchUnless(compare.opcode());
+			else if (branch.opcode() == OpCode.BRTRUE)
+				fused = branchIf(compare.opcode());
+			if (fused == null)
+				continue;
+			
+			code.replace(i, new Instruction(fused, branch.operand()));
+			code.delete(i + 1);
+			hit();
+		}
+	}
+	
+	private static OpCode branchUnless(OpCode compare) {
+		switch (compare) {
+		case EQ:
+			return OpCode.BRNE;
+		case NE:
+			return OpCode.BREQ;
+		case LT:
+			return OpCode.BRGTE;
+		case GT:
+			return OpCode.BRLTE;
+		case LTE:
+			return OpCode.BRGT;
+		case GTE:
+			return OpCode.BRLT;
+		default:
+			return null;
+		}
+	}
+	
+	private static OpCode branchIf(OpCode compare) {
+		switch (compare) {
+		case EQ:
+			return OpCode.BREQ;
+		case NE:
+			return OpCode.BRNE;
+		default:
+			return null;
+		}
+	}
+
+}
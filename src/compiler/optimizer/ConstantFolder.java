@@ -0,0 +1,138 @@
+package compiler.optimizer;
+
+import ast.Expression;
+import ast.Module;
+import ast.SymbolReference;
+import ast.ValueLiteral;
+import parser.symbol.ConstantSymbol;
+import parser.symbol.Symbol;
+import runtime.RuntimeObject;
+import utils.CompileError;
+
+/**
+ * Evaluates the parts of a module known at compile time before it is
+ * compiled: operations on literals become literals, references to
+ * constants with a literal value become that value, and conditionals and
+ * loops on a known condition lose the branch which is never taken.
+ * <p>
+ * Operations which would fail at run time are left alone, so that they
+ * still fail at run time.
+ */
+public class ConstantFolder {
+
+	public ConstantFolder(Module module) {
+		module_ = module;
+		folds_ = 0;
+	}
+	
+	private final Module module_;
+	private int folds_;
+	
+	/**
+	 * Folds the global initializations, then every function. Constants
+	 * are only inlined after their declaration has been folded.
+	 */
+	public void fold() throws CompileError {
+		module_.fold(this);
+	}
+	
+	/**
+	 * @return Count of nodes replaced so far.
+	 */
+	public int folds() {
+		return folds_;
+	}
+	
+	/**
+	 * Records that a node has been replaced by one of its children.
+	 */
+	public void folded() {
+		folds_++;
+	}
+	
+	public Symbol lookup(String name) {
+		return module_.scope().lookup(name);
+	}
+	
+	/**
+	 * Rejects a store to a constant or a function. The store may be in a
+	 * branch which is dropped, so it is checked here, before it is ever
+	 * compiled, to make whether a module compiles not depend on folding.
+	 * @param target Left value stored to.
+	 * @throws CompileError The error compiling the store would throw.
+	 */
+	public void checkStore(Expression target) throws CompileError {
+		if (!(target instanceof SymbolReference))
+			return;
+		SymbolReference ref = (SymbolReference) target;
+		Symbol symbol = ref.resolved() ? ref.symbol() : lookup(ref.name());
+		if (symbol == null)
+			return; // reported when the reference is compiled
+		if (symbol.isFunction())
+			throw new CompileError(String.format(
+					"illegal assignment to the function \"%s\"",
+					symbol.name()));
+		if (symbol.isContant())
+			throw new CompileError(String.format(
+					"illegal assignment to the constant \"%s\"",
+					symbol.name()));
+	}
+	
+	/**
+	 * @return The value of the expression if it is known at compile time,
+	 * otherwise null.
+	 */
+	public RuntimeObject valueOf(Expression expr) {
+		if (expr instanceof ValueLiteral)
+			return ((ValueLiteral) expr).constantValue();
+		return null;
+	}
+	
+	/**
+	 * @return Whether the expression tests true, or null if that is only
+	 * known at run time.
+	 */
+	public Boolean truthOf(Expression expr) {
+		RuntimeObject value = valueOf(expr);
+		if (value == null)
+			return null;
+		return value.isTruly();
+	}
+	
+	/**
+	 * @return A literal replacing a folded node, or null if the value has
+	 * no literal form.
+	 */
+	public ValueLiteral literal(RuntimeObject value) {
+		ValueLiteral literal = ValueLiteral.of(value);
+		if (literal != null)
+			folds_++;
+		return literal;
+	}
+	
+	/**
+	 * Remembers the value of a constant whose initializer folded to a
+	 * literal.
+	 */
+	public void defineConstant(Symbol symbol, Expression init) {
+		if (!symbol.isContant())
+			return;
+		RuntimeObject value = valueOf(init);
+		if (value != null)
+			((ConstantSymbol) symbol).setValue(value);
+	}
+	
+	/**
+	 * @return A literal with the value of the constant, or null if the
+	 * symbol is not a constant of known value.
+	 */
+	public ValueLiteral constant(Symbol symbol) {
+		if (!symbol.isContant())
+			return null;
+		RuntimeObject value = ((ConstantSymbol) symbol).value();
+		if (value == null)
+			return null;
+		return literal(value);
+	}
+
+}
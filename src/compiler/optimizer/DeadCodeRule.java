@@ -0,0 +1,49 @@
+package compiler.optimizer;
+
+import compiler.Instruction;
+
+/**
+ * Deletes instructions no path from the entry can reach, such as code
+ * after a return or after the unconditional branch closing a loop.
+ */
+public class DeadCodeRule extends PeepholeRule {
+
+	public DeadCodeRule() {
+		super("dead code");
+	}
+
+	@Override
+	public void apply(CodeEditor code) {
+		int count = code.size();
+		if (count == 0)
+			return;
+		
+		boolean[] reachable = new boolean[count + 1];
+		int[] worklist = new int[count + 1];
+		int pending = 0;
+		reachable[0] = true;
+		worklist[pending++] = 0;
+		while (pending > 0) {
+			int cursor = worklist[--pending];
+			if (cursor >= count)
+				continue;
+			Instruction ins = code.get(cursor);
+			if (ins.opcode().isBranch() && !reachable[ins.operand()]) {
+				reachable[ins.operand()] = true;
+				worklist[pending++] = ins.operand();
+			}
+			if (ins.opcode().fallsThrough() && !reachable[cursor + 1]) {
+				reachable[cursor + 1] = true;
+				worklist[pending++] = cursor + 1;
+			}
+		}
+		
+		for (int i = 0; i < count; i++) {
+			if (!reachable[i]) {
+				code.delete(i);
+				hit();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+package compiler.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import ast.Expression;
+import ast.Function;
+import ast.InlinedCall;
+import ast.Invoke;
+import ast.Module;
+import ast.SymbolReference;
+import parser.symbol.Symbol;
+import utils.CompileError;
+
+/**
+ * Replaces the calls of small functions by the functions themselves
+ * before a module is compiled. A function can be inlined if its body is a
+ * single return of an expression of at most a given count of nodes and it
+ * cannot call itself, directly or through other functions. The arguments
+ * of an inlined call are kept in locals of the caller made for that call,
+ * so they are still evaluated once each and in order. Calls in the
+ * initializations of globals stay calls, since there are no locals to
+ * keep the arguments in.
+ * <p>
+ * Functions are inlined into their callers before the callers are
+ * inlined further, so that a chain of small functions ends up as one
+ * expression. Every call considered is recorded, see {@link #decisions()}.
+ */
+public class Inliner {
+
+	/**
+	 * Default count of nodes of the returned expression of a function up
+	 * to which it is inlined.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 24;
+
+	/**
+	 * Count of arguments and locals past which no more calls are inlined
+	 * into a function, which keeps it compilable by the JIT.
+	 */
+	private static final int MAX_VARIABLES = 128;
+
+	public Inliner(Module module) {
+		this(module, DEFAULT_MAX_SIZE);
+	}
+
+	public Inliner(Module module, int maxSize) {
+		module_ = module;
+		maxSize_ = maxSize;
+		decisions_ = new ArrayList<String>();
+		callees_ = new ArrayList<HashSet<Integer>>();
+		recursive_ = null;
+		caller_ = null;
+		renames_ = new HashMap<Symbol, Symbol>();
+		measuring_ = false;
+		size_ = 0;
+	}
+
+	private final Module module_;
+	private final int maxSize_;
+	private final ArrayList<String> decisions_;
+
+	// the call graph, by index of function, while it is built
+	private final ArrayList<HashSet<Integer>> callees_;
+	private boolean[] recursive_;
+	private Function caller_;
+
+	// the body being copied
+	private final HashMap<Symbol, Symbol> renames_;
+	private boolean measuring_;
+	private int size_;
+
+	/**
+	 * Builds the call graph of the module, then inlines into every
+	 * function after the functions it calls.
+	 */
+	public void inline() throws CompileError {
+		ArrayList<Function> functions = module_.functions();
+		for (Function func : functions) {
+			callees_.add(new HashSet<Integer>());
+			caller_ = func;
+			func.inline(this);
+		}
+		recursive_ = new boolean[functions.size()];
+		for (int i = 0; i < functions.size(); i++)
+			recursive_[i] = reaches(i, i, new boolean[functions.size()]);
+
+		boolean[] visited = new boolean[functions.size()];
+		for (int i = 0; i < functions.size(); i++)
+			inlineAfterCallees(i, visited);
+		caller_ = null;
+	}
+
+	private boolean reaches(int from, int to, boolean[] visited) {
+		for (int callee : callees_.get(from)) {
+			if (callee == to)
+				return true;
+			if (!visited[callee]) {
+				visited[callee] = true;
+				if (reaches(callee, to, visited))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private void inlineAfterCallees(int function, boolean[] visited)
+			throws CompileError {
+		if (visited[function])
+			return;
+		visited[function] = true;
+		for (int callee : callees_.get(function))
+			inlineAfterCallees(callee, visited);
+		caller_ = module_.functions().get(function);
+		caller_.inline(this);
+	}
+
+	/**
+	 * @return What became of every call considered, one line each, e.g.
+	 * "main: sq inlined".
+	 */
+	public String[] decisions() {
+		return decisions_.toArray(new String[decisions_.size()]);
+	}
+
+	/**
+	 * Records a call of the function being walked while the call graph is
+	 * built, and inlines it afterwards if the callee is small enough.
+	 * @return The call itself, or the node replacing it.
+	 */
+	public Expression inline(Invoke call) throws CompileError {
+		Symbol symbol = callee(call);
+		if (symbol == null)
+			return call;
+		if (recursive_ == null) {
+			callees_.get(callees_.size() - 1).add(symbol.id());
+			return call;
+		}
+
+		Function callee = module_.functions().get(symbol.id());
+		Expression body = callee.returnedExpression();
+		if (call.arguments().size() != callee.argumentCount())
+			return call; // reported when the call is compiled
+		if (recursive_[symbol.id()])
+			return kept(call, callee, "recursive");
+		if (body == null)
+			return kept(call, callee, "not a single return");
+		if (caller_.variableCount() + callee.argumentCount() >
+				MAX_VARIABLES)
+			return kept(call, callee, "too many variables");
+
+		// a first copy only checks that the body can be copied
+		measuring_ = true;
+		for (int i = 0; i < callee.argumentCount(); i++)
+			renames_.put(callee.argument(i), callee.argument(i));
+		try {
+			copy(body);
+		} catch (CompileError e) {
+			return kept(call, callee, e.getMessage());
+		} finally {
+			measuring_ = false;
+			renames_.clear();
+			size_ = 0;
+		}
+
+		ArrayList<Symbol> temporaries = new ArrayList<Symbol>();
+		for (int i = 0; i < callee.argumentCount(); i++) {
+			Symbol argument = callee.argument(i);
+			Symbol temporary = caller_.defineTemporary(
+					callee.name() + '.' + argument.name());
+			renames_.put(argument, temporary);
+			temporaries.add(temporary);
+		}
+		try {
+			body = copy(body);
+		} finally {
+			renames_.clear();
+			size_ = 0;
+		}
+		decisions_.add(String.format("%s: %s inlined", caller_.name(),
+				callee.name()));
+		return new InlinedCall(callee.name(), temporaries,
+				new ArrayList<Expression>(call.arguments()), body);
+	}
+
+	private Expression kept(Invoke call, Function callee, String reason) {
+		decisions_.add(String.format("%s: %s kept, %s", caller_.name(),
+				callee.name(), reason));
+		return call;
+	}
+
+	private Symbol callee(Invoke call) {
+		if (!(call.function() instanceof SymbolReference))
+			return null;
+		SymbolReference ref = (SymbolReference) call.function();
+		Symbol symbol = ref.resolved() ? ref.symbol() :
+				module_.scope().lookup(ref.name());
+		if (symbol == null || !symbol.isFunction())
+			return null;
+		return symbol;
+	}
+
+	/**
+	 * Copies a part of the body of the function being inlined, counting
+	 * its nodes.
+	 * @throws CompileError If the body is too large or cannot be copied.
+	 */
+	public Expression copy(Expression expr) throws CompileError {
+		if (++size_ > maxSize_)
+			throw new CompileError("too large");
+		return expr.copy(this);
+	}
+
+	/**
+	 * @return The symbol a copied reference refers to: the same one for
+	 * globals and functions, the local of the caller for a variable of the
+	 * callee.
+	 * @throws CompileError If it is a local of the callee, which has no
+	 * copy in the caller.
+	 */
+	public Symbol rename(Symbol symbol) throws CompileError {
+		if (symbol.isGlobal() || symbol.isFunction())
+			return symbol;
+		Symbol renamed = renames_.get(symbol);
+		if (renamed == null)
+			throw new CompileError(String.format("uses the local \"%s\"",
+					symbol.name()));
+		return renamed;
+	}
+
+	/**
+	 * @return A new local of the caller standing for a local of the
+	 * callee, which copied references to that local refer to.
+	 */
+	public Symbol temporary(Symbol symbol) {
+		Symbol temporary = measuring_ ? symbol :
+				caller_.defineTemporary(symbol.name());
+		renames_.put(symbol, temporary);
+		return temporary;
+	}
+
+}
@@ -0,0 +1,64 @@
+package compiler.optimizer;
+
+import compiler.Instruction;
+import compiler.OpCode;
+
+/**
+ * Makes branches skip over unconditional branches:
+ * <pre>
+ * BR a; ... a: BR b  =&gt;  BR b; ... a: BR b
+ * BR a; ... a: RET   =&gt;  RET;  ... a: RET
+ * BR a; a: ...       =&gt;  a: ...
+ * </pre>
+ */
+public class JumpThreadingRule extends PeepholeRule {
+
+	public JumpThreadingRule() {
+		super("jump threading");
+	}
+
+	@Override
+	public void apply(CodeEditor code) {
+		for (int i = 0; i < code.size(); i++) {
+			Instruction ins = code.get(i);
+			if (ins == null || !ins.opcode().isBranch())
+				continue;
+			
+			int target = finalTarget(code, ins.operand());
+			if (target != ins.operand()) {
+				ins.setOperand(target);
+				hit();
+			}
+			
+			if (ins.opcode() != OpCode.BR)
+				continue;
+			if (target == i + 1) {
+				code.delete(i);
+				hit();
+			} else if (target < code.size()) {
+				OpCode dest = code.get(target).opcode();
+				if (dest == OpCode.RET || dest == OpCode.RETNULL) {
+					code.replace(i, new Instruction(dest));
+					hit();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Follows a chain of unconditional branches. A chain that loops back
+	 * on itself stops where it started.
+	 */
+	private static int finalTarget(CodeEditor code, int target) {
+		int steps = 0;
+		while (target < code.size() && steps < code.size()) {
+			Instruction ins = code.get(target);
+			if (ins == null || ins.opcode() != OpCode.BR)
+				break;
+			target = ins.operand();
+			steps++;
+		}
+		return target;
+	}
+
+}
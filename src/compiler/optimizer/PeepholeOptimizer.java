@@ -0,0 +1,76 @@
+package compiler.optimizer;
+
+import java.util.ArrayList;
+
+import compiler.Instruction;
+
+/**
+ * Runs a pipeline of {@link PeepholeRule}s over a list of instructions
+ * until none of them changes the code any more.
+ */
+public class PeepholeOptimizer {
+
+	/**
+	 * Upper bound of passes over the rule pipeline for one piece of code.
+	 */
+	public static final int MAX_PASSES = 8;
+
+	public PeepholeOptimizer() {
+		rules_ = new ArrayList<PeepholeRule>();
+	}
+	
+	private ArrayList<PeepholeRule> rules_;
+	
+	/**
+	 * @return An optimizer with every rule of this package.
+	 */
+	public static PeepholeOptimizer standard() {
+		PeepholeOptimizer optimizer = new PeepholeOptimizer();
+		optimizer.add(new DeadCodeRule());
+		optimizer.add(new JumpThreadingRule());
+		optimizer.add(new RedundantCopyRule());
+		optimizer.add(new UnusedPostfixRule());
+		optimizer.add(new CompareBranchRule());
+		return optimizer;
+	}
+	
+	public PeepholeOptimizer add(PeepholeRule rule) {
+		rules_.add(rule);
+		return this;
+	}
+	
+	public ArrayList<PeepholeRule> rules() {
+		return rules_;
+	}
+	
+	public ArrayList<Instruction> optimize(ArrayList<Instruction> codes) {
+		CodeEditor editor = new CodeEditor(codes);
+		for (int pass = 0; pass < MAX_PASSES; pass++) {
+			int before = totalHits();
+			for (PeepholeRule rule : rules_) {
+				rule.apply(editor);
+				editor.commit();
+			}
+			if (totalHits() == before)
+				break;
+		}
+		return editor.instructions();
+	}
+	
+	private int totalHits() {
+		int total = 0;
+		for (PeepholeRule rule : rules_)
+			total += rule.hits();
+		return total;
+	}
+	
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("peephole (\n");
+		for (PeepholeRule rule : rules_)
+			sb.append(String.format("%s: %d\n", rule.name(), rule.hits()));
+		sb.append(")\n");
+		return sb.toString();
+	}
+
+}
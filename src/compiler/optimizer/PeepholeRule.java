@@ -0,0 +1,35 @@
+package compiler.optimizer;
+
+/**
+ * A rewrite applied by {@link PeepholeOptimizer}. Each rule counts how
+ * many times it changed the code.
+ */
+public abstract class PeepholeRule {
+
+	public PeepholeRule(String name) {
+		name_ = name;
+		hits_ = 0;
+	}
+	
+	private final String name_;
+	private int hits_;
+	
+	public String name() {
+		return name_;
+	}
+	
+	public int hits() {
+		return hits_;
+	}
+	
+	protected void hit() {
+		hits_++;
+	}
+	
+	/**
+	 * Rewrites the code. Instructions deleted by this rule read as null
+	 * until the optimizer commits the editor.
+	 */
+	public abstract void apply(CodeEditor code);
+
+}
@@ -0,0 +1,74 @@
+package compiler.optimizer;
+
+import compiler.Instruction;
+import compiler.OpCode;
+
+/**
+ * An assignment used as a statement keeps a copy of the value for the
+ * expression result, and the statement then pops it:
+ * <pre>
+ * COPY; STLOC n; POP  =&gt;  STLOC n
+ * </pre>
+ * The same holds for STARG and STGLOB. COPY stores a copy of an array,
+ * so the rule only applies when the value is known not to be one shared
+ * with anything else: the result of an operator, or a static, which is
+ * loaded as a new array if it is one.
+ */
+public class RedundantCopyRule extends PeepholeRule {
+
+	public RedundantCopyRule() {
+		super("redundant copy");
+	}
+
+	@Override
+	public void apply(CodeEditor code) {
+		for (int i = 1; i + 2 < code.size(); i++) {
+			Instruction producer = code.get(i - 1);
+			Instruction copy = code.get(i);
+			Instruction store = code.get(i + 1);
+			Instruction pop = code.get(i + 2);
+			if (producer == null || copy == null || store == null
+					|| pop == null)
+				continue;
+			if (copy.opcode() != OpCode.COPY || pop.opcode() != OpCode.POP)
+				continue;
+			if (!isStore(store.opcode()))
+				continue;
+			if (code.isBranchTarget(i) || code.isBranchTarget(i + 1)
+					|| code.isBranchTarget(i + 2))
+				continue;
+			if (!isUnshared(producer))
+				continue;
+			code.delete(i);
+			code.delete(i + 2);
+			hit();
+		}
+	}
+	
+	/**
+	 * @return Whether the value the instruction pushes is never an array
+	 * referred to from elsewhere.
+	 */
+	private boolean isUnshared(Instruction producer) {
+		switch (producer.opcode()) {
+		case LDARG:
+		case LDELEM:
+		case LDGLOB:
+		case LDLOC:
+		case CALL:
+		case COPY:
+			return false;
+		case LDSTATIC:
+			return true;
+		default:
+			// operators fail on arrays, so what they push is never one
+			return producer.opcode().pushes() == 1;
+		}
+	}
+	
+	private static boolean isStore(OpCode opcode) {
+		return opcode == OpCode.STLOC || opcode == OpCode.STARG
+				|| opcode == OpCode.STGLOB;
+	}
+
+}
@@ -0,0 +1,47 @@
+package compiler.optimizer;
+
+import compiler.Instruction;
+import compiler.OpCode;
+
+/**
+ * A postfix increment used as a statement keeps the old value for the
+ * expression result, and the statement then pops it:
+ * <pre>
+ * COPY; INC; STLOC n; POP  =&gt;  INC; STLOC n
+ * </pre>
+ * The same holds for DEC, STARG and STGLOB. Incrementing the copy or the
+ * value itself gives the same result, as INC and DEC fail on arrays.
+ */
+public class UnusedPostfixRule extends PeepholeRule {
+
+	public UnusedPostfixRule() {
+		super("unused postfix");
+	}
+
+	@Override
+	public void apply(CodeEditor code) {
+		for (int i = 0; i + 3 < code.size(); i++) {
+			Instruction copy = code.get(i);
+			Instruction step = code.get(i + 1);
+			Instruction store = code.get(i + 2);
+			Instruction pop = code.get(i + 3);
+			if (copy == null || step == null || store == null || pop == null)
+				continue;
+			if (copy.opcode() != OpCode.COPY || pop.opcode() != OpCode.POP)
+				continue;
+			if (step.opcode() != OpCode.INC && step.opcode() != OpCode.DEC)
+				continue;
+			if (store.opcode() != OpCode.STLOC
+					&& store.opcode() != OpCode.STARG
+					&& store.opcode() != OpCode.STGLOB)
+				continue;
+			if (code.isBranchTarget(i + 1) || code.isBranchTarget(i + 2)
+					|| code.isBranchTarget(i + 3))
+				continue;
+			code.delete(i);
+			code.delete(i + 3);
+			hit();
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package compiler.register;
+
+/**
+ * Assigns the registers of a function frame. Arguments come first, so
+ * that a caller can pass them in place, then the locals, then one
+ * temporary for every slot of the evaluation stack of the stack code.
+ */
+public class RegisterAllocator {
+
+	public RegisterAllocator(int argumentCount, int localCount,
+			int maxStackDepth) {
+		argumentCount_ = argumentCount;
+		localCount_ = localCount;
+		maxStackDepth_ = maxStackDepth;
+	}
+	
+	private int argumentCount_;
+	private int localCount_;
+	private int maxStackDepth_;
+	
+	public int argument(int i) {
+		return i;
+	}
+	
+	public int local(int i) {
+		return argumentCount_ + i;
+	}
+	
+	/**
+	 * @return The register holding the value at the given depth of the
+	 * evaluation stack.
+	 */
+	public int temporary(int depth) {
+		return argumentCount_ + localCount_ + depth;
+	}
+	
+	public boolean isTemporary(int register) {
+		return register >= argumentCount_ + localCount_;
+	}
+	
+	public int registerCount() {
+		return argumentCount_ + localCount_ + maxStackDepth_;
+	}
+
+}
@@ -0,0 +1,85 @@
+package compiler.register;
+
+/**
+ * Code of one function for the register machine, together with the size
+ * of the register frame it runs in. The frame holds the arguments, then
+ * the locals, then the temporaries, see {@link RegisterAllocator}.
+ */
+public class RegisterCode {
+
+	public RegisterCode(String name, int[] code, int argumentCount,
+			int registerCount) {
+		name_ = name;
+		code_ = code;
+		argumentCount_ = argumentCount;
+		registerCount_ = registerCount;
+	}
+	
+	private String name_;
+	private int[] code_;
+	private int argumentCount_;
+	private int registerCount_;
+	
+	public String name() {
+		return name_;
+	}
+	
+	/**
+	 * The instructions, see {@link RegisterOpCodes} for the format. The
+	 * code always ends with a return or a tail call.
+	 */
+	public int[] code() {
+		return code_;
+	}
+	
+	public int argumentCount() {
+		return argumentCount_;
+	}
+	
+	public int registerCount() {
+		return registerCount_;
+	}
+	
+	public String inspect() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("function " + name_ + ":\n");
+		sb.append("registers: " + registerCount_ + "\n");
+		sb.append("instructions (\n");
+		int cursor = 0;
+		while (cursor < code_.length) {
+			RegisterOpCode opcode = RegisterOpCode.decode(
+					RegisterOpCodes.opcode(code_[cursor]));
+			String operands = opcode.operands();
+			sb.append(cursor + ": " + opcode.name());
+			for (int i = 0; i < operands.length(); i++) {
+				int operand = i == 0
+						? RegisterOpCodes.operand(code_[cursor])
+						: code_[cursor + i];
+				sb.append(i == 0 ? " " : ", ");
+				sb.append(operandString(operands.charAt(i), operand));
+			}
+			sb.append('\n');
+			cursor += opcode.length();
+		}
+		sb.append(")\n");
+		return sb.toString();
+	}
+	
+	private static String operandString(char kind, int operand) {
+		switch (kind) {
+		case 's':
+			if (RegisterOpCodes.isConstant(operand))
+				return "k" + (~operand);
+			return "r" + operand;
+		case 'd':
+			return "r" + operand;
+		case 'g':
+			return "g" + operand;
+		case 'f':
+			return "f" + operand;
+		default:
+			return "@" + operand;
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+package compiler.register;
+
+import compiler.StaticPool;
+import runtime.FunctionInfo;
+import runtime.ModuleInfo;
+import runtime.RuntimeObject;
+import runtime.RuntimeObjectFactory;
+import utils.CompileError;
+
+/**
+ * Translates a compiled module into code for the register machine, see
+ * {@link RegisterTranslator}.
+ */
+public class RegisterCompiler {
+
+	public RegisterCompiler(ModuleInfo module) {
+		module_ = module;
+	}
+	
+	private ModuleInfo module_;
+	
+	public RegisterModule compile() throws CompileError {
+		RegisterCode prologue = new RegisterTranslator(this, "<prologue>",
+				module_.prologue(), 0, 0).translate();
+		
+		RegisterCode[] functions = new RegisterCode[module_.functionCount()];
+		RegisterCode entryPoint = null;
+		for (int i = 0; i < functions.length; i++) {
+			FunctionInfo fn = module_.getFunctionByIndex(i);
+			functions[i] = new RegisterTranslator(this, fn.name(),
+					fn.byteCode(), fn.argumentCount(), fn.localCount())
+					.translate();
+			if (fn == module_.entryPoint())
+				entryPoint = functions[i];
+		}
+		
+		return new RegisterModule(
+				constants(),
+				module_.getGlobalFieldCount(),
+				prologue,
+				functions,
+				entryPoint);
+	}
+	
+	/**
+	 * The static pool followed by null, which LDNULL loads.
+	 */
+	private RuntimeObject[] constants() {
+		StaticPool pool = module_.staticPool();
+		RuntimeObject[] constants = new RuntimeObject[pool.size() + 1];
+		for (int i = 0; i < pool.size(); i++)
+			constants[i] = pool.get(i);
+		constants[nullConstant()] = RuntimeObjectFactory.NULL;
+		return constants;
+	}
+	
+	/**
+	 * @return Whether a constant is an array, which every load copies.
+	 */
+	public boolean isArrayConstant(int index) {
+		return module_.staticPool().get(index).isArray();
+	}
+	
+	public int nullConstant() {
+		return module_.staticPool().size();
+	}
+	
+	public int argumentCount(int function) {
+		return module_.getFunctionByIndex(function).argumentCount();
+	}
+
+}
@@ -0,0 +1,68 @@
+package compiler.register;
+
+import runtime.RuntimeObject;
+
+/**
+ * A module translated for the register machine.
+ */
+public class RegisterModule {
+
+	public RegisterModule(
+			RuntimeObject[] constants,
+			int globalCount,
+			RegisterCode prologue,
+			RegisterCode[] functions,
+			RegisterCode entryPoint) {
+		constants_ = constants;
+		globalCount_ = globalCount;
+		prologue_ = prologue;
+		functions_ = functions;
+		entryPoint_ = entryPoint;
+	}
+	
+	private RuntimeObject[] constants_;
+	private int globalCount_;
+	private RegisterCode prologue_;
+	private RegisterCode[] functions_;
+	private RegisterCode entryPoint_;
+	
+	/**
+	 * @return The values constant operands read, see
+	 * {@link RegisterOpCodes#constant(int)}.
+	 */
+	public RuntimeObject[] constants() {
+		return constants_;
+	}
+	
+	public int getGlobalFieldCount() {
+		return globalCount_;
+	}
+	
+	public RegisterCode prologue() {
+		return prologue_;
+	}
+	
+	public RegisterCode getFunctionByIndex(int i) {
+		return functions_[i];
+	}
+	
+	public RegisterCode entryPoint() {
+		return entryPoint_;
+	}
+	
+	public String inspect() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("constants (\n");
+		for (int i = 0; i < constants_.length; i++)
+			sb.append("k" + i + ": " + constants_[i].toRuntimeString()
+					+ '\n');
+		sb.append(")\n");
+		sb.append(prologue_.inspect());
+		sb.append("functions {\n");
+		for (int i = 0; i < functions_.length; i++)
+			sb.append(functions_[i].inspect() + '\n');
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,103 @@
+package compiler.register;
+
+/**
+ * Opcodes of the register machine. Every opcode lists the kinds of its
+ * operands in order:
+ * <ul>
+ * <li>{@code d} register the result is written to</li>
+ * <li>{@code s} source, a register or a constant</li>
+ * <li>{@code g} index of a global</li>
+ * <li>{@code f} index of a function; the arguments are in the
+ * registers starting at the destination, which receives the result</li>
+ * <li>{@code j} code position to branch to</li>
+ * </ul>
+ */
+public enum RegisterOpCode {
+	// Data movement
+	MOVE(RegisterOpCodes.MOVE, "ds"),
+	COPY(RegisterOpCodes.COPY, "ds"),
+	LDGLOB(RegisterOpCodes.LDGLOB, "dg"),
+	STGLOB(RegisterOpCodes.STGLOB, "gs"),
+	LDELEM(RegisterOpCodes.LDELEM, "dss"),
+	STELEM(RegisterOpCodes.STELEM, "sss"),
+	// Arithmetic
+	OR(RegisterOpCodes.OR, "dss"),
+	AND(RegisterOpCodes.AND, "dss"),
+	XOR(RegisterOpCodes.XOR, "dss"),
+	SHL(RegisterOpCodes.SHL, "dss"),
+	SHR(RegisterOpCodes.SHR, "dss"),
+	SAR(RegisterOpCodes.SAR, "dss"),
+	ADD(RegisterOpCodes.ADD, "dss"),
+	SUB(RegisterOpCodes.SUB, "dss"),
+	MUL(RegisterOpCodes.MUL, "dss"),
+	DIV(RegisterOpCodes.DIV, "dss"),
+	MOD(RegisterOpCodes.MOD, "dss"),
+	EQ(RegisterOpCodes.EQ, "dss"),
+	NE(RegisterOpCodes.NE, "dss"),
+	LT(RegisterOpCodes.LT, "dss"),
+	GT(RegisterOpCodes.GT, "dss"),
+	LTE(RegisterOpCodes.LTE, "dss"),
+	GTE(RegisterOpCodes.GTE, "dss"),
+	NOT(RegisterOpCodes.NOT, "ds"),
+	INC(RegisterOpCodes.INC, "ds"),
+	DEC(RegisterOpCodes.DEC, "ds"),
+	NEG(RegisterOpCodes.NEG, "ds"),
+	// Branch
+	BR(RegisterOpCodes.BR, "j"),
+	BRTRUE(RegisterOpCodes.BRTRUE, "sj"),
+	BRFALSE(RegisterOpCodes.BRFALSE, "sj"),
+	BREQ(RegisterOpCodes.BREQ, "ssj"),
+	BRNE(RegisterOpCodes.BRNE, "ssj"),
+	BRLT(RegisterOpCodes.BRLT, "ssj"),
+	BRGT(RegisterOpCodes.BRGT, "ssj"),
+	BRLTE(RegisterOpCodes.BRLTE, "ssj"),
+	BRGTE(RegisterOpCodes.BRGTE, "ssj"),
+	// Control flow
+	CALL(RegisterOpCodes.CALL, "df"),
+	RET(RegisterOpCodes.RET, "s"),
+	RETNULL(RegisterOpCodes.RETNULL, ""),
+	TAILCALL(RegisterOpCodes.TAILCALL, "df");
+
+	private RegisterOpCode(int code, String operands) {
+		code_ = code;
+		operands_ = operands;
+	}
+	
+	private int code_;
+	private String operands_;
+	
+	public int code() {
+		return code_;
+	}
+	
+	/**
+	 * @return Kinds of the operands, one character each.
+	 */
+	public String operands() {
+		return operands_;
+	}
+	
+	/**
+	 * @return Count of code words an instruction of this opcode takes.
+	 */
+	public int length() {
+		return Math.max(1, operands_.length());
+	}
+	
+	/**
+	 * @return The opcode whose {@link #code()} is the given value.
+	 */
+	public static RegisterOpCode decode(int code) {
+		return table_[code];
+	}
+	
+	private static final RegisterOpCode[] table_ =
+			new RegisterOpCode[RegisterOpCodes.OPCODE_MASK + 1];
+	
+	static {
+		for (RegisterOpCode opcode : values()) {
+			assert table_[opcode.code_] == null;
+			table_[opcode.code_] = opcode;
+		}
+	}
+}
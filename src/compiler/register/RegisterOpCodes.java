@@ -0,0 +1,88 @@
+package compiler.register;
+
+/**
+ * Numeric values of the register machine opcodes. The first word of an
+ * instruction keeps the opcode in its low {@link #OPCODE_BITS} bits and
+ * the first operand in the remaining high bits; every further operand
+ * takes one word of its own, see {@link RegisterOpCode#operands()}.
+ * <p>
+ * A source operand that is not negative names a register of the frame,
+ * a negative one names the constant at index {@code ~operand}, see
+ * {@link #constant(int)}.
+ */
+public final class RegisterOpCodes {
+
+	private RegisterOpCodes() {
+		
+	}
+	
+	public static final int OPCODE_BITS = 8;
+	public static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+	public static final int OPERAND_MIN = Integer.MIN_VALUE >> OPCODE_BITS;
+	public static final int OPERAND_MAX = Integer.MAX_VALUE >> OPCODE_BITS;
+	
+	public static int opcode(int word) {
+		return word & OPCODE_MASK;
+	}
+	
+	public static int operand(int word) {
+		return word >> OPCODE_BITS;
+	}
+	
+	public static int pack(int opcode, int operand) {
+		return (operand << OPCODE_BITS) | opcode;
+	}
+	
+	/**
+	 * @return The source operand which reads the constant of the index.
+	 */
+	public static int constant(int index) {
+		return ~index;
+	}
+	
+	public static boolean isConstant(int operand) {
+		return operand < 0;
+	}
+	
+	public static final int MOVE = 0;
+	public static final int COPY = 1;
+	public static final int LDGLOB = 2;
+	public static final int STGLOB = 3;
+	public static final int LDELEM = 4;
+	public static final int STELEM = 5;
+	public static final int OR = 6;
+	public static final int AND = 7;
+	public static final int XOR = 8;
+	public static final int SHL = 9;
+	public static final int SHR = 10;
+	public static final int SAR = 11;
+	public static final int ADD = 12;
+	public static final int SUB = 13;
+	public static final int MUL = 14;
+	public static final int DIV = 15;
+	public static final int MOD = 16;
+	public static final int EQ = 17;
+	public static final int NE = 18;
+	public static final int LT = 19;
+	public static final int GT = 20;
+	public static final int LTE = 21;
+	public static final int GTE = 22;
+	public static final int NOT = 23;
+	public static final int INC = 24;
+	public static final int DEC = 25;
+	public static final int NEG = 26;
+	public static final int BR = 27;
+	public static final int BRTRUE = 28;
+	public static final int BRFALSE = 29;
+	public static final int BREQ = 30;
+	public static final int BRNE = 31;
+	public static final int BRLT = 32;
+	public static final int BRGT = 33;
+	public static final int BRLTE = 34;
+	public static final int BRGTE = 35;
+	public static final int CALL = 36;
+	public static final int RET = 37;
+	public static final int RETNULL = 38;
+	public static final int TAILCALL = 39;
+
+}
@@ -0,0 +1,502 @@
+package compiler.register;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import compiler.ByteCode;
+import compiler.Instruction;
+import compiler.OpCode;
+import utils.CompileError;
+
+/**
+ * Translates the stack code of one function into register code.
+ * <p>
+ * The evaluation stack is simulated while translating. Loads of
+ * arguments, locals and constants only push the operand on the simulated
+ * stack, so the instruction consuming the value reads it directly. A
+ * value computed into a temporary and then stored to a variable is
+ * written to the variable by the instruction computing it. Around
+ * branches every value on the stack is moved to the temporary of its
+ * depth, so that all paths into a branch target agree on where the
+ * values are.
+ */
+public class RegisterTranslator {
+
+	public RegisterTranslator(RegisterCompiler compiler, String name,
+			ByteCode source, int argumentCount, int localCount) {
+		compiler_ = compiler;
+		name_ = name;
+		source_ = source;
+		argumentCount_ = argumentCount;
+		allocator_ = new RegisterAllocator(argumentCount, localCount,
+				source.maxStackDepth());
+		code_ = new int[source.instructionCount() * 3 + 1];
+		size_ = 0;
+		stack_ = new int[source.maxStackDepth()];
+		depth_ = 0;
+		live_ = true;
+		lastDst_ = -1;
+		fixups_ = new ArrayList<int[]>();
+	}
+	
+	private RegisterCompiler compiler_;
+	private String name_;
+	private ByteCode source_;
+	private int argumentCount_;
+	private RegisterAllocator allocator_;
+	
+	private int[] code_;
+	private int size_;
+	
+	// simulated evaluation stack, holding source operands
+	private int[] stack_;
+	private int depth_;
+	private boolean live_;
+	
+	// the last instruction, if it wrote a temporary
+	private int lastAt_;
+	private int lastEnd_;
+	private int lastDst_;
+	private boolean lastScalar_;
+	
+	private int[] depths_;
+	private boolean[] targets_;
+	private ArrayList<int[]> fixups_;
+	
+	public RegisterCode translate() throws CompileError {
+		int count = source_.instructionCount();
+		analyze();
+		int[] positions = new int[count + 1];
+		for (int i = 0; i < count; i++) {
+			if (targets_[i]) {
+				if (live_)
+					materializeAll();
+				if (depths_[i] >= 0)
+					enterBlock(depths_[i]);
+			}
+			positions[i] = size_;
+			// unreachable instructions are dropped
+			if (depths_[i] >= 0)
+				translate(source_.fetch(i));
+		}
+		positions[count] = size_;
+		
+		for (int[] fixup : fixups_) {
+			int at = fixup[0];
+			int target = positions[fixup[1]];
+			if (fixup[2] != 0)
+				code_[at] = RegisterOpCodes.pack(
+						RegisterOpCodes.opcode(code_[at]), target);
+			else
+				code_[at] = target;
+		}
+		return new RegisterCode(name_, Arrays.copyOf(code_, size_),
+				argumentCount_, allocator_.registerCount());
+	}
+	
+	private void translate(Instruction ins) throws CompileError {
+		switch (ins.opcode()) {
+		case NOP:
+			break;
+		case OR:
+			binary(RegisterOpCodes.OR);
+			break;
+		case AND:
+			binary(RegisterOpCodes.AND);
+			break;
+		case XOR:
+			binary(RegisterOpCodes.XOR);
+			break;
+		case SHL:
+			binary(RegisterOpCodes.SHL);
+			break;
+		case SHR:
+			binary(RegisterOpCodes.SHR);
+			break;
+		case SAR:
+			binary(RegisterOpCodes.SAR);
+			break;
+		case ADD:
+			binary(RegisterOpCodes.ADD);
+			break;
+		case SUB:
+			binary(RegisterOpCodes.SUB);
+			break;
+		case MUL:
+			binary(RegisterOpCodes.MUL);
+			break;
+		case DIV:
+			binary(RegisterOpCodes.DIV);
+			break;
+		case MOD:
+			binary(RegisterOpCodes.MOD);
+			break;
+		case EQ:
+			binary(RegisterOpCodes.EQ);
+			break;
+		case NE:
+			binary(RegisterOpCodes.NE);
+			break;
+		case LT:
+			binary(RegisterOpCodes.LT);
+			break;
+		case GT:
+			binary(RegisterOpCodes.GT);
+			break;
+		case LTE:
+			binary(RegisterOpCodes.LTE);
+			break;
+		case GTE:
+			binary(RegisterOpCodes.GTE);
+			break;
+		case NOT:
+		case BIT_NOT:
+			unary(RegisterOpCodes.NOT);
+			break;
+		case INC:
+			unary(RegisterOpCodes.INC);
+			break;
+		case DEC:
+			unary(RegisterOpCodes.DEC);
+			break;
+		case NEG:
+			unary(RegisterOpCodes.NEG);
+			break;
+		case BR:
+			materializeAll();
+			branch(RegisterOpCodes.BR, ins.operand());
+			live_ = false;
+			break;
+		case BRTRUE:
+			branch(RegisterOpCodes.BRTRUE, ins.operand(), pop());
+			break;
+		case BRFALSE:
+			branch(RegisterOpCodes.BRFALSE, ins.operand(), pop());
+			break;
+		case BREQ:
+			compareBranch(RegisterOpCodes.BREQ, ins.operand());
+			break;
+		case BRNE:
+			compareBranch(RegisterOpCodes.BRNE, ins.operand());
+			break;
+		case BRLT:
+			compareBranch(RegisterOpCodes.BRLT, ins.operand());
+			break;
+		case BRGT:
+			compareBranch(RegisterOpCodes.BRGT, ins.operand());
+			break;
+		case BRLTE:
+			compareBranch(RegisterOpCodes.BRLTE, ins.operand());
+			break;
+		case BRGTE:
+			compareBranch(RegisterOpCodes.BRGTE, ins.operand());
+			break;
+		case CALL:
+			call(RegisterOpCodes.CALL, ins.operand());
+			break;
+		case TAILCALL:
+			call(RegisterOpCodes.TAILCALL, ins.operand());
+			pop();
+			live_ = false;
+			break;
+		case RET:
+			emit(RegisterOpCodes.RET, pop());
+			live_ = false;
+			break;
+		case RETNULL:
+			emit(RegisterOpCodes.RETNULL, 0);
+			live_ = false;
+			break;
+		case LDARG:
+			push(allocator_.argument(ins.operand()));
+			break;
+		case LDLOC:
+			push(allocator_.local(ins.operand()));
+			break;
+		case LDSTATIC:
+			if (compiler_.isArrayConstant(ins.operand())) {
+				// an array literal is a new array every time it is run
+				int dst = pushTemporary();
+				int at = emit(RegisterOpCodes.COPY, dst);
+				operand(RegisterOpCodes.constant(ins.operand()));
+				produced(at, dst, false);
+			} else {
+				push(RegisterOpCodes.constant(ins.operand()));
+			}
+			break;
+		case LDNULL:
+			push(RegisterOpCodes.constant(compiler_.nullConstant()));
+			break;
+		case LDGLOB: {
+			int dst = pushTemporary();
+			int at = emit(RegisterOpCodes.LDGLOB, dst);
+			operand(ins.operand());
+			produced(at, dst, false);
+			break;
+		}
+		case LDELEM: {
+			int index = pop();
+			int array = pop();
+			int dst = pushTemporary();
+			int at = emit(RegisterOpCodes.LDELEM, dst);
+			operand(array);
+			operand(index);
+			produced(at, dst, false);
+			break;
+		}
+		case STARG:
+			store(allocator_.argument(ins.operand()));
+			break;
+		case STLOC:
+			store(allocator_.local(ins.operand()));
+			break;
+		case STGLOB: {
+			int value = pop();
+			emit(RegisterOpCodes.STGLOB, ins.operand());
+			operand(value);
+			break;
+		}
+		case STELEM: {
+			int index = pop();
+			int array = pop();
+			int value = pop();
+			emit(RegisterOpCodes.STELEM, array);
+			operand(index);
+			operand(value);
+			break;
+		}
+		case COPY:
+			copy();
+			break;
+		case POP:
+			depth_--;
+			break;
+		default:
+			throw new CompileError(String.format(
+					"(internal error) cannot translate %s", ins.toString()));
+		}
+	}
+	
+	// Simulated stack
+	
+	private void push(int operand) {
+		stack_[depth_++] = operand;
+	}
+	
+	private int pop() {
+		return stack_[--depth_];
+	}
+	
+	private int pushTemporary() {
+		int register = allocator_.temporary(depth_);
+		push(register);
+		return register;
+	}
+	
+	/**
+	 * Moves the value at the given depth into the temporary of that depth.
+	 */
+	private void materialize(int depth) throws CompileError {
+		int register = allocator_.temporary(depth);
+		if (stack_[depth] != register) {
+			emit(RegisterOpCodes.MOVE, register);
+			operand(stack_[depth]);
+			stack_[depth] = register;
+		}
+	}
+	
+	private void materializeAll() throws CompileError {
+		for (int i = 0; i < depth_; i++)
+			materialize(i);
+	}
+	
+	/**
+	 * Starts a block at a branch target, where all values on the stack are
+	 * in their temporaries.
+	 */
+	private void enterBlock(int depth) {
+		depth_ = depth;
+		for (int i = 0; i < depth; i++)
+			stack_[i] = allocator_.temporary(i);
+		live_ = true;
+		lastDst_ = -1;
+	}
+	
+	// Translation routines
+	
+	private void binary(int opcode) throws CompileError {
+		int rhs = pop();
+		int lhs = pop();
+		int dst = pushTemporary();
+		int at = emit(opcode, dst);
+		operand(lhs);
+		operand(rhs);
+		produced(at, dst, true);
+	}
+	
+	private void unary(int opcode) throws CompileError {
+		int value = pop();
+		int dst = pushTemporary();
+		int at = emit(opcode, dst);
+		operand(value);
+		produced(at, dst, true);
+	}
+	
+	private void branch(int opcode, int target) throws CompileError {
+		int at = emit(opcode, 0);
+		fixups_.add(new int[] { at, target, 1 });
+	}
+	
+	private void branch(int opcode, int target, int value)
+			throws CompileError {
+		materializeAll();
+		emit(opcode, value);
+		fixups_.add(new int[] { size_, target, 0 });
+		operand(0);
+	}
+	
+	private void compareBranch(int opcode, int target)
+			throws CompileError {
+		int rhs = pop();
+		int lhs = pop();
+		materializeAll();
+		emit(opcode, lhs);
+		operand(rhs);
+		fixups_.add(new int[] { size_, target, 0 });
+		operand(0);
+	}
+	
+	private void call(int opcode, int function) throws CompileError {
+		// the arguments have to be in consecutive registers, where the
+		// frame of the callee starts; a tail call moves them to the start
+		// of the frame of the caller instead
+		int argc = compiler_.argumentCount(function);
+		for (int i = depth_ - argc; i < depth_; i++)
+			materialize(i);
+		depth_ -= argc;
+		int dst = pushTemporary();
+		emit(opcode, dst);
+		operand(function);
+	}
+	
+	private void store(int register) throws CompileError {
+		int value = pop();
+		if (value == register)
+			return;
+		
+		boolean referenced = false;
+		for (int i = 0; i < depth_; i++)
+			if (stack_[i] == register)
+				referenced = true;
+		
+		// let the last instruction write the variable directly
+		if (!referenced && isLastResult(value)) {
+			code_[lastAt_] = RegisterOpCodes.pack(
+					RegisterOpCodes.opcode(code_[lastAt_]), register);
+			for (int i = 0; i < depth_; i++)
+				if (stack_[i] == value)
+					stack_[i] = register;
+			lastDst_ = -1;
+			return;
+		}
+		
+		// values on the stack still have to see the old value
+		for (int i = 0; i < depth_; i++)
+			if (stack_[i] == register)
+				materialize(i);
+		emit(RegisterOpCodes.MOVE, register);
+		operand(value);
+	}
+	
+	private void copy() throws CompileError {
+		int value = stack_[depth_ - 1];
+		if (lastScalar_ && isLastResult(value)) {
+			// the copy of a number or boolean is the value itself
+			push(value);
+			return;
+		}
+		int dst = pushTemporary();
+		int at = emit(RegisterOpCodes.COPY, dst);
+		operand(value);
+		produced(at, dst, false);
+	}
+	
+	// Code buffer
+	
+	private int emit(int opcode, int first) throws CompileError {
+		if (first < RegisterOpCodes.OPERAND_MIN
+				|| first > RegisterOpCodes.OPERAND_MAX)
+			throw new CompileError(String.format(
+					"operand of %s exceeds the limit of the code format",
+					RegisterOpCode.decode(opcode).name()));
+		lastDst_ = -1;
+		int at = size_;
+		operand(RegisterOpCodes.pack(opcode, first));
+		return at;
+	}
+	
+	private void operand(int word) {
+		if (size_ == code_.length)
+			code_ = Arrays.copyOf(code_, code_.length * 2);
+		code_[size_++] = word;
+	}
+	
+	/**
+	 * Records that the instruction just emitted at the position wrote its
+	 * result to a temporary.
+	 * @param scalar Whether the result can never be an array.
+	 */
+	private void produced(int at, int dst, boolean scalar) {
+		lastAt_ = at;
+		lastEnd_ = size_;
+		lastDst_ = dst;
+		lastScalar_ = scalar;
+	}
+	
+	/**
+	 * @return Whether the operand is the temporary the last instruction
+	 * wrote, with nothing emitted after it.
+	 */
+	private boolean isLastResult(int operand) {
+		return lastDst_ >= 0 && operand == lastDst_ && lastEnd_ == size_;
+	}
+	
+	/**
+	 * Computes the depth of the evaluation stack before every reachable
+	 * instruction, -1 for the others, and which instructions are branch
+	 * targets.
+	 */
+	private void analyze() {
+		int count = source_.instructionCount();
+		depths_ = new int[count + 1];
+		targets_ = new boolean[count + 1];
+		Arrays.fill(depths_, -1);
+		int[] worklist = new int[count + 1];
+		int pending = 0;
+		depths_[0] = 0;
+		worklist[pending++] = 0;
+		while (pending > 0) {
+			int cursor = worklist[--pending];
+			if (cursor >= count)
+				continue;
+			Instruction ins = source_.fetch(cursor);
+			OpCode opcode = ins.opcode();
+			int pops = opcode.pops();
+			if (pops == OpCode.VARIABLE)
+				pops = compiler_.argumentCount(ins.operand());
+			int depth = depths_[cursor] - pops + opcode.pushes();
+			if (opcode.isBranch()) {
+				targets_[ins.operand()] = true;
+				if (depths_[ins.operand()] == -1) {
+					depths_[ins.operand()] = depth;
+					worklist[pending++] = ins.operand();
+				}
+			}
+			if (opcode.fallsThrough() && depths_[cursor + 1] == -1) {
+				depths_[cursor + 1] = depth;
+				worklist[pending++] = cursor + 1;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package lexer;
+
+/**
+ * Gives the same string for every occurrence of an identifier, so that
+ * an identifier seen before costs no allocation. The identifiers are
+ * looked up by their characters in an open addressing table.
+ */
+final class IdentifierTable {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	IdentifierTable() {
+		strings_ = new String[INITIAL_CAPACITY];
+		hashes_ = new int[INITIAL_CAPACITY];
+		size_ = 0;
+	}
+	
+	private String[] strings_;
+	private int[] hashes_;
+	private int size_;
+	
+	/**
+	 * @return The string of the first characters of the array.
+	 */
+	String intern(char[] chars, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+			hash = 31 * hash + chars[i];
+		int mask = strings_.length - 1;
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			String str = strings_[slot];
+			if (str == null)
+				break;
+			if (hashes_[slot] == hash && equals(str, chars, length))
+				return str;
+		}
+		
+		String str = new String(chars, 0, length);
+		if (++size_ * 2 > strings_.length)
+			grow();
+		insert(str, hash);
+		return str;
+	}
+	
+	private static boolean equals(String str, char[] chars, int length) {
+		if (str.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (str.charAt(i) != chars[i])
+				return false;
+		return true;
+	}
+	
+	private void insert(String str, int hash) {
+		int mask = strings_.length - 1;
+		int slot = hash & mask;
+		while (strings_[slot] != null)
+			slot = (slot + 1) & mask;
+		strings_[slot] = str;
+		hashes_[slot] = hash;
+	}
+	
+	private void grow() {
+		String[] strings = strings_;
+		int[] hashes = hashes_;
+		strings_ = new String[strings.length * 2];
+		hashes_ = new int[hashes.length * 2];
+		for (int i = 0; i < strings.length; i++)
+			if (strings[i] != null)
+				insert(strings[i], hashes[i]);
+	}
+
+}
@@ -0,0 +1,101 @@
+package lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Looks keywords up by their characters, without making a string of them.
+ * The keywords are placed in a table by a hash of their length and of a
+ * few of their characters, with a multiplier chosen when the class is
+ * loaded so that no two keywords share a slot. A lookup is then one hash
+ * and one comparison.
+ */
+final class Keywords {
+
+	private Keywords() {
+		
+	}
+	
+	private static final int MAX_BITS = 16;
+	
+	private static final Tag[] keywords_;
+	private static final char[][] literals_;
+	private static final int multiplier_;
+	private static final int shift_;
+	
+	static {
+		ArrayList<Tag> keywords = new ArrayList<Tag>();
+		for (Tag tag : Tag.values())
+			if (tag.type() == TokenType.KEYWORD)
+				keywords.add(tag);
+		
+		// the smallest table, and then the smallest multiplier, with no
+		// collision
+		int bits = 0, multiplier = 0;
+		while (multiplier == 0) {
+			if (++bits > MAX_BITS)
+				throw new IllegalStateException("keywords cannot be hashed");
+			if (1 << bits >= keywords.size())
+				multiplier = findMultiplier(keywords, bits);
+		}
+		keywords_ = new Tag[1 << bits];
+		literals_ = new char[1 << bits][];
+		multiplier_ = multiplier;
+		shift_ = 32 - bits;
+		for (Tag tag : keywords) {
+			char[] literal = tag.literal().toCharArray();
+			int slot = slot(literal, literal.length);
+			keywords_[slot] = tag;
+			literals_[slot] = literal;
+		}
+	}
+	
+	private static int findMultiplier(ArrayList<Tag> keywords, int bits) {
+		boolean[] used = new boolean[1 << bits];
+		Search: for (int multiplier = 1; multiplier < 1 << 16;
+				multiplier += 2) {
+			Arrays.fill(used, false);
+			for (Tag tag : keywords) {
+				char[] literal = tag.literal().toCharArray();
+				int slot = (key(literal, literal.length) * multiplier) >>>
+						(32 - bits);
+				if (used[slot])
+					continue Search;
+				used[slot] = true;
+			}
+			return multiplier;
+		}
+		return 0;
+	}
+	
+	private static int key(char[] chars, int length) {
+		return length * 0x9e3779b1 + chars[0] * 0x7feb352d +
+				chars[length >> 1] * 0x846ca68b + chars[length - 1];
+	}
+	
+	private static int slot(char[] chars, int length) {
+		return (key(chars, length) * multiplier_) >>> shift_;
+	}
+	
+	/**
+	 * @return The keyword spelled by the first characters of the array,
+	 * or null if they are not a keyword.
+	 */
+	static Tag lookup(char[] chars, int length) {
+		if (length == 0)
+			return null;
+		int slot = slot(chars, length);
+		char[] literal = literals_[slot];
+		if (literal == null || literal.length != length)
+			return null;
+		for (int i = 0; i < length; i++)
+			if (literal[i] != chars[i])
+				return null;
+		return keywords_[slot];
+	}
+	
+	static Tag lookup(String str) {
+		return lookup(str.toCharArray(), str.length());
+	}
+
+}
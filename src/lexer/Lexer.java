@@ -1,23 +1,80 @@
 package lexer;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import text.BufferedFileScanner;
+import text.MappedFileScanner;
 import text.Scanner;
 import utils.LexicalError;
 import utils.Position;
 
+/**
+ * Splits a source into tokens. Tokens can be read as {@link Token} objects
+ * with {@link #advance()}, or without any allocation through the cursor of
+ * the lexer: {@link #advanceTag()} moves to the next token and returns its
+ * tag, and the other methods of the cursor give its value and position.
+ * The characters of a token are collected in a buffer which is reused,
+ * keywords are recognized from that buffer, and each identifier is made
+ * into a string only the first time it is seen.
+ */
 public class Lexer {
 
+	private static final int INITIAL_TEXT_CAPACITY = 64;
+
 	public Lexer(Scanner scan) {
 		scan_ = scan;
 		row_ = 1;
 		column_ = 1;
 		tokenFactory_ = new TokenFactory(this);
+		identifiers_ = new IdentifierTable();
+		text_ = new char[INITIAL_TEXT_CAPACITY];
+		textLength_ = 0;
+		tag_ = null;
 		ignore();
 	}
 
 	private Scanner scan_;
 	
+	/**
+	 * Files of at least this many bytes are mapped into memory rather than
+	 * read through a buffer.
+	 */
+	public static final long MAPPED_FILE_THRESHOLD = 1024 * 1024;
+	
+	/**
+	 * Creates a lexer of a file, scanned in the way that suits its size.
+	 */
+	public static Lexer forFile(String srcFile) throws FileNotFoundException {
+		if (new File(srcFile).length() >= MAPPED_FILE_THRESHOLD) {
+			try {
+				return new Lexer(new MappedFileScanner(srcFile));
+			} catch (FileNotFoundException e) {
+				throw e;
+			} catch (IOException e) {
+				// mapping is only faster, so read the file instead
+			}
+		}
+		return new Lexer(new BufferedFileScanner(srcFile));
+	}
+	
 	public Token advance() throws LexicalError {
-		return scan();
+		switch (advanceTag()) {
+		case IDENTIFIER:
+			return tokenFactory_.identifier(identifier_);
+		case INTEGER:
+			return tokenFactory_.literal(intValue_);
+		case NUMBER:
+			return tokenFactory_.literal(doubleValue_);
+		case CHAR_LITERAL:
+			return tokenFactory_.literal(charValue_);
+		case STRING_LITERAL:
+			return tokenFactory_.literal(stringValue());
+		default:
+			return tokenFactory_.get(tag_);
+		}
 	}
 	
 	// Token factory
@@ -32,6 +89,94 @@ public class Lexer {
 	public Position position() {
 		return new Position(row_, column_);
 	}
+	
+	// Cursor
+	
+	private Tag tag_;
+	private long tokenPosition_;
+	private int intValue_;
+	private double doubleValue_;
+	private char charValue_;
+	private String identifier_;
+	private IdentifierTable identifiers_;
+	
+	/**
+	 * Moves the cursor to the next token.
+	 * @return Tag of the token, {@link Tag#EOS} at the end of the source.
+	 */
+	public Tag advanceTag() throws LexicalError {
+		tag_ = scan();
+		tokenPosition_ = Position.pack(row_, column_);
+		return tag_;
+	}
+	
+	/**
+	 * @return Tag of the token under the cursor.
+	 */
+	public Tag tag() {
+		return tag_;
+	}
+	
+	/**
+	 * @return Position of the token under the cursor, packed by
+	 * {@link Position#pack(int, int)}. It is the same position a
+	 * {@link Token} of the token would have.
+	 */
+	public long tokenPosition() {
+		return tokenPosition_;
+	}
+	
+	/**
+	 * @return Value of the {@link Tag#INTEGER} under the cursor.
+	 */
+	public int intValue() {
+		return intValue_;
+	}
+	
+	/**
+	 * @return Value of the {@link Tag#NUMBER} under the cursor.
+	 */
+	public double doubleValue() {
+		return doubleValue_;
+	}
+	
+	/**
+	 * @return Value of the {@link Tag#CHAR_LITERAL} under the cursor.
+	 */
+	public char charValue() {
+		return charValue_;
+	}
+	
+	/**
+	 * @return Name of the {@link Tag#IDENTIFIER} under the cursor. Every
+	 * occurrence of a name gives the same string.
+	 */
+	public String identifier() {
+		return identifier_;
+	}
+	
+	/**
+	 * @return Value of the {@link Tag#STRING_LITERAL} under the cursor,
+	 * which is a new string on every call.
+	 */
+	public String stringValue() {
+		return new String(text_, 0, textLength_);
+	}
+	
+	// Text of the current token
+	
+	private char[] text_;
+	private int textLength_;
+	
+	private void clearText() {
+		textLength_ = 0;
+	}
+	
+	private void append(char ch) {
+		if (textLength_ == text_.length)
+			text_ = Arrays.copyOf(text_, text_.length * 2);
+		text_[textLength_++] = ch;
+	}
 
 	// Helper functions of stream operations.
 
@@ -68,12 +213,8 @@ public class Lexer {
 		column_++;
 	}
 
-	private Token select(Tag tokenTag) {
-		return tokenFactory_.get(tokenTag);
-	}
-	
-	private Token select(char cond, Tag then, Tag otherwise) {
-		return tokenFactory_.get(match(cond) ? then : otherwise);
+	private Tag select(char cond, Tag then, Tag otherwise) {
+		return match(cond) ? then : otherwise;
 	}
 
 	private boolean isBinDigit() {
@@ -101,63 +242,37 @@ public class Lexer {
 		return Character.isJavaIdentifierPart(peek);
 	}
 
-	private String scanBinDigits() {
-		StringBuilder sb = new StringBuilder();
+	private void scanBinDigits() {
 		while (isBinDigit())
-			sb.append(next());
-		return sb.toString();
+			append(next());
 	}
 
-	private String scanOctDigits() {
-		StringBuilder sb = new StringBuilder();
+	private void scanOctDigits() {
 		while (isOctDigit())
-			sb.append(next());
-		return sb.toString();
+			append(next());
 	}
 
-	private String scanDigits() throws LexicalError {
-		StringBuilder sb = new StringBuilder();
-		while (isDigit())
-			sb.append(next());
-
-		String str = sb.toString();
-		if (str.equals(""))
+	private void scanDigits() throws LexicalError {
+		if (!isDigit())
 			throw new LexicalError(position(), "expect decimal digits");
-		return str;
-	}
-
-	private String scanDigits(char firstChar) {
-		StringBuilder sb = new StringBuilder();
-		sb.append(firstChar);
 		while (isDigit())
-			sb.append(next());
-		return sb.toString();
+			append(next());
 	}
 
-	private String scanHexDigits() {
-		StringBuilder sb = new StringBuilder();
+	private void scanHexDigits() {
 		while (isHexDigit())
-			sb.append(next());
-		return sb.toString();
-	}
-
-	private String scanIdentifier(char firstChar) {
-		StringBuilder sb = new StringBuilder();
-		sb.append(firstChar);
-		while (isIdentifierPart())
-			sb.append(next());
-		return sb.toString();
+			append(next());
 	}
 
 	// Scan routines
 
-	private Token scan() throws LexicalError {
+	private Tag scan() throws LexicalError {
 		char save;
 		while (true) {
 			switch (save = next()) {
 			// End of file
 			case Scanner.EOF:
-				return select(Tag.EOS);
+				return Tag.EOS;
 
 			// White spaces
 			case '\n':
@@ -168,39 +283,39 @@ public class Lexer {
 
 			// Single character operators
 			case '(':
-				return select(Tag.LPAREN);
+				return Tag.LPAREN;
 			case ')':
-				return select(Tag.RPAREN);
+				return Tag.RPAREN;
 			case '[':
-				return select(Tag.LBRACK);
+				return Tag.LBRACK;
 			case ']':
-				return select(Tag.RBRACK);
+				return Tag.RBRACK;
 			case '{':
-				return select(Tag.LBRACE);
+				return Tag.LBRACE;
 			case '}':
-				return select(Tag.RBRACE);
+				return Tag.RBRACE;
 			case ':':
-				return select(Tag.COLON);
+				return Tag.COLON;
 			case ';':
-				return select(Tag.SEMICOLON);
+				return Tag.SEMICOLON;
 			case '?':
-				return select(Tag.CONDITIONAL);
+				return Tag.CONDITIONAL;
 			case '~':
-				return select(Tag.BIT_NOT);
+				return Tag.BIT_NOT;
 			case ',':
-				return select(Tag.COMMA);
+				return Tag.COMMA;
 
 			case '.': // . ... number-start-with-period
 				if (match('.')) {
 					if (match('.'))
-						return select(Tag.ELLIPSIS);
+						return Tag.ELLIPSIS;
 					else
 						throw new LexicalError(position(), 
 								"expect a period instead of " + peek);
 				} else if (isDigit())
 					return scanNumber(next());
 				else
-					return select(Tag.PERIOD);
+					return Tag.PERIOD;
 				
 			case '!': // ! !=
 				return select('=', Tag.NE, Tag.NOT);
@@ -223,12 +338,12 @@ public class Lexer {
 				
 			case '+': // + ++ +=
 				return match('+')
-						? select(Tag.INC)
+						? Tag.INC
 						: select('=', Tag.ASSIGN_ADD, Tag.ADD);
 				
 			case '-': // - -- -=
 				return match('-')
-						? select(Tag.DEC)
+						? Tag.DEC
 						: select('=', Tag.ASSIGN_SUB, Tag.SUB);
 				
 			case '*': // * *=
@@ -236,13 +351,13 @@ public class Lexer {
 			
 			case '/': // / /= // /*
 				if (match('='))
-					return select(Tag.ASSIGN_DIV);
+					return Tag.ASSIGN_DIV;
 				else if (match('/'))
 					skipSingleLineComment();
 				else if (match('*'))
 					skipMultipleLineComment();
 				else
-					return select(Tag.DIV);
+					return Tag.DIV;
 				break;
 				
 			case '%': // % %=
@@ -250,12 +365,19 @@ public class Lexer {
 
 			// Literals
 			case '0':
-				if (match('x'))
-					return scanInteger(scanHexDigits(), 16);
-				if (match('o'))
-					return scanInteger(scanOctDigits(), 8);
-				if (match('b'))
-					return scanInteger(scanBinDigits(), 2);
+				clearText();
+				if (match('x')) {
+					scanHexDigits();
+					return scanInteger(16);
+				}
+				if (match('o')) {
+					scanOctDigits();
+					return scanInteger(8);
+				}
+				if (match('b')) {
+					scanBinDigits();
+					return scanInteger(2);
+				}
 				return scanIntegerOrNumber('0');
 			case '"':
 				return scanStringLiteral();
@@ -300,91 +422,161 @@ public class Lexer {
 
 	// Integer or number literal
 	
-	private Token scanInteger(String literal, int base) throws LexicalError {
-		try {
-			return tokenFactory_.literal(Integer.parseInt(literal, base));
-		} catch (NumberFormatException e) {
-			throw new LexicalError(position(), e.getMessage());
+	private static final int MAX_EXACT_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	/**
+	 * Reads the digits in the text as an integer of the given base.
+	 */
+	private Tag scanInteger(int base) throws LexicalError {
+		long value = 0;
+		for (int i = 0; i < textLength_ && value <= Integer.MAX_VALUE; i++)
+			value = value * base + Character.digit(text_[i], base);
+		if (textLength_ == 0 || value > Integer.MAX_VALUE) {
+			// let the library say what is wrong with the digits
+			try {
+				value = Integer.parseInt(stringValue(), base);
+			} catch (NumberFormatException e) {
+				throw new LexicalError(position(), e.getMessage());
+			}
 		}
+		intValue_ = (int) value;
+		return Tag.INTEGER;
 	}
 
-	private Token scanIntegerOrNumber(char firstChar) throws LexicalError {
-		String integer = scanDigits(firstChar), fraction = "", exponent = "";
+	private Tag scanIntegerOrNumber(char firstChar) throws LexicalError {
+		clearText();
+		append(firstChar);
+		while (isDigit())
+			append(next());
+		boolean number = false;
 
-		if (match('.'))
-			fraction = scanDigits();
+		if (match('.')) {
+			append('.');
+			scanDigits();
+			number = true;
+		}
 
 		if (match('e') || match('E')) {
-			exponent = "E";
-			if (peek == '+' || peek == '-')
-				exponent += next() + scanDigits();
-			else
-				exponent += scanDigits();
+			scanExponent();
+			number = true;
 		}
 
-		if (fraction.equals("") && exponent.equals(""))
-			return tokenFactory_.literal(Integer.parseInt(integer));
-		return tokenFactory_.literal(Double.parseDouble(String.format("%s.%s%s", 
-				integer, fraction, exponent)));
+		if (!number)
+			return scanInteger(10);
+		doubleValue_ = parseNumber();
+		return Tag.NUMBER;
 	}
 	
-	private Token scanNumber(char firstChar) throws LexicalError {		
-		StringBuilder sb = new StringBuilder();
-		sb.append(scanDigits(firstChar));
-		if (match('e') || match('E')) {
-			sb.append('E');
-			if (peek == '+' || peek == '-')
-				sb.append(next() + scanDigits());
-			else
-				sb.append(scanDigits());
+	private Tag scanNumber(char firstChar) throws LexicalError {
+		// pre-condition: a period was matched before the first digit
+		clearText();
+		append('.');
+		append(firstChar);
+		while (isDigit())
+			append(next());
+		if (match('e') || match('E'))
+			scanExponent();
+		doubleValue_ = parseNumber();
+		return Tag.NUMBER;
+	}
+	
+	private void scanExponent() throws LexicalError {
+		append('E');
+		if (peek == '+' || peek == '-')
+			append(next());
+		scanDigits();
+	}
+	
+	/**
+	 * Reads the text as a number. Most numbers are made of few enough
+	 * digits to be computed exactly from their digits and a power of ten,
+	 * and the others are left to the library.
+	 */
+	private double parseNumber() {
+		long mantissa = 0;
+		int digits = 0, exponent = 0, i = 0;
+		boolean fraction = false;
+		for (; i < textLength_ && text_[i] != 'E'; i++) {
+			char ch = text_[i];
+			if (ch == '.') {
+				fraction = true;
+				continue;
+			}
+			if (mantissa != 0 || ch != '0')
+				digits++;
+			mantissa = mantissa * 10 + (ch - '0');
+			if (fraction)
+				exponent--;
 		}
-		return tokenFactory_.literal(Double.parseDouble(sb.toString()));
+		if (i < textLength_) {
+			boolean negative = text_[++i] == '-';
+			if (negative || text_[i] == '+')
+				i++;
+			int value = 0;
+			for (; i < textLength_ && value < 1000; i++)
+				value = value * 10 + (text_[i] - '0');
+			exponent += negative ? -value : value;
+		}
+		
+		if (mantissa == 0)
+			return 0.0;
+		if (digits <= MAX_EXACT_DIGITS && exponent >= -22 && exponent <= 22)
+			return exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent]
+					: mantissa * POWERS_OF_TEN[exponent];
+		return Double.parseDouble(stringValue());
 	}
 
 	// String literal
 
-	private Token scanStringLiteral() throws LexicalError {
-		StringBuilder sb = new StringBuilder();
+	private Tag scanStringLiteral() throws LexicalError {
+		clearText();
 		while (!match('"')) {
 			if (peek == '\\')
-				scanStringEscape(sb);
+				scanStringEscape();
+			else if (peek == Scanner.EOF)
+				throw new LexicalError(position(),
+						"unexpected EOF in string literal");
 			else
-				sb.append(next());
+				append(next());
 		}
-		return tokenFactory_.literal(sb.toString());
+		return Tag.STRING_LITERAL;
 	}
 
-	private void scanStringEscape(StringBuilder sb) throws LexicalError {
+	private void scanStringEscape() throws LexicalError {
 		// pre-condition: peek == '\\'
 		expect('\\');
 		char save = next();
 		int codepoint;
 		switch (save) {
 		case 'n':
-			sb.append('\n');
+			append('\n');
 			break;
 		case 'r':
-			sb.append('\r');
+			append('\r');
 			break;
 		case 't':
-			sb.append('\t');
+			append('\t');
 			break;
 		case '"':
-			sb.append('"');
+			append('"');
 			break;
 		case '\\':
-			sb.append('\\');
+			append('\\');
 			break;
 		case 'u':
 			// Scan Unicode string escape.
 			// Range: [0,0x10FFFF]
 			// Examples: \uC0DE \uDEAD \u10FFFF
-			codepoint = Integer.parseInt(scanHexDigits(), 16);
+			codepoint = scanHexValue();
 			if (codepoint > 0xFFFF) {
-				sb.append(Character.highSurrogate(codepoint));
-				sb.append(Character.lowSurrogate(codepoint));
+				append(Character.highSurrogate(codepoint));
+				append(Character.lowSurrogate(codepoint));
 			} else {
-				sb.append((char) codepoint);
+				append((char) codepoint);
 			}
 			break;
 		default:
@@ -392,10 +584,27 @@ public class Lexer {
 					"unrecognized character '%c' in character escape", save));
 		}
 	}
+	
+	/**
+	 * Reads the hexadecimal digits of a Unicode escape, which cannot be
+	 * collected in the text since they are inside a literal.
+	 */
+	private int scanHexValue() throws LexicalError {
+		if (!isHexDigit())
+			throw new LexicalError(position(), "expect hexadecimal digits");
+		long value = 0;
+		while (isHexDigit()) {
+			value = value * 16 + Character.digit(next(), 16);
+			if (value > Integer.MAX_VALUE)
+				throw new LexicalError(position(),
+						"Unicode escape is too large");
+		}
+		return (int) value;
+	}
 
 	// Character literal
 
-	private Token scanCharLiteral() throws LexicalError {
+	private Tag scanCharLiteral() throws LexicalError {
 		char ch = '\0';
 
 		if (peek == '\\') // character escape
@@ -407,7 +616,8 @@ public class Lexer {
 			ch = next();
 
 		expect('\'');
-		return tokenFactory_.literal(ch);
+		charValue_ = ch;
+		return Tag.CHAR_LITERAL;
 	}
 
 	private char scanCharEscape() throws LexicalError {
@@ -430,7 +640,7 @@ public class Lexer {
 			// Scan Unicode character escape.
 			// Range: [0,0xFFFF]
 			// Examples: \uC0DE \uDEAD
-			codepoint = Integer.parseInt(scanHexDigits(), 16);
+			codepoint = scanHexValue();
 			if (codepoint > 0xFFFF)
 				throw new LexicalError(position(), String.format(
 						"character escapee exceeds the limit of UTF16"));
@@ -442,10 +652,16 @@ public class Lexer {
 		}
 	}
 
-	private Token scanIdentifierOrKeyword(char firstChar) {
-		String id = scanIdentifier(firstChar);
-		return TokenFactory.isKeyword(id) ?
-				tokenFactory_.keyword(id) : tokenFactory_.identifier(id);
+	private Tag scanIdentifierOrKeyword(char firstChar) {
+		clearText();
+		append(firstChar);
+		while (isIdentifierPart())
+			append(next());
+		Tag keyword = Keywords.lookup(text_, textLength_);
+		if (keyword != null)
+			return keyword;
+		identifier_ = identifiers_.intern(text_, textLength_);
+		return Tag.IDENTIFIER;
 	}
 
-}
\ No newline at end of file
+}
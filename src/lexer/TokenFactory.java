@@ -1,7 +1,5 @@
 package lexer;
 
-import java.util.HashMap;
-
 public class TokenFactory {
 
 	public TokenFactory(Lexer lexer) {
@@ -23,33 +21,28 @@ public class TokenFactory {
 	}
 
 	public Token literal(int value) {
-		return new Token(lexer_.position(), Tag.INTEGER, new Integer(value));
+		return new Token(lexer_.position(), Tag.INTEGER,
+				Integer.valueOf(value));
 	}
 
 	public Token literal(double value) {
-		return new Token(lexer_.position(), Tag.NUMBER, new Double(value));
+		return new Token(lexer_.position(), Tag.NUMBER,
+				Double.valueOf(value));
 	}
 
 	public Token literal(char ch) {
-		return new Token(lexer_.position(), Tag.CHAR_LITERAL, new Character(ch));
+		return new Token(lexer_.position(), Tag.CHAR_LITERAL,
+				Character.valueOf(ch));
 	}
 	
 	public Token keyword(String str) {
-		return new Token(lexer_.position(), keywordMap_.get(str));
+		return new Token(lexer_.position(), Keywords.lookup(str));
 	}
 	
 	// Keywords
 	
-	private static final HashMap<String, Tag> keywordMap_ = new HashMap<String, Tag>();
-
 	public static boolean isKeyword(String str) {
-		return keywordMap_.containsKey(str);
-	}
-
-	static {
-		for (Tag tag : Tag.values())
-			if (tag.type() == TokenType.KEYWORD)
-				keywordMap_.put(tag.literal(), tag);
+		return Keywords.lookup(str) != null;
 	}
 
 }
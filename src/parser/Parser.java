@@ -203,7 +203,7 @@ public class Parser {
 		Assignment assign = null;
 		if (match(Tag.ASSIGN)) {
 			assign = astNodeFactory_.newAssignment(
-				Tag.INIT_CONST,
+				Tag.INIT_LET,
 				astNodeFactory_.newReference(symb),
 				parseExpression());
 		}
@@ -648,7 +648,7 @@ public class Parser {
 			eg = new ExpressionGroup(new ArrayList<Expression>());
 		} else {
 			Expression first = parseExpression();
-			if (match(Tag.COMMA)) {
+			if (peek.tag() == Tag.COMMA) {
 				eg = parseExpressionGroup(first);
 			} else {
 				ArrayList<Expression> lst = new ArrayList<Expression>();
@@ -697,9 +697,9 @@ public class Parser {
 		Token comma = expect(Tag.COMMA);
 		
 		group.add(first);
-		while (match(Tag.COMMA)) {
+		do {
 			group.add(parseExpression(comma.lbp()));
-		}
+		} while (match(Tag.COMMA));
 		return astNodeFactory_.newExpressionGroup(group);
 	}
 
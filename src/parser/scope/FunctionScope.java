@@ -44,6 +44,16 @@ public class FunctionScope extends Scope {
 		return localIDAllocator_.allocate();
 	}
 
+	/**
+	 * Defines a local which no name refers to, such as one the compiler
+	 * keeps the argument of an inlined call in.
+	 */
+	public VariableSymbol defineTemporary(String t) {
+		VariableSymbol symb = new VariableSymbol(this, allocateSymbolID(), t);
+		registerSymbol(symb);
+		return symb;
+	}
+
 	@Override
 	public ArgumentSymbol defineArgument(String t) throws SyntaxError {
 		if (arguments_.contains(t)) {
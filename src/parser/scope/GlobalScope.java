@@ -15,12 +15,14 @@ public class GlobalScope extends Scope {
 	public GlobalScope(Context context) {
 		super(context, null);
 		idAllocator_ = new IDAllocator();
+		functionIDAllocator_ = new IDAllocator();
 		globals_ = new LookupTable<Symbol>();
 		definedFunctions_ = new ArrayList<FunctionSymbol>();
 		definedGlobals_ = new ArrayList<Symbol>();
 	}
 	
 	private IDAllocator idAllocator_;
+	private IDAllocator functionIDAllocator_;
 	private LookupTable<Symbol> globals_;
 	private ArrayList<FunctionSymbol> definedFunctions_;
 	private ArrayList<Symbol> definedGlobals_;
@@ -65,8 +67,10 @@ public class GlobalScope extends Scope {
 			reportError(String.format("duplicated function name: \"%s\"", t));
 			return null;
 		} else {
-			FunctionSymbol symb =
-					new FunctionSymbol(this, allocateSymbolID(), t);
+			// functions are numbered apart from global fields, so that
+			// the ID is also the index of the function in its module
+			FunctionSymbol symb = new FunctionSymbol(
+					this, functionIDAllocator_.allocate(), t);
 			globals_.insert(symb);
 			definedFunctions_.add(symb);
 			return symb;
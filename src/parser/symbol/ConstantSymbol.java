@@ -1,16 +1,32 @@
 package parser.symbol;
 
 import parser.scope.Scope;
+import runtime.RuntimeObject;
 
 public class ConstantSymbol extends Symbol {
 
 	public ConstantSymbol(Scope scope, int id, String name) {
 		super(scope, id, name);
+		value_ = null;
 	}
 	
+	private RuntimeObject value_;
+	
 	@Override
 	public boolean isContant() {
-		return false;
+		return true;
+	}
+	
+	/**
+	 * @return Value of the constant if it is known at compile time,
+	 * otherwise null.
+	 */
+	public RuntimeObject value() {
+		return value_;
+	}
+	
+	public void setValue(RuntimeObject value) {
+		value_ = value;
 	}
 
 }
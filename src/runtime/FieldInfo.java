@@ -7,8 +7,8 @@ public class FieldInfo {
 		name_ = name;
 	}
 	
-	private int id_;
-	private String name_;
+	private final int id_;
+	private final String name_;
 	
 	public int id() {
 		return id_;
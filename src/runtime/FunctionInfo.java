@@ -21,11 +21,19 @@ public class FunctionInfo {
 		byteCode_ = code;
 	}
 	
-	private int id_;
-	private String name_;
-	private FieldInfo[] arguments_;
-	private FieldInfo[] locals_;
-	private ByteCode byteCode_;
+	private final int id_;
+	private final String name_;
+	private final FieldInfo[] arguments_;
+	private final FieldInfo[] locals_;
+	private final ByteCode byteCode_;
+	
+	public int id() {
+		return id_;
+	}
+	
+	public String name() {
+		return name_;
+	}
 	
 	public int argumentCount() {
 		return arguments_.length;
@@ -35,8 +43,20 @@ public class FunctionInfo {
 		return locals_.length;
 	}
 	
+	public FieldInfo argument(int i) {
+		return arguments_[i];
+	}
+	
+	public FieldInfo local(int i) {
+		return locals_[i];
+	}
+	
+	public int maxStackDepth() {
+		return byteCode().maxStackDepth();
+	}
+	
 	public Iterator<Instruction> iterator() {
-		return byteCode_.iterator();
+		return byteCode().iterator();
 	}
 	
 	public ByteCode byteCode() {
@@ -54,8 +74,9 @@ public class FunctionInfo {
 		for (int i = 0; i < locals_.length; i++)
 			sb.append(locals_[i].inspect() + '\n');
 		sb.append(")\n");
+		sb.append("max stack: " + maxStackDepth() + '\n');
 		sb.append("instructions (\n");
-		Iterator<Instruction> it = byteCode_.iterator();
+		Iterator<Instruction> it = iterator();
 		for (int i = 0; it.hasNext(); i++) {
 			Instruction ins = it.next();
 			sb.append(i);
@@ -6,6 +6,10 @@ import compiler.ByteCode;
 import compiler.Instruction;
 import compiler.StaticPool;
 
+/**
+ * A compiled module. It does not change once it is made, so one module can
+ * be loaded and run by any number of threads.
+ */
 public class ModuleInfo {
 
 	public ModuleInfo(
@@ -15,19 +19,37 @@ public class ModuleInfo {
 			FunctionInfo[] functions,
 			FunctionInfo entryPoint
 			) {
-		functions_ = functions;
-		globals_ = globals;
+		this(staticPool, globals, prologue, functions, entryPoint,
+				new String[0]);
+	}
+	
+	/**
+	 * @param inlining What became of the calls the compiler considered
+	 * inlining, one line each.
+	 */
+	public ModuleInfo(
+			StaticPool staticPool,
+			FieldInfo[] globals,
+			ByteCode prologue,
+			FunctionInfo[] functions,
+			FunctionInfo entryPoint,
+			String[] inlining
+			) {
+		functions_ = functions.clone();
+		globals_ = globals.clone();
 		entryPoint_ = entryPoint;
 		prologue_ = prologue;
-		staticPool_ = staticPool;
+		staticPool_ = staticPool.freeze();
+		inlining_ = inlining.clone();
 	}
 	
-	private FunctionInfo[] functions_;
-	private FieldInfo[] globals_;
+	private final FunctionInfo[] functions_;
+	private final FieldInfo[] globals_;
 	
-	private FunctionInfo entryPoint_;
-	private ByteCode prologue_;
-	private StaticPool staticPool_;
+	private final FunctionInfo entryPoint_;
+	private final ByteCode prologue_;
+	private final StaticPool staticPool_;
+	private final String[] inlining_;
 	
 	public FunctionInfo entryPoint() {
 		return entryPoint_;
@@ -45,10 +67,18 @@ public class ModuleInfo {
 		return functions_[i];
 	}
 	
+	public int functionCount() {
+		return functions_.length;
+	}
+	
 	public int getGlobalFieldCount() {
 		return globals_.length;
 	}
 	
+	public FieldInfo getGlobalField(int i) {
+		return globals_[i];
+	}
+	
 	public String inspect() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("globals (\n");
@@ -69,6 +99,12 @@ public class ModuleInfo {
 		for (int i = 0; i < functions_.length; i++)
 			sb.append(functions_[i].inspect() + '\n');
 		sb.append("}\n");
+		if (inlining_.length > 0) {
+			sb.append("inlining (\n");
+			for (String decision : inlining_)
+				sb.append(decision + '\n');
+			sb.append(")\n");
+		}
 		return sb.toString();
 	}
 
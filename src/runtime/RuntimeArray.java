@@ -1,39 +1,247 @@
 package runtime;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 
 import utils.RuntimeError;
 
+/**
+ * An array of a fixed size. Its elements are kept in an array of the
+ * primitive type they share, if they are all integers, numbers, characters
+ * or booleans, and as objects otherwise. Storing an element of another
+ * type moves them into an array of objects for good.
+ */
 public class RuntimeArray extends RuntimeObject {
 
+	// storages of the elements
+	public static final int OBJECTS = 0;
+	public static final int INTEGERS = 1;
+	public static final int NUMBERS = 2;
+	public static final int CHARACTERS = 3;
+	public static final int BOOLEANS = 4;
+
 	public RuntimeArray() {
-		elems_ = null;
+		this(new ArrayList<RuntimeObject>());
 	}
 	
 	public RuntimeArray(ArrayList<RuntimeObject> elems) {
-		elems_ = new ArrayList<RuntimeObject>();
-		elems_.addAll(elems);
+		size_ = elems.size();
+		storage_ = storageOf(elems);
+		switch (storage_) {
+		case INTEGERS:
+			ints_ = new int[size_];
+			for (int i = 0; i < size_; i++)
+				ints_[i] = ((RuntimeInteger) elems.get(i)).value();
+			break;
+		case NUMBERS:
+			numbers_ = new double[size_];
+			for (int i = 0; i < size_; i++)
+				numbers_[i] = ((RuntimeNumber) elems.get(i)).value();
+			break;
+		case CHARACTERS:
+			chars_ = new char[size_];
+			for (int i = 0; i < size_; i++)
+				chars_[i] = ((RuntimeCharacter) elems.get(i)).value();
+			break;
+		case BOOLEANS:
+			bools_ = new boolean[size_];
+			for (int i = 0; i < size_; i++)
+				bools_[i] = ((RuntimeBoolean) elems.get(i)).value();
+			break;
+		default:
+			objects_ = elems.toArray(new RuntimeObject[size_]);
+		}
+	}
+	
+	private RuntimeArray(RuntimeArray that) {
+		size_ = that.size_;
+		storage_ = that.storage_;
+		switch (storage_) {
+		case INTEGERS:
+			ints_ = that.ints_.clone();
+			break;
+		case NUMBERS:
+			numbers_ = that.numbers_.clone();
+			break;
+		case CHARACTERS:
+			chars_ = that.chars_.clone();
+			break;
+		case BOOLEANS:
+			bools_ = that.bools_.clone();
+			break;
+		default:
+			objects_ = that.objects_.clone();
+		}
 	}
 	
-	private ArrayList<RuntimeObject> elems_;
+	private final int size_;
+	private int storage_;
+	// the array of the storage, and the one it had before it was moved
+	// into objects
+	private int[] ints_;
+	private double[] numbers_;
+	private char[] chars_;
+	private boolean[] bools_;
+	private RuntimeObject[] objects_;
+	
+	private static int storageOf(ArrayList<RuntimeObject> elems) {
+		if (elems.isEmpty())
+			return OBJECTS;
+		Class<?> type = elems.get(0).getClass();
+		for (RuntimeObject elem : elems)
+			if (elem.getClass() != type)
+				return OBJECTS;
+		if (type == RuntimeInteger.class)
+			return INTEGERS;
+		if (type == RuntimeNumber.class)
+			return NUMBERS;
+		if (type == RuntimeCharacter.class)
+			return CHARACTERS;
+		if (type == RuntimeBoolean.class)
+			return BOOLEANS;
+		return OBJECTS;
+	}
+	
+	/**
+	 * @return How the elements are kept, {@link #OBJECTS} or the type they
+	 * share.
+	 */
+	public int storage() {
+		return storage_;
+	}
 	
 	public RuntimeObject get(RuntimeObject index) throws RuntimeError {
-		if (index instanceof RuntimeInteger) {
-			int i = ((RuntimeInteger) index).value();
-			return elems_.get(i);
-		} else {
-			throw new RuntimeError("index must be an integer");
-		}
+		return get(indexOf(index));
 	}
 	
 	public void set(RuntimeObject index, RuntimeObject value)
 			throws RuntimeError {
-		if (index instanceof RuntimeInteger) {
-			int i = ((RuntimeInteger) index).value();
-			elems_.set(i, value);
+		set(indexOf(index), value);
+	}
+	
+	private static int indexOf(RuntimeObject index) throws RuntimeError {
+		if (index instanceof RuntimeInteger)
+			return ((RuntimeInteger) index).value();
+		throw new RuntimeError("index must be an integer");
+	}
+	
+	private void checkIndex(int i) throws RuntimeError {
+		if (i < 0 || i >= size_)
+			throw new RuntimeError(String.format(
+					"index %d out of bounds of an array of %d", i, size_));
+	}
+	
+	public RuntimeObject get(int i) throws RuntimeError {
+		checkIndex(i);
+		return element(i);
+	}
+	
+	public void set(int i, RuntimeObject value) throws RuntimeError {
+		checkIndex(i);
+		switch (storage_) {
+		case INTEGERS:
+			if (value instanceof RuntimeInteger) {
+				ints_[i] = ((RuntimeInteger) value).value();
+				return;
+			}
+			break;
+		case NUMBERS:
+			if (value instanceof RuntimeNumber) {
+				numbers_[i] = ((RuntimeNumber) value).value();
+				return;
+			}
+			break;
+		case CHARACTERS:
+			if (value instanceof RuntimeCharacter) {
+				chars_[i] = ((RuntimeCharacter) value).value();
+				return;
+			}
+			break;
+		case BOOLEANS:
+			if (value instanceof RuntimeBoolean) {
+				bools_[i] = ((RuntimeBoolean) value).value();
+				return;
+			}
+			break;
+		}
+		generalize();
+		objects_[i] = value;
+	}
+	
+	/**
+	 * Integer at an index of an array of {@link #INTEGERS}.
+	 */
+	public int integerAt(int i) throws RuntimeError {
+		checkIndex(i);
+		return ints_[i];
+	}
+	
+	/**
+	 * Number at an index of an array of {@link #NUMBERS}.
+	 */
+	public double numberAt(int i) throws RuntimeError {
+		checkIndex(i);
+		return numbers_[i];
+	}
+	
+	/**
+	 * Stores an integer without boxing it unless the array has to be
+	 * moved into objects.
+	 */
+	public void setInteger(int i, int value) throws RuntimeError {
+		if (storage_ == INTEGERS) {
+			checkIndex(i);
+			ints_[i] = value;
 		} else {
-			throw new RuntimeError("index must be an integer");
+			set(i, RuntimeObjectFactory.integer(value));
+		}
+	}
+	
+	/**
+	 * Stores a number without boxing it unless the array has to be moved
+	 * into objects.
+	 */
+	public void setNumber(int i, double value) throws RuntimeError {
+		if (storage_ == NUMBERS) {
+			checkIndex(i);
+			numbers_[i] = value;
+		} else {
+			set(i, RuntimeObjectFactory.number(value));
+		}
+	}
+	
+	/**
+	 * Moves the elements into an array of objects.
+	 */
+	private void generalize() {
+		if (storage_ == OBJECTS)
+			return;
+		RuntimeObject[] objects = new RuntimeObject[size_];
+		for (int i = 0; i < size_; i++)
+			objects[i] = element(i);
+		objects_ = objects;
+		storage_ = OBJECTS;
+		ints_ = null;
+		numbers_ = null;
+		chars_ = null;
+		bools_ = null;
+	}
+	
+	public int size() {
+		return size_;
+	}
+	
+	public RuntimeObject element(int i) {
+		switch (storage_) {
+		case INTEGERS:
+			return RuntimeObjectFactory.integer(ints_[i]);
+		case NUMBERS:
+			return RuntimeObjectFactory.number(numbers_[i]);
+		case CHARACTERS:
+			return RuntimeObjectFactory.character(chars_[i]);
+		case BOOLEANS:
+			return RuntimeObjectFactory.bool(bools_[i]);
+		default:
+			return objects_[i];
 		}
 	}
 	
@@ -41,13 +249,10 @@ public class RuntimeArray extends RuntimeObject {
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append('[');
-		Iterator<? extends RuntimeObject> it = elems_.iterator();
-		if (it.hasNext()) {
-			sb.append(it.next().toString());
-			while (it.hasNext()) {
+		for (int i = 0; i < size_; i++) {
+			if (i > 0)
 				sb.append(", ");
-				sb.append(it.next().toString());
-			}
+			sb.append(element(i).toString());
 		}
 		sb.append(']');
 		return sb.toString();
@@ -72,10 +277,10 @@ public class RuntimeArray extends RuntimeObject {
 	public boolean equals(RuntimeObject that) {
 		if (that instanceof RuntimeArray) {
 			RuntimeArray rhs = (RuntimeArray) that; 
-			if (elems_.size() != rhs.elems_.size())
+			if (size_ != rhs.size_)
 				return false;
-			for (int i = 0; i < elems_.size(); i++) {
-				if (!elems_.get(i).equals(rhs.elems_.get(i)))
+			for (int i = 0; i < size_; i++) {
+				if (!element(i).equals(rhs.element(i)))
 					return false;
 			}
 			return true;
@@ -112,10 +317,9 @@ public class RuntimeArray extends RuntimeObject {
 		return RuntimeObjectType.ARRAY;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public RuntimeObject copy() {
-		return new RuntimeArray((ArrayList<RuntimeObject>) elems_.clone());
+		return new RuntimeArray(this);
 	}
 
 	@Override
@@ -4,11 +4,18 @@ import utils.RuntimeError;
 
 public class RuntimeBoolean extends RuntimeObject {
 
-	public RuntimeBoolean(boolean value) {
+	/**
+	 * Use {@link RuntimeObjectFactory#bool(boolean)} to get an instance.
+	 */
+	RuntimeBoolean(boolean value) {
 		value_ = value;
 	}
 	
-	private boolean value_;
+	private final boolean value_;
+	
+	public boolean value() {
+		return value_;
+	}
 	
 	@Override
 	public boolean isBoolean() {
@@ -27,7 +34,7 @@ public class RuntimeBoolean extends RuntimeObject {
 
 	@Override
 	public boolean isFalsy() {
-		return value_;
+		return !value_;
 	}
 
 	@Override
@@ -65,7 +72,7 @@ public class RuntimeBoolean extends RuntimeObject {
 
 	@Override
 	public RuntimeObject copy() {
-		return new RuntimeBoolean(value_);
+		return this; // immutable
 	}
 
 	@Override
@@ -117,30 +124,27 @@ public class RuntimeBoolean extends RuntimeObject {
 
 	@Override
 	public RuntimeObject and(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.bool(value_ & booleanOf(rhs, "and"));
 	}
 
 	@Override
 	public RuntimeObject or(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.bool(value_ | booleanOf(rhs, "or"));
 	}
 
 	@Override
 	public RuntimeObject xor(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.bool(value_ ^ booleanOf(rhs, "xor"));
 	}
 
 	@Override
 	public RuntimeObject negative() throws RuntimeError {
-		return new RuntimeBoolean(!value_);
+		return RuntimeObjectFactory.bool(!value_);
 	}
 
 	@Override
 	public RuntimeObject not() throws RuntimeError {
-		return new RuntimeBoolean(!value_);
+		return RuntimeObjectFactory.bool(!value_);
 	}
 
 	@Override
@@ -152,5 +156,14 @@ public class RuntimeBoolean extends RuntimeObject {
 	public RuntimeObject decrease() throws RuntimeError {
 		throw new RuntimeError("cannot perform decrement on a boolean");
 	}
+	
+	private static boolean booleanOf(RuntimeObject rhs, String operation)
+			throws RuntimeError {
+		if (rhs instanceof RuntimeBoolean)
+			return ((RuntimeBoolean) rhs).value_;
+		throw new RuntimeError(String.format(
+				"cannot perform %s on boolean and %s",
+				operation, rhs.getType()));
+	}
 
 }
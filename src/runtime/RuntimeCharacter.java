@@ -8,7 +8,16 @@ public class RuntimeCharacter extends RuntimeObject {
 		value_ = value;
 	}
 	
-	private char value_;
+	private final char value_;
+	
+	public char value() {
+		return value_;
+	}
+	
+	@Override
+	public String toString() {
+		return String.valueOf(value_);
+	}
 	
 	@Override
 	public boolean isCharacter() {
@@ -22,20 +31,17 @@ public class RuntimeCharacter extends RuntimeObject {
 
 	@Override
 	public boolean isFalsy() {
-		// TODO Auto-generated method stub
 		return value_ == '\0';
 	}
 
 	@Override
 	public RuntimeObject copy() {
-		// TODO Auto-generated method stub
-		return null;
+		return this; // immutable
 	}
 
 	@Override
 	public RuntimeObjectType getType() {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectType.CHARACTER;
 	}
 
 	@Override
@@ -46,107 +52,126 @@ public class RuntimeCharacter extends RuntimeObject {
 
 	@Override
 	public boolean equals(RuntimeObject rhs) {
-		// TODO Auto-generated method stub
+		if (rhs instanceof RuntimeCharacter)
+			return value_ == ((RuntimeCharacter) rhs).value_;
 		return false;
 	}
 
 	@Override
 	public boolean lessThan(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return value_ < characterOf(rhs, "comparison");
 	}
 
 	@Override
 	public boolean greatThan(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return value_ > characterOf(rhs, "comparison");
 	}
 
 	@Override
 	public boolean lessThanOrEqual(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return value_ <= characterOf(rhs, "comparison");
 	}
 
 	@Override
 	public boolean greatThanOrEqual(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return value_ >= characterOf(rhs, "comparison");
 	}
 
+	/**
+	 * Makes a string of this character and a string or a character.
+	 */
 	@Override
 	public RuntimeObject add(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform add on null value");
+		if (rhs instanceof RuntimeString)
+			return RuntimeObjectFactory.string(toString()).add(rhs);
+		if (rhs instanceof RuntimeCharacter)
+			return RuntimeObjectFactory.string(toString() + rhs.toString());
+		throw new RuntimeError(String.format(
+				"cannot perform addition on character and %s",
+				rhs.getType()));
 	}
 
 	@Override
 	public RuntimeObject subtract(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform substract on null value");
+		throw new RuntimeError("cannot perform subtraction on a character");
 	}
 
 	@Override
 	public RuntimeObject multiply(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform multiply on null value");
+		throw new RuntimeError(
+				"cannot perform multiplication on a character");
 	}
 
 	@Override
 	public RuntimeObject divide(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform divide on null value");
+		throw new RuntimeError("cannot perform division on a character");
 	}
 
 	@Override
 	public RuntimeObject modulus(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform modulus on null value");
+		throw new RuntimeError("cannot perform modulus on a character");
 	}
 
 	@Override
 	public RuntimeObject shl(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform shl on null value");
+		throw new RuntimeError(
+				"cannot perform left-shifting on a character");
 	}
 
 	@Override
 	public RuntimeObject shr(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform shr on null value");
+		throw new RuntimeError(
+				"cannot perform right-shifting on a character");
 	}
 
 	@Override
 	public RuntimeObject sar(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform sar on null value");
+		throw new RuntimeError(
+				"cannot perform unsigned right-shifting on a character");
 	}
 
 	@Override
 	public RuntimeObject and(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform and on null value");
+		throw new RuntimeError("cannot perform and on a character");
 	}
 
 	@Override
 	public RuntimeObject or(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform or on null value");
+		throw new RuntimeError("cannot perform or on a character");
 	}
 
 	@Override
 	public RuntimeObject xor(RuntimeObject rhs) throws RuntimeError {
-		throw new RuntimeError("cannot perform xor on null value");
+		throw new RuntimeError("cannot perform xor on a character");
 	}
 
 	@Override
 	public RuntimeObject negative() throws RuntimeError {
-		throw new RuntimeError("cannot perform negative on null value");
+		throw new RuntimeError("cannot perform negation on a character");
 	}
 
 	@Override
 	public RuntimeObject not() throws RuntimeError {
-		throw new RuntimeError("cannot perform not on null value");
+		throw new RuntimeError("cannot perform not on a character");
 	}
 
 	@Override
 	public RuntimeObject increase() throws RuntimeError {
-		throw new RuntimeError("cannot perform increase on null value");
+		return RuntimeObjectFactory.character((char) (value_ + 1));
 	}
 
 	@Override
 	public RuntimeObject decrease() throws RuntimeError {
-		throw new RuntimeError("cannot perform decrease on null value");
+		return RuntimeObjectFactory.character((char) (value_ - 1));
+	}
+	
+	private static char characterOf(RuntimeObject rhs, String operation)
+			throws RuntimeError {
+		if (rhs instanceof RuntimeCharacter)
+			return ((RuntimeCharacter) rhs).value_;
+		throw new RuntimeError(String.format(
+				"cannot perform %s on character and %s",
+				operation, rhs.getType()));
 	}
 
 }
@@ -4,16 +4,24 @@ import utils.RuntimeError;
 
 public class RuntimeInteger extends RuntimeObject {
 
-	public RuntimeInteger(int value) {
+	/**
+	 * Use {@link RuntimeObjectFactory#integer(int)} to get an instance.
+	 */
+	RuntimeInteger(int value) {
 		value_ = value;
 	}
 	
-	private int value_;
+	private final int value_;
 	
 	public int value() {
 		return value_;
 	}
 	
+	@Override
+	public String toString() {
+		return Integer.toString(value_);
+	}
+	
 	@Override
 	public boolean isInteger() {
 		return true;
@@ -31,14 +39,12 @@ public class RuntimeInteger extends RuntimeObject {
 
 	@Override
 	public RuntimeObject copy() {
-		// TODO Auto-generated method stub
-		return null;
+		return this; // immutable
 	}
 
 	@Override
 	public RuntimeObjectType getType() {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectType.INTEGER;
 	}
 
 	@Override
@@ -49,122 +55,161 @@ public class RuntimeInteger extends RuntimeObject {
 
 	@Override
 	public boolean equals(RuntimeObject rhs) {
-		// TODO Auto-generated method stub
+		if (rhs instanceof RuntimeInteger)
+			return value_ == ((RuntimeInteger) rhs).value_;
+		if (rhs instanceof RuntimeNumber)
+			return value_ == ((RuntimeNumber) rhs).value();
 		return false;
 	}
 
 	@Override
 	public boolean lessThan(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		if (rhs instanceof RuntimeInteger)
+			return value_ < ((RuntimeInteger) rhs).value_;
+		return value_ < numberOf(rhs, "comparison");
 	}
 
 	@Override
 	public boolean greatThan(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		if (rhs instanceof RuntimeInteger)
+			return value_ > ((RuntimeInteger) rhs).value_;
+		return value_ > numberOf(rhs, "comparison");
 	}
 
 	@Override
 	public boolean lessThanOrEqual(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		if (rhs instanceof RuntimeInteger)
+			return value_ <= ((RuntimeInteger) rhs).value_;
+		return value_ <= numberOf(rhs, "comparison");
 	}
 
 	@Override
 	public boolean greatThanOrEqual(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		if (rhs instanceof RuntimeInteger)
+			return value_ >= ((RuntimeInteger) rhs).value_;
+		return value_ >= numberOf(rhs, "comparison");
 	}
 
 	@Override
 	public RuntimeObject add(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		if (rhs instanceof RuntimeInteger)
+			return RuntimeObjectFactory.integer(
+					value_ + ((RuntimeInteger) rhs).value_);
+		return RuntimeObjectFactory.number(
+				value_ + numberOf(rhs, "addition"));
 	}
 
 	@Override
 	public RuntimeObject subtract(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		if (rhs instanceof RuntimeInteger)
+			return RuntimeObjectFactory.integer(
+					value_ - ((RuntimeInteger) rhs).value_);
+		return RuntimeObjectFactory.number(
+				value_ - numberOf(rhs, "subtraction"));
 	}
 
 	@Override
 	public RuntimeObject multiply(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		if (rhs instanceof RuntimeInteger)
+			return RuntimeObjectFactory.integer(
+					value_ * ((RuntimeInteger) rhs).value_);
+		return RuntimeObjectFactory.number(
+				value_ * numberOf(rhs, "multiplication"));
 	}
 
 	@Override
 	public RuntimeObject divide(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		if (rhs instanceof RuntimeInteger) {
+			int divisor = ((RuntimeInteger) rhs).value_;
+			if (divisor == 0)
+				throw new RuntimeError("integer division by zero");
+			return RuntimeObjectFactory.integer(value_ / divisor);
+		}
+		return RuntimeObjectFactory.number(
+				value_ / numberOf(rhs, "division"));
 	}
 
 	@Override
 	public RuntimeObject modulus(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		if (rhs instanceof RuntimeInteger) {
+			int divisor = ((RuntimeInteger) rhs).value_;
+			if (divisor == 0)
+				throw new RuntimeError("integer modulus by zero");
+			return RuntimeObjectFactory.integer(value_ % divisor);
+		}
+		return RuntimeObjectFactory.number(
+				value_ % numberOf(rhs, "modulus"));
 	}
 
 	@Override
 	public RuntimeObject shl(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(
+				value_ << integerOf(rhs, "left-shifting"));
 	}
 
 	@Override
 	public RuntimeObject shr(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(
+				value_ >> integerOf(rhs, "right-shifting"));
 	}
 
 	@Override
 	public RuntimeObject sar(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(
+				value_ >>> integerOf(rhs, "unsigned right-shifting"));
 	}
 
 	@Override
 	public RuntimeObject and(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(value_ & integerOf(rhs, "and"));
 	}
 
 	@Override
 	public RuntimeObject or(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(value_ | integerOf(rhs, "or"));
 	}
 
 	@Override
 	public RuntimeObject xor(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(value_ ^ integerOf(rhs, "xor"));
 	}
 
 	@Override
 	public RuntimeObject negative() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(-value_);
 	}
 
 	@Override
 	public RuntimeObject not() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(~value_);
 	}
 
 	@Override
 	public RuntimeObject increase() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(value_ + 1);
 	}
 
 	@Override
 	public RuntimeObject decrease() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.integer(value_ - 1);
+	}
+	
+	private static int integerOf(RuntimeObject rhs, String operation)
+			throws RuntimeError {
+		if (rhs instanceof RuntimeInteger)
+			return ((RuntimeInteger) rhs).value_;
+		throw new RuntimeError(String.format(
+				"cannot perform %s on integer and %s",
+				operation, rhs.getType()));
+	}
+	
+	private static double numberOf(RuntimeObject rhs, String operation)
+			throws RuntimeError {
+		if (rhs instanceof RuntimeNumber)
+			return ((RuntimeNumber) rhs).value();
+		throw new RuntimeError(String.format(
+				"cannot perform %s on integer and %s",
+				operation, rhs.getType()));
 	}
 
 }
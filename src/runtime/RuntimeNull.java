@@ -4,10 +4,18 @@ import utils.RuntimeError;
 
 public class RuntimeNull extends RuntimeObject {
 
-	public RuntimeNull() {
+	/**
+	 * Use {@link RuntimeObjectFactory#NULL} instead.
+	 */
+	RuntimeNull() {
 		
 	}
 
+	@Override
+	public String toString() {
+		return "null";
+	}
+
 	@Override
 	public RuntimeString toRuntimeString() {
 		return new RuntimeString("null");
@@ -30,7 +38,7 @@ public class RuntimeNull extends RuntimeObject {
 
 	@Override
 	public RuntimeObject copy() {
-		return new RuntimeNull();
+		return this;
 	}
 
 	@Override
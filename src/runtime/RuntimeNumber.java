@@ -8,7 +8,11 @@ public class RuntimeNumber extends RuntimeObject {
 		value_ = value;
 	}
 	
-	private double value_;
+	private final double value_;
+	
+	public double value() {
+		return value_;
+	}
 	
 	@Override
 	public String toString() {
@@ -37,14 +41,12 @@ public class RuntimeNumber extends RuntimeObject {
 
 	@Override
 	public RuntimeObject copy() {
-		// TODO Auto-generated method stub
-		return null;
+		return this; // immutable
 	}
 
 	@Override
 	public RuntimeObjectType getType() {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectType.NUMBER;
 	}
 
 	@Override
@@ -55,122 +57,123 @@ public class RuntimeNumber extends RuntimeObject {
 
 	@Override
 	public boolean equals(RuntimeObject rhs) {
-		// TODO Auto-generated method stub
+		if (rhs instanceof RuntimeNumber)
+			return value_ == ((RuntimeNumber) rhs).value_;
+		if (rhs instanceof RuntimeInteger)
+			return value_ == ((RuntimeInteger) rhs).value();
 		return false;
 	}
 
 	@Override
 	public boolean lessThan(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return value_ < numberOf(rhs, "comparison");
 	}
 
 	@Override
 	public boolean greatThan(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return value_ > numberOf(rhs, "comparison");
 	}
 
 	@Override
 	public boolean lessThanOrEqual(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return value_ <= numberOf(rhs, "comparison");
 	}
 
 	@Override
 	public boolean greatThanOrEqual(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return value_ >= numberOf(rhs, "comparison");
 	}
 
 	@Override
 	public RuntimeObject add(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.number(
+				value_ + numberOf(rhs, "addition"));
 	}
 
 	@Override
 	public RuntimeObject subtract(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.number(
+				value_ - numberOf(rhs, "subtraction"));
 	}
 
 	@Override
 	public RuntimeObject multiply(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.number(
+				value_ * numberOf(rhs, "multiplication"));
 	}
 
 	@Override
 	public RuntimeObject divide(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.number(
+				value_ / numberOf(rhs, "division"));
 	}
 
 	@Override
 	public RuntimeObject modulus(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.number(
+				value_ % numberOf(rhs, "modulus"));
 	}
 
 	@Override
 	public RuntimeObject shl(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform left-shifting on a number");
 	}
 
 	@Override
 	public RuntimeObject shr(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform right-shifting on a number");
 	}
 
 	@Override
 	public RuntimeObject sar(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError(
+				"cannot perform unsigned right-shifting on a number");
 	}
 
 	@Override
 	public RuntimeObject and(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform and on a number");
 	}
 
 	@Override
 	public RuntimeObject or(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform or on a number");
 	}
 
 	@Override
 	public RuntimeObject xor(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform xor on a number");
 	}
 
 	@Override
 	public RuntimeObject negative() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.number(-value_);
 	}
 
 	@Override
 	public RuntimeObject not() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform not on a number");
 	}
 
 	@Override
 	public RuntimeObject increase() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.number(value_ + 1);
 	}
 
 	@Override
 	public RuntimeObject decrease() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectFactory.number(value_ - 1);
+	}
+	
+	private static double numberOf(RuntimeObject rhs, String operation)
+			throws RuntimeError {
+		if (rhs instanceof RuntimeNumber)
+			return ((RuntimeNumber) rhs).value_;
+		if (rhs instanceof RuntimeInteger)
+			return ((RuntimeInteger) rhs).value();
+		throw new RuntimeError(String.format(
+				"cannot perform %s on number and %s",
+				operation, rhs.getType()));
 	}
 
 }
@@ -0,0 +1,80 @@
+package runtime;
+
+/**
+ * Hands out canonical runtime values. Booleans and null are singletons,
+ * and integers in a small range and the Latin-1 characters are interned,
+ * so that comparisons, loop counters and scans of text do not allocate.
+ * <p>
+ * The range of interned integers defaults to [-128, 1023] and can be
+ * changed with the system properties {@code sheet.integerCache.low} and
+ * {@code sheet.integerCache.high}, which are read once when this class is
+ * initialized.
+ */
+public final class RuntimeObjectFactory {
+
+	private RuntimeObjectFactory() {
+		
+	}
+	
+	public static final RuntimeBoolean TRUE = new RuntimeBoolean(true);
+	public static final RuntimeBoolean FALSE = new RuntimeBoolean(false);
+	public static final RuntimeNull NULL = new RuntimeNull();
+	
+	public static final int DEFAULT_INTEGER_CACHE_LOW = -128;
+	public static final int DEFAULT_INTEGER_CACHE_HIGH = 1023;
+	
+	private static final int integerCacheLow_;
+	private static final int integerCacheHigh_;
+	private static final RuntimeInteger[] integerCache_;
+	private static final RuntimeCharacter[] characterCache_;
+	
+	static {
+		int low = Integer.getInteger("sheet.integerCache.low",
+				DEFAULT_INTEGER_CACHE_LOW);
+		int high = Integer.getInteger("sheet.integerCache.high",
+				DEFAULT_INTEGER_CACHE_HIGH);
+		if (high < low)
+			high = low - 1; // an empty cache
+		integerCacheLow_ = low;
+		integerCacheHigh_ = high;
+		integerCache_ = new RuntimeInteger[high - low + 1];
+		for (int i = 0; i < integerCache_.length; i++)
+			integerCache_[i] = new RuntimeInteger(low + i);
+		characterCache_ = new RuntimeCharacter[256];
+		for (int i = 0; i < characterCache_.length; i++)
+			characterCache_[i] = new RuntimeCharacter((char) i);
+	}
+	
+	public static RuntimeBoolean bool(boolean value) {
+		return value ? TRUE : FALSE;
+	}
+	
+	public static RuntimeInteger integer(int value) {
+		if (value >= integerCacheLow_ && value <= integerCacheHigh_)
+			return integerCache_[value - integerCacheLow_];
+		return new RuntimeInteger(value);
+	}
+	
+	public static RuntimeNumber number(double value) {
+		return new RuntimeNumber(value);
+	}
+	
+	public static RuntimeCharacter character(char value) {
+		if (value < characterCache_.length)
+			return characterCache_[value];
+		return new RuntimeCharacter(value);
+	}
+	
+	public static RuntimeString string(String value) {
+		return new RuntimeString(value);
+	}
+	
+	public static int integerCacheLow() {
+		return integerCacheLow_;
+	}
+	
+	public static int integerCacheHigh() {
+		return integerCacheHigh_;
+	}
+
+}
@@ -1,41 +1,351 @@
 package runtime;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 import utils.RuntimeError;
 
+/**
+ * A string, kept as a rope: adding a string to another makes a node with
+ * the two as its children instead of copying their characters, so a string
+ * built by adding to it over and over takes time linear in its length.
+ * The characters are put together the first time they are needed, by
+ * {@link #value()}, {@link #toString()} or a comparison, and kept.
+ * <p>
+ * Short pieces are joined right away, so that a rope does not end up with
+ * a node for every character. A rope deeper than a limit is rebalanced as
+ * in the ropes of Boehm, Atkinson and Plass, which leaves alone the parts
+ * that are balanced already. The limit defaults to
+ * {@value #DEFAULT_MAX_DEPTH} and can be changed with the system property
+ * {@code sheet.string.maxDepth}, which is read once when this class is
+ * initialized.
+ * <p>
+ * Characters which all fit in Latin-1 are kept a byte each. Every string
+ * knows its length and its hash, the hash of a rope being made from the
+ * hashes of its halves, so strings of different lengths or hashes are
+ * told apart without putting their characters together.
+ */
 public class RuntimeString extends RuntimeObject {
 
 	public RuntimeString(String value) {
-		value_ = value;
+		boolean latin1 = true;
+		for (int i = 0; i < value.length() && latin1; i++)
+			latin1 = value.charAt(i) <= LATIN1_MAX;
+		text_ = latin1 ? value.getBytes(StandardCharsets.ISO_8859_1) : value;
+		length_ = value.length();
+		depth_ = 0;
+		hash_ = value.hashCode();
+		latin1_ = latin1;
+	}
+	
+	private RuntimeString(byte[] value, int hash) {
+		text_ = value;
+		length_ = value.length;
+		depth_ = 0;
+		hash_ = hash;
+		latin1_ = true;
+	}
+	
+	private RuntimeString(RuntimeString left, RuntimeString right) {
+		text_ = new Concat(left, right);
+		length_ = left.length_ + right.length_;
+		depth_ = Math.max(left.depth(), right.depth()) + 1;
+		hash_ = hash(left, right);
+		latin1_ = left.latin1_ && right.latin1_;
+	}
+	
+	public static final int DEFAULT_MAX_DEPTH = 48;
+	/**
+	 * Longest piece which is copied rather than linked when added to.
+	 */
+	private static final int SHORT_LENGTH = 256;
+	private static final int MAX_DEPTH =
+			Math.max(Integer.getInteger("sheet.string.maxDepth",
+			DEFAULT_MAX_DEPTH), 1);
+	/**
+	 * The Fibonacci numbers from 1, 2. A rope of depth d is balanced if it
+	 * is at least FIBONACCI[d] long.
+	 */
+	private static final int[] FIBONACCI = fibonacci();
+	private static final char LATIN1_MAX = 0xff;
+	
+	/**
+	 * The characters, a byte[] if they are all Latin-1 and a String if
+	 * not, or the Concat of the two halves until they are put together.
+	 */
+	private volatile Object text_;
+	private final int length_;
+	private final int depth_;
+	/**
+	 * Hash of the characters, the same as that of their String.
+	 */
+	private final int hash_;
+	private final boolean latin1_;
+	
+	private static final class Concat {
+		
+		Concat(RuntimeString left, RuntimeString right) {
+			left_ = left;
+			right_ = right;
+		}
+		
+		final RuntimeString left_;
+		final RuntimeString right_;
+		
+	}
+	
+	public String value() {
+		Object text = flat();
+		if (text instanceof byte[])
+			return new String((byte[]) text, StandardCharsets.ISO_8859_1);
+		return (String) text;
+	}
+	
+	public int length() {
+		return length_;
+	}
+	
+	/**
+	 * @return Whether every character is in Latin-1.
+	 */
+	public boolean isLatin1() {
+		return latin1_;
+	}
+	
+	/**
+	 * @return The characters put together, as a byte[] or a String.
+	 */
+	private Object flat() {
+		Object text = text_;
+		if (!(text instanceof Concat))
+			return text;
+		if (latin1_) {
+			byte[] bytes = new byte[length_];
+			fill(bytes, 0);
+			text = bytes;
+		} else {
+			char[] chars = new char[length_];
+			fill(chars, 0);
+			text = new String(chars);
+		}
+		text_ = text;
+		return text;
 	}
 	
-	private String value_;
+	/**
+	 * @return Depth of the rope, 0 once its characters are put together.
+	 */
+	private int depth() {
+		return text_ instanceof Concat ? depth_ : 0;
+	}
+	
+	/**
+	 * Copies the characters into an array from an offset. The depth is
+	 * bounded by the limit, so this recurses no deeper than that.
+	 */
+	private void fill(char[] chars, int offset) {
+		Object text = text_;
+		if (text instanceof byte[]) {
+			byte[] bytes = (byte[]) text;
+			for (int i = 0; i < bytes.length; i++)
+				chars[offset + i] = (char) (bytes[i] & LATIN1_MAX);
+		} else if (text instanceof String) {
+			String value = (String) text;
+			value.getChars(0, value.length(), chars, offset);
+		} else {
+			Concat concat = (Concat) text;
+			concat.left_.fill(chars, offset);
+			concat.right_.fill(chars, offset + concat.left_.length_);
+		}
+	}
+	
+	/**
+	 * Copies the characters of a Latin-1 string into an array from an
+	 * offset.
+	 */
+	private void fill(byte[] bytes, int offset) {
+		Object text = text_;
+		if (text instanceof byte[]) {
+			byte[] value = (byte[]) text;
+			System.arraycopy(value, 0, bytes, offset, value.length);
+		} else {
+			Concat concat = (Concat) text;
+			concat.left_.fill(bytes, offset);
+			concat.right_.fill(bytes, offset + concat.left_.length_);
+		}
+	}
+	
+	/**
+	 * @return Hash of two strings one after the other: the hash of the
+	 * left one times 31 to the length of the right one, plus the hash of
+	 * the right one.
+	 */
+	private static int hash(RuntimeString left, RuntimeString right) {
+		int power = 1;
+		int base = 31;
+		for (int n = right.length_; n > 0; n >>>= 1) {
+			if ((n & 1) != 0)
+				power *= base;
+			base *= base;
+		}
+		return left.hash_ * power + right.hash_;
+	}
+	
+	/**
+	 * Copies two short strings, whose characters are put together, into
+	 * one.
+	 */
+	private static RuntimeString copy(RuntimeString left,
+			RuntimeString right) {
+		Object lhs = left.text_;
+		Object rhs = right.text_;
+		if (lhs instanceof byte[] && rhs instanceof byte[]) {
+			byte[] bytes = Arrays.copyOf((byte[]) lhs, left.length_ +
+					right.length_);
+			System.arraycopy(rhs, 0, bytes, left.length_, right.length_);
+			return new RuntimeString(bytes, hash(left, right));
+		}
+		return new RuntimeString(left.value().concat(right.value()));
+	}
+	
+	/**
+	 * Joins two strings, without copying the longer ones.
+	 */
+	private static RuntimeString concat(RuntimeString left,
+			RuntimeString right) {
+		if (left.length_ == 0)
+			return right;
+		if (right.length_ == 0)
+			return left;
+		if (right.length_ <= SHORT_LENGTH &&
+				!(right.text_ instanceof Concat)) {
+			Object text = left.text_;
+			if (!(text instanceof Concat)) {
+				if (left.length_ + right.length_ <= SHORT_LENGTH)
+					return copy(left, right);
+			} else {
+				// the usual case of adding a bit to the end of a rope
+				Concat concat = (Concat) text;
+				RuntimeString last = concat.right_;
+				if (!(last.text_ instanceof Concat) &&
+						last.length_ + right.length_ <= SHORT_LENGTH)
+					return new RuntimeString(concat.left_,
+							copy(last, right));
+			}
+		}
+		RuntimeString rope = new RuntimeString(left, right);
+		if (rope.depth_ > MAX_DEPTH)
+			rope = rebalance(rope);
+		return rope;
+	}
+	
+	/**
+	 * Rebuilds a rope out of its balanced parts, putting every part in a
+	 * forest by its length and joining the parts shorter than it first.
+	 * The forest joined from the shortest to the longest tree is balanced.
+	 */
+	private static RuntimeString rebalance(RuntimeString rope) {
+		RuntimeString[] forest = new RuntimeString[FIBONACCI.length];
+		addToForest(forest, rope);
+		RuntimeString balanced = null;
+		for (RuntimeString tree : forest)
+			if (tree != null)
+				balanced = join(tree, balanced);
+		return balanced;
+	}
+	
+	private static void addToForest(RuntimeString[] forest,
+			RuntimeString rope) {
+		Object text = rope.text_;
+		if (text instanceof Concat && !isBalanced(rope)) {
+			Concat concat = (Concat) text;
+			addToForest(forest, concat.left_);
+			addToForest(forest, concat.right_);
+			return;
+		}
+		// the trees in the forest are to the left of the rope, the longer
+		// ones further to the left
+		int i = 0;
+		RuntimeString shorter = null;
+		while (rope.length_ >= FIBONACCI[i + 1]) {
+			if (forest[i] != null) {
+				shorter = join(forest[i], shorter);
+				forest[i] = null;
+			}
+			i++;
+		}
+		rope = join(shorter, rope);
+		while (true) {
+			if (forest[i] != null) {
+				rope = join(forest[i], rope);
+				forest[i] = null;
+			}
+			if (rope.length_ < FIBONACCI[i + 1])
+				break;
+			i++;
+		}
+		forest[i] = rope;
+	}
+	
+	private static RuntimeString join(RuntimeString left,
+			RuntimeString right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		return new RuntimeString(left, right);
+	}
+	
+	private static boolean isBalanced(RuntimeString rope) {
+		int depth = rope.depth();
+		return depth < FIBONACCI.length && rope.length_ >= FIBONACCI[depth];
+	}
+	
+	private static int[] fibonacci() {
+		// enough numbers to pass the longest string, then one more as a
+		// bound for the last slot of the forest
+		int[] numbers = new int[46];
+		numbers[0] = 1;
+		numbers[1] = 2;
+		for (int i = 2; i < numbers.length - 1; i++)
+			numbers[i] = numbers[i - 1] + numbers[i - 2];
+		numbers[numbers.length - 1] = Integer.MAX_VALUE;
+		return numbers;
+	}
 
 	@Override
 	public String toString() {
-		return value_;
+		return value();
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash_;
+	}
+	
+	@Override
+	public boolean isString() {
+		return true;
 	}
 
 	@Override
 	public boolean isTruly() {
-		return value_.length() > 0;
+		return length_ > 0;
 	}
 
 	@Override
 	public boolean isFalsy() {
-		// TODO Auto-generated method stub
-		return value_.length() == 0;
+		return length_ == 0;
 	}
 
 	@Override
 	public RuntimeObject copy() {
-		// TODO Auto-generated method stub
-		return null;
+		return this; // immutable
 	}
 
 	@Override
 	public RuntimeObjectType getType() {
-		// TODO Auto-generated method stub
-		return null;
+		return RuntimeObjectType.STRING;
 	}
 
 	@Override
@@ -46,122 +356,152 @@ public class RuntimeString extends RuntimeObject {
 
 	@Override
 	public boolean equals(RuntimeObject rhs) {
-		// TODO Auto-generated method stub
-		return false;
+		if (rhs == this)
+			return true;
+		if (!(rhs instanceof RuntimeString))
+			return false;
+		RuntimeString other = (RuntimeString) rhs;
+		if (length_ != other.length_ || hash_ != other.hash_ ||
+				latin1_ != other.latin1_)
+			return false;
+		Object lhsText = flat();
+		Object rhsText = other.flat();
+		if (lhsText instanceof byte[])
+			return Arrays.equals((byte[]) lhsText, (byte[]) rhsText);
+		return lhsText.equals(rhsText);
 	}
 
 	@Override
 	public boolean lessThan(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return compare(rhs) < 0;
 	}
 
 	@Override
 	public boolean greatThan(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return compare(rhs) > 0;
 	}
 
 	@Override
 	public boolean lessThanOrEqual(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return compare(rhs) <= 0;
 	}
 
 	@Override
 	public boolean greatThanOrEqual(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return false;
+		return compare(rhs) >= 0;
 	}
 
+	/**
+	 * Concatenates the text of any value to this string.
+	 */
 	@Override
 	public RuntimeObject add(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		if (rhs instanceof RuntimeString)
+			return concat(this, (RuntimeString) rhs);
+		return concat(this, rhs.toRuntimeString());
 	}
 
 	@Override
 	public RuntimeObject subtract(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform subtraction on a string");
 	}
 
 	@Override
 	public RuntimeObject multiply(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform multiplication on a string");
 	}
 
 	@Override
 	public RuntimeObject divide(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform division on a string");
 	}
 
 	@Override
 	public RuntimeObject modulus(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform modulus on a string");
 	}
 
 	@Override
 	public RuntimeObject shl(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform left-shifting on a string");
 	}
 
 	@Override
 	public RuntimeObject shr(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform right-shifting on a string");
 	}
 
 	@Override
 	public RuntimeObject sar(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError(
+				"cannot perform unsigned right-shifting on a string");
 	}
 
 	@Override
 	public RuntimeObject and(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform and on a string");
 	}
 
 	@Override
 	public RuntimeObject or(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform or on a string");
 	}
 
 	@Override
 	public RuntimeObject xor(RuntimeObject rhs) throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform xor on a string");
 	}
 
 	@Override
 	public RuntimeObject negative() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform negation on a string");
 	}
 
 	@Override
 	public RuntimeObject not() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform not on a string");
 	}
 
 	@Override
 	public RuntimeObject increase() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform increment on a string");
 	}
 
 	@Override
 	public RuntimeObject decrease() throws RuntimeError {
-		// TODO Auto-generated method stub
-		return null;
+		throw new RuntimeError("cannot perform decrement on a string");
+	}
+	
+	@Override
+	public RuntimeString toRuntimeString() {
+		return this;
 	}
 	
+	private int compare(RuntimeObject rhs) throws RuntimeError {
+		if (rhs instanceof RuntimeString) {
+			if (rhs == this)
+				return 0;
+			Object lhsText = flat();
+			Object rhsText = ((RuntimeString) rhs).flat();
+			if (lhsText instanceof byte[] && rhsText instanceof byte[])
+				return compare((byte[]) lhsText, (byte[]) rhsText);
+			return value().compareTo(rhs.toString());
+		}
+		throw new RuntimeError(String.format(
+				"cannot perform comparison on string and %s", rhs.getType()));
+	}
+
+	/**
+	 * Compares Latin-1 characters the way String.compareTo compares them.
+	 */
+	private static int compare(byte[] lhs, byte[] rhs) {
+		int length = Math.min(lhs.length, rhs.length);
+		for (int i = 0; i < length; i++) {
+			int diff = (lhs[i] & LATIN1_MAX) - (rhs[i] & LATIN1_MAX);
+			if (diff != 0)
+				return diff;
+		}
+		return lhs.length - rhs.length;
+	}
+
 }
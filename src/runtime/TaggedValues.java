@@ -0,0 +1,160 @@
+package runtime;
+
+/**
+ * Values packed into a long each, for machines which keep their slots in
+ * a long[] instead of boxing every value, see vm.TaggedVirtualMachine.
+ * <p>
+ * A number is the bits of its double. Every other value lives in the space
+ * of negative quiet NaNs: the top 16 bits are its tag and the low 32 bits
+ * its payload. Numbers which are NaN are stored as the canonical NaN, so
+ * they never look like a tagged value. Strings and arrays are tagged
+ * {@link #REF}, and the object itself is kept in a side array next to the
+ * slot.
+ */
+public final class TaggedValues {
+
+	private TaggedValues() {
+
+	}
+
+	private static final int TAG_SHIFT = 48;
+	private static final long PAYLOAD_MASK = 0xffffffffL;
+
+	// tags, the top 16 bits of a value which is not a number
+	public static final int NULL_TAG = 0xfff9;
+	public static final int BOOLEAN_TAG = 0xfffa;
+	public static final int INTEGER_TAG = 0xfffb;
+	public static final int CHARACTER_TAG = 0xfffc;
+	public static final int REF_TAG = 0xfffd;
+
+	public static final long NULL = (long) NULL_TAG << TAG_SHIFT;
+	public static final long FALSE = (long) BOOLEAN_TAG << TAG_SHIFT;
+	public static final long TRUE = FALSE | 1;
+	/**
+	 * Value of a slot whose object is in the side array.
+	 */
+	public static final long REF = (long) REF_TAG << TAG_SHIFT;
+
+	private static final long INTEGER = (long) INTEGER_TAG << TAG_SHIFT;
+	private static final long CHARACTER = (long) CHARACTER_TAG << TAG_SHIFT;
+	private static final long CANONICAL_NAN =
+			Double.doubleToLongBits(Double.NaN);
+
+	/**
+	 * @return Tag of a value, or less than {@link #NULL_TAG} for a number.
+	 */
+	public static int tag(long value) {
+		return (int) (value >>> TAG_SHIFT);
+	}
+
+	public static boolean isNumber(long value) {
+		return tag(value) < NULL_TAG;
+	}
+
+	public static boolean isInteger(long value) {
+		return tag(value) == INTEGER_TAG;
+	}
+
+	public static boolean isRef(long value) {
+		return tag(value) == REF_TAG;
+	}
+
+	public static long integer(int value) {
+		return INTEGER | (value & PAYLOAD_MASK);
+	}
+
+	public static long number(double value) {
+		if (value != value)
+			return CANONICAL_NAN;
+		return Double.doubleToRawLongBits(value);
+	}
+
+	public static long bool(boolean value) {
+		return value ? TRUE : FALSE;
+	}
+
+	public static long character(char value) {
+		return CHARACTER | value;
+	}
+
+	public static int integerValue(long value) {
+		return (int) value;
+	}
+
+	public static double numberValue(long value) {
+		return Double.longBitsToDouble(value);
+	}
+
+	/**
+	 * @return Whether a value is an integer or a number, either of which
+	 * can be read with {@link #doubleOf(long)}.
+	 */
+	public static boolean isNumeric(long value) {
+		return tag(value) < NULL_TAG || tag(value) == INTEGER_TAG;
+	}
+
+	/**
+	 * @return An integer or a number as a double.
+	 */
+	public static double doubleOf(long value) {
+		return isInteger(value) ? (int) value :
+				Double.longBitsToDouble(value);
+	}
+
+	/**
+	 * @return Whether a value which is not a reference counts as true.
+	 */
+	public static boolean isTruly(long value) {
+		switch (tag(value)) {
+		case NULL_TAG:
+			return RuntimeObjectFactory.NULL.isTruly();
+		case BOOLEAN_TAG:
+		case INTEGER_TAG:
+		case CHARACTER_TAG:
+			return (int) value != 0;
+		default:
+			return Double.longBitsToDouble(value) != 0.0;
+		}
+	}
+
+	/**
+	 * Packs a value. The value of a string or an array is {@link #REF},
+	 * and the object has to be kept next to it.
+	 */
+	public static long encode(RuntimeObject obj) {
+		if (obj == null || obj.isNull())
+			return NULL;
+		if (obj instanceof RuntimeInteger)
+			return integer(((RuntimeInteger) obj).value());
+		if (obj instanceof RuntimeNumber)
+			return number(((RuntimeNumber) obj).value());
+		if (obj instanceof RuntimeBoolean)
+			return bool(((RuntimeBoolean) obj).value());
+		if (obj instanceof RuntimeCharacter)
+			return character(((RuntimeCharacter) obj).value());
+		return REF;
+	}
+
+	/**
+	 * Unpacks a value.
+	 * @param ref Object kept next to the value, if it is {@link #REF}.
+	 */
+	public static RuntimeObject decode(long value, Object ref) {
+		switch (tag(value)) {
+		case NULL_TAG:
+			return RuntimeObjectFactory.NULL;
+		case BOOLEAN_TAG:
+			return RuntimeObjectFactory.bool((int) value != 0);
+		case INTEGER_TAG:
+			return RuntimeObjectFactory.integer((int) value);
+		case CHARACTER_TAG:
+			return RuntimeObjectFactory.character((char) value);
+		case REF_TAG:
+			return (RuntimeObject) ref;
+		default:
+			return RuntimeObjectFactory.number(
+					Double.longBitsToDouble(value));
+		}
+	}
+
+}
@@ -1,25 +1,133 @@
 package sheet;
 
-import text.*;
-
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 
 import ast.AstNodePrinter;
 import ast.Module;
 import compiler.Compiler;
+import compiler.image.ModuleCache;
+import compiler.image.ModuleImage;
+import compiler.image.ModuleImageReader;
+import compiler.image.ModuleImageWriter;
+import compiler.optimizer.ConstantFolder;
+import compiler.register.RegisterCompiler;
+import compiler.register.RegisterModule;
 import lexer.*;
 import parser.Parser;
+import runtime.ModuleInfo;
+import runtime.RuntimeObject;
 import utils.*;
+import vm.Profiler;
+import vm.RegisterVirtualMachine;
+import vm.TaggedVirtualMachine;
+import vm.VirtualMachine;
+import vm.jit.JitCompiler;
 
 public class Program {
 
+	/**
+	 * Option of the compile and run commands selecting the register
+	 * machine instead of the stack machine.
+	 */
+	public static final String REGISTER_OPTION = "--register";
+
+	/**
+	 * Option of the run command compiling hot functions to JVM bytecode.
+	 */
+	public static final String JIT_OPTION = "--jit";
+
+	/**
+	 * Option of the run command selecting the stack machine keeping its
+	 * values packed into longs, see {@link TaggedVirtualMachine}.
+	 */
+	public static final String TAGGED_OPTION = "--tagged";
+
+	/**
+	 * Option of the run command keeping compiled scripts in the module
+	 * cache, see {@link ModuleCache#standard()}.
+	 */
+	public static final String CACHE_OPTION = "--cache";
+
+	/**
+	 * Option of the run command profiling the script on the stack machine,
+	 * see {@link Profiler}.
+	 */
+	public static final String PROFILE_OPTION = "--profile";
+
+	/**
+	 * Count of functions, opcodes and instructions in a profile summary.
+	 */
+	private static final int PROFILE_TOP = 10;
+
+	/**
+	 * Count of sequences of every length the train command prints.
+	 */
+	private static final int TRAIN_TOP = 12;
+
+	/**
+	 * The ways a module can be run.
+	 */
+	public enum Backend {
+		STACK,
+		REGISTER,
+		/** The stack machine with values packed into longs. */
+		TAGGED,
+		/** The stack machine with the JIT compiler. */
+		JIT,
+		/** The JIT compiler compiling every function before its first call. */
+		JIT_EAGER,
+		/** The stack machine with a profiler. */
+		PROFILE
+	}
+
 	public static void main(String[] args) {
 		if (args[0].equals("lex")) {
 			lexTest(args[1]);
 		} else if (args[0].equals("parse")) {
 			parseTest(args[1]);
 		} else if (args[0].equals("compile")) {
-			compileTest(args[1]);
+			if (args[1].equals(REGISTER_OPTION))
+				compileTest(args[2], true);
+			else
+				compileTest(args[1], false);
+		} else if (args[0].equals("build")) {
+			build(args[1]);
+		} else if (args[0].equals("run")) {
+			Backend backend = Backend.STACK;
+			ModuleCache cache = null;
+			int i = 1;
+			for (; args[i].startsWith("--"); i++) {
+				if (args[i].equals(REGISTER_OPTION)) {
+					backend = Backend.REGISTER;
+				} else if (args[i].equals(TAGGED_OPTION)) {
+					backend = Backend.TAGGED;
+				} else if (args[i].equals(JIT_OPTION)) {
+					backend = Backend.JIT;
+				} else if (args[i].equals(CACHE_OPTION)) {
+					cache = ModuleCache.standard();
+				} else if (args[i].equals(PROFILE_OPTION)) {
+					backend = Backend.PROFILE;
+				} else {
+					System.out.println("Unknown option " + args[i]);
+					return;
+				}
+			}
+			run(args[i], backend, cache);
+			if (cache != null)
+				System.err.print(cache.report());
+		} else if (args[0].equals("conform")) {
+			if (conform(args[1]) > 0)
+				System.exit(1);
+		} else if (args[0].equals("train")) {
+			train(Arrays.copyOfRange(args, 1, args.length));
 		} else {
 			System.out.println("Unknown command");
 		}
@@ -27,8 +135,7 @@ public class Program {
 	
 	public static void lexTest(String arg) {
 		try {
-			FileScanner fs = new FileScanner(arg);
-			Lexer lex = new Lexer(fs);
+			Lexer lex = Lexer.forFile(arg);
 			Token peek = lex.advance();
 			while (!peek.isEndOfSource()) {
 				System.out.println(peek.literal());;
@@ -44,8 +151,7 @@ public class Program {
 	
 	public static void parseTest(String arg) {
 		try {
-			FileScanner fs = new FileScanner(arg);
-			Lexer lex = new Lexer(fs);
+			Lexer lex = Lexer.forFile(arg);
 			Parser parser = new Parser(lex);
 			Module module = parser.parse();
 			AstNodePrinter anp = new AstNodePrinter(false, 2);
@@ -62,15 +168,81 @@ public class Program {
 		}
 	}
 	
-	public static void compileTest(String arg) {
+	public static void compileTest(String arg, boolean register) {
 		try {
-			FileScanner fs = new FileScanner(arg);
-			Lexer lex = new Lexer(fs);
+			Lexer lex = Lexer.forFile(arg);
 			Parser parser = new Parser(lex);
 			Module module = parser.parse();
+			ConstantFolder folder = new ConstantFolder(module);
+			folder.fold();
 			Compiler compiler = new Compiler(module);
 			compiler.compile();
-			System.out.print(compiler.result().inspect());
+			if (register)
+				System.out.print(new RegisterCompiler(compiler.result())
+						.compile().inspect());
+			else
+				System.out.print(compiler.result().inspect());
+			System.out.println(String.format("constant folds: %d",
+					folder.folds()));
+			if (compiler.optimizer() != null)
+				System.out.print(compiler.optimizer().report());
+		} catch (FileNotFoundException e) {
+			System.out.println("File not found: " + arg);
+		} catch (LexicalError e) {
+			System.out.println("Lexical error: " + e.getMessage());
+			e.printStackTrace();
+		} catch (SyntaxError e) {
+			System.out.println("Syntax error: " + e.getMessage());
+			e.printStackTrace();
+		} catch (CompileError e) {
+			System.out.println("Compile error: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Compiles a script and saves it as a module image next to it, which
+	 * the run command then uses for as long as the script is unchanged.
+	 */
+	public static void build(String arg) {
+		try {
+			ModuleInfo module = compile(arg);
+			String image = ModuleImage.pathFor(arg);
+			new ModuleImageWriter(module).write(image,
+					ModuleImage.hashFile(arg));
+			System.out.println("Wrote " + image);
+		} catch (FileNotFoundException e) {
+			System.out.println("File not found: " + arg);
+		} catch (LexicalError e) {
+			System.out.println("Lexical error: " + e.getMessage());
+			e.printStackTrace();
+		} catch (SyntaxError e) {
+			System.out.println("Syntax error: " + e.getMessage());
+			e.printStackTrace();
+		} catch (CompileError e) {
+			System.out.println("Compile error: " + e.getMessage());
+			e.printStackTrace();
+		} catch (IOException e) {
+			System.out.println("Cannot write module image: " +
+					e.getMessage());
+		}
+	}
+	
+	public static void run(String arg, Backend backend) {
+		run(arg, backend, null);
+	}
+	
+	/**
+	 * @param cache Cache of compiled scripts, or null to compile the
+	 * script unless it has an up to date module image.
+	 */
+	public static void run(String arg, Backend backend, ModuleCache cache) {
+		try {
+			ModuleInfo module = load(arg, cache);
+			RuntimeObject result = backend == Backend.PROFILE ?
+					profile(module, arg) : execute(module, backend);
+			if (result != null)
+				System.out.println(result.toRuntimeString());
 		} catch (FileNotFoundException e) {
 			System.out.println("File not found: " + arg);
 		} catch (LexicalError e) {
@@ -82,7 +254,256 @@ public class Program {
 		} catch (CompileError e) {
 			System.out.println("Compile error: " + e.getMessage());
 			e.printStackTrace();
+		} catch (RuntimeError e) {
+			System.out.println("Runtime error: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * @return The module of the image of a script if the image is up to
+	 * date, or else the module compiled from the script, through the cache
+	 * if there is one.
+	 */
+	private static ModuleInfo load(String arg, ModuleCache cache) throws
+			FileNotFoundException, LexicalError, SyntaxError, CompileError {
+		String image = ModuleImage.pathFor(arg);
+		if (!image.equals(arg) && new File(image).isFile()) {
+			try {
+				ModuleInfo module = new ModuleImageReader(image)
+						.read(ModuleImage.hashFile(arg));
+				if (module != null)
+					return module;
+			} catch (IOException e) {
+				// an unreadable image is as good as a stale one
+			}
+		}
+		if (cache == null)
+			return compile(arg);
+		byte[] key;
+		try {
+			key = ModuleCache.key(Files.readAllBytes(new File(arg).toPath()));
+		} catch (IOException e) {
+			throw new FileNotFoundException(arg);
+		}
+		ModuleInfo module = cache.get(key);
+		if (module == null) {
+			module = compile(arg);
+			try {
+				cache.put(key, module);
+			} catch (IOException e) {
+				System.err.println("Cannot cache module: " + e.getMessage());
+			}
+		}
+		return module;
+	}
+	
+	private static ModuleInfo compile(String arg) throws
+			FileNotFoundException, LexicalError, SyntaxError, CompileError {
+		Lexer lex = Lexer.forFile(arg);
+		Parser parser = new Parser(lex);
+		Module module = parser.parse();
+		new ConstantFolder(module).fold();
+		Compiler compiler = new Compiler(module);
+		compiler.compile();
+		return compiler.result();
+	}
+	
+	private static RuntimeObject execute(ModuleInfo module, Backend backend)
+			throws CompileError, RuntimeError {
+		if (backend == Backend.REGISTER) {
+			RegisterModule code = new RegisterCompiler(module).compile();
+			RegisterVirtualMachine vm = new RegisterVirtualMachine();
+			vm.load(code);
+			return vm.run();
+		} else if (backend == Backend.TAGGED) {
+			TaggedVirtualMachine vm = new TaggedVirtualMachine();
+			vm.load(module);
+			return vm.run();
+		} else {
+			VirtualMachine vm = new VirtualMachine();
+			vm.load(module);
+			if (backend == Backend.JIT)
+				vm.setJit(new JitCompiler());
+			else if (backend == Backend.JIT_EAGER)
+				vm.setJit(new JitCompiler(1, 1));
+			else if (backend == Backend.PROFILE)
+				vm.setProfiler(new Profiler(module));
+			return vm.run();
 		}
 	}
 	
+	/**
+	 * Runs a module with a profiler, prints a summary of the profile and
+	 * saves the time spent in every chain of calls next to the script, e.g.
+	 * as fib.folded for fib.sheet, ready for flame graph tools.
+	 */
+	private static RuntimeObject profile(ModuleInfo module, String arg)
+			throws RuntimeError {
+		VirtualMachine vm = new VirtualMachine();
+		vm.load(module);
+		Profiler profiler = new Profiler(module);
+		vm.setProfiler(profiler);
+		try {
+			return vm.run();
+		} finally {
+			System.err.print(profiler.summary(PROFILE_TOP));
+			String folded = foldedPath(arg);
+			try {
+				Files.write(new File(folded).toPath(),
+						profiler.collapsedStacks().getBytes(
+						StandardCharsets.UTF_8));
+				System.err.println("Wrote " + folded);
+			} catch (IOException e) {
+				System.err.println("Cannot write profile: " + e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Runs every script of some directories with the profiler and prints
+	 * the sequences of instructions which ran the most often, the
+	 * candidates for superinstructions, see compiler.Superinstructions.
+	 */
+	public static void train(String[] dirs) {
+		ArrayList<HashMap<String, Long>> totals =
+				new ArrayList<HashMap<String, Long>>();
+		for (int length = 2; length <= 3; length++)
+			totals.add(new HashMap<String, Long>());
+		for (String dir : dirs) {
+			File[] files = new File(dir).listFiles();
+			if (files == null) {
+				System.out.println("Directory not found: " + dir);
+				continue;
+			}
+			Arrays.sort(files);
+			for (File file : files) {
+				Profiler profiler;
+				VirtualMachine vm = new VirtualMachine();
+				try {
+					ModuleInfo module = compile(file.getPath());
+					vm.load(module);
+					profiler = new Profiler(module);
+					vm.setProfiler(profiler);
+				} catch (FileNotFoundException | LexicalError | SyntaxError
+						| CompileError e) {
+					continue;
+				}
+				try {
+					vm.run();
+				} catch (RuntimeError e) {
+					// the scripts which have to fail count all the same
+				}
+				for (int length = 2; length <= 3; length++) {
+					HashMap<String, Long> total = totals.get(length - 2);
+					profiler.sequenceCounts(length).forEach((key, count) ->
+							total.merge(key, count, Long::sum));
+				}
+			}
+		}
+		for (HashMap<String, Long> sequences : totals) {
+			ArrayList<String> keys = new ArrayList<String>(
+					sequences.keySet());
+			keys.sort((a, b) -> Long.compare(sequences.get(b),
+					sequences.get(a)));
+			for (int i = 0; i < Math.min(TRAIN_TOP, keys.size()); i++)
+				System.out.println(String.format("%-32s %12d",
+						keys.get(i), sequences.get(keys.get(i))));
+			System.out.println();
+		}
+	}
+	
+	private static String foldedPath(String arg) {
+		String image = ModuleImage.pathFor(arg);
+		return image.substring(0, image.length() -
+				ModuleImage.EXTENSION.length()) + ".folded";
+	}
+	
+	/**
+	 * Runs every script of a directory on the stack, register and tagged
+	 * machines, on the stack machine with every function compiled by the
+	 * JIT, with the profiler, and after a round trip through a module
+	 * image. The first
+	 * line of a script is a comment with the expected result, e.g.
+	 * "// expect: 42", or "// expect: runtime error: ..." for a script
+	 * which has to fail.
+	 * @return Count of scripts which failed.
+	 */
+	public static int conform(String dir) {
+		File[] files = new File(dir).listFiles();
+		if (files == null) {
+			System.out.println("Directory not found: " + dir);
+			return 1;
+		}
+		Arrays.sort(files);
+		int failures = 0;
+		for (File file : files) {
+			String expected;
+			try {
+				String first = Files.readAllLines(file.toPath(),
+						StandardCharsets.UTF_8).get(0);
+				expected = first.substring(first.indexOf(':') + 1).trim();
+			} catch (IOException | IndexOutOfBoundsException e) {
+				System.out.println("Cannot read expectation: " + file);
+				failures++;
+				continue;
+			}
+			String stack = conformResult(file.getPath(), Backend.STACK);
+			String register = conformResult(file.getPath(),
+					Backend.REGISTER);
+			String tagged = conformResult(file.getPath(), Backend.TAGGED);
+			String jit = conformResult(file.getPath(), Backend.JIT_EAGER);
+			String profile = conformResult(file.getPath(), Backend.PROFILE);
+			String image = conformResult(file.getPath(), null);
+			if (stack.equals(expected) && register.equals(expected) &&
+					tagged.equals(expected) && jit.equals(expected) &&
+					profile.equals(expected) && image.equals(expected)) {
+				System.out.println("PASS " + file.getName());
+			} else {
+				System.out.println(String.format(
+						"FAIL %s: expected %s, stack %s, register %s, "
+						+ "tagged %s, jit %s, profile %s, image %s",
+						file.getName(), expected, stack, register, tagged,
+						jit, profile, image));
+				failures++;
+			}
+		}
+		System.out.println(String.format("%d of %d failed", failures,
+				files.length));
+		return failures;
+	}
+	
+	/**
+	 * @param backend Backend to run the script on, or null to run it on
+	 * the stack machine after saving and loading it as a module image.
+	 */
+	private static String conformResult(String path, Backend backend) {
+		try {
+			ModuleInfo module = compile(path);
+			if (backend == null) {
+				byte[] hash = ModuleImage.hashFile(path);
+				module = ModuleImageReader.read(ByteBuffer.wrap(
+						new ModuleImageWriter(module).toByteArray(hash)),
+						hash);
+				backend = Backend.STACK;
+			}
+			RuntimeObject result = execute(module, backend);
+			if (result == null)
+				return "no result";
+			return result.toRuntimeString().toString();
+		} catch (FileNotFoundException e) {
+			return "file not found";
+		} catch (LexicalError e) {
+			return "lexical error: " + e.getMessage();
+		} catch (SyntaxError e) {
+			return "syntax error: " + e.getMessage();
+		} catch (CompileError e) {
+			return "compile error: " + e.getMessage();
+		} catch (RuntimeError e) {
+			return "runtime error: " + e.getMessage();
+		} catch (IOException e) {
+			return "image error: " + e.getMessage();
+		}
+	}
+
 }
@@ -0,0 +1,55 @@
+package text;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads a file in large blocks through a reusable buffer, instead of one
+ * character per call like {@link FileScanner}.
+ */
+public class BufferedFileScanner extends DecodingScanner {
+
+	/**
+	 * Default count of bytes read at once.
+	 */
+	public static final int DEFAULT_BYTE_BUFFER_SIZE = 64 * 1024;
+
+	public BufferedFileScanner(String srcFile) throws FileNotFoundException {
+		this(srcFile, Charset.defaultCharset());
+	}
+
+	public BufferedFileScanner(String srcFile, Charset charset)
+			throws FileNotFoundException {
+		super(charset, emptyBuffer());
+		channel_ = new FileInputStream(srcFile).getChannel();
+	}
+
+	private final FileChannel channel_;
+
+	private static ByteBuffer emptyBuffer() {
+		ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BYTE_BUFFER_SIZE);
+		buffer.flip();
+		return buffer;
+	}
+
+	@Override
+	protected ByteBuffer more(ByteBuffer rest) throws IOException {
+		rest.compact();
+		int read;
+		try {
+			read = channel_.read(rest);
+		} finally {
+			rest.flip();
+		}
+		if (read < 0) {
+			channel_.close();
+			return null;
+		}
+		return rest;
+	}
+
+}
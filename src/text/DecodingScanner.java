@@ -0,0 +1,94 @@
+package text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A scanner decoding bytes into a reusable buffer of characters, so that
+ * reading a character is an array access most of the time. Subclasses
+ * supply the bytes. Bytes which are not valid in the charset are read as
+ * the replacement character, like {@link java.io.FileReader} does.
+ */
+public abstract class DecodingScanner extends Scanner {
+
+	/**
+	 * Default count of characters decoded at once.
+	 */
+	public static final int DEFAULT_CHAR_BUFFER_SIZE = 16 * 1024;
+
+	protected DecodingScanner(Charset charset, ByteBuffer bytes) {
+		decoder_ = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		bytes_ = bytes;
+		chars_ = new char[DEFAULT_CHAR_BUFFER_SIZE];
+		charBuffer_ = CharBuffer.wrap(chars_);
+		at_ = 0;
+		limit_ = 0;
+		endOfInput_ = false;
+		done_ = false;
+	}
+
+	private final CharsetDecoder decoder_;
+	private ByteBuffer bytes_;
+	private final char[] chars_;
+	private final CharBuffer charBuffer_;
+	private int at_;
+	private int limit_;
+	private boolean endOfInput_;
+	private boolean done_;
+
+	@Override
+	public char advance() {
+		if (at_ < limit_ || decode())
+			return chars_[at_++];
+		return Scanner.EOF;
+	}
+
+	/**
+	 * Gives more bytes to decode.
+	 * @param rest The buffer being decoded, whose remaining bytes have
+	 * not been decoded yet.
+	 * @return A buffer starting with the remaining bytes of the given one
+	 * and followed by more bytes, or null if there are no more bytes, in
+	 * which case the given buffer has to be left as it is.
+	 */
+	protected abstract ByteBuffer more(ByteBuffer rest) throws IOException;
+
+	/**
+	 * Refills the buffer of characters.
+	 * @return Whether any character was decoded.
+	 */
+	private boolean decode() {
+		if (done_)
+			return false;
+		charBuffer_.clear();
+		try {
+			for (;;) {
+				decoder_.decode(bytes_, charBuffer_, endOfInput_);
+				if (charBuffer_.position() > 0)
+					break;
+				if (endOfInput_) {
+					decoder_.flush(charBuffer_);
+					done_ = true;
+					break;
+				}
+				ByteBuffer next = more(bytes_);
+				if (next == null)
+					endOfInput_ = true;
+				else
+					bytes_ = next;
+			}
+		} catch (IOException e) {
+			done_ = true;
+		}
+		at_ = 0;
+		limit_ = charBuffer_.position();
+		return limit_ > 0;
+	}
+
+}
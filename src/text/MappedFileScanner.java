@@ -0,0 +1,64 @@
+package text;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Maps a file into memory and decodes it as the characters are read, so
+ * that the bytes are never copied out of the page cache. Files larger than
+ * a window are mapped one window at a time.
+ */
+public class MappedFileScanner extends DecodingScanner {
+
+	/**
+	 * Count of bytes mapped at once.
+	 */
+	public static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+	public MappedFileScanner(String srcFile) throws IOException {
+		this(srcFile, Charset.defaultCharset());
+	}
+
+	public MappedFileScanner(String srcFile, Charset charset)
+			throws IOException {
+		this(new RandomAccessFile(srcFile, "r").getChannel(), charset);
+	}
+
+	private MappedFileScanner(FileChannel channel, Charset charset)
+			throws IOException {
+		super(charset, map(channel, 0));
+		channel_ = channel;
+		windowStart_ = 0;
+	}
+
+	private final FileChannel channel_;
+	private long windowStart_;
+
+	private static ByteBuffer map(FileChannel channel, long start)
+			throws IOException {
+		try {
+			long size = Math.min(WINDOW_SIZE, channel.size() - start);
+			return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	protected ByteBuffer more(ByteBuffer rest) throws IOException {
+		long next = windowStart_ + rest.limit();
+		if (next >= channel_.size()) {
+			// the mapping stays valid after the channel is closed
+			channel_.close();
+			return null;
+		}
+		// the next window starts with the bytes left of this one
+		windowStart_ += rest.position();
+		return map(channel_, windowStart_);
+	}
+
+}
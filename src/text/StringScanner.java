@@ -12,7 +12,7 @@ public class StringScanner extends Scanner {
 
 	@Override
 	public char advance() {
-		return at_ >= text_.length() ? Scanner.EOF : text_.charAt(at_);
+		return at_ >= text_.length() ? Scanner.EOF : text_.charAt(at_++);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package utils;
+
+/**
+ * Raised when a run is stopped from outside rather than failing by
+ * itself: it was cancelled or ran out of time. It says nothing about the
+ * code being run, so compiled code which raises it stays compiled.
+ */
+public class AbortError extends RuntimeError {
+
+	private static final long serialVersionUID = 2519434876325617466L;
+
+	public AbortError(String message) {
+		super(message);
+	}
+
+}
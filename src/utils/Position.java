@@ -10,6 +10,26 @@ public class Position {
 	public final int row;
 	public final int column;
 	
+	/**
+	 * Packs a row and a column into one value, so that a position can be
+	 * kept without an object.
+	 */
+	public static long pack(int row, int column) {
+		return ((long) row << 32) | (column & 0xffffffffL);
+	}
+	
+	public static int row(long packed) {
+		return (int) (packed >>> 32);
+	}
+	
+	public static int column(long packed) {
+		return (int) packed;
+	}
+	
+	public static Position unpack(long packed) {
+		return new Position(row(packed), column(packed));
+	}
+	
 	public String toString() {
 		return String.format("at line %d, column %d", row, column);
 	}
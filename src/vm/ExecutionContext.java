@@ -0,0 +1,238 @@
+package vm;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import runtime.RuntimeObject;
+import runtime.RuntimeObjectFactory;
+import utils.AbortError;
+import utils.RuntimeError;
+
+/**
+ * State of one run of a module: its globals and its operand stack with
+ * the frames of the functions being called. Everything else a
+ * {@link VirtualMachine} holds is shared by the runs, so one machine can
+ * run any number of contexts at once, each of them on one thread at a
+ * time.
+ * <p>
+ * A run can be stopped from another thread with {@link #cancel()}, after
+ * a timeout, or when it runs out of fuel. The machine calls
+ * {@link #checkpoint()} on every backward branch and every call, which
+ * are the only ways a run can go on for long. Fuel is counted in
+ * checkpoints, and every {@link #CHECK_INTERVAL} checkpoints the context
+ * looks at the clock and the cancellation.
+ */
+public class ExecutionContext {
+
+	/**
+	 * Count of checkpoints between two checks for a timeout or a
+	 * cancellation.
+	 */
+	public static final int CHECK_INTERVAL = 1024;
+
+	/**
+	 * Fuel of a run without a limit.
+	 */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	ExecutionContext(VirtualMachine vm, int globalCount, int stackSize,
+			int prologueDepth) {
+		vm_ = vm;
+		globals_ = new RuntimeObject[globalCount];
+		// read before their initializers run, globals are null
+		Arrays.fill(globals_, RuntimeObjectFactory.NULL);
+		stack_ = new RuntimeObject[stackSize];
+		frame_ = new StackFrame(null, stack_, 0, 0, 0, prologueDepth);
+		checkCountdown_ = 0;
+		fuel_ = UNLIMITED;
+		fuelHandler_ = null;
+		hasDeadline_ = false;
+		deadline_ = 0;
+		cancelled_ = false;
+		profileFrame_ = null;
+		compiledCalls_ = 0;
+		tailCall_ = -1;
+	}
+
+	private final VirtualMachine vm_;
+	private final RuntimeObject[] globals_;
+	private final RuntimeObject[] stack_;
+	private StackFrame frame_;
+	// checkpoints left before the next check, taken out of the fuel
+	private int checkCountdown_;
+	private long fuel_;
+	private FuelHandler fuelHandler_;
+	private boolean hasDeadline_;
+	private long deadline_;
+	private volatile boolean cancelled_;
+	private Profiler.Frame profileFrame_;
+	// calls into compiled code being run, which have no frames
+	private int compiledCalls_;
+	// function the last compiled function left a tail call of
+	private int tailCall_;
+
+	public VirtualMachine vm() {
+		return vm_;
+	}
+
+	public RuntimeObject[] globals() {
+		return globals_;
+	}
+
+	RuntimeObject[] stack() {
+		return stack_;
+	}
+
+	/**
+	 * @return Frame of the function being run.
+	 */
+	StackFrame frame() {
+		return frame_;
+	}
+
+	void setFrame(StackFrame frame) {
+		frame_ = frame;
+	}
+
+	/**
+	 * @return Call being timed by the profiler, if any.
+	 */
+	Profiler.Frame profileFrame() {
+		return profileFrame_;
+	}
+
+	void setProfileFrame(Profiler.Frame frame) {
+		profileFrame_ = frame;
+	}
+
+	/**
+	 * Stops the run once it is past the timeout, measured from now. Has to
+	 * be set before the run starts.
+	 */
+	public void setTimeout(long timeout, TimeUnit unit) {
+		hasDeadline_ = true;
+		deadline_ = System.nanoTime() + unit.toNanos(timeout);
+	}
+
+	/**
+	 * Stops the run at its next check, with an {@link AbortError}. Can be
+	 * called from any thread.
+	 */
+	public void cancel() {
+		cancelled_ = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled_;
+	}
+
+	/**
+	 * Limits the run to a count of checkpoints. When they are used up the
+	 * fuel handler is asked for more, and without a handler the run stops
+	 * with an {@link AbortError}. Has to be set before the run starts.
+	 * @param fuel Count of checkpoints, or {@link #UNLIMITED}.
+	 */
+	public void setFuel(long fuel) {
+		if (fuel < 0)
+			throw new IllegalArgumentException("negative fuel");
+		fuel_ = fuel;
+		checkCountdown_ = 0;
+	}
+
+	/**
+	 * @return Checkpoints the run can still pass before it asks for more
+	 * fuel, or {@link #UNLIMITED}.
+	 */
+	public long fuel() {
+		if (fuel_ == UNLIMITED)
+			return UNLIMITED;
+		return fuel_ + Math.max(checkCountdown_, 0);
+	}
+
+	/**
+	 * @param handler Handler asked for more fuel when the run is out of
+	 * it, or null to stop the run.
+	 */
+	public void setFuelHandler(FuelHandler handler) {
+		fuelHandler_ = handler;
+	}
+
+	/**
+	 * Counts a checkpoint. This is called by compiled code as well, and
+	 * costs a decrement unless a check is due.
+	 * @throws AbortError If the run is cancelled, out of time or out of
+	 * fuel.
+	 */
+	public void checkpoint() throws AbortError {
+		if (--checkCountdown_ >= 0)
+			return;
+		check();
+	}
+
+	private void check() throws AbortError {
+		if (cancelled_)
+			throw new AbortError("execution cancelled");
+		if (hasDeadline_ && System.nanoTime() - deadline_ >= 0)
+			throw new AbortError("execution timed out");
+		if (fuel_ == 0) {
+			long fuel = fuelHandler_ == null ? 0 :
+					fuelHandler_.refuel(this);
+			if (fuel <= 0)
+				throw new AbortError("execution ran out of fuel");
+			fuel_ = fuel;
+			// the handler may have waited for long
+			if (cancelled_)
+				throw new AbortError("execution cancelled");
+		}
+		int next = (int) Math.min(CHECK_INTERVAL, fuel_);
+		if (fuel_ != UNLIMITED)
+			fuel_ -= next;
+		// this checkpoint is the first one of the next interval
+		checkCountdown_ = next - 1;
+	}
+
+	/**
+	 * @return How deep calls are nested: the frames entered, and the calls
+	 * into compiled code in between.
+	 */
+	int callDepth() {
+		return frame_.depth() + compiledCalls_;
+	}
+
+	void enterCompiled() {
+		compiledCalls_++;
+	}
+
+	void leaveCompiled() {
+		compiledCalls_--;
+	}
+
+	/**
+	 * Asks for a function to be called in place of the compiled function
+	 * running. This is how compiled code makes a tail call of another
+	 * function: it leaves the arguments in the slots of its own, calls
+	 * this and returns null. The caller of the compiled function then
+	 * makes the call, so that tail calls run in constant space.
+	 */
+	public void tailCall(int function) {
+		tailCall_ = function;
+	}
+
+	int takeTailCall() {
+		int function = tailCall_;
+		tailCall_ = -1;
+		return function;
+	}
+
+	/**
+	 * Calls a function of the module in this context. This is how compiled
+	 * code calls functions.
+	 * @param base Index of the slot of the stack holding the first
+	 * argument.
+	 * @return Value returned by the function, never null.
+	 */
+	public RuntimeObject call(int function, int base) throws RuntimeError {
+		return vm_.call(this, function, base);
+	}
+
+}
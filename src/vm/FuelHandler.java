@@ -0,0 +1,20 @@
+package vm;
+
+import utils.AbortError;
+
+/**
+ * Decides what happens when a run has used up its fuel, see
+ * {@link ExecutionContext#setFuel}.
+ */
+public interface FuelHandler {
+
+	/**
+	 * Called on the thread of the run, which is suspended until this
+	 * returns. The handler can let other work go first, e.g. by giving
+	 * the thread back to a scheduler, and then hand out more fuel.
+	 * @return Fuel the run goes on with, or 0 to stop it.
+	 * @throws AbortError To stop the run with an error of its own.
+	 */
+	long refuel(ExecutionContext context) throws AbortError;
+
+}
@@ -0,0 +1,107 @@
+package vm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of the durations of runs, in nanoseconds. The buckets are
+ * log-linear: every power of two is split into {@link #SUB_BUCKETS}
+ * buckets, so a percentile is accurate to within a quarter of its value
+ * however long the runs take. Recording never blocks, so any count of
+ * threads can share one histogram.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 2;
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	public LatencyHistogram() {
+		buckets_ = new AtomicLongArray(BUCKETS);
+		count_ = new AtomicLong();
+		total_ = new AtomicLong();
+		max_ = new AtomicLong();
+	}
+
+	private final AtomicLongArray buckets_;
+	private final AtomicLong count_;
+	private final AtomicLong total_;
+	private final AtomicLong max_;
+
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		buckets_.incrementAndGet(bucketOf(nanos));
+		count_.incrementAndGet();
+		total_.addAndGet(nanos);
+		long max;
+		while (nanos > (max = max_.get()) &&
+				!max_.compareAndSet(max, nanos))
+			;
+	}
+
+	public long count() {
+		return count_.get();
+	}
+
+	public long maxNanos() {
+		return max_.get();
+	}
+
+	public double meanNanos() {
+		long count = count_.get();
+		return count == 0 ? 0 : (double) total_.get() / count;
+	}
+
+	/**
+	 * @param percentile Between 0 and 100.
+	 * @return Upper bound of the bucket holding the percentile, or 0 if
+	 * nothing was recorded.
+	 */
+	public long percentileNanos(double percentile) {
+		long count = count_.get();
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100 * count);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets_.get(i);
+			if (seen >= rank)
+				return Math.min(upperBound(i), max_.get());
+		}
+		return max_.get();
+	}
+
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS +
+				(int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%d runs, mean %.3f ms, p50 %.3f ms, p90 %.3f ms, " +
+				"p99 %.3f ms, max %.3f ms", count(), millis(meanNanos()),
+				millis(percentileNanos(50)), millis(percentileNanos(90)),
+				millis(percentileNanos(99)), millis(maxNanos()));
+	}
+
+	private static double millis(double nanos) {
+		return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+}
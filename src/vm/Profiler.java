@@ -0,0 +1,381 @@
+package vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import compiler.ByteCode;
+import compiler.OpCode;
+import compiler.OpCodes;
+import runtime.ModuleInfo;
+
+/**
+ * Profile of the runs of a module on a {@link VirtualMachine}: how often
+ * every instruction ran, and so every opcode and function, how often every
+ * function was called and the time spent in it, with and without the
+ * functions it called.
+ * <p>
+ * The machine keeps its dispatch loop as it is and runs instrumented code
+ * instead: a copy of the code of every function with a PROFILE
+ * instruction counting the instruction after it. Calls are timed on the
+ * way in and out, and the time spent in every chain of calls is kept for
+ * {@link #collapsedStacks()}. Compiled code cannot be profiled, so every
+ * function is interpreted while the profiler is set.
+ * <p>
+ * Runs can overlap, but the counts are only exact when they do not.
+ */
+public class Profiler {
+
+	public Profiler(ModuleInfo module) {
+		module_ = module;
+		int functions = module.functionCount();
+		// the prologue goes after the functions
+		code_ = new ByteCode[functions + 1];
+		counts_ = new long[functions + 1][];
+		calls_ = new long[functions];
+		inclusive_ = new long[functions];
+		exclusive_ = new long[functions];
+		root_ = new Node(-1);
+	}
+
+	private final ModuleInfo module_;
+	private final ByteCode[] code_;
+	private final long[][] counts_;
+	private final long[] calls_;
+	private final long[] inclusive_;
+	private final long[] exclusive_;
+	private final Node root_;
+
+	/**
+	 * A chain of calls, from the entry point down to a function.
+	 */
+	private static class Node {
+
+		Node(int function) {
+			function_ = function;
+			children_ = new HashMap<Integer, Node>();
+			self_ = 0;
+		}
+
+		final int function_;
+		final HashMap<Integer, Node> children_;
+		long self_;
+
+	}
+
+	/**
+	 * A call being timed, kept by the context of the run.
+	 */
+	static class Frame {
+
+		Frame(Frame previous, int function, Node node, long start) {
+			previous_ = previous;
+			function_ = function;
+			node_ = node;
+			start_ = start;
+			callees_ = 0;
+		}
+
+		final Frame previous_;
+		final int function_;
+		final Node node_;
+		final long start_;
+		long callees_;
+
+	}
+
+	public ModuleInfo module() {
+		return module_;
+	}
+
+	/**
+	 * @param function Index of a function, or -1 for the prologue.
+	 * @return The instrumented code of the function.
+	 */
+	synchronized ByteCode code(int function) {
+		int i = slot(function);
+		if (code_[i] == null) {
+			ByteCode code = function < 0 ? module_.prologue() :
+					module_.getFunctionByIndex(function).byteCode();
+			code_[i] = instrument(code);
+			counts_[i] = new long[code.code().length];
+		}
+		return code_[i];
+	}
+
+	/**
+	 * Puts a PROFILE before every instruction. The instruction at offset i
+	 * moves to 2i + 1, and branches to it go to its PROFILE at 2i.
+	 */
+	private static ByteCode instrument(ByteCode byteCode) {
+		int[] code = byteCode.code();
+		int[] instrumented = new int[code.length * 2];
+		for (int i = 0; i < code.length; i++) {
+			int word = code[i];
+			int opcode = OpCodes.opcode(word);
+			if (OpCode.decode(opcode).isBranch())
+				word = OpCodes.pack(opcode, OpCodes.operand(word) * 2);
+			instrumented[2 * i] = OpCodes.pack(OpCodes.PROFILE, i);
+			instrumented[2 * i + 1] = word;
+		}
+		return new ByteCode(instrumented, byteCode.maxStackDepth());
+	}
+
+	/**
+	 * Counts an instruction about to run. This takes no lock, so runs
+	 * overlapping may lose counts.
+	 */
+	void count(int function, int offset) {
+		counts_[slot(function)][offset]++;
+	}
+
+	private int slot(int function) {
+		return function < 0 ? calls_.length : function;
+	}
+
+	/**
+	 * Starts timing a call in a context.
+	 */
+	synchronized void enter(ExecutionContext context, int function) {
+		Frame caller = context.profileFrame();
+		Node parent = caller == null ? root_ : caller.node_;
+		Node node = parent.children_.get(function);
+		if (node == null) {
+			node = new Node(function);
+			parent.children_.put(function, node);
+		}
+		calls_[function]++;
+		context.setProfileFrame(
+				new Frame(caller, function, node, System.nanoTime()));
+	}
+
+	/**
+	 * Stops timing the innermost call of a context.
+	 */
+	synchronized void leave(ExecutionContext context) {
+		long end = System.nanoTime();
+		Frame frame = context.profileFrame();
+		context.setProfileFrame(frame.previous_);
+		long elapsed = end - frame.start_;
+		long self = elapsed - frame.callees_;
+		exclusive_[frame.function_] += self;
+		frame.node_.self_ += self;
+		// the time of a recursive call is already in the outer one
+		boolean outermost = true;
+		for (Frame f = frame.previous_; f != null; f = f.previous_)
+			if (f.function_ == frame.function_)
+				outermost = false;
+		if (outermost)
+			inclusive_[frame.function_] += elapsed;
+		if (frame.previous_ != null)
+			frame.previous_.callees_ += elapsed;
+	}
+
+	/**
+	 * @return Count of runs of the instruction at an offset of the code of
+	 * a function, or of the prologue for -1.
+	 */
+	public synchronized long instructionCount(int function, int offset) {
+		long[] counts = counts_[slot(function)];
+		return counts == null ? 0 : counts[offset];
+	}
+
+	public synchronized long calls(int function) {
+		return calls_[function];
+	}
+
+	/**
+	 * @return Count of instructions run in a function, not counting the
+	 * functions it called; -1 for the prologue.
+	 */
+	public synchronized long instructions(int function) {
+		long[] counts = counts_[slot(function)];
+		long sum = 0;
+		if (counts != null)
+			for (long count : counts)
+				sum += count;
+		return sum;
+	}
+
+	/**
+	 * @return Nanoseconds spent in a function and in the functions it
+	 * called.
+	 */
+	public synchronized long inclusiveNanos(int function) {
+		return inclusive_[function];
+	}
+
+	/**
+	 * @return Nanoseconds spent in a function itself.
+	 */
+	public synchronized long exclusiveNanos(int function) {
+		return exclusive_[function];
+	}
+
+	/**
+	 * @return Count of runs of every opcode, by its code.
+	 */
+	public synchronized long[] opcodeCounts() {
+		long[] opcodes = new long[OpCodes.OPCODE_MASK + 1];
+		for (int i = 0; i < counts_.length; i++) {
+			if (counts_[i] == null)
+				continue;
+			int[] code = codeOf(i);
+			for (int offset = 0; offset < code.length; offset++)
+				opcodes[OpCodes.opcode(code[offset])] += counts_[i][offset];
+		}
+		return opcodes;
+	}
+
+	/**
+	 * @return How often every run of a given count of instructions ran
+	 * one after the other, by the names of their opcodes separated by
+	 * spaces. Runs which a branch enters past their first instruction, or
+	 * leaves before their last, are not counted, so that every run counted
+	 * could be a superinstruction.
+	 */
+	public synchronized HashMap<String, Long> sequenceCounts(int length) {
+		HashMap<String, Long> sequences = new HashMap<String, Long>();
+		for (int i = 0; i < counts_.length; i++) {
+			if (counts_[i] == null)
+				continue;
+			int[] code = codeOf(i);
+			boolean[] targets = new boolean[code.length + 1];
+			for (int word : code)
+				if (OpCode.decode(OpCodes.opcode(word)).isBranch())
+					targets[OpCodes.operand(word)] = true;
+			for (int start = 0; start + length <= code.length; start++) {
+				long count = counts_[i][start + length - 1];
+				if (count == 0 || !straight(code, targets, start, length))
+					continue;
+				StringBuilder key = new StringBuilder();
+				for (int offset = start; offset < start + length; offset++) {
+					if (offset > start)
+						key.append(' ');
+					key.append(OpCode.decode(OpCodes.opcode(code[offset]))
+							.name());
+				}
+				sequences.merge(key.toString(), count, Long::sum);
+			}
+		}
+		return sequences;
+	}
+	
+	private static boolean straight(int[] code, boolean[] targets,
+			int start, int length) {
+		for (int offset = start; offset < start + length; offset++) {
+			OpCode opcode = OpCode.decode(OpCodes.opcode(code[offset]));
+			if (offset > start && targets[offset])
+				return false;
+			if (offset < start + length - 1 &&
+					(opcode.isBranch() || !opcode.fallsThrough()))
+				return false;
+		}
+		return true;
+	}
+	
+	private int[] codeOf(int slot) {
+		if (slot == calls_.length)
+			return module_.prologue().code();
+		return module_.getFunctionByIndex(slot).byteCode().code();
+	}
+
+	/**
+	 * @return The time spent in every chain of calls, one chain a line
+	 * in the collapsed stack format of flame graph tools: the names of the
+	 * functions from the outermost one, separated by semicolons, then the
+	 * nanoseconds spent in the innermost one.
+	 */
+	public synchronized String collapsedStacks() {
+		StringBuilder sb = new StringBuilder();
+		ArrayList<String> path = new ArrayList<String>();
+		for (Node child : root_.children_.values())
+			collapse(child, path, sb);
+		return sb.toString();
+	}
+
+	private void collapse(Node node, ArrayList<String> path,
+			StringBuilder sb) {
+		path.add(module_.getFunctionByIndex(node.function_).name());
+		if (node.self_ > 0) {
+			sb.append(String.join(";", path));
+			sb.append(' ');
+			sb.append(node.self_);
+			sb.append('\n');
+		}
+		for (Node child : node.children_.values())
+			collapse(child, path, sb);
+		path.remove(path.size() - 1);
+	}
+
+	/**
+	 * @return The functions taking the most time, the opcodes and the
+	 * instructions run the most often, at most a given count of each.
+	 */
+	public synchronized String summary(int top) {
+		StringBuilder sb = new StringBuilder();
+		int functions = calls_.length;
+
+		Integer[] order = new Integer[functions];
+		for (int i = 0; i < functions; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Long.compare(exclusive_[b],
+				exclusive_[a]));
+		sb.append(String.format("%-24s %10s %12s %12s %12s\n", "function",
+				"calls", "instructions", "self ms", "total ms"));
+		for (int i = 0; i < Math.min(top, functions); i++) {
+			int f = order[i];
+			if (calls_[f] == 0)
+				break;
+			sb.append(String.format("%-24s %10d %12d %12.3f %12.3f\n",
+					module_.getFunctionByIndex(f).name(), calls_[f],
+					instructions(f), millis(exclusive_[f]),
+					millis(inclusive_[f])));
+		}
+
+		long[] opcodes = opcodeCounts();
+		ArrayList<OpCode> byCount = new ArrayList<OpCode>();
+		for (OpCode opcode : OpCode.values())
+			if (opcodes[opcode.code()] > 0)
+				byCount.add(opcode);
+		Collections.sort(byCount, (a, b) -> Long.compare(
+				opcodes[b.code()], opcodes[a.code()]));
+		sb.append(String.format("\n%-24s %10s\n", "opcode", "count"));
+		for (int i = 0; i < Math.min(top, byCount.size()); i++) {
+			OpCode opcode = byCount.get(i);
+			sb.append(String.format("%-24s %10d\n", opcode.name(),
+					opcodes[opcode.code()]));
+		}
+
+		ArrayList<long[]> hot = new ArrayList<long[]>();
+		for (int i = 0; i < counts_.length; i++)
+			if (counts_[i] != null)
+				for (int offset = 0; offset < counts_[i].length; offset++)
+					if (counts_[i][offset] > 0)
+						hot.add(new long[] {counts_[i][offset], i, offset});
+		Collections.sort(hot, (a, b) -> Long.compare(b[0], a[0]));
+		sb.append(String.format("\n%-24s %-14s %10s\n", "instruction", "",
+				"count"));
+		for (int i = 0; i < Math.min(top, hot.size()); i++) {
+			long[] entry = hot.get(i);
+			int slot = (int) entry[1];
+			int offset = (int) entry[2];
+			String name = slot == functions ? "<prologue>" :
+					module_.getFunctionByIndex(slot).name();
+			int word = codeOf(slot)[offset];
+			OpCode opcode = OpCode.decode(OpCodes.opcode(word));
+			sb.append(String.format("%-24s %-14s %10d\n",
+					name + '@' + offset, opcode.hasOperand() ?
+					opcode.name() + ' ' + OpCodes.operand(word) :
+					opcode.name(), entry[0]));
+		}
+		return sb.toString();
+	}
+
+	private static double millis(long nanos) {
+		return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+}
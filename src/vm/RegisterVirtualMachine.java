@@ -0,0 +1,354 @@
+package vm;
+
+import java.util.Arrays;
+
+import compiler.register.RegisterCode;
+import compiler.register.RegisterModule;
+import compiler.register.RegisterOpCodes;
+import runtime.RuntimeArray;
+import runtime.RuntimeObject;
+import runtime.RuntimeObjectFactory;
+import utils.RuntimeError;
+
+/**
+ * Runs modules translated for the register machine. All frames live in
+ * one array of registers; the frame of a callee starts at the register
+ * holding its first argument, which receives the return value once the
+ * callee returns.
+ */
+public class RegisterVirtualMachine {
+
+	/**
+	 * Default count of registers shared by all frames.
+	 */
+	public static final int DEFAULT_REGISTER_COUNT = 64 * 1024;
+
+	public RegisterVirtualMachine() {
+		this(DEFAULT_REGISTER_COUNT);
+	}
+	
+	public RegisterVirtualMachine(int registerCount) {
+		registerCount_ = registerCount;
+		module_ = null;
+		globals_ = null;
+		constants_ = null;
+		registers_ = null;
+		tailCall_ = null;
+	}
+	
+	private int registerCount_;
+	private RegisterModule module_;
+	private RuntimeObject[] globals_;
+	private RuntimeObject[] constants_;
+	private RuntimeObject[] registers_;
+	// callee of the tail call execute() returned for
+	private RegisterCode tailCall_;
+	
+	public void load(RegisterModule module) {
+		module_ = module;
+		globals_ = new RuntimeObject[module.getGlobalFieldCount()];
+		Arrays.fill(globals_, RuntimeObjectFactory.NULL);
+		constants_ = module.constants();
+		registers_ = new RuntimeObject[registerCount_];
+	}
+	
+	/**
+	 * Runs the prologue and then the entry point of the loaded module.
+	 * @return Value returned by the entry point.
+	 * @throws RuntimeError If the module has no entry point, or it fails.
+	 */
+	public RuntimeObject run() throws RuntimeError {
+		try {
+			return runModule();
+		} catch (StackOverflowError e) {
+			// every call recurses, so deep ones run out of the stack of the
+			// thread
+			throw new RuntimeError("stack overflow");
+		}
+	}
+	
+	private RuntimeObject runModule() throws RuntimeError {
+		invoke(module_.prologue(), 0);
+		
+		RegisterCode entry = module_.entryPoint();
+		if (entry == null) {
+			throw new RuntimeError("no entry point");
+		} else if (entry.argumentCount() != 0) {
+			throw new RuntimeError("entry point cannot take arguments");
+		} else {
+			invoke(entry, 0);
+			return registers_[0];
+		}
+	}
+	
+	/**
+	 * Runs a function whose frame starts at the given register and leaves
+	 * its return value in that register.
+	 */
+	private void invoke(RegisterCode fn, int base) throws RuntimeError {
+		int limit = base;
+		RuntimeObject ret;
+		try {
+			// a tail call runs the callee in the same frame
+			do {
+				int end = base + fn.registerCount();
+				if (end > registers_.length)
+					throw new RuntimeError("stack overflow");
+				limit = Math.max(limit, end);
+				ret = execute(fn, base);
+				if (ret == null) {
+					fn = tailCall_;
+					Arrays.fill(registers_, base + fn.argumentCount(), limit,
+							null);
+				}
+			} while (ret == null);
+		} finally {
+			Arrays.fill(registers_, base, limit, null);
+		}
+		registers_[base] = ret;
+	}
+	
+	/**
+	 * @return Value of a source operand, see {@link RegisterOpCodes}.
+	 */
+	private RuntimeObject source(int base, int operand) {
+		return operand >= 0 ? registers_[base + operand]
+				: constants_[~operand];
+	}
+	
+	/**
+	 * @return Value returned by the function, or null if it ends with a
+	 * tail call, whose callee is then in tailCall_ and whose arguments
+	 * are at the start of the frame.
+	 */
+	private RuntimeObject execute(RegisterCode fn, int base)
+			throws RuntimeError {
+		RuntimeObject[] regs = registers_;
+		int[] code = fn.code();
+		int cursor = 0;
+		int word, dst;
+		RuntimeObject lhs, rhs, value;
+		// the code always ends with a return or a tail call, see
+		// RegisterCode.code()
+		for (;;) {
+			word = code[cursor++];
+			dst = word >> RegisterOpCodes.OPCODE_BITS;
+			switch (word & RegisterOpCodes.OPCODE_MASK) {
+			case RegisterOpCodes.MOVE:
+				regs[base + dst] = source(base, code[cursor++]);
+				break;
+			case RegisterOpCodes.COPY:
+				regs[base + dst] = source(base, code[cursor++]).copy();
+				break;
+			case RegisterOpCodes.LDGLOB:
+				regs[base + dst] = globals_[code[cursor++]];
+				break;
+			case RegisterOpCodes.STGLOB:
+				globals_[dst] = source(base, code[cursor++]);
+				break;
+			case RegisterOpCodes.LDELEM:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = requireArray(lhs).get(rhs);
+				break;
+			case RegisterOpCodes.STELEM:
+				lhs = source(base, dst);
+				rhs = source(base, code[cursor++]);
+				value = source(base, code[cursor++]);
+				requireArray(lhs).set(rhs, value);
+				break;
+			case RegisterOpCodes.OR:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.or(rhs);
+				break;
+			case RegisterOpCodes.AND:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.and(rhs);
+				break;
+			case RegisterOpCodes.XOR:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.xor(rhs);
+				break;
+			case RegisterOpCodes.SHL:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.shl(rhs);
+				break;
+			case RegisterOpCodes.SHR:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.shr(rhs);
+				break;
+			case RegisterOpCodes.SAR:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.sar(rhs);
+				break;
+			case RegisterOpCodes.ADD:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.add(rhs);
+				break;
+			case RegisterOpCodes.SUB:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.subtract(rhs);
+				break;
+			case RegisterOpCodes.MUL:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.multiply(rhs);
+				break;
+			case RegisterOpCodes.DIV:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.divide(rhs);
+				break;
+			case RegisterOpCodes.MOD:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = lhs.modulus(rhs);
+				break;
+			case RegisterOpCodes.EQ:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = RuntimeObjectFactory.bool(lhs.equals(rhs));
+				break;
+			case RegisterOpCodes.NE:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = RuntimeObjectFactory.bool(!lhs.equals(rhs));
+				break;
+			case RegisterOpCodes.LT:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = RuntimeObjectFactory.bool(
+						lhs.lessThan(rhs));
+				break;
+			case RegisterOpCodes.GT:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = RuntimeObjectFactory.bool(
+						lhs.greatThan(rhs));
+				break;
+			case RegisterOpCodes.LTE:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = RuntimeObjectFactory.bool(
+						lhs.lessThanOrEqual(rhs));
+				break;
+			case RegisterOpCodes.GTE:
+				lhs = source(base, code[cursor++]);
+				rhs = source(base, code[cursor++]);
+				regs[base + dst] = RuntimeObjectFactory.bool(
+						lhs.greatThanOrEqual(rhs));
+				break;
+			case RegisterOpCodes.NOT:
+				regs[base + dst] = source(base, code[cursor++]).not();
+				break;
+			case RegisterOpCodes.INC:
+				regs[base + dst] = source(base, code[cursor++]).increase();
+				break;
+			case RegisterOpCodes.DEC:
+				regs[base + dst] = source(base, code[cursor++]).decrease();
+				break;
+			case RegisterOpCodes.NEG:
+				regs[base + dst] = source(base, code[cursor++]).negative();
+				break;
+			case RegisterOpCodes.BR:
+				cursor = dst;
+				break;
+			case RegisterOpCodes.BRTRUE:
+				if (source(base, dst).isTruly())
+					cursor = code[cursor];
+				else
+					cursor++;
+				break;
+			case RegisterOpCodes.BRFALSE:
+				if (source(base, dst).isFalsy())
+					cursor = code[cursor];
+				else
+					cursor++;
+				break;
+			case RegisterOpCodes.BREQ:
+				lhs = source(base, dst);
+				rhs = source(base, code[cursor++]);
+				if (lhs.equals(rhs))
+					cursor = code[cursor];
+				else
+					cursor++;
+				break;
+			case RegisterOpCodes.BRNE:
+				lhs = source(base, dst);
+				rhs = source(base, code[cursor++]);
+				if (!lhs.equals(rhs))
+					cursor = code[cursor];
+				else
+					cursor++;
+				break;
+			case RegisterOpCodes.BRLT:
+				lhs = source(base, dst);
+				rhs = source(base, code[cursor++]);
+				if (!lhs.greatThanOrEqual(rhs))
+					cursor = code[cursor];
+				else
+					cursor++;
+				break;
+			case RegisterOpCodes.BRGT:
+				lhs = source(base, dst);
+				rhs = source(base, code[cursor++]);
+				if (!lhs.lessThanOrEqual(rhs))
+					cursor = code[cursor];
+				else
+					cursor++;
+				break;
+			case RegisterOpCodes.BRLTE:
+				lhs = source(base, dst);
+				rhs = source(base, code[cursor++]);
+				if (!lhs.greatThan(rhs))
+					cursor = code[cursor];
+				else
+					cursor++;
+				break;
+			case RegisterOpCodes.BRGTE:
+				lhs = source(base, dst);
+				rhs = source(base, code[cursor++]);
+				if (!lhs.lessThan(rhs))
+					cursor = code[cursor];
+				else
+					cursor++;
+				break;
+			case RegisterOpCodes.CALL:
+				invoke(module_.getFunctionByIndex(code[cursor++]),
+						base + dst);
+				break;
+			case RegisterOpCodes.TAILCALL:
+				tailCall_ = module_.getFunctionByIndex(code[cursor++]);
+				System.arraycopy(regs, base + dst, regs, base,
+						tailCall_.argumentCount());
+				return null;
+			case RegisterOpCodes.RET:
+				value = source(base, dst);
+				return value != null ? value : RuntimeObjectFactory.NULL;
+			case RegisterOpCodes.RETNULL:
+				return RuntimeObjectFactory.NULL;
+			default:
+				throw new RuntimeError(String.format(
+						"(internal error) unknown opcode %d at %d",
+						word & RegisterOpCodes.OPCODE_MASK, cursor - 1));
+			}
+		}
+	}
+	
+	private static RuntimeArray requireArray(RuntimeObject obj)
+			throws RuntimeError {
+		if (!obj.isArray())
+			throw new RuntimeError(String.format(
+					"cannot index a value of type %s", obj.getType()));
+		return (RuntimeArray) obj;
+	}
+
+}
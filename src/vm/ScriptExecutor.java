@@ -0,0 +1,252 @@
+package vm;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import runtime.ModuleInfo;
+import runtime.RuntimeObject;
+import utils.RuntimeError;
+
+/**
+ * Runs scripts on loaded {@link VirtualMachine}s in the background, each
+ * run in an {@link ExecutionContext} of its own, so that one machine can
+ * serve many runs at once.
+ * <p>
+ * On a Java platform with virtual threads every run gets a virtual thread,
+ * so tens of thousands of runs can be in flight while at most the given
+ * count of them run at once. Elsewhere the runs queue for a pool of that
+ * many platform threads. A run can have a timeout and a limit of fuel,
+ * which the machine checks at its checkpoints, see
+ * {@link ExecutionContext}. The durations of the runs of every module are
+ * recorded in a {@link LatencyHistogram}.
+ * <p>
+ * With a {@link #setTimeSlice time slice} the runs take turns: a run which
+ * has used up its slice gives its permit to the longest waiting run and
+ * goes on once it gets a permit back, so a long run cannot hold up short
+ * ones. Only runs which have a thread wait for a permit, so on platform
+ * threads the slices make no difference.
+ */
+public class ScriptExecutor {
+
+	public ScriptExecutor(int maxConcurrency) {
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException(
+					"concurrency has to be positive");
+		permits_ = new Semaphore(maxConcurrency, true);
+		timeSlice_ = 0;
+		histograms_ = new ConcurrentHashMap<ModuleInfo, LatencyHistogram>();
+		pending_ = ConcurrentHashMap.newKeySet();
+		ExecutorService threads = virtualThreadExecutor();
+		virtual_ = threads != null;
+		threads_ = virtual_ ? threads :
+				Executors.newFixedThreadPool(maxConcurrency, daemonThreads());
+	}
+
+	private final Semaphore permits_;
+	private volatile long timeSlice_;
+	private final ConcurrentHashMap<ModuleInfo, LatencyHistogram>
+			histograms_;
+	private final Set<ScriptFuture> pending_;
+	private final boolean virtual_;
+	private final ExecutorService threads_;
+
+	/**
+	 * @return Whether the runs are on virtual threads.
+	 */
+	public boolean usesVirtualThreads() {
+		return virtual_;
+	}
+
+	public long timeSlice() {
+		return timeSlice_;
+	}
+
+	/**
+	 * @param fuel Count of checkpoints after which a run lets others go
+	 * first, or 0 to let every run go on until it ends.
+	 */
+	public void setTimeSlice(long fuel) {
+		if (fuel < 0)
+			throw new IllegalArgumentException("negative time slice");
+		timeSlice_ = fuel;
+	}
+
+	/**
+	 * Runs the module loaded in a machine, without limits.
+	 */
+	public ScriptFuture submit(VirtualMachine vm) {
+		return submit(vm, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Runs the module loaded in a machine.
+	 * @param timeout Longest the run may take once it has started, or 0
+	 * for no limit.
+	 */
+	public ScriptFuture submit(VirtualMachine vm, long timeout,
+			TimeUnit unit) {
+		return submit(vm, timeout, unit, ExecutionContext.UNLIMITED);
+	}
+
+	/**
+	 * Runs the module loaded in a machine.
+	 * @param timeout Longest the run may take once it has started, or 0
+	 * for no limit.
+	 * @param fuel Count of checkpoints the run may pass, see
+	 * {@link ExecutionContext#setFuel}.
+	 */
+	public ScriptFuture submit(VirtualMachine vm, long timeout,
+			TimeUnit unit, long fuel) {
+		ScriptFuture future = new ScriptFuture();
+		LatencyHistogram histogram = histogram(vm.module());
+		pending_.add(future);
+		future.whenComplete((result, error) -> pending_.remove(future));
+		try {
+			threads_.execute(() -> run(vm, timeout, unit, fuel, future,
+					histogram));
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private void run(VirtualMachine vm, long timeout, TimeUnit unit,
+			long fuel, ScriptFuture future, LatencyHistogram histogram) {
+		try {
+			permits_.acquire();
+		} catch (InterruptedException e) {
+			future.completeExceptionally(e);
+			return;
+		}
+		try {
+			if (future.isDone())
+				return; // cancelled while it waited
+			ExecutionContext context = vm.newContext();
+			if (timeout > 0)
+				context.setTimeout(timeout, unit);
+			long slice = timeSlice_;
+			if (slice > 0 && slice < fuel) {
+				TimeSlicer slicer = new TimeSlicer(slice, fuel);
+				context.setFuel(slicer.next());
+				context.setFuelHandler(slicer);
+			} else {
+				context.setFuel(fuel);
+			}
+			future.started(context);
+			// the run is recorded before its future completes, so whoever
+			// waits for the future finds it in the histogram
+			long start = System.nanoTime();
+			RuntimeObject result = null;
+			Throwable error = null;
+			try {
+				result = vm.run(context);
+			} catch (RuntimeError | RuntimeException e) {
+				error = e;
+			}
+			histogram.record(System.nanoTime() - start);
+			if (error != null)
+				future.completeExceptionally(error);
+			else
+				future.complete(result);
+		} finally {
+			permits_.release();
+		}
+	}
+
+	/**
+	 * Hands out the fuel of a run a slice at a time, and lets the runs
+	 * waiting for a permit go first between two slices.
+	 */
+	private class TimeSlicer implements FuelHandler {
+
+		TimeSlicer(long slice, long fuel) {
+			slice_ = slice;
+			left_ = fuel;
+		}
+
+		private final long slice_;
+		private long left_;
+
+		long next() {
+			long next = Math.min(slice_, left_);
+			if (left_ != ExecutionContext.UNLIMITED)
+				left_ -= next;
+			return next;
+		}
+
+		@Override
+		public long refuel(ExecutionContext context) {
+			if (left_ == 0)
+				return 0;
+			permits_.release();
+			Thread.yield();
+			// the run keeps its context, and gives the permit back when it
+			// ends, so it has to get one whatever happens
+			permits_.acquireUninterruptibly();
+			return next();
+		}
+
+	}
+
+	/**
+	 * @return Durations of the runs of a module so far.
+	 */
+	public LatencyHistogram histogram(ModuleInfo module) {
+		return histograms_.computeIfAbsent(module,
+				m -> new LatencyHistogram());
+	}
+
+	/**
+	 * Lets the submitted runs finish but takes no more.
+	 */
+	public void shutdown() {
+		threads_.shutdown();
+	}
+
+	/**
+	 * Takes no more runs and cancels the ones which have not finished.
+	 */
+	public void shutdownNow() {
+		threads_.shutdown();
+		for (ScriptFuture future : pending_)
+			future.cancel(false);
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return threads_.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * @return An executor starting a virtual thread per task, or null on a
+	 * Java platform without virtual threads. It is looked up reflectively
+	 * since the code is compiled for Java 8.
+	 */
+	private static ExecutorService virtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static ThreadFactory daemonThreads() {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable,
+					"sheet-executor-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+}
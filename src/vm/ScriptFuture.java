@@ -0,0 +1,41 @@
+package vm;
+
+import java.util.concurrent.CompletableFuture;
+
+import runtime.RuntimeObject;
+
+/**
+ * Result of a run submitted to a {@link ScriptExecutor}. It completes
+ * with the value returned by the entry point, or exceptionally with the
+ * {@link utils.RuntimeError} the run failed with; a run which timed out
+ * fails with an {@link utils.AbortError}. Cancelling it stops the run at
+ * its next check, or keeps it from starting at all.
+ */
+public class ScriptFuture extends CompletableFuture<RuntimeObject> {
+
+	ScriptFuture() {
+		context_ = null;
+	}
+
+	private volatile ExecutionContext context_;
+
+	/**
+	 * Called when the run starts in the context.
+	 */
+	void started(ExecutionContext context) {
+		context_ = context;
+		// a cancellation which came before the context is passed on here
+		if (isCancelled())
+			context.cancel();
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		ExecutionContext context = context_;
+		if (context != null)
+			context.cancel();
+		return cancelled;
+	}
+
+}
@@ -1,53 +1,197 @@
 package vm;
 
-import java.util.Stack;
+import java.util.Arrays;
 
 import runtime.RuntimeObject;
 
+/**
+ * A window into the operand stack of a virtual machine. The window holds
+ * the arguments, then the locals, then the temporaries of one function
+ * activation. Arguments are the values the caller left on top of its own
+ * window, so they are never copied.
+ * <p>
+ * A frame keeps the frame of its callee once it is left, and hands it out
+ * again for the next call, so a run allocates a frame only the first time
+ * its calls nest that deep. The interpreter keeps where to go back to in
+ * the callee's frame, see {@link #setReturnAddress}.
+ */
 public class StackFrame {
 	
-	public StackFrame() {
-		this(null, 0, null);
+	public StackFrame(RuntimeObject[] slots) {
+		this(null, slots, 0, 0, 0, 0);
 	}
 
-	public StackFrame(StackFrame prev, int localCount, RuntimeObject[] args) {
+	public StackFrame(StackFrame prev, RuntimeObject[] slots, int base,
+			int argumentCount, int localCount, int maxStackDepth) {
 		previous_ = prev;
-		stack_ = new Stack<RuntimeObject>();
-		locals_ = localCount == 0 ? null : new RuntimeObject[localCount];
-		args_ = args;
+		next_ = null;
+		slots_ = slots;
+		depth_ = prev == null ? 0 : prev.depth_ + 1;
+		reset(base, argumentCount, localCount, maxStackDepth);
 	}
 	
-	private StackFrame previous_;
-	private Stack<RuntimeObject> stack_;
-	private RuntimeObject[] locals_;
-	private RuntimeObject[] args_;
+	private final StackFrame previous_;
+	// frame of the last callee, handed out again for the next call
+	private StackFrame next_;
+	private final RuntimeObject[] slots_;
+	private final int depth_;
+	private int args_;
+	private int locals_;
+	private int temps_;
+	private int top_;
+	private int limit_;
+	private int returnFunction_;
+	private int[] returnCode_;
+	private int returnAddress_;
+	
+	private void reset(int base, int argumentCount, int localCount,
+			int maxStackDepth) {
+		args_ = base;
+		locals_ = base + argumentCount;
+		temps_ = locals_ + localCount;
+		top_ = temps_;
+		limit_ = temps_ + maxStackDepth;
+	}
+	
+	/**
+	 * @return A frame for a function called from this one, reusing the one
+	 * of the last call. The arguments are the slots starting at the base.
+	 */
+	public StackFrame callee(int base, int argumentCount, int localCount,
+			int maxStackDepth) {
+		StackFrame frame = next_;
+		if (frame == null) {
+			frame = new StackFrame(this, slots_, base, argumentCount,
+					localCount, maxStackDepth);
+			next_ = frame;
+		} else {
+			frame.reset(base, argumentCount, localCount, maxStackDepth);
+		}
+		return frame;
+	}
 	
 	public void push(RuntimeObject obj) {
-		stack_.push(obj);
+		slots_[top_++] = obj;
 	}
 	
 	public RuntimeObject pop() {
-		return stack_.pop();
+		return slots_[--top_];
 	}
 	
 	public boolean empty() {
-		return stack_.isEmpty();
+		return top_ == temps_;
 	}
 	
-	public RuntimeObject[] arguments() {
-		return args_;
+	public RuntimeObject top() {
+		return slots_[top_ - 1];
+	}
+	
+	/**
+	 * Drops values from the top without reading them.
+	 */
+	public void discard(int count) {
+		top_ -= count;
+	}
+	
+	public RuntimeObject argument(int i) {
+		return slots_[args_ + i];
 	}
 	
-	public RuntimeObject[] locals() {
-		return locals_;
+	public void setArgument(int i, RuntimeObject obj) {
+		slots_[args_ + i] = obj;
+	}
+	
+	public RuntimeObject local(int i) {
+		return slots_[locals_ + i];
+	}
+	
+	public void setLocal(int i, RuntimeObject obj) {
+		slots_[locals_ + i] = obj;
 	}
 	
 	public StackFrame previous() {
 		return previous_;
 	}
-
-	public RuntimeObject top() {
-		return stack_.peek();
+	
+	/**
+	 * @return Count of frames below this one.
+	 */
+	public int depth() {
+		return depth_;
+	}
+	
+	/**
+	 * @return Index of the slot of the first argument, where the return
+	 * value goes in the caller's window.
+	 */
+	public int base() {
+		return args_;
+	}
+	
+	/**
+	 * Makes this frame the one of a function called in place of its own,
+	 * whose arguments are on the top of the frame. The frame keeps its
+	 * base and where it returns to.
+	 */
+	public void replace(int argumentCount, int localCount,
+			int maxStackDepth) {
+		System.arraycopy(slots_, top_ - argumentCount, slots_, args_,
+				argumentCount);
+		Arrays.fill(slots_, args_ + argumentCount, Math.max(top_, limit_),
+				null);
+		reset(args_, argumentCount, localCount, maxStackDepth);
+	}
+	
+	/**
+	 * Drops the values from the top down to a slot.
+	 */
+	public void truncate(int top) {
+		top_ = top;
+	}
+	
+	/**
+	 * Keeps where the caller goes on once this frame returns: at an offset
+	 * of its code.
+	 * @param function Index of the caller, or -1 for the prologue.
+	 */
+	public void setReturnAddress(int function, int[] code, int offset) {
+		returnFunction_ = function;
+		returnCode_ = code;
+		returnAddress_ = offset;
+	}
+	
+	public int returnFunction() {
+		return returnFunction_;
+	}
+	
+	public int[] returnCode() {
+		return returnCode_;
+	}
+	
+	public int returnAddress() {
+		return returnAddress_;
+	}
+	
+	/**
+	 * @return Index of the first free slot of the operand stack.
+	 */
+	public int stackTop() {
+		return top_;
+	}
+	
+	/**
+	 * @return Index one past the last slot this frame may use.
+	 */
+	public int limit() {
+		return limit_;
+	}
+	
+	/**
+	 * Releases the references held by this frame, so that values it used
+	 * can be collected once the frame is left.
+	 */
+	public void clear() {
+		Arrays.fill(slots_, args_, Math.max(top_, limit_), null);
 	}
 
 }
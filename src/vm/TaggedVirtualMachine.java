@@ -0,0 +1,627 @@
+package vm;
+
+import java.util.Arrays;
+
+import compiler.ByteCode;
+import compiler.OpCodes;
+import compiler.StaticPool;
+import runtime.FunctionInfo;
+import runtime.ModuleInfo;
+import runtime.RuntimeArray;
+import runtime.RuntimeObject;
+import runtime.TaggedValues;
+import utils.RuntimeError;
+
+/**
+ * Runs the same code as the {@link VirtualMachine}, but keeps its operand
+ * stack, locals and globals as values packed into longs, see
+ * {@link TaggedValues}, instead of as objects. Integers, numbers, booleans,
+ * characters and null never leave the long[], so arithmetic does not
+ * allocate. Strings and arrays are kept in an Object[] next to the longs.
+ * <p>
+ * Operations on integers and numbers are done inline. Everything else
+ * unpacks the operands into {@link RuntimeObject}s, lets them do the
+ * operation, and packs the result back, so both machines behave the same.
+ * Like the {@link RegisterVirtualMachine} it runs one module at a time,
+ * without the JIT compiler or checkpoints. A tail call reuses the slots of
+ * the caller.
+ */
+public class TaggedVirtualMachine {
+
+	public TaggedVirtualMachine() {
+		this(VirtualMachine.DEFAULT_STACK_SIZE);
+	}
+
+	public TaggedVirtualMachine(int stackSize) {
+		stackSize_ = stackSize;
+		module_ = null;
+	}
+
+	private final int stackSize_;
+	private ModuleInfo module_;
+	private long[] constants_;
+	private Object[] constantRefs_;
+	private long[] globals_;
+	private Object[] globalRefs_;
+	private long[] slots_;
+	private Object[] refs_;
+
+	public void load(ModuleInfo module) {
+		module_ = module;
+		StaticPool pool = module.staticPool();
+		constants_ = new long[pool.size()];
+		constantRefs_ = new Object[pool.size()];
+		for (int i = 0; i < constants_.length; i++) {
+			RuntimeObject constant = pool.get(i);
+			constants_[i] = TaggedValues.encode(constant);
+			constantRefs_[i] = constant;
+		}
+		globals_ = new long[module.getGlobalFieldCount()];
+		globalRefs_ = new Object[globals_.length];
+		slots_ = new long[stackSize_];
+		refs_ = new Object[stackSize_];
+	}
+
+	/**
+	 * Runs the prologue and then the entry point of the loaded module.
+	 * @return Value returned by the entry point.
+	 * @throws RuntimeError If the module has no entry point, or it fails.
+	 */
+	public RuntimeObject run() throws RuntimeError {
+		try {
+			return runModule();
+		} catch (StackOverflowError e) {
+			// every call recurses, so deep ones run out of the stack of the
+			// thread
+			throw new RuntimeError("stack overflow");
+		}
+	}
+
+	private RuntimeObject runModule() throws RuntimeError {
+		Arrays.fill(globals_, TaggedValues.NULL);
+		Arrays.fill(globalRefs_, null);
+		invoke(module_.prologue(), 0, 0, 0);
+
+		FunctionInfo entry = module_.entryPoint();
+		if (entry == null) {
+			throw new RuntimeError("no entry point");
+		} else if (entry.argumentCount() != 0) {
+			throw new RuntimeError("entry point cannot take arguments");
+		} else {
+			invoke(entry.byteCode(), 0, 0, entry.localCount());
+			RuntimeObject result = TaggedValues.decode(slots_[0], refs_[0]);
+			refs_[0] = null;
+			return result;
+		}
+	}
+
+	/**
+	 * Runs code whose arguments start at the given slot and leaves its
+	 * return value in that slot.
+	 */
+	private void invoke(ByteCode byteCode, int base, int argumentCount,
+			int localCount) throws RuntimeError {
+		int locals = base + argumentCount;
+		int temps = locals + localCount;
+		// the return value goes in the base slot even without arguments
+		int limit = Math.max(temps + byteCode.maxStackDepth(), base + 1);
+		if (limit > slots_.length)
+			throw new RuntimeError("stack overflow");
+		Arrays.fill(slots_, locals, temps, TaggedValues.NULL);
+		int used = limit;
+		try {
+			used = execute(byteCode.code(), base, locals, temps, limit);
+		} finally {
+			// the return value stays in the base slot
+			Arrays.fill(refs_, base + 1, used, null);
+		}
+	}
+
+	/**
+	 * @return Value of a slot as an object.
+	 */
+	private RuntimeObject box(int slot) {
+		return TaggedValues.decode(slots_[slot], refs_[slot]);
+	}
+
+	/**
+	 * Stores an object in a slot.
+	 */
+	private void put(int slot, RuntimeObject obj) {
+		long value = TaggedValues.encode(obj);
+		slots_[slot] = value;
+		refs_[slot] = value == TaggedValues.REF ? obj : null;
+	}
+
+	/**
+	 * @param limit Slot past the last one the code uses.
+	 * @return Slot past the last one used, by the code or the functions it
+	 * called in its place.
+	 */
+	private int execute(int[] code, int base, int locals, int temps,
+			int limit) throws RuntimeError {
+		long[] s = slots_;
+		Object[] r = refs_;
+		int sp = temps;
+		int cursor = 0;
+		int word, operand;
+		long lhs, rhs;
+		// the code always ends with a return, see ByteCode.code()
+		for (;;) {
+			word = code[cursor++];
+			operand = word >> OpCodes.OPCODE_BITS;
+			switch (word & OpCodes.OPCODE_MASK) {
+			case OpCodes.NOP:
+				break;
+			case OpCodes.ADD:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs))
+					s[sp - 2] = TaggedValues.integer((int) lhs + (int) rhs);
+				else if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs))
+					s[sp - 2] = TaggedValues.number(
+							TaggedValues.doubleOf(lhs) +
+							TaggedValues.doubleOf(rhs));
+				else
+					put(sp - 2, box(sp - 2).add(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.SUB:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs))
+					s[sp - 2] = TaggedValues.integer((int) lhs - (int) rhs);
+				else if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs))
+					s[sp - 2] = TaggedValues.number(
+							TaggedValues.doubleOf(lhs) -
+							TaggedValues.doubleOf(rhs));
+				else
+					put(sp - 2, box(sp - 2).subtract(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.MUL:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs))
+					s[sp - 2] = TaggedValues.integer((int) lhs * (int) rhs);
+				else if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs))
+					s[sp - 2] = TaggedValues.number(
+							TaggedValues.doubleOf(lhs) *
+							TaggedValues.doubleOf(rhs));
+				else
+					put(sp - 2, box(sp - 2).multiply(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.DIV:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				// integers divided by zero fail in the objects
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs) && (int) rhs != 0)
+					s[sp - 2] = TaggedValues.integer((int) lhs / (int) rhs);
+				else if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs) &&
+						!(TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs)))
+					s[sp - 2] = TaggedValues.number(
+							TaggedValues.doubleOf(lhs) /
+							TaggedValues.doubleOf(rhs));
+				else
+					put(sp - 2, box(sp - 2).divide(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.MOD:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs) && (int) rhs != 0)
+					s[sp - 2] = TaggedValues.integer((int) lhs % (int) rhs);
+				else
+					put(sp - 2, box(sp - 2).modulus(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.OR:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs))
+					s[sp - 2] = TaggedValues.integer((int) lhs | (int) rhs);
+				else
+					put(sp - 2, box(sp - 2).or(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.AND:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs))
+					s[sp - 2] = TaggedValues.integer((int) lhs & (int) rhs);
+				else
+					put(sp - 2, box(sp - 2).and(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.XOR:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs))
+					s[sp - 2] = TaggedValues.integer((int) lhs ^ (int) rhs);
+				else
+					put(sp - 2, box(sp - 2).xor(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.SHL:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs))
+					s[sp - 2] = TaggedValues.integer((int) lhs << (int) rhs);
+				else
+					put(sp - 2, box(sp - 2).shl(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.SHR:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs))
+					s[sp - 2] = TaggedValues.integer((int) lhs >> (int) rhs);
+				else
+					put(sp - 2, box(sp - 2).shr(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.SAR:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(lhs) &&
+						TaggedValues.isInteger(rhs))
+					s[sp - 2] = TaggedValues.integer(
+							(int) lhs >>> (int) rhs);
+				else
+					put(sp - 2, box(sp - 2).sar(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.EQ:
+				s[sp - 2] = TaggedValues.bool(equal(sp - 2));
+				sp--;
+				break;
+			case OpCodes.NE:
+				s[sp - 2] = TaggedValues.bool(!equal(sp - 2));
+				sp--;
+				break;
+			case OpCodes.LT:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs))
+					s[sp - 2] = TaggedValues.bool(
+							TaggedValues.doubleOf(lhs) <
+							TaggedValues.doubleOf(rhs));
+				else
+					s[sp - 2] = TaggedValues.bool(
+							box(sp - 2).lessThan(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.GT:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs))
+					s[sp - 2] = TaggedValues.bool(
+							TaggedValues.doubleOf(lhs) >
+							TaggedValues.doubleOf(rhs));
+				else
+					s[sp - 2] = TaggedValues.bool(
+							box(sp - 2).greatThan(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.LTE:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs))
+					s[sp - 2] = TaggedValues.bool(
+							TaggedValues.doubleOf(lhs) <=
+							TaggedValues.doubleOf(rhs));
+				else
+					s[sp - 2] = TaggedValues.bool(
+							box(sp - 2).lessThanOrEqual(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.GTE:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs))
+					s[sp - 2] = TaggedValues.bool(
+							TaggedValues.doubleOf(lhs) >=
+							TaggedValues.doubleOf(rhs));
+				else
+					s[sp - 2] = TaggedValues.bool(
+							box(sp - 2).greatThanOrEqual(box(sp - 1)));
+				sp--;
+				break;
+			case OpCodes.NOT:
+			case OpCodes.BIT_NOT:
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(rhs))
+					s[sp - 1] = TaggedValues.integer(~(int) rhs);
+				else if (rhs == TaggedValues.TRUE)
+					s[sp - 1] = TaggedValues.FALSE;
+				else if (rhs == TaggedValues.FALSE)
+					s[sp - 1] = TaggedValues.TRUE;
+				else
+					put(sp - 1, box(sp - 1).not());
+				break;
+			case OpCodes.INC:
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(rhs))
+					s[sp - 1] = TaggedValues.integer((int) rhs + 1);
+				else
+					put(sp - 1, box(sp - 1).increase());
+				break;
+			case OpCodes.DEC:
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(rhs))
+					s[sp - 1] = TaggedValues.integer((int) rhs - 1);
+				else
+					put(sp - 1, box(sp - 1).decrease());
+				break;
+			case OpCodes.NEG:
+				rhs = s[sp - 1];
+				if (TaggedValues.isInteger(rhs))
+					s[sp - 1] = TaggedValues.integer(-(int) rhs);
+				else if (TaggedValues.isNumber(rhs))
+					s[sp - 1] = TaggedValues.number(
+							-TaggedValues.numberValue(rhs));
+				else
+					put(sp - 1, box(sp - 1).negative());
+				break;
+			case OpCodes.BR:
+				cursor = operand;
+				break;
+			case OpCodes.BRTRUE:
+				if (truly(--sp))
+					cursor = operand;
+				break;
+			case OpCodes.BRFALSE:
+				if (!truly(--sp))
+					cursor = operand;
+				break;
+			case OpCodes.BREQ:
+				sp -= 2;
+				if (equal(sp))
+					cursor = operand;
+				break;
+			case OpCodes.BRNE:
+				sp -= 2;
+				if (!equal(sp))
+					cursor = operand;
+				break;
+			// the branches are taken unless the opposite comparison holds,
+			// as in the other machine, which matters for NaN
+			case OpCodes.BRLT:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				sp -= 2;
+				if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs) ?
+						!(TaggedValues.doubleOf(lhs) >=
+						TaggedValues.doubleOf(rhs)) :
+						!box(sp).greatThanOrEqual(box(sp + 1)))
+					cursor = operand;
+				break;
+			case OpCodes.BRGT:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				sp -= 2;
+				if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs) ?
+						!(TaggedValues.doubleOf(lhs) <=
+						TaggedValues.doubleOf(rhs)) :
+						!box(sp).lessThanOrEqual(box(sp + 1)))
+					cursor = operand;
+				break;
+			case OpCodes.BRLTE:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				sp -= 2;
+				if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs) ?
+						!(TaggedValues.doubleOf(lhs) >
+						TaggedValues.doubleOf(rhs)) :
+						!box(sp).greatThan(box(sp + 1)))
+					cursor = operand;
+				break;
+			case OpCodes.BRGTE:
+				lhs = s[sp - 2];
+				rhs = s[sp - 1];
+				sp -= 2;
+				if (TaggedValues.isNumeric(lhs) &&
+						TaggedValues.isNumeric(rhs) ?
+						!(TaggedValues.doubleOf(lhs) <
+						TaggedValues.doubleOf(rhs)) :
+						!box(sp).lessThan(box(sp + 1)))
+					cursor = operand;
+				break;
+			case OpCodes.CALL: {
+				FunctionInfo fn = module_.getFunctionByIndex(operand);
+				sp -= fn.argumentCount();
+				invoke(fn.byteCode(), sp, fn.argumentCount(),
+						fn.localCount());
+				sp++;
+				break;
+			}
+			case OpCodes.TAILCALL: {
+				FunctionInfo fn = module_.getFunctionByIndex(operand);
+				int argc = fn.argumentCount();
+				System.arraycopy(s, sp - argc, s, base, argc);
+				System.arraycopy(r, sp - argc, r, base, argc);
+				Arrays.fill(r, base + argc, sp, null);
+				locals = base + argc;
+				temps = locals + fn.localCount();
+				int reach = temps + fn.maxStackDepth();
+				if (reach > s.length)
+					throw new RuntimeError("stack overflow");
+				limit = Math.max(limit, reach);
+				Arrays.fill(s, locals, temps, TaggedValues.NULL);
+				code = fn.byteCode().code();
+				sp = temps;
+				cursor = 0;
+				break;
+			}
+			case OpCodes.RET:
+				if ((s[base] = s[sp - 1]) == TaggedValues.REF)
+					r[base] = r[sp - 1];
+				return limit;
+			case OpCodes.RETNULL:
+				s[base] = TaggedValues.NULL;
+				return limit;
+			// the objects are only moved along with references, as the
+			// Object[] is only read next to them
+			case OpCodes.LDARG:
+				if ((s[sp] = s[base + operand]) == TaggedValues.REF)
+					r[sp] = r[base + operand];
+				sp++;
+				break;
+			case OpCodes.STARG:
+				sp--;
+				if ((s[base + operand] = s[sp]) == TaggedValues.REF)
+					r[base + operand] = r[sp];
+				break;
+			case OpCodes.LDLOC:
+				if ((s[sp] = s[locals + operand]) == TaggedValues.REF)
+					r[sp] = r[locals + operand];
+				sp++;
+				break;
+			case OpCodes.STLOC:
+				sp--;
+				if ((s[locals + operand] = s[sp]) == TaggedValues.REF)
+					r[locals + operand] = r[sp];
+				break;
+			case OpCodes.LDGLOB:
+				if ((s[sp] = globals_[operand]) == TaggedValues.REF)
+					r[sp] = globalRefs_[operand];
+				sp++;
+				break;
+			case OpCodes.STGLOB:
+				sp--;
+				if ((globals_[operand] = s[sp]) == TaggedValues.REF)
+					globalRefs_[operand] = r[sp];
+				break;
+			case OpCodes.LDSTATIC:
+				if ((s[sp] = constants_[operand]) == TaggedValues.REF) {
+					r[sp] = constantRefs_[operand];
+					// an array literal is a new array every time it is run
+					if (r[sp] instanceof RuntimeArray)
+						r[sp] = ((RuntimeArray) r[sp]).copy();
+				}
+				sp++;
+				break;
+			case OpCodes.LDNULL:
+				s[sp++] = TaggedValues.NULL;
+				break;
+			case OpCodes.LDELEM:
+				loadElement(sp - 2);
+				sp--;
+				break;
+			case OpCodes.STELEM:
+				storeElement(sp - 3);
+				sp -= 3;
+				break;
+			case OpCodes.COPY:
+				// only strings and arrays are not immutable
+				if (s[sp - 1] == TaggedValues.REF)
+					put(sp, box(sp - 1).copy());
+				else
+					s[sp] = s[sp - 1];
+				sp++;
+				break;
+			case OpCodes.POP:
+				sp--;
+				break;
+			default:
+				throw new RuntimeError(String.format(
+						"(internal error) unknown opcode %d at %d",
+						word & OpCodes.OPCODE_MASK, cursor - 1));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the array in a slot with its element at the index in the
+	 * slot above it. Integers and numbers are read without boxing them.
+	 */
+	private void loadElement(int slot) throws RuntimeError {
+		RuntimeArray array = arrayAt(slot);
+		long index = slots_[slot + 1];
+		if (!TaggedValues.isInteger(index)) {
+			put(slot, array.get(box(slot + 1)));
+			return;
+		}
+		int i = (int) index;
+		switch (array.storage()) {
+		case RuntimeArray.INTEGERS:
+			slots_[slot] = TaggedValues.integer(array.integerAt(i));
+			break;
+		case RuntimeArray.NUMBERS:
+			slots_[slot] = TaggedValues.number(array.numberAt(i));
+			break;
+		default:
+			put(slot, array.get(i));
+		}
+	}
+
+	private RuntimeArray arrayAt(int slot) throws RuntimeError {
+		Object ref = refs_[slot];
+		if (slots_[slot] == TaggedValues.REF && ref instanceof RuntimeArray)
+			return (RuntimeArray) ref;
+		return VirtualMachine.requireArray(box(slot));
+	}
+
+	/**
+	 * Stores the value in a slot into the array in the slot above it, at
+	 * the index in the slot above that. Integers and numbers are written
+	 * without boxing them.
+	 */
+	private void storeElement(int slot) throws RuntimeError {
+		RuntimeArray array = arrayAt(slot + 1);
+		long index = slots_[slot + 2];
+		long value = slots_[slot];
+		if (!TaggedValues.isInteger(index))
+			array.set(box(slot + 2), box(slot));
+		else if (TaggedValues.isInteger(value))
+			array.setInteger((int) index, (int) value);
+		else if (TaggedValues.isNumber(value))
+			array.setNumber((int) index, TaggedValues.numberValue(value));
+		else
+			array.set((int) index, box(slot));
+	}
+
+	/**
+	 * @return Whether the values in a slot and the one above it are equal.
+	 */
+	private boolean equal(int slot) {
+		long lhs = slots_[slot];
+		long rhs = slots_[slot + 1];
+		if (TaggedValues.isNumeric(lhs) && TaggedValues.isNumeric(rhs))
+			return TaggedValues.doubleOf(lhs) == TaggedValues.doubleOf(rhs);
+		if (lhs == TaggedValues.REF || rhs == TaggedValues.REF)
+			return box(slot).equals(box(slot + 1));
+		return lhs == rhs;
+	}
+
+	private boolean truly(int slot) {
+		long value = slots_[slot];
+		if (value == TaggedValues.REF)
+			return ((RuntimeObject) refs_[slot]).isTruly();
+		return TaggedValues.isTruly(value);
+	}
+
+}
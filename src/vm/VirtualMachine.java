@@ -1,273 +1,1267 @@
 package vm;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import compiler.ByteCode;
-import compiler.Instruction;
+import compiler.OpCodes;
 import compiler.StaticPool;
+import compiler.Superinstructions;
 import runtime.FunctionInfo;
 import runtime.ModuleInfo;
 import runtime.RuntimeArray;
-import runtime.RuntimeBoolean;
-import runtime.RuntimeNull;
+import runtime.RuntimeInteger;
+import runtime.RuntimeNumber;
 import runtime.RuntimeObject;
-import runtime.RuntimeObjectType;
+import runtime.RuntimeObjectFactory;
+import utils.AbortError;
+import utils.CompileError;
 import utils.RuntimeError;
+import vm.jit.CompiledFunction;
+import vm.jit.JitCompiler;
 
+/**
+ * Runs a loaded module on a stack of {@link StackFrame}s. A run keeps its
+ * state in an {@link ExecutionContext}, so that one machine can run a
+ * module from many threads at once, each run in a context of its own.
+ * What the runs share is read only, except for the counters and the code
+ * of the JIT compiler: the counters only steer when functions are
+ * compiled, so races on them are harmless, and the compiled code is
+ * published under a lock.
+ * <p>
+ * The interpreter runs a copy of the code of every function, which it
+ * quickens: an arithmetic or comparing instruction which finds integers,
+ * or numbers, on the stack is rewritten into a variant for them, see
+ * {@link OpCodes#ADD_II}. The variant checks the types inline instead of
+ * calling the operands, and rewrites itself back when they do not match.
+ * The copies are shared by the runs too, but every rewrite replaces a
+ * whole word with one doing the same, so runs can race on them.
+ * <p>
+ * The copies also have common sequences of instructions fused into
+ * superinstructions, see {@link Superinstructions}, which run a whole
+ * sequence in one dispatch.
+ * <p>
+ * A call from interpreted code to interpreted code does not recurse: the
+ * interpreter enters the frame of the callee, keeps where to return to in
+ * it and goes on with the code of the callee in the same loop. Frames are
+ * reused from call to call, and calls can nest as deep as a limit, see
+ * {@link #setMaxCallDepth}. A tail call runs the callee in the frame of
+ * the caller, so recursion through tail calls runs in constant space.
+ * Calls into and out of compiled code, and all calls while profiling,
+ * still recurse, and so do the others with {@link #setRecursiveCalls}.
+ */
 public class VirtualMachine {
 
+	/**
+	 * Default count of slots of the operand stack.
+	 */
+	public static final int DEFAULT_STACK_SIZE = 64 * 1024;
+	
+	/**
+	 * Default count of calls which can be nested.
+	 */
+	public static final int DEFAULT_MAX_CALL_DEPTH = 10000;
+
 	public VirtualMachine() {
+		this(DEFAULT_STACK_SIZE);
+	}
+	
+	public VirtualMachine(int stackSize) {
+		stackSize_ = stackSize;
+		maxCallDepth_ = DEFAULT_MAX_CALL_DEPTH;
 		module_ = null;
-		globals_ = null;
-		frame_ = null;
+		jit_ = null;
+		profiler_ = null;
+		checkpoints_ = true;
+		quickening_ = true;
+		superinstructions_ = true;
+		recursiveCalls_ = false;
 	}
 	
+	private final int stackSize_;
+	private int maxCallDepth_;
 	private ModuleInfo module_;
-	private RuntimeObject[] globals_;
 	private StaticPool staticPool_;
-	private StackFrame frame_;
+	private JitCompiler jit_;
+	private Profiler profiler_;
+	private boolean checkpoints_;
+	private boolean quickening_;
+	private boolean superinstructions_;
+	private boolean recursiveCalls_;
+	private RuntimeObject[] constants_;
+	private int[] invocations_;
+	private int[] backEdges_;
+	private CompiledFunction[] compiled_;
+	private boolean[] interpretOnly_;
+	// code run by the interpreter, the prologue last
+	private AtomicReferenceArray<int[]> code_;
 	
+	/**
+	 * Loads a module, which has to be done before any run starts.
+	 */
 	public void load(ModuleInfo module) {
 		module_ = module;
-		globals_ = new RuntimeObject[module_.getGlobalFieldCount()];
-		frame_ = new StackFrame();
 		staticPool_ = module.staticPool();
+		constants_ = null;
+		int functions = module_.functionCount();
+		invocations_ = new int[functions];
+		backEdges_ = new int[functions];
+		compiled_ = new CompiledFunction[functions];
+		interpretOnly_ = new boolean[functions];
+		code_ = new AtomicReferenceArray<int[]>(functions + 1);
+	}
+	
+	/**
+	 * @return The loaded module.
+	 */
+	public ModuleInfo module() {
+		return module_;
+	}
+	
+	public boolean checkpoints() {
+		return checkpoints_;
+	}
+	
+	/**
+	 * Turns the checkpoints of the runs on or off, see
+	 * {@link ExecutionContext}. Without them nothing costs a cycle on
+	 * backward branches and calls, but runs cannot be cancelled, time out
+	 * or run out of fuel, so it is only for trusted code. Has to be set
+	 * before the first run.
+	 */
+	public void setCheckpoints(boolean checkpoints) {
+		checkpoints_ = checkpoints;
+	}
+	
+	public int maxCallDepth() {
+		return maxCallDepth_;
+	}
+	
+	/**
+	 * Limits how deep calls can nest; a run going deeper fails with a
+	 * stack overflow. Has to be set before the first run.
+	 */
+	public void setMaxCallDepth(int depth) {
+		if (depth < 1)
+			throw new IllegalArgumentException("call depth has to be positive");
+		maxCallDepth_ = depth;
+	}
+	
+	public boolean quickening() {
+		return quickening_;
+	}
+	
+	/**
+	 * Turns quickening on or off, see above. Without it the interpreter
+	 * runs the code of the module as it is. Has to be set before the first
+	 * run.
+	 */
+	public void setQuickening(boolean quickening) {
+		quickening_ = quickening;
+	}
+	
+	public boolean superinstructions() {
+		return superinstructions_;
+	}
+	
+	/**
+	 * Turns superinstructions on or off, see above. Has to be set before
+	 * the first run.
+	 */
+	public void setSuperinstructions(boolean superinstructions) {
+		superinstructions_ = superinstructions;
+	}
+	
+	public boolean recursiveCalls() {
+		return recursiveCalls_;
+	}
+	
+	/**
+	 * Makes the interpreter recurse on every call but tail calls, as calls
+	 * into compiled code do, instead of going on with the callee in the
+	 * same loop. Has to be set before the first run.
+	 */
+	public void setRecursiveCalls(boolean recursive) {
+		recursiveCalls_ = recursive;
+	}
+	
+	public JitCompiler jit() {
+		return jit_;
+	}
+	
+	/**
+	 * Sets the compiler of hot functions; null, the default, interprets
+	 * every function.
+	 */
+	public void setJit(JitCompiler jit) {
+		jit_ = jit;
+	}
+	
+	public Profiler profiler() {
+		return profiler_;
+	}
+	
+	/**
+	 * Sets the profiler the runs report to; null, the default, turns
+	 * profiling off. The profiler has to be made for the loaded module, and
+	 * set before the first run. While it is set every function is
+	 * interpreted.
+	 */
+	public void setProfiler(Profiler profiler) {
+		if (profiler != null && profiler.module() != module_)
+			throw new IllegalArgumentException(
+					"profiler made for another module");
+		profiler_ = profiler;
+	}
+	
+	/**
+	 * @return A context for a new run of the loaded module.
+	 */
+	public ExecutionContext newContext() {
+		return new ExecutionContext(this, module_.getGlobalFieldCount(),
+				stackSize_, module_.prologue().maxStackDepth());
+	}
+	
+	/**
+	 * Runs the loaded module in a new context.
+	 * @return Value returned by the entry point, or null if there is none.
+	 */
+	public RuntimeObject run() throws RuntimeError {
+		return run(newContext());
+	}
+	
+	/**
+	 * Runs the prologue and then the entry point of the loaded module in a
+	 * context made by {@link #newContext()} which has not run yet.
+	 * @return Value returned by the entry point, or null if there is none.
+	 */
+	public RuntimeObject run(ExecutionContext context) throws RuntimeError {
+		try {
+			return runModule(context);
+		} catch (StackOverflowError e) {
+			// calls which recurse, see above, can run out of the stack of
+			// the thread before they nest as deep as the limit
+			throw new RuntimeError("stack overflow");
+		}
 	}
 	
-	public void run() throws RuntimeError {
-		ByteCode prelogue = module_.prologue();
-		execute(prelogue);
+	private RuntimeObject runModule(ExecutionContext context)
+			throws RuntimeError {
+		int[] prelogue = profiler_ != null ? profiler_.code(-1).code() :
+				code(-1);
+		execute(context, -1, prelogue);
 		
 		FunctionInfo entry = module_.entryPoint();
 		if (entry == null) {
 			System.out.println("No entry point");
 			// TODO raise error here
+			return null;
+		} else if (entry.argumentCount() != 0) {
+			throw new RuntimeError("entry point cannot take arguments");
 		} else {
-			invoke(entry, null);
+			invoke(context, functionIndex(entry));
+			return context.frame().pop();
 		}
 	}
 	
 	/**
-	 * Create and enter a new stack frame.
+	 * Enter a stack frame for a call. The arguments of the function are
+	 * the values in the slots starting at the base.
+	 * @return The frame entered.
 	 */
-	private void enter(int localCount, RuntimeObject[] args) {
-		frame_ = new StackFrame(frame_, localCount, args);
+	private StackFrame enter(ExecutionContext context, FunctionInfo fn,
+			int base) throws RuntimeError {
+		checkCallDepth(context);
+		StackFrame caller = context.frame();
+		StackFrame frame = caller.callee(base, fn.argumentCount(),
+				fn.localCount(), fn.maxStackDepth());
+		if (frame.limit() > context.stack().length)
+			throw new RuntimeError("stack overflow");
+		context.setFrame(frame);
+		return frame;
+	}
+	
+	private void checkCallDepth(ExecutionContext context)
+			throws RuntimeError {
+		if (context.callDepth() >= maxCallDepth_)
+			throw new RuntimeError(String.format(
+					"stack overflow: calls nested deeper than %d",
+					maxCallDepth_));
 	}
 	
 	/**
 	 * Leave current stack frame.
 	 */
-	private void leave() {
-		frame_ = frame_.previous();
+	private void leave(ExecutionContext context) {
+		StackFrame frame = context.frame();
+		frame.clear();
+		context.setFrame(frame.previous());
+	}
+	
+	/**
+	 * Leaves the current frame, replacing the arguments of the call in the
+	 * frame of the caller with the value it returned.
+	 * @return The frame of the caller.
+	 */
+	private StackFrame returnTo(ExecutionContext context,
+			RuntimeObject value) {
+		int base = context.frame().base();
+		leave(context);
+		StackFrame frame = context.frame();
+		frame.truncate(base);
+		frame.push(value);
+		return frame;
+	}
+	
+	/**
+	 * Calls a function with the arguments on the top of the current frame,
+	 * and replaces them with its return value.
+	 */
+	private void invoke(ExecutionContext context, int function)
+			throws RuntimeError {
+		FunctionInfo fn = module_.getFunctionByIndex(function);
+		StackFrame frame = context.frame();
+		RuntimeObject ret = call(context, function,
+				frame.stackTop() - fn.argumentCount());
+		frame.discard(fn.argumentCount());
+		frame.push(ret);
+	}
+	
+	/**
+	 * Calls a function of the loaded module, compiled if it is hot enough.
+	 * @param base Index of the slot of the stack holding the first
+	 * argument.
+	 * @return Value returned by the function, never null.
+	 */
+	RuntimeObject call(ExecutionContext context, int function, int base)
+			throws RuntimeError {
+		if (checkpoints_)
+			context.checkpoint();
+		if (profiler_ != null)
+			return callProfiled(context, function, base);
+		if (jit_ != null) {
+			CompiledFunction compiled = compiled(function);
+			if (compiled != null)
+				return callCompiled(context, function, compiled, base);
+		}
+		return callInterpreted(context, function, base);
+	}
+	
+	private RuntimeObject callInterpreted(ExecutionContext context,
+			int function, int base) throws RuntimeError {
+		enter(context, module_.getFunctionByIndex(function), base);
+		try {
+			return execute(context, function, code(function));
+		} finally {
+			leave(context);
+		}
+	}
+	
+	/**
+	 * Counts a call of a function, and compiles it once it is called often
+	 * enough.
+	 * @return Its compiled code, or null if it is interpreted.
+	 */
+	private CompiledFunction compiled(int function) {
+		CompiledFunction compiled = compiled_[function];
+		if (compiled == null && !interpretOnly_[function] &&
+				++invocations_[function] >= jit_.invocationThreshold())
+			compiled = compile(function);
+		return compiled;
+	}
+	
+	/**
+	 * Calls a function through its instrumented code, timed by the
+	 * profiler.
+	 */
+	private RuntimeObject callProfiled(ExecutionContext context,
+			int function, int base) throws RuntimeError {
+		Profiler profiler = profiler_;
+		enter(context, module_.getFunctionByIndex(function), base);
+		profiler.enter(context, function);
+		try {
+			return execute(context, function,
+					profiler.code(function).code());
+		} finally {
+			profiler.leave(context);
+			leave(context);
+		}
+	}
+	
+	/**
+	 * Calls a compiled function, and then the functions it calls in tail
+	 * position, one after the other, see
+	 * {@link ExecutionContext#tailCall(int)}.
+	 */
+	private RuntimeObject callCompiled(ExecutionContext context,
+			int function, CompiledFunction compiled, int base)
+			throws RuntimeError {
+		RuntimeObject result = invokeCompiled(context, function, compiled,
+				base);
+		while (result == null) {
+			int callerArgs = module_.getFunctionByIndex(function)
+					.argumentCount();
+			function = context.takeTailCall();
+			// the arguments of the caller the callee does not take over
+			int calleeArgs = module_.getFunctionByIndex(function)
+					.argumentCount();
+			if (calleeArgs < callerArgs)
+				Arrays.fill(context.stack(), base + calleeArgs,
+						base + callerArgs, null);
+			if (checkpoints_)
+				context.checkpoint();
+			compiled = compiled(function);
+			result = compiled != null ?
+					invokeCompiled(context, function, compiled, base) :
+					callInterpreted(context, function, base);
+		}
+		return result;
 	}
 	
-	private void invoke(FunctionInfo fn, RuntimeObject[] args)
+	/**
+	 * Runs compiled code once.
+	 * @return Value returned by the function, or null if it made a tail
+	 * call, whose arguments it left in place of its own.
+	 */
+	private RuntimeObject invokeCompiled(ExecutionContext context,
+			int function, CompiledFunction compiled, int base)
 			throws RuntimeError {
-		enter(fn.localCount(), args);
-		RuntimeObject ret = execute(fn.byteCode());
-		assert ret == null;
-		leave();
-		frame_.push(ret);
+		FunctionInfo fn = module_.getFunctionByIndex(function);
+		RuntimeObject[] stack = context.stack();
+		if (base + fn.argumentCount() + fn.localCount() +
+				fn.maxStackDepth() > stack.length)
+			throw new RuntimeError("stack overflow");
+		checkCallDepth(context);
+		context.enterCompiled();
+		boolean tailCall = false;
+		try {
+			RuntimeObject result = compiled.invoke(context, stack, base);
+			tailCall = result == null;
+			return result;
+		} catch (AbortError e) {
+			throw e;
+		} catch (RuntimeError e) {
+			// the compiled code failed at the same point the interpreter
+			// would have, but the function goes back to the interpreter
+			// for good so that a failing path is never run compiled again
+			deoptimize(function);
+			throw e;
+		} finally {
+			context.leaveCompiled();
+			// unless they are the arguments of a tail call by now
+			if (!tailCall)
+				Arrays.fill(stack, base, base + fn.argumentCount(), null);
+		}
+	}
+	
+	/**
+	 * @return Target of a branch being taken. A backward one is a
+	 * checkpoint of the context, and counted as a back edge.
+	 */
+	private int jump(ExecutionContext context, int function, int cursor,
+			int word) throws AbortError {
+		int target = word >> OpCodes.OPCODE_BITS;
+		if (target < cursor) {
+			if (checkpoints_)
+				context.checkpoint();
+			if (jit_ != null)
+				backEdge(function);
+		}
+		return target;
+	}
+	
+	/**
+	 * Counts a backward branch taken in a function, and compiles the
+	 * function when it loops enough. There is no on-stack replacement, so
+	 * the compiled code is used from the next call on.
+	 */
+	private void backEdge(int function) {
+		if (function >= 0 && compiled_[function] == null &&
+				!interpretOnly_[function] &&
+				++backEdges_[function] >= jit_.backEdgeThreshold())
+			compile(function);
 	}
 	
 	/**
-	 * Collects arguments from evaluation stack.
-	 * @param fn The function will be applied.
-	 * @return Arguments.
+	 * Compiles a function unless another run has done it meanwhile.
 	 */
-	private RuntimeObject[] collectArguments(FunctionInfo fn) {
-		int count = fn.argumentCount();
-		RuntimeObject[] args = new RuntimeObject[count];
-		for (int i = count - 1; i >= 0; i--) {
-			args[i] = frame_.pop();
+	private synchronized CompiledFunction compile(int function) {
+		if (compiled_[function] != null || interpretOnly_[function])
+			return compiled_[function];
+		if (constants_ == null) {
+			constants_ = new RuntimeObject[staticPool_.size()];
+			for (int i = 0; i < constants_.length; i++)
+				constants_[i] = staticPool_.get(i);
 		}
-		return args;
+		try {
+			compiled_[function] = jit_.compile(module_,
+					module_.getFunctionByIndex(function), constants_,
+					checkpoints_);
+		} catch (CompileError e) {
+			interpretOnly_[function] = true;
+		}
+		return compiled_[function];
+	}
+	
+	private synchronized void deoptimize(int function) {
+		compiled_[function] = null;
+		interpretOnly_[function] = true;
 	}
 	
-	private RuntimeObject execute(ByteCode byteCode) throws RuntimeError {
+	/**
+	 * @param function Index of a function, or -1 for the prologue.
+	 * @return Code the interpreter runs for it, a copy of its own once
+	 * quickening or superinstructions are on.
+	 */
+	private int[] code(int function) {
+		int slot = function < 0 ? code_.length() - 1 : function;
+		int[] code = code_.get(slot);
+		if (code == null) {
+			ByteCode byteCode = function < 0 ? module_.prologue() :
+					module_.getFunctionByIndex(function).byteCode();
+			code = byteCode.code();
+			if (quickening_ || superinstructions_)
+				code = code.clone();
+			if (superinstructions_)
+				Superinstructions.fuse(code);
+			if (!code_.compareAndSet(slot, null, code))
+				code = code_.get(slot);
+		}
+		return code;
+	}
+	
+	private int functionIndex(FunctionInfo fn) {
+		for (int i = 0; i < module_.functionCount(); i++)
+			if (module_.getFunctionByIndex(i) == fn)
+				return i;
+		throw new IllegalArgumentException(fn.name());
+	}
+	
+	/**
+	 * Runs the code of the frame entered last, and of the functions it
+	 * calls, until it returns. The frames of the calls made in between are
+	 * left behind if it fails.
+	 * @param function Index of the function the code belongs to, or -1 for
+	 * the prologue.
+	 */
+	private RuntimeObject execute(ExecutionContext context, int function,
+			int[] code) throws RuntimeError {
+		StackFrame entry = context.frame();
+		try {
+			return execute(context, entry, function, code);
+		} finally {
+			while (context.frame() != entry)
+				leave(context);
+		}
+	}
+	
+	private RuntimeObject execute(ExecutionContext context,
+			StackFrame entry, int function, int[] code) throws RuntimeError {
 		int cursor = 0;
-		StackFrame stack = frame_;
+		StackFrame stack = entry;
+		RuntimeObject[] globals = context.globals();
 		RuntimeObject returnObj = null;
 		RuntimeObject lhs, rhs;
 		RuntimeObject value, index;
 		RuntimeArray array;
-		ExecuteLoop: while (cursor < byteCode.instructionCount()) {
-			Instruction ins = byteCode.fetch(cursor);
-			switch (ins.opcode()) {
-			case ADD:
+		FunctionInfo fn;
+		CompiledFunction compiled;
+		boolean quicken = quickening_;
+		int word, callee, base;
+		// the code always ends with a return, see ByteCode.code()
+		ExecuteLoop: for (;;) {
+			word = code[cursor++];
+			switch (word & OpCodes.OPCODE_MASK) {
+			case OpCodes.ADD:
 				rhs = stack.pop();
 				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.ADD_II,
+							OpCodes.ADD_DD);
 				stack.push(lhs.add(rhs));
 				break;
-			case AND:
+			case OpCodes.AND:
 				rhs = stack.pop();
 				lhs = stack.pop();
 				stack.push(lhs.and(rhs));
 				break;
-			case BR:
-				cursor = ins.operand();
+			case OpCodes.BR:
+				cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRFALSE:
+				if (stack.pop().isFalsy())
+					cursor = jump(context, function, cursor, word);
 				break;
-			case BRFALSE:
+			case OpCodes.BRTRUE:
 				if (stack.pop().isTruly())
-					cursor = ins.operand();
+					cursor = jump(context, function, cursor, word);
 				break;
-			case BRTRUE:
-				if (stack.pop().isFalsy())
-					cursor = ins.operand();
+			case OpCodes.BREQ:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.BREQ_II,
+							-1);
+				if (lhs.equals(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRNE:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.BRNE_II,
+							-1);
+				if (!lhs.equals(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRLT:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.BRLT_II,
+							-1);
+				if (!lhs.greatThanOrEqual(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRGT:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.BRGT_II,
+							-1);
+				if (!lhs.lessThanOrEqual(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRLTE:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.BRLTE_II,
+							-1);
+				if (!lhs.greatThan(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRGTE:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.BRGTE_II,
+							-1);
+				if (!lhs.lessThan(rhs))
+					cursor = jump(context, function, cursor, word);
 				break;
-			case CALL: {
-				FunctionInfo fn = module_.getFunctionByIndex(ins.operand());
-				RuntimeObject[] newArgs = collectArguments(fn);
-				invoke(fn, newArgs);
+			case OpCodes.CALL:
+				callee = word >> OpCodes.OPCODE_BITS;
+				if (profiler_ != null || recursiveCalls_) {
+					invoke(context, callee);
+					break;
+				}
+				if (checkpoints_)
+					context.checkpoint();
+				fn = module_.getFunctionByIndex(callee);
+				base = stack.stackTop() - fn.argumentCount();
+				if (jit_ != null && (compiled = compiled(callee)) != null) {
+					value = callCompiled(context, callee, compiled, base);
+					stack.truncate(base);
+					stack.push(value);
+					break;
 				}
+				stack = enter(context, fn, base);
+				stack.setReturnAddress(function, code, cursor);
+				function = callee;
+				code = code(callee);
+				cursor = 0;
 				break;
-			case DIV:
+			case OpCodes.DIV:
 				rhs = stack.pop();
 				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, -1,
+							OpCodes.DIV_DD);
 				stack.push(lhs.divide(rhs));
 				break;
-			case EQ:
+			case OpCodes.EQ:
 				rhs = stack.pop();
 				lhs = stack.pop();
-				stack.push(new RuntimeBoolean(lhs.equals(rhs)));
+				stack.push(RuntimeObjectFactory.bool(lhs.equals(rhs)));
 				break;
-			case GT:
+			case OpCodes.GT:
 				rhs = stack.pop();
 				lhs = stack.pop();
-				stack.push(new RuntimeBoolean(lhs.greatThan(rhs)));
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.GT_II,
+							-1);
+				stack.push(RuntimeObjectFactory.bool(lhs.greatThan(rhs)));
 				break;
-			case GTE:
+			case OpCodes.GTE:
 				rhs = stack.pop();
 				lhs = stack.pop();
-				stack.push(new RuntimeBoolean(lhs.greatThanOrEqual(rhs)));
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.GTE_II,
+							-1);
+				stack.push(RuntimeObjectFactory.bool(
+						lhs.greatThanOrEqual(rhs)));
 				break;
-			case LDARG:
-				stack.push(stack.arguments()[ins.operand()]);
+			case OpCodes.LDARG:
+				stack.push(stack.argument(word >> OpCodes.OPCODE_BITS));
 				break;
-			case LDGLOB:
-				stack.push(globals_[ins.operand()]);
+			case OpCodes.LDGLOB:
+				stack.push(globals[word >> OpCodes.OPCODE_BITS]);
 				break;
-			case LDLOC:
-				stack.push(stack.locals()[ins.operand()]);
+			case OpCodes.LDLOC:
+				stack.push(stack.local(word >> OpCodes.OPCODE_BITS));
 				break;
-			case LDSTATIC:
-				stack.push(staticPool_.get(ins.operand()));
+			case OpCodes.LDSTATIC:
+				value = staticPool_.get(word >> OpCodes.OPCODE_BITS);
+				// an array literal is a new array every time it is run
+				if (value instanceof RuntimeArray)
+					value = value.copy();
+				stack.push(value);
 				break;
-			case LDELEM:
+			case OpCodes.LDELEM:
+				index = stack.pop();
+				array = requireArray(stack.pop());
+				stack.push(array.get(index));
 				break;
-			case LT:
+			case OpCodes.LT:
 				rhs = stack.pop();
 				lhs = stack.pop();
-				stack.push(new RuntimeBoolean(lhs.lessThan(rhs)));
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.LT_II,
+							-1);
+				stack.push(RuntimeObjectFactory.bool(lhs.lessThan(rhs)));
 				break;
-			case LTE:
+			case OpCodes.LTE:
 				rhs = stack.pop();
 				lhs = stack.pop();
-				stack.push(new RuntimeBoolean(lhs.lessThanOrEqual(rhs)));
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.LTE_II,
+							-1);
+				stack.push(RuntimeObjectFactory.bool(
+						lhs.lessThanOrEqual(rhs)));
 				break;
-			case MOD:
+			case OpCodes.MOD:
 				rhs = stack.pop();
 				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.MOD_II,
+							-1);
 				stack.push(lhs.modulus(rhs));
 				break;
-			case MUL:
+			case OpCodes.MUL:
 				rhs = stack.pop();
 				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.MUL_II,
+							OpCodes.MUL_DD);
 				stack.push(lhs.multiply(rhs));
 				break;
-			case NE:
+			case OpCodes.NE:
 				rhs = stack.pop();
 				lhs = stack.pop();
-				stack.push(new RuntimeBoolean(!lhs.equals(rhs)));
+				stack.push(RuntimeObjectFactory.bool(!lhs.equals(rhs)));
 				break;
-			case NOP:
+			case OpCodes.NOP:
 				break;
-			case OR:
+			case OpCodes.OR:
 				rhs = stack.pop();
 				lhs = stack.pop();
 				stack.push(lhs.or(rhs));
 				break;
-			case POP:
+			case OpCodes.POP:
 				stack.pop();
 				break;
-			case RET:
-				returnObj = stack.pop();
+			case OpCodes.PROFILE:
+				profiler_.count(function, word >> OpCodes.OPCODE_BITS);
+				break;
+			case OpCodes.TAILCALL:
+				callee = word >> OpCodes.OPCODE_BITS;
+				if (checkpoints_)
+					context.checkpoint();
+				// the callee takes the frame over, and returns to the
+				// caller of this function. It stays interpreted even if it
+				// is compiled, since compiled code would run in a call of
+				// its own, and a chain of tail calls going in and out of it
+				// would grow the stack of the thread
+				if (jit_ != null)
+					compiled(callee);
+				fn = module_.getFunctionByIndex(callee);
+				stack.replace(fn.argumentCount(), fn.localCount(),
+						fn.maxStackDepth());
+				if (stack.limit() > context.stack().length)
+					throw new RuntimeError("stack overflow");
+				if (profiler_ != null) {
+					// to the profile the callee is called by the caller of
+					// this function too
+					profiler_.leave(context);
+					profiler_.enter(context, callee);
+					code = profiler_.code(callee).code();
+				} else {
+					code = code(callee);
+				}
+				function = callee;
+				cursor = 0;
+				break;
+			case OpCodes.RET:
+			case OpCodes.RETNULL:
+				returnObj = (word & OpCodes.OPCODE_MASK) != OpCodes.RETNULL ?
+						stack.pop() : null;
 				if (returnObj == null)
-					returnObj = new RuntimeNull();
-				break ExecuteLoop;
-			case RETNULL:
-				returnObj = new RuntimeNull();
-				break ExecuteLoop;
-			case SAR:
+					returnObj = RuntimeObjectFactory.NULL;
+				if (stack == entry)
+					break ExecuteLoop;
+				// back to the caller, with the value in place of the
+				// arguments
+				function = stack.returnFunction();
+				code = stack.returnCode();
+				cursor = stack.returnAddress();
+				stack = returnTo(context, returnObj);
+				break;
+			case OpCodes.SAR:
 				rhs = stack.pop();
 				lhs = stack.pop();
 				stack.push(lhs.sar(rhs));
 				break;
-			case SHL:
+			case OpCodes.SHL:
 				rhs = stack.pop();
 				lhs = stack.pop();
 				stack.push(lhs.shl(rhs));
 				break;
-			case SHR:
+			case OpCodes.SHR:
 				rhs = stack.pop();
 				lhs = stack.pop();
 				stack.push(lhs.shr(rhs));
 				break;
-			case STARG:
-				stack.arguments()[ins.operand()] = stack.pop();
+			case OpCodes.STARG:
+				stack.setArgument(
+						word >> OpCodes.OPCODE_BITS, stack.pop());
 				break;
-			case STGLOB:
-				globals_[ins.operand()] = stack.pop();
+			case OpCodes.STGLOB:
+				globals[word >> OpCodes.OPCODE_BITS] = stack.pop();
 				break;
-			case STLOC:
-				stack.locals()[ins.operand()] = stack.pop();
+			case OpCodes.STLOC:
+				stack.setLocal(word >> OpCodes.OPCODE_BITS, stack.pop());
 				break;
-			case STELEM:
+			case OpCodes.STELEM:
 				index = stack.pop();
+				array = requireArray(stack.pop());
 				value = stack.pop();
-				rhs = stack.pop();
-				index.requireType(RuntimeObjectType.INTEGER);
-				value.requireType(RuntimeObjectType.ARRAY);
+				array.set(index, value);
 				break;
-			case SUB:
+			case OpCodes.SUB:
 				rhs = stack.pop();
 				lhs = stack.pop();
+				if (quicken)
+					quicken(code, cursor - 1, lhs, rhs, OpCodes.SUB_II,
+							OpCodes.SUB_DD);
 				stack.push(lhs.subtract(rhs));
 				break;
-			case BIT_NOT:
+			case OpCodes.BIT_NOT:
 				rhs = stack.pop();
 				stack.push(rhs.not());
 				break;
-			case COPY:
+			case OpCodes.COPY:
 				stack.push(stack.top().copy());
 				break;
-			case DEC:
+			case OpCodes.DEC:
 				rhs = stack.pop();
+				if (quicken && rhs instanceof RuntimeInteger)
+					code[cursor - 1] = OpCodes.DEC_I;
 				stack.push(rhs.decrease());
 				break;
-			case INC:
+			case OpCodes.INC:
 				rhs = stack.pop();
+				if (quicken && rhs instanceof RuntimeInteger)
+					code[cursor - 1] = OpCodes.INC_I;
 				stack.push(rhs.increase());
 				break;
-			case LDNULL:
-				stack.push(new RuntimeNull());
+			case OpCodes.LDNULL:
+				stack.push(RuntimeObjectFactory.NULL);
 				break;
-			case NEG:
+			case OpCodes.NEG:
 				rhs = stack.pop();
 				stack.push(rhs.negative());
 				break;
-			case NOT:
+			case OpCodes.NOT:
 				rhs = stack.pop();
 				stack.push(rhs.not());
 				break;
-			case XOR:
+			case OpCodes.XOR:
 				rhs = stack.pop();
 				lhs = stack.pop();
 				stack.push(lhs.xor(rhs));
 				break;
-			default:
+			case OpCodes.ADD_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					stack.push(RuntimeObjectFactory.integer(
+							((RuntimeInteger) lhs).value() +
+							((RuntimeInteger) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.ADD;
+				stack.push(lhs.add(rhs));
+				break;
+			case OpCodes.SUB_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					stack.push(RuntimeObjectFactory.integer(
+							((RuntimeInteger) lhs).value() -
+							((RuntimeInteger) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.SUB;
+				stack.push(lhs.subtract(rhs));
+				break;
+			case OpCodes.MUL_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					stack.push(RuntimeObjectFactory.integer(
+							((RuntimeInteger) lhs).value() *
+							((RuntimeInteger) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.MUL;
+				stack.push(lhs.multiply(rhs));
+				break;
+			case OpCodes.MOD_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger &&
+						((RuntimeInteger) rhs).value() != 0) {
+					stack.push(RuntimeObjectFactory.integer(
+							((RuntimeInteger) lhs).value() %
+							((RuntimeInteger) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.MOD;
+				stack.push(lhs.modulus(rhs));
+				break;
+			case OpCodes.ADD_DD:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeNumber &&
+						rhs instanceof RuntimeNumber) {
+					stack.push(RuntimeObjectFactory.number(
+							((RuntimeNumber) lhs).value() +
+							((RuntimeNumber) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.ADD;
+				stack.push(lhs.add(rhs));
+				break;
+			case OpCodes.SUB_DD:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeNumber &&
+						rhs instanceof RuntimeNumber) {
+					stack.push(RuntimeObjectFactory.number(
+							((RuntimeNumber) lhs).value() -
+							((RuntimeNumber) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.SUB;
+				stack.push(lhs.subtract(rhs));
+				break;
+			case OpCodes.MUL_DD:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeNumber &&
+						rhs instanceof RuntimeNumber) {
+					stack.push(RuntimeObjectFactory.number(
+							((RuntimeNumber) lhs).value() *
+							((RuntimeNumber) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.MUL;
+				stack.push(lhs.multiply(rhs));
+				break;
+			case OpCodes.DIV_DD:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeNumber &&
+						rhs instanceof RuntimeNumber) {
+					stack.push(RuntimeObjectFactory.number(
+							((RuntimeNumber) lhs).value() /
+							((RuntimeNumber) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.DIV;
+				stack.push(lhs.divide(rhs));
+				break;
+			case OpCodes.INC_I:
+				rhs = stack.pop();
+				if (rhs instanceof RuntimeInteger) {
+					stack.push(RuntimeObjectFactory.integer(
+							((RuntimeInteger) rhs).value() + 1));
+					break;
+				}
+				code[cursor - 1] = OpCodes.INC;
+				stack.push(rhs.increase());
+				break;
+			case OpCodes.DEC_I:
+				rhs = stack.pop();
+				if (rhs instanceof RuntimeInteger) {
+					stack.push(RuntimeObjectFactory.integer(
+							((RuntimeInteger) rhs).value() - 1));
+					break;
+				}
+				code[cursor - 1] = OpCodes.DEC;
+				stack.push(rhs.decrease());
+				break;
+			case OpCodes.LT_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					stack.push(RuntimeObjectFactory.bool(
+							((RuntimeInteger) lhs).value() <
+							((RuntimeInteger) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.LT;
+				stack.push(RuntimeObjectFactory.bool(lhs.lessThan(rhs)));
+				break;
+			case OpCodes.GT_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					stack.push(RuntimeObjectFactory.bool(
+							((RuntimeInteger) lhs).value() >
+							((RuntimeInteger) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.GT;
+				stack.push(RuntimeObjectFactory.bool(lhs.greatThan(rhs)));
+				break;
+			case OpCodes.LTE_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					stack.push(RuntimeObjectFactory.bool(
+							((RuntimeInteger) lhs).value() <=
+							((RuntimeInteger) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.LTE;
+				stack.push(RuntimeObjectFactory.bool(
+						lhs.lessThanOrEqual(rhs)));
+				break;
+			case OpCodes.GTE_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					stack.push(RuntimeObjectFactory.bool(
+							((RuntimeInteger) lhs).value() >=
+							((RuntimeInteger) rhs).value()));
+					break;
+				}
+				code[cursor - 1] = OpCodes.GTE;
+				stack.push(RuntimeObjectFactory.bool(
+						lhs.greatThanOrEqual(rhs)));
+				break;
+			case OpCodes.BREQ_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					if (((RuntimeInteger) lhs).value() ==
+							((RuntimeInteger) rhs).value())
+						cursor = jump(context, function, cursor, word);
+					break;
+				}
+				code[cursor - 1] = rewrite(word, OpCodes.BREQ);
+				if (lhs.equals(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRNE_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					if (((RuntimeInteger) lhs).value() !=
+							((RuntimeInteger) rhs).value())
+						cursor = jump(context, function, cursor, word);
+					break;
+				}
+				code[cursor - 1] = rewrite(word, OpCodes.BRNE);
+				if (!lhs.equals(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRLT_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					if (((RuntimeInteger) lhs).value() <
+							((RuntimeInteger) rhs).value())
+						cursor = jump(context, function, cursor, word);
+					break;
+				}
+				code[cursor - 1] = rewrite(word, OpCodes.BRLT);
+				if (!lhs.greatThanOrEqual(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRGT_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					if (((RuntimeInteger) lhs).value() >
+							((RuntimeInteger) rhs).value())
+						cursor = jump(context, function, cursor, word);
+					break;
+				}
+				code[cursor - 1] = rewrite(word, OpCodes.BRGT);
+				if (!lhs.lessThanOrEqual(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRLTE_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					if (((RuntimeInteger) lhs).value() <=
+							((RuntimeInteger) rhs).value())
+						cursor = jump(context, function, cursor, word);
+					break;
+				}
+				code[cursor - 1] = rewrite(word, OpCodes.BRLTE);
+				if (!lhs.greatThan(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.BRGTE_II:
+				rhs = stack.pop();
+				lhs = stack.pop();
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger) {
+					if (((RuntimeInteger) lhs).value() >=
+							((RuntimeInteger) rhs).value())
+						cursor = jump(context, function, cursor, word);
+					break;
+				}
+				code[cursor - 1] = rewrite(word, OpCodes.BRGTE);
+				if (!lhs.lessThan(rhs))
+					cursor = jump(context, function, cursor, word);
+				break;
+			case OpCodes.INCLOC:
+				base = word >> OpCodes.OPCODE_BITS;
+				value = stack.local(base);
+				if (value instanceof RuntimeInteger)
+					value = RuntimeObjectFactory.integer(
+							((RuntimeInteger) value).value() + 1);
+				else
+					value = value.increase();
+				stack.setLocal(base, value);
+				cursor += 2;
+				break;
+			case OpCodes.LDLOCLOC:
+				stack.push(stack.local(word >> OpCodes.OPCODE_BITS));
+				stack.push(stack.local(code[cursor++] >> OpCodes.OPCODE_BITS));
+				break;
+			case OpCodes.SUBARGSTATIC:
+				lhs = stack.argument(word >> OpCodes.OPCODE_BITS);
+				rhs = staticPool_.get(code[cursor] >> OpCodes.OPCODE_BITS);
+				cursor += 2;
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger)
+					stack.push(RuntimeObjectFactory.integer(
+							((RuntimeInteger) lhs).value() -
+							((RuntimeInteger) rhs).value()));
+				else
+					stack.push(lhs.subtract(rhs));
+				break;
+			case OpCodes.MODLOCSTATIC:
+				lhs = stack.local(word >> OpCodes.OPCODE_BITS);
+				rhs = staticPool_.get(code[cursor] >> OpCodes.OPCODE_BITS);
+				cursor += 2;
+				if (lhs instanceof RuntimeInteger &&
+						rhs instanceof RuntimeInteger &&
+						((RuntimeInteger) rhs).value() != 0)
+					stack.push(RuntimeObjectFactory.integer(
+							((RuntimeInteger) lhs).value() %
+							((RuntimeInteger) rhs).value()));
+				else
+					stack.push(lhs.modulus(rhs));
+				break;
+			case OpCodes.BRGTELOCSTATIC:
+				lhs = stack.local(word >> OpCodes.OPCODE_BITS);
+				if (branchUnlessLess(lhs, code[cursor]))
+					cursor = jump(context, function, cursor + 2,
+							code[cursor + 1]);
+				else
+					cursor += 2;
+				break;
+			case OpCodes.BRGTEARGSTATIC:
+				lhs = stack.argument(word >> OpCodes.OPCODE_BITS);
+				if (branchUnlessLess(lhs, code[cursor]))
+					cursor = jump(context, function, cursor + 2,
+							code[cursor + 1]);
+				else
+					cursor += 2;
 				break;
+			default:
+				throw new RuntimeError(String.format(
+						"(internal error) unknown opcode %d at %d",
+						word & OpCodes.OPCODE_MASK, cursor - 1));
 			}
 		}
 		return returnObj;
 	}
+	
+	/**
+	 * Compares a value with a static as BRGTE does.
+	 * @param load Word loading the static.
+	 * @return Whether the value is not less than the static.
+	 */
+	private boolean branchUnlessLess(RuntimeObject lhs, int load)
+			throws RuntimeError {
+		RuntimeObject rhs = staticPool_.get(load >> OpCodes.OPCODE_BITS);
+		if (lhs instanceof RuntimeInteger && rhs instanceof RuntimeInteger)
+			return ((RuntimeInteger) lhs).value() >=
+					((RuntimeInteger) rhs).value();
+		return !lhs.lessThan(rhs);
+	}
+	
+	/**
+	 * Rewrites the instruction at an index into its variant for the types
+	 * of its operands, if it has one.
+	 * @param integers Variant for two integers, or -1 for none.
+	 * @param numbers Variant for two numbers, or -1 for none.
+	 */
+	private static void quicken(int[] code, int at, RuntimeObject lhs,
+			RuntimeObject rhs, int integers, int numbers) {
+		if (integers >= 0 && lhs instanceof RuntimeInteger &&
+				rhs instanceof RuntimeInteger)
+			code[at] = rewrite(code[at], integers);
+		else if (numbers >= 0 && lhs instanceof RuntimeNumber &&
+				rhs instanceof RuntimeNumber)
+			code[at] = rewrite(code[at], numbers);
+	}
+	
+	/**
+	 * @return A code word with its opcode replaced and its operand kept.
+	 */
+	private static int rewrite(int word, int opcode) {
+		return (word & ~OpCodes.OPCODE_MASK) | opcode;
+	}
+	
+	public static RuntimeArray requireArray(RuntimeObject obj)
+			throws RuntimeError {
+		if (!obj.isArray())
+			throw new RuntimeError(String.format(
+					"cannot index a value of type %s", obj.getType()));
+		return (RuntimeArray) obj;
+	}
 
 }
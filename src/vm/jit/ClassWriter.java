@@ -0,0 +1,182 @@
+package vm.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Builds a class file with a constant pool and methods, and nothing else
+ * the JIT does not need. The class file version is 49, which the JVM
+ * verifies by type inference, so no stack map frames are written.
+ */
+class ClassWriter {
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+	
+	private static final int VERSION = 49;
+	
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	ClassWriter(String name, String superName) {
+		pool_ = new ByteArrayOutputStream();
+		poolData_ = new DataOutputStream(pool_);
+		poolIndex_ = new HashMap<String, Integer>();
+		poolCount_ = 1;
+		methods_ = new ArrayList<byte[]>();
+		thisClass_ = classRef(name);
+		superClass_ = classRef(superName);
+		codeName_ = utf8("Code");
+	}
+	
+	private ByteArrayOutputStream pool_;
+	private DataOutputStream poolData_;
+	private HashMap<String, Integer> poolIndex_;
+	private int poolCount_;
+	private ArrayList<byte[]> methods_;
+	private int thisClass_;
+	private int superClass_;
+	private int codeName_;
+	
+	// Constant pool
+	
+	int utf8(String value) {
+		Integer index = poolIndex_.get("u" + value);
+		if (index != null)
+			return index;
+		try {
+			poolData_.writeByte(CONSTANT_UTF8);
+			poolData_.writeUTF(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return enter("u" + value, 1);
+	}
+	
+	int integer(int value) {
+		Integer index = poolIndex_.get("i" + value);
+		if (index != null)
+			return index;
+		write(CONSTANT_INTEGER, value >>> 16, value & 0xffff);
+		return enter("i" + value, 1);
+	}
+	
+	int classRef(String name) {
+		Integer index = poolIndex_.get("c" + name);
+		if (index != null)
+			return index;
+		int nameIndex = utf8(name);
+		write(CONSTANT_CLASS, nameIndex);
+		return enter("c" + name, 1);
+	}
+	
+	int fieldRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+	}
+	
+	int methodRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+	}
+	
+	private int memberRef(int tag, String owner, String name,
+			String descriptor) {
+		String key = "m" + tag + owner + '.' + name + descriptor;
+		Integer index = poolIndex_.get(key);
+		if (index != null)
+			return index;
+		int classIndex = classRef(owner);
+		int nameAndType = nameAndType(name, descriptor);
+		write(tag, classIndex, nameAndType);
+		return enter(key, 1);
+	}
+	
+	private int nameAndType(String name, String descriptor) {
+		String key = "n" + name + ' ' + descriptor;
+		Integer index = poolIndex_.get(key);
+		if (index != null)
+			return index;
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		write(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+		return enter(key, 1);
+	}
+	
+	private void write(int tag, int... shorts) {
+		try {
+			poolData_.writeByte(tag);
+			for (int s : shorts)
+				poolData_.writeShort(s);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private int enter(String key, int slots) {
+		int index = poolCount_;
+		poolIndex_.put(key, index);
+		poolCount_ += slots;
+		return index;
+	}
+	
+	// Methods
+	
+	void addMethod(int access, String name, String descriptor,
+			JvmCode code) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(1);
+			
+			// Code attribute, without exception table or attributes
+			byte[] body = code.toByteArray();
+			out.writeShort(codeName_);
+			out.writeInt(12 + body.length);
+			out.writeShort(code.maxStack());
+			out.writeShort(code.maxLocals());
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeShort(0);
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		methods_.add(bytes.toByteArray());
+	}
+	
+	byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xcafebabe);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolCount_);
+			poolData_.flush();
+			pool_.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass_);
+			out.writeShort(superClass_);
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(methods_.size());
+			for (byte[] method : methods_)
+				out.write(method);
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+}
@@ -0,0 +1,46 @@
+package vm.jit;
+
+import runtime.RuntimeObject;
+import utils.RuntimeError;
+import vm.ExecutionContext;
+import vm.VirtualMachine;
+
+/**
+ * A function translated to JVM bytecode by the {@link JitCompiler}. The
+ * generated classes extend this class, so they are public members and
+ * not package-private ones: the generated classes live in a class loader
+ * of their own, and so in a different runtime package.
+ */
+public abstract class CompiledFunction {
+
+	protected CompiledFunction(RuntimeObject[] constants) {
+		constants_ = constants;
+	}
+	
+	protected final RuntimeObject[] constants_;
+	
+	/**
+	 * Runs the function in a context, which holds the globals it works
+	 * on. The arguments are in the slots of the stack of the context
+	 * starting at the base, and the arguments of the functions it calls
+	 * are passed in the slots after them.
+	 * @return Value returned by the function, or null if it ends with a
+	 * tail call of another function, see
+	 * {@link ExecutionContext#tailCall(int)}.
+	 */
+	public abstract RuntimeObject invoke(ExecutionContext context,
+			RuntimeObject[] stack, int base) throws RuntimeError;
+	
+	// Helpers of the generated code
+	
+	public static RuntimeObject loadElement(RuntimeObject array,
+			RuntimeObject index) throws RuntimeError {
+		return VirtualMachine.requireArray(array).get(index);
+	}
+	
+	public static void storeElement(RuntimeObject value,
+			RuntimeObject array, RuntimeObject index) throws RuntimeError {
+		VirtualMachine.requireArray(array).set(index, value);
+	}
+
+}
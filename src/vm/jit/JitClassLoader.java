@@ -0,0 +1,17 @@
+package vm.jit;
+
+/**
+ * Defines the classes the JIT generates. The generated code links against
+ * the classes of the virtual machine, so those are loaded by the parent.
+ */
+class JitClassLoader extends ClassLoader {
+
+	JitClassLoader() {
+		super(JitClassLoader.class.getClassLoader());
+	}
+	
+	Class<?> define(String name, byte[] bytes) {
+		return defineClass(name, bytes, 0, bytes.length);
+	}
+
+}
@@ -0,0 +1,507 @@
+package vm.jit;
+
+import java.util.ArrayDeque;
+
+import compiler.OpCode;
+import compiler.OpCodes;
+import runtime.FunctionInfo;
+import runtime.ModuleInfo;
+import runtime.RuntimeObject;
+import utils.CompileError;
+
+/**
+ * Translates hot functions to JVM classes. Every value of the evaluation
+ * stack of a function becomes a value of the JVM operand stack, and every
+ * argument and local a JVM local variable, so the JVM compiles the whole
+ * function as if it were written in Java. The operations on values are
+ * calls to the same {@link RuntimeObject} methods the interpreter uses,
+ * which keeps the semantics identical.
+ */
+public class JitCompiler {
+
+	/**
+	 * Default count of calls after which a function is compiled.
+	 */
+	public static final int DEFAULT_INVOCATION_THRESHOLD = 1000;
+
+	/**
+	 * Default count of backward branches taken in a function after which
+	 * it is compiled.
+	 */
+	public static final int DEFAULT_BACK_EDGE_THRESHOLD = 10000;
+
+	private static final String PACKAGE = "vm/jit/";
+	private static final String BASE =
+			PACKAGE + "CompiledFunction";
+	private static final String OBJECT = "runtime/RuntimeObject";
+	private static final String OBJECT_DESC = "L" + OBJECT + ";";
+	private static final String ARRAY_DESC = "[" + OBJECT_DESC;
+	private static final String FACTORY = "runtime/RuntimeObjectFactory";
+	private static final String CONTEXT = "vm/ExecutionContext";
+	private static final String UNARY = "()" + OBJECT_DESC;
+	private static final String BINARY = "(" + OBJECT_DESC + ")" +
+			OBJECT_DESC;
+	private static final String COMPARE = "(" + OBJECT_DESC + ")Z";
+
+	// JVM locals of the invoke method
+	private static final int CONTEXT_LOCAL = 1;
+	private static final int STACK_LOCAL = 2;
+	private static final int BASE_LOCAL = 3;
+	private static final int TOP_LOCAL = 4;
+	private static final int GLOBALS_LOCAL = 5;
+	private static final int CONSTANTS_LOCAL = 6;
+	private static final int SCRATCH_LOCAL = 7;
+	private static final int FIRST_ARGUMENT_LOCAL = 8;
+	private static final int MAX_LOCAL = 255;
+
+	/**
+	 * Furthest a JVM branch can jump, which also bounds the size of the
+	 * method since branches are only patched with 16 bit offsets.
+	 */
+	private static final int MAX_CODE_SIZE = Short.MAX_VALUE;
+
+	public JitCompiler() {
+		this(DEFAULT_INVOCATION_THRESHOLD, DEFAULT_BACK_EDGE_THRESHOLD);
+	}
+
+	public JitCompiler(int invocationThreshold, int backEdgeThreshold) {
+		invocationThreshold_ = invocationThreshold;
+		backEdgeThreshold_ = backEdgeThreshold;
+		loader_ = new JitClassLoader();
+		compiled_ = 0;
+	}
+
+	private int invocationThreshold_;
+	private int backEdgeThreshold_;
+	private JitClassLoader loader_;
+	private int compiled_;
+
+	public int invocationThreshold() {
+		return invocationThreshold_;
+	}
+
+	public int backEdgeThreshold() {
+		return backEdgeThreshold_;
+	}
+
+	/**
+	 * @return Count of functions compiled so far.
+	 */
+	public int compiledCount() {
+		return compiled_;
+	}
+
+	/**
+	 * Translates a function of a module to a JVM class and instantiates
+	 * it.
+	 * @param constants The values of the static pool of the module.
+	 * @param checkpoints Whether backward branches are checkpoints of the
+	 * execution context, see {@link vm.ExecutionContext#checkpoint()}.
+	 * @throws CompileError If the function cannot be translated, in which
+	 * case it has to stay interpreted.
+	 */
+	public synchronized CompiledFunction compile(ModuleInfo module,
+			FunctionInfo fn, RuntimeObject[] constants, boolean checkpoints)
+			throws CompileError {
+		int argc = fn.argumentCount();
+		int localCount = argc + fn.localCount();
+		if (FIRST_ARGUMENT_LOCAL + localCount > MAX_LOCAL)
+			throw new CompileError(String.format(
+					"too many variables in %s", fn.name()));
+
+		String name = PACKAGE + "Sheet$" + fn.name() + '$' + compiled_;
+		ClassWriter writer = new ClassWriter(name, BASE);
+		writer.addMethod(ClassWriter.ACC_PUBLIC, "<init>",
+				"(" + ARRAY_DESC + ")V", constructor(writer));
+		JvmCode code = translate(writer, module, fn, checkpoints);
+		code.setMaxStack(fn.maxStackDepth() + 4);
+		code.setMaxLocals(FIRST_ARGUMENT_LOCAL + localCount);
+		writer.addMethod(ClassWriter.ACC_PUBLIC, "invoke",
+				"(L" + CONTEXT + ";" + ARRAY_DESC + "I)" + OBJECT_DESC,
+				code);
+
+		try {
+			Class<?> cls = loader_.define(name.replace('/', '.'),
+					writer.toByteArray());
+			CompiledFunction result = (CompiledFunction) cls
+					.getConstructor(RuntimeObject[].class)
+					.newInstance((Object) constants);
+			compiled_++;
+			return result;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new CompileError(String.format(
+					"cannot load compiled %s", fn.name()), e);
+		}
+	}
+
+	private static JvmCode constructor(ClassWriter writer) {
+		JvmCode code = new JvmCode(writer);
+		code.local(JvmOpcodes.ALOAD, 0);
+		code.local(JvmOpcodes.ALOAD, 1);
+		code.invoke(JvmOpcodes.INVOKESPECIAL, BASE, "<init>",
+				"(" + ARRAY_DESC + ")V");
+		code.op(JvmOpcodes.RETURN);
+		code.setMaxStack(2);
+		code.setMaxLocals(2);
+		return code;
+	}
+
+	private JvmCode translate(ClassWriter writer, ModuleInfo module,
+			FunctionInfo fn, boolean checkpoints) throws CompileError {
+		JvmCode code = new JvmCode(writer);
+		int argc = fn.argumentCount();
+		int firstLocal = FIRST_ARGUMENT_LOCAL + argc;
+
+		// top = base + argc, where the arguments of calls are passed
+		code.local(JvmOpcodes.ILOAD, BASE_LOCAL);
+		code.pushInt(argc);
+		code.op(JvmOpcodes.IADD);
+		code.local(JvmOpcodes.ISTORE, TOP_LOCAL);
+		code.local(JvmOpcodes.ALOAD, CONTEXT_LOCAL);
+		code.invoke(JvmOpcodes.INVOKEVIRTUAL, CONTEXT, "globals",
+				"()" + ARRAY_DESC);
+		code.local(JvmOpcodes.ASTORE, GLOBALS_LOCAL);
+		code.local(JvmOpcodes.ALOAD, 0);
+		code.getField(BASE, "constants_", ARRAY_DESC);
+		code.local(JvmOpcodes.ASTORE, CONSTANTS_LOCAL);
+		for (int i = 0; i < argc; i++) {
+			code.local(JvmOpcodes.ALOAD, STACK_LOCAL);
+			code.local(JvmOpcodes.ILOAD, BASE_LOCAL);
+			code.pushInt(i);
+			code.op(JvmOpcodes.IADD);
+			code.op(JvmOpcodes.AALOAD);
+			code.local(JvmOpcodes.ASTORE, FIRST_ARGUMENT_LOCAL + i);
+		}
+		// a tail call of the function itself loops back here
+		int start = code.position();
+		for (int i = 0; i < fn.localCount(); i++) {
+			code.op(JvmOpcodes.ACONST_NULL);
+			code.local(JvmOpcodes.ASTORE, firstLocal + i);
+		}
+
+		int[] words = fn.byteCode().code();
+		boolean[] reachable = reachable(words);
+		int[] positions = new int[words.length];
+		int[] branches = new int[words.length];
+		for (int i = 0; i < words.length; i++) {
+			positions[i] = code.position();
+			branches[i] = -1;
+			if (!reachable[i])
+				continue;
+			int opcode = OpCodes.opcode(words[i]);
+			int operand = OpCodes.operand(words[i]);
+			// a loop stops at the same checkpoints as when interpreted,
+			// though also when its backward branch is not taken
+			if (checkpoints && operand <= i &&
+					OpCode.decode(opcode).isBranch()) {
+				code.local(JvmOpcodes.ALOAD, CONTEXT_LOCAL);
+				code.invoke(JvmOpcodes.INVOKEVIRTUAL, CONTEXT, "checkpoint",
+						"()V");
+			}
+			switch (opcode) {
+			case OpCodes.NOP:
+				break;
+			case OpCodes.OR:
+				binary(code, "or");
+				break;
+			case OpCodes.AND:
+				binary(code, "and");
+				break;
+			case OpCodes.XOR:
+				binary(code, "xor");
+				break;
+			case OpCodes.SHL:
+				binary(code, "shl");
+				break;
+			case OpCodes.SHR:
+				binary(code, "shr");
+				break;
+			case OpCodes.SAR:
+				binary(code, "sar");
+				break;
+			case OpCodes.ADD:
+				binary(code, "add");
+				break;
+			case OpCodes.SUB:
+				binary(code, "subtract");
+				break;
+			case OpCodes.MUL:
+				binary(code, "multiply");
+				break;
+			case OpCodes.DIV:
+				binary(code, "divide");
+				break;
+			case OpCodes.MOD:
+				binary(code, "modulus");
+				break;
+			case OpCodes.EQ:
+				compare(code, "equals");
+				bool(code);
+				break;
+			case OpCodes.NE:
+				compare(code, "equals");
+				code.op(JvmOpcodes.ICONST_1);
+				code.op(JvmOpcodes.IXOR);
+				bool(code);
+				break;
+			case OpCodes.LT:
+				compare(code, "lessThan");
+				bool(code);
+				break;
+			case OpCodes.GT:
+				compare(code, "greatThan");
+				bool(code);
+				break;
+			case OpCodes.LTE:
+				compare(code, "lessThanOrEqual");
+				bool(code);
+				break;
+			case OpCodes.GTE:
+				compare(code, "greatThanOrEqual");
+				bool(code);
+				break;
+			case OpCodes.NOT:
+			case OpCodes.BIT_NOT:
+				// the interpreter runs both as not()
+				unary(code, "not");
+				break;
+			case OpCodes.INC:
+				unary(code, "increase");
+				break;
+			case OpCodes.DEC:
+				unary(code, "decrease");
+				break;
+			case OpCodes.NEG:
+				unary(code, "negative");
+				break;
+			case OpCodes.BR:
+				branches[i] = code.branch(JvmOpcodes.GOTO);
+				break;
+			case OpCodes.BRTRUE:
+				code.invoke(JvmOpcodes.INVOKEVIRTUAL, OBJECT, "isTruly",
+						"()Z");
+				branches[i] = code.branch(JvmOpcodes.IFNE);
+				break;
+			case OpCodes.BRFALSE:
+				code.invoke(JvmOpcodes.INVOKEVIRTUAL, OBJECT, "isFalsy",
+						"()Z");
+				branches[i] = code.branch(JvmOpcodes.IFNE);
+				break;
+			// the fused branches test the same negations as the interpreter
+			case OpCodes.BREQ:
+				compare(code, "equals");
+				branches[i] = code.branch(JvmOpcodes.IFNE);
+				break;
+			case OpCodes.BRNE:
+				compare(code, "equals");
+				branches[i] = code.branch(JvmOpcodes.IFEQ);
+				break;
+			case OpCodes.BRLT:
+				compare(code, "greatThanOrEqual");
+				branches[i] = code.branch(JvmOpcodes.IFEQ);
+				break;
+			case OpCodes.BRGT:
+				compare(code, "lessThanOrEqual");
+				branches[i] = code.branch(JvmOpcodes.IFEQ);
+				break;
+			case OpCodes.BRLTE:
+				compare(code, "greatThan");
+				branches[i] = code.branch(JvmOpcodes.IFEQ);
+				break;
+			case OpCodes.BRGTE:
+				compare(code, "lessThan");
+				branches[i] = code.branch(JvmOpcodes.IFEQ);
+				break;
+			case OpCodes.CALL:
+				call(code, operand,
+						module.getFunctionByIndex(operand).argumentCount());
+				break;
+			case OpCodes.TAILCALL:
+				if (module.getFunctionByIndex(operand) == fn) {
+					for (int j = argc - 1; j >= 0; j--)
+						code.local(JvmOpcodes.ASTORE,
+								FIRST_ARGUMENT_LOCAL + j);
+					if (checkpoints) {
+						code.local(JvmOpcodes.ALOAD, CONTEXT_LOCAL);
+						code.invoke(JvmOpcodes.INVOKEVIRTUAL, CONTEXT,
+								"checkpoint", "()V");
+					}
+					code.patch(code.branch(JvmOpcodes.GOTO), start);
+					break;
+				}
+				// any other function is called by the caller in place of
+				// this one, see ExecutionContext.tailCall
+				tailCall(code, operand,
+						module.getFunctionByIndex(operand).argumentCount());
+				break;
+			case OpCodes.RET: {
+				// a local which was never assigned is returned as null
+				code.op(JvmOpcodes.DUP);
+				int nonNull = code.branch(JvmOpcodes.IFNONNULL);
+				code.op(JvmOpcodes.POP);
+				loadNull(code);
+				code.patch(nonNull, code.position());
+				code.op(JvmOpcodes.ARETURN);
+				break;
+			}
+			case OpCodes.RETNULL:
+				loadNull(code);
+				code.op(JvmOpcodes.ARETURN);
+				break;
+			case OpCodes.LDARG:
+				code.local(JvmOpcodes.ALOAD, FIRST_ARGUMENT_LOCAL + operand);
+				break;
+			case OpCodes.LDLOC:
+				code.local(JvmOpcodes.ALOAD, firstLocal + operand);
+				break;
+			case OpCodes.LDGLOB:
+				code.local(JvmOpcodes.ALOAD, GLOBALS_LOCAL);
+				code.pushInt(operand);
+				code.op(JvmOpcodes.AALOAD);
+				break;
+			case OpCodes.LDSTATIC:
+				code.local(JvmOpcodes.ALOAD, CONSTANTS_LOCAL);
+				code.pushInt(operand);
+				code.op(JvmOpcodes.AALOAD);
+				// an array literal is a new array every time it is run
+				if (module.staticPool().get(operand).isArray())
+					unary(code, "copy");
+				break;
+			case OpCodes.LDNULL:
+				loadNull(code);
+				break;
+			case OpCodes.LDELEM:
+				code.invoke(JvmOpcodes.INVOKESTATIC, BASE, "loadElement",
+						"(" + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+				break;
+			case OpCodes.STARG:
+				code.local(JvmOpcodes.ASTORE, FIRST_ARGUMENT_LOCAL + operand);
+				break;
+			case OpCodes.STLOC:
+				code.local(JvmOpcodes.ASTORE, firstLocal + operand);
+				break;
+			case OpCodes.STGLOB:
+				// value -> globals, value -> globals, index, value
+				code.local(JvmOpcodes.ALOAD, GLOBALS_LOCAL);
+				code.op(JvmOpcodes.SWAP);
+				code.pushInt(operand);
+				code.op(JvmOpcodes.SWAP);
+				code.op(JvmOpcodes.AASTORE);
+				break;
+			case OpCodes.STELEM:
+				code.invoke(JvmOpcodes.INVOKESTATIC, BASE, "storeElement",
+						"(" + OBJECT_DESC + OBJECT_DESC + OBJECT_DESC + ")V");
+				break;
+			case OpCodes.COPY:
+				code.op(JvmOpcodes.DUP);
+				unary(code, "copy");
+				break;
+			case OpCodes.POP:
+				code.op(JvmOpcodes.POP);
+				break;
+			default:
+				throw new CompileError(String.format(
+						"cannot compile opcode %d at %d", opcode, i));
+			}
+		}
+
+		if (code.position() > MAX_CODE_SIZE)
+			throw new CompileError(String.format(
+					"%s is too large to compile", fn.name()));
+		for (int i = 0; i < words.length; i++)
+			if (branches[i] >= 0)
+				code.patch(branches[i],
+						positions[OpCodes.operand(words[i])]);
+		return code;
+	}
+
+	/**
+	 * Marks the instructions which can be reached from the entry. Dead
+	 * code is not translated, since it has no stack layout the JVM
+	 * verifier could check.
+	 */
+	private static boolean[] reachable(int[] words) {
+		boolean[] reachable = new boolean[words.length];
+		ArrayDeque<Integer> worklist = new ArrayDeque<Integer>();
+		worklist.add(0);
+		while (!worklist.isEmpty()) {
+			int i = worklist.poll();
+			if (i >= words.length || reachable[i])
+				continue;
+			reachable[i] = true;
+			OpCode opcode = OpCode.decode(OpCodes.opcode(words[i]));
+			if (opcode.isBranch())
+				worklist.add(OpCodes.operand(words[i]));
+			if (opcode.fallsThrough())
+				worklist.add(i + 1);
+		}
+		return reachable;
+	}
+
+	private static void unary(JvmCode code, String method) {
+		code.invoke(JvmOpcodes.INVOKEVIRTUAL, OBJECT, method, UNARY);
+	}
+
+	private static void binary(JvmCode code, String method) {
+		code.invoke(JvmOpcodes.INVOKEVIRTUAL, OBJECT, method, BINARY);
+	}
+
+	private static void compare(JvmCode code, String method) {
+		code.invoke(JvmOpcodes.INVOKEVIRTUAL, OBJECT, method, COMPARE);
+	}
+
+	private static void bool(JvmCode code) {
+		code.invoke(JvmOpcodes.INVOKESTATIC, FACTORY, "bool",
+				"(Z)Lruntime/RuntimeBoolean;");
+	}
+
+	private static void loadNull(JvmCode code) {
+		code.getStatic(FACTORY, "NULL", "Lruntime/RuntimeNull;");
+	}
+
+	/**
+	 * Moves the arguments from the operand stack to the slots of the
+	 * arguments of this function, last argument first, and returns null
+	 * for the caller to call the function in place of this one.
+	 */
+	private static void tailCall(JvmCode code, int function, int argc) {
+		for (int i = argc - 1; i >= 0; i--) {
+			code.local(JvmOpcodes.ASTORE, SCRATCH_LOCAL);
+			code.local(JvmOpcodes.ALOAD, STACK_LOCAL);
+			code.local(JvmOpcodes.ILOAD, BASE_LOCAL);
+			code.pushInt(i);
+			code.op(JvmOpcodes.IADD);
+			code.local(JvmOpcodes.ALOAD, SCRATCH_LOCAL);
+			code.op(JvmOpcodes.AASTORE);
+		}
+		code.local(JvmOpcodes.ALOAD, CONTEXT_LOCAL);
+		code.pushInt(function);
+		code.invoke(JvmOpcodes.INVOKEVIRTUAL, CONTEXT, "tailCall", "(I)V");
+		code.op(JvmOpcodes.ACONST_NULL);
+		code.op(JvmOpcodes.ARETURN);
+	}
+
+	/**
+	 * Moves the arguments from the operand stack to the slots of the VM
+	 * stack after the arguments of this function, last argument first,
+	 * and calls the function through the context so that it is counted
+	 * and compiled like any other call.
+	 */
+	private static void call(JvmCode code, int function, int argc) {
+		for (int i = argc - 1; i >= 0; i--) {
+			code.local(JvmOpcodes.ASTORE, SCRATCH_LOCAL);
+			code.local(JvmOpcodes.ALOAD, STACK_LOCAL);
+			code.local(JvmOpcodes.ILOAD, TOP_LOCAL);
+			code.pushInt(i);
+			code.op(JvmOpcodes.IADD);
+			code.local(JvmOpcodes.ALOAD, SCRATCH_LOCAL);
+			code.op(JvmOpcodes.AASTORE);
+		}
+		code.local(JvmOpcodes.ALOAD, CONTEXT_LOCAL);
+		code.pushInt(function);
+		code.local(JvmOpcodes.ILOAD, TOP_LOCAL);
+		code.invoke(JvmOpcodes.INVOKEVIRTUAL, CONTEXT, "call",
+				"(II)" + OBJECT_DESC);
+	}
+
+}
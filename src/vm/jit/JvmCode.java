@@ -0,0 +1,130 @@
+package vm.jit;
+
+import java.util.Arrays;
+
+/**
+ * The code of one JVM method while it is being written.
+ */
+class JvmCode {
+
+	JvmCode(ClassWriter owner) {
+		owner_ = owner;
+		code_ = new byte[256];
+		size_ = 0;
+		maxStack_ = 0;
+		maxLocals_ = 0;
+	}
+	
+	private ClassWriter owner_;
+	private byte[] code_;
+	private int size_;
+	private int maxStack_;
+	private int maxLocals_;
+	
+	int position() {
+		return size_;
+	}
+	
+	int maxStack() {
+		return maxStack_;
+	}
+	
+	int maxLocals() {
+		return maxLocals_;
+	}
+	
+	void setMaxStack(int maxStack) {
+		maxStack_ = maxStack;
+	}
+	
+	void setMaxLocals(int maxLocals) {
+		maxLocals_ = maxLocals;
+	}
+	
+	byte[] toByteArray() {
+		return Arrays.copyOf(code_, size_);
+	}
+	
+	void u1(int value) {
+		if (size_ == code_.length)
+			code_ = Arrays.copyOf(code_, code_.length * 2);
+		code_[size_++] = (byte) value;
+	}
+	
+	void u2(int value) {
+		u1(value >> 8);
+		u1(value);
+	}
+	
+	void op(int opcode) {
+		u1(opcode);
+	}
+	
+	// Instructions with operands
+	
+	void pushInt(int value) {
+		if (value >= -1 && value <= 5) {
+			op(JvmOpcodes.ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			op(JvmOpcodes.BIPUSH);
+			u1(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			op(JvmOpcodes.SIPUSH);
+			u2(value);
+		} else {
+			int index = owner_.integer(value);
+			if (index < 256) {
+				op(JvmOpcodes.LDC);
+				u1(index);
+			} else {
+				op(JvmOpcodes.LDC_W);
+				u2(index);
+			}
+		}
+	}
+	
+	/**
+	 * Emits a load or store of a local variable; the index has to fit in
+	 * one byte.
+	 */
+	void local(int opcode, int index) {
+		op(opcode);
+		u1(index);
+	}
+	
+	void getStatic(String owner, String name, String descriptor) {
+		op(JvmOpcodes.GETSTATIC);
+		u2(owner_.fieldRef(owner, name, descriptor));
+	}
+	
+	void getField(String owner, String name, String descriptor) {
+		op(JvmOpcodes.GETFIELD);
+		u2(owner_.fieldRef(owner, name, descriptor));
+	}
+	
+	void invoke(int opcode, String owner, String name, String descriptor) {
+		op(opcode);
+		u2(owner_.methodRef(owner, name, descriptor));
+	}
+	
+	/**
+	 * Emits a branch with a blank offset.
+	 * @return Position of the branch, to pass to {@link #patch(int, int)}.
+	 */
+	int branch(int opcode) {
+		int at = size_;
+		op(opcode);
+		u2(0);
+		return at;
+	}
+	
+	/**
+	 * Points the branch at the given position to the target position.
+	 */
+	void patch(int at, int target) {
+		int offset = target - at;
+		code_[at + 1] = (byte) (offset >> 8);
+		code_[at + 2] = (byte) offset;
+	}
+
+}